@@ -0,0 +1,57 @@
+package com.titiplex.budget.bench;
+
+import com.titiplex.budget.core.crypto.CryptoBox;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chiffrement AES-GCM d'une enveloppe avec la clé de groupe en cache (le chemin de chaque message).
+ * La dérivation scrypt, payée une fois par groupe, est mesurée à part en SingleShot.
+ * <p>
+ * ./gradlew jmh -Pjmh.includes=CryptoBoxBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class CryptoBoxBenchmark {
+
+    @Param({"256", "4096", "65536"})
+    public int size;
+
+    private static final String PASS = "correct horse battery staple";
+    private byte[] salt;
+    private byte[] plain;
+    private byte[] sealed;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        salt = CryptoBox.groupSalt("bench-group");
+        plain = new byte[size];
+        new SplittableRandom(1).nextBytes(plain);
+        sealed = CryptoBox.encrypt(PASS, salt, plain); // remplit aussi le cache de clé
+    }
+
+    @Benchmark
+    public byte[] encrypt() {
+        return CryptoBox.encrypt(PASS, salt, plain);
+    }
+
+    @Benchmark
+    public byte[] decrypt() {
+        return CryptoBox.decrypt(PASS, sealed);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 5)
+    public byte[] deriveKey() {
+        return CryptoBox.deriveKey(PASS, salt);
+    }
+}
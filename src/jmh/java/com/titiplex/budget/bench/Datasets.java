@@ -0,0 +1,59 @@
+package com.titiplex.budget.bench;
+
+import com.titiplex.budget.core.crdt.HLC;
+import com.titiplex.budget.core.model.Expense;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+/**
+ * Valeurs et jeux de données partagés par les benchmarks (déterministes : même graine, mêmes lignes).
+ */
+final class Datasets {
+    static final String[] CATEGORIES = {"food", "rent", "transport", "leisure", "health", "utilities", "travel", "misc"};
+    static final String[] CURRENCIES = {"EUR", "CAD", "USD", "GBP", "CHF", "JPY"};
+    // poids des devises : surtout EUR/CAD, une traîne d'autres devises
+    private static final int[] CURRENCY_WEIGHTS = {50, 25, 12, 6, 4, 3};
+    private static final String[] NOTES = {"", "marché du samedi", "abonnement", "carte", "remboursement", "cadeau", "Uber", "pharmacie"};
+    static final String[] AUTHORS = {
+            "6f1d2b1e-8c1a-4f3e-9d2b-0a1b2c3d4e5f",
+            "0c9a8b7d-6e5f-4a3b-8c2d-1e0f9a8b7c6d",
+            "a1b2c3d4-e5f6-4a7b-8c9d-0e1f2a3b4c5d"};
+
+    private Datasets() {
+    }
+
+    /**
+     * n dépenses sur ~3 ans, devises pondérées, montants log-normaux arrondis au centime (0 décimale en JPY).
+     */
+    static List<Expense> expenses(int n, long seed) {
+        SplittableRandom rnd = new SplittableRandom(seed);
+        long end = 1_718_000_000_000L;
+        long span = 3L * 365 * 86_400_000L;
+        List<Expense> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            String ccy = currency(rnd);
+            double raw = Math.exp(rnd.nextGaussian(3.0, 1.1)) * ("JPY".equals(ccy) ? 150 : 1);
+            BigDecimal amount = BigDecimal.valueOf(raw).setScale("JPY".equals(ccy) ? 0 : 2, RoundingMode.HALF_UP);
+            long ts = end - (long) (rnd.nextDouble() * span);
+            String author = AUTHORS[rnd.nextInt(AUTHORS.length)];
+            out.add(new Expense(new UUID(rnd.nextLong(), rnd.nextLong()).toString(), "user" + rnd.nextInt(4),
+                    CATEGORIES[rnd.nextInt(CATEGORIES.length)], amount, ccy, NOTES[rnd.nextInt(NOTES.length)],
+                    ts, false, new HLC(ts, rnd.nextInt(4), author).toString(), author));
+        }
+        return out;
+    }
+
+    static String currency(SplittableRandom rnd) {
+        int r = rnd.nextInt(100);
+        for (int i = 0; i < CURRENCY_WEIGHTS.length; i++) {
+            r -= CURRENCY_WEIGHTS[i];
+            if (r < 0) return CURRENCIES[i];
+        }
+        return CURRENCIES[0];
+    }
+}
@@ -0,0 +1,73 @@
+package com.titiplex.budget.bench;
+
+import com.titiplex.budget.core.crypto.Ed25519;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signature / vérification d'une enveloppe typique (~300 o de payload).
+ * "legacy" reparse la clé et crée un Signature à chaque appel, "current" passe par {@link Ed25519}.
+ * <p>
+ * ./gradlew jmh -Pjmh.includes=Ed25519Benchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class Ed25519Benchmark {
+
+    @Param({"legacy", "current"})
+    public String path;
+
+    private byte[] privPkcs8;
+    private String pubB64;
+    private PrivateKey priv;
+    private byte[] payload;
+    private byte[] sig;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        KeyPair kp = KeyPairGenerator.getInstance("Ed25519").generateKeyPair();
+        privPkcs8 = kp.getPrivate().getEncoded();
+        pubB64 = Base64.getEncoder().encodeToString(kp.getPublic().getEncoded());
+        priv = Ed25519.privateKey(privPkcs8);
+        payload = ("{\"type\":\"ADD\",\"payload\":{\"id\":\"4f1c2b7e-0d5a-4c1e-9f7a-3b2d1e0c9a8b\",\"who\":\"alice\","
+                + "\"category\":\"Courses\",\"amount\":42.50,\"currency\":\"EUR\",\"note\":\"marché du samedi\","
+                + "\"ts\":1718000000000,\"deleted\":false,\"ver\":\"1718000000000:0:alice\",\"author\":\"alice\"}}")
+                .getBytes(StandardCharsets.UTF_8);
+        sig = Ed25519.sign(priv, payload);
+    }
+
+    @Benchmark
+    public byte[] sign() throws Exception {
+        if ("current".equals(path)) return Ed25519.sign(priv, payload);
+        Signature s = Signature.getInstance("Ed25519");
+        s.initSign(KeyFactory.getInstance("Ed25519").generatePrivate(new PKCS8EncodedKeySpec(privPkcs8)));
+        s.update(payload);
+        return s.sign();
+    }
+
+    @Benchmark
+    public boolean verify() throws Exception {
+        if ("current".equals(path)) return Ed25519.verify(Ed25519.publicKey(pubB64), payload, sig);
+        PublicKey pub = KeyFactory.getInstance("Ed25519")
+                .generatePublic(new X509EncodedKeySpec(Base64.getDecoder().decode(pubB64)));
+        Signature s = Signature.getInstance("Ed25519");
+        s.initVerify(pub);
+        s.update(payload);
+        return s.verify(sig);
+    }
+}
@@ -0,0 +1,91 @@
+package com.titiplex.budget.bench;
+
+import com.titiplex.budget.core.fx.FxConverter;
+import com.titiplex.budget.core.model.Expense;
+import com.titiplex.budget.core.model.FxRate;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion de {@code rows} montants vers la devise d'affichage :
+ * recherche du taux par ligne dans la liste des FxRate + BigDecimal (comme l'ancien convertToCurrency du front)
+ * vs matrice de taux croisés sur unités entières, ligne par ligne et en lot.
+ * <p>
+ * ./gradlew jmh -Pjmh.includes=FxConverterBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class FxConverterBenchmark {
+
+    @Param({"100000"})
+    public int rows;
+
+    private List<FxRate> rates;
+    private BigDecimal[] amounts;
+    private long[] units;
+    private String[] currencies;
+    private FxConverter.Matrix matrix;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        rates = new ArrayList<>();
+        String[] codes = {"EUR", "CAD", "USD", "GBP", "CHF", "JPY", "AUD", "SEK", "NOK", "DKK", "PLN", "CZK",
+                "HUF", "RON", "BGN", "TRY", "BRL", "CNY", "HKD", "IDR", "ILS", "INR", "KRW", "MXN", "MYR", "NZD",
+                "PHP", "SGD", "THB", "ZAR"};
+        for (int i = 0; i < codes.length; i++) {
+            rates.add(new FxRate(codes[i], new BigDecimal(i == 0 ? "1" : String.format(Locale.ROOT, "%.4f", 0.05 + i * 0.07)), false, "1:0:n", "n"));
+        }
+        List<Expense> es = Datasets.expenses(rows, 19);
+        amounts = new BigDecimal[rows];
+        units = new long[rows];
+        currencies = new String[rows];
+        for (int i = 0; i < rows; i++) {
+            amounts[i] = es.get(i).amount();
+            units[i] = amounts[i].movePointRight(4).longValue();
+            currencies[i] = es.get(i).currency();
+        }
+        matrix = FxConverter.Matrix.of(rates, "EUR");
+    }
+
+    @Benchmark
+    public void perRowLookup(Blackhole bh) {
+        for (int i = 0; i < rows; i++) {
+            BigDecimal rf = rateOf(currencies[i]), rt = rateOf("CAD");
+            bh.consume(currencies[i].equals("CAD") || rf == null || rt == null
+                    ? amounts[i] : amounts[i].multiply(rf).divide(rt, MathContext.DECIMAL64));
+        }
+    }
+
+    private BigDecimal rateOf(String code) {
+        for (FxRate r : rates) {
+            if (r.code().equalsIgnoreCase(code)) return r.perBase();
+        }
+        return null;
+    }
+
+    @Benchmark
+    public void matrixPerRow(Blackhole bh) {
+        for (int i = 0; i < rows; i++) bh.consume(matrix.convert(units[i], currencies[i], "CAD"));
+    }
+
+    @Benchmark
+    public long[] matrixConvertAll() {
+        return matrix.convertAll(units, currencies, "CAD");
+    }
+
+    @Benchmark
+    public FxConverter.Matrix build() {
+        return FxConverter.Matrix.of(rates, "EUR");
+    }
+}
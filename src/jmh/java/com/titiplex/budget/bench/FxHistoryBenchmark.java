@@ -0,0 +1,99 @@
+package com.titiplex.budget.bench;
+
+import com.titiplex.budget.core.fx.FxConverter;
+import com.titiplex.budget.core.fx.FxHistory;
+import com.titiplex.budget.core.model.Expense;
+import com.titiplex.budget.core.store.FxPoint;
+import com.titiplex.budget.core.store.SqliteRepository;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion au cours du jour de {@code rows} dépenses triées par date (parcours d'export) sur ~25 ans d'historique
+ * journalier : recherche dichotomique à chaque ligne vs curseur qui mémorise le dernier indice par devise.
+ * <p>
+ * ./gradlew jmh -Pjmh.includes=FxHistoryBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class FxHistoryBenchmark {
+
+    @Param({"100000"})
+    public int rows;
+
+    private FxHistory history;
+    private FxHistory.Series series;
+    private long[] units;
+    private long[] ts;
+    private String[] currencies;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Path dir;
+        try {
+            dir = Files.createTempDirectory("bench-fxhist");
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        SqliteRepository repo = new SqliteRepository(dir.resolve("db.sqlite"));
+        SplittableRandom rnd = new SplittableRandom(7);
+        List<FxPoint> points = new ArrayList<>();
+        for (String code : Datasets.CURRENCIES) {
+            if (code.equals("EUR")) continue;
+            double rate = 0.5 + rnd.nextDouble() * 2;
+            for (LocalDate d = LocalDate.of(2000, 1, 3); d.isBefore(LocalDate.now()); d = d.plusDays(1)) {
+                if (d.getDayOfWeek().getValue() >= 6) continue;
+                rate *= 1 + (rnd.nextDouble() - 0.5) / 100;
+                points.add(new FxPoint(code, (int) d.toEpochDay(), rate));
+            }
+        }
+        repo.saveFxHistory(points);
+        history = new FxHistory(repo, new FxConverter(repo));
+        series = history.snapshot();
+
+        List<Expense> es = new ArrayList<>(Datasets.expenses(rows, 23));
+        es.sort(Comparator.comparingLong(Expense::ts));
+        units = new long[rows];
+        ts = new long[rows];
+        currencies = new String[rows];
+        for (int i = 0; i < rows; i++) {
+            units[i] = es.get(i).amount().movePointRight(4).longValue();
+            ts[i] = es.get(i).ts();
+            currencies[i] = es.get(i).currency();
+        }
+    }
+
+    @Benchmark
+    public void binarySearchPerRow(Blackhole bh) {
+        for (int i = 0; i < rows; i++) {
+            int day = (int) Math.floorDiv(ts[i], 86_400_000L);
+            double f = currencies[i].equals("EUR") ? 1.0 : series.rateAt(currencies[i], day);
+            double t = series.rateAt("CAD", day);
+            bh.consume(Math.round(units[i] * (f / t)));
+        }
+    }
+
+    @Benchmark
+    public void cursor(Blackhole bh) {
+        FxHistory.Cursor c = history.cursor();
+        for (int i = 0; i < rows; i++) bh.consume(c.convert(units[i], currencies[i], "CAD", ts[i]));
+    }
+
+    @Benchmark
+    public void reload() {
+        history.reload();
+    }
+}
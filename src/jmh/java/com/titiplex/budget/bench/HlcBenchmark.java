@@ -0,0 +1,101 @@
+package com.titiplex.budget.bench;
+
+import com.titiplex.budget.core.crdt.HLC;
+import com.titiplex.budget.core.crdt.HlcClock;
+import com.titiplex.budget.core.crypto.SessionState;
+import com.titiplex.budget.core.model.Expense;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HLC sur les versions d'un jeu de dépenses : parse vs lecture packée, compareTo vs compareVersions
+ * (chemin du LWW), tick/observe de l'horloge partagée, y compris sous contention.
+ * <p>
+ * ./gradlew jmh -Pjmh.includes=HlcBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class HlcBenchmark {
+
+    private static final int N = 10_000;
+    private String[] versions;
+    private HLC[] parsed;
+    private HlcClock clock;
+    private int i;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        List<Expense> rows = Datasets.expenses(N, 7);
+        versions = new String[N];
+        parsed = new HLC[N];
+        for (int k = 0; k < N; k++) {
+            versions[k] = rows.get(k).ver();
+            parsed[k] = HLC.parse(versions[k]);
+        }
+        SessionState ss = new SessionState();
+        ss.userId = Datasets.AUTHORS[0];
+        clock = new HlcClock(ss);
+    }
+
+    private int next() {
+        int k = i++;
+        if (i == N) i = 0;
+        return k;
+    }
+
+    @Benchmark
+    public HLC parse() {
+        return HLC.parse(versions[next()]);
+    }
+
+    @Benchmark
+    public int compareTo() {
+        int k = next();
+        return parsed[k].compareTo(parsed[N - 1 - k]);
+    }
+
+    @Benchmark
+    public int parseAndCompare() {
+        int k = next();
+        return HLC.parse(versions[k]).compareTo(HLC.parse(versions[N - 1 - k]));
+    }
+
+    @Benchmark
+    public long packed() {
+        return HLC.packed(versions[next()]);
+    }
+
+    @Benchmark
+    public int compareVersions() {
+        int k = next();
+        return HLC.compareVersions(versions[k], versions[N - 1 - k]);
+    }
+
+    @Benchmark
+    public long tickPacked() {
+        return clock.tickPacked();
+    }
+
+    @Benchmark
+    public String tick() {
+        return clock.tick();
+    }
+
+    @Benchmark
+    public long observe() {
+        clock.observe(versions[next()], Datasets.AUTHORS[1], true);
+        return clock.current();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long tickPackedContended() {
+        return clock.tickPacked();
+    }
+}
@@ -0,0 +1,71 @@
+package com.titiplex.budget.bench;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.titiplex.budget.core.model.Expense;
+import com.titiplex.budget.core.model.Op;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson sur Expense : une ligne, une liste (push vers la WebView) et la conversion Map -> record des ops JSON.
+ * <p>
+ * ./gradlew jmh -Pjmh.includes=JacksonExpenseBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class JacksonExpenseBenchmark {
+
+    @Param({"10000"})
+    public int rows;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private List<Expense> list;
+    private Expense one;
+    private String oneJson;
+    private String listJson;
+    private String opJson;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        list = Datasets.expenses(rows, 11);
+        one = list.get(0);
+        oneJson = mapper.writeValueAsString(one);
+        listJson = mapper.writeValueAsString(list);
+        opJson = mapper.writeValueAsString(new Op(Op.Type.ADD, one));
+    }
+
+    @Benchmark
+    public String writeOne() throws Exception {
+        return mapper.writeValueAsString(one);
+    }
+
+    @Benchmark
+    public Expense readOne() throws Exception {
+        return mapper.readValue(oneJson, Expense.class);
+    }
+
+    @Benchmark
+    public String writeList() throws Exception {
+        return mapper.writeValueAsString(list);
+    }
+
+    @Benchmark
+    public List<Expense> readList() throws Exception {
+        return mapper.readValue(listJson, new TypeReference<List<Expense>>() {
+        });
+    }
+
+    @Benchmark
+    public Expense readOpAndConvert() throws Exception {
+        Op op = mapper.readValue(opJson, Op.class);
+        return mapper.convertValue((Map<?, ?>) op.payload(), Expense.class);
+    }
+}
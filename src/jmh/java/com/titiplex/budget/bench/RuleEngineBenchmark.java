@@ -0,0 +1,110 @@
+package com.titiplex.budget.bench;
+
+import com.titiplex.budget.core.model.Expense;
+import com.titiplex.budget.core.model.Rule;
+import com.titiplex.budget.core.rules.RuleEngine;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Catégorisation de {@code expenses} dépenses par {@code rules} règles (90 % SUBSTRING, 10 % REGEX) :
+ * ancien parcours règle par règle (toLowerCase + String.matches à chaque appel) vs automate précompilé.
+ * Libellés bancaires synthétiques ; environ une dépense sur deux est reconnue par une règle.
+ * <p>
+ * ./gradlew jmh -Pjmh.includes=RuleEngineBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class RuleEngineBenchmark {
+
+    @Param({"1000"})
+    public int rules;
+
+    @Param({"100000"})
+    public int expenses;
+
+    private List<Rule> ruleList;
+    private List<Expense> rows;
+    private RuleEngine.Compiled compiled;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        SplittableRandom rnd = new SplittableRandom(15);
+        String[] merchants = new String[rules * 2];
+        for (int i = 0; i < merchants.length; i++) merchants[i] = word(rnd) + (i % 3 == 0 ? " " + word(rnd) : "");
+
+        ruleList = new ArrayList<>(rules);
+        for (int i = 0; i < rules; i++) {
+            String cat = Datasets.CATEGORIES[rnd.nextInt(Datasets.CATEGORIES.length)];
+            boolean regex = i % 10 == 9;
+            String pattern = regex ? ".*" + merchants[i].toUpperCase() + " [A-Z]+ \\d{2}/\\d{2}.*" : merchants[i];
+            ruleList.add(new Rule("r" + i, String.format("rule-%04d", rnd.nextInt(10_000)), regex ? "REGEX" : "SUBSTRING",
+                    pattern, cat, true, false, "1:0:n", "n"));
+        }
+        ruleList.sort(Comparator.comparing(Rule::name)); // ordre de listRulesActive()
+
+        String[] cities = {"PARIS", "LYON", "MONTREAL", "QUEBEC", "NANTES", "LILLE"};
+        rows = new ArrayList<>(expenses);
+        for (Expense e : Datasets.expenses(expenses, 16)) {
+            String note = "CB " + merchants[rnd.nextInt(merchants.length)].toUpperCase() + " "
+                    + cities[rnd.nextInt(cities.length)] + " " + String.format("%02d/%02d", 1 + rnd.nextInt(28), 1 + rnd.nextInt(12));
+            rows.add(new Expense(e.id(), e.who(), null, e.amount(), e.currency(), note, e.ts(), false, e.ver(), e.author()));
+        }
+        compiled = RuleEngine.compile(ruleList);
+    }
+
+    private static String word(SplittableRandom rnd) {
+        char[] c = new char[4 + rnd.nextInt(6)];
+        for (int k = 0; k < c.length; k++) c[k] = (char) ('a' + rnd.nextInt(26));
+        return new String(c);
+    }
+
+    @Benchmark
+    public void perRuleLoop(Blackhole bh) {
+        for (Expense e : rows) {
+            String cat = null;
+            for (Rule r : ruleList) {
+                if (matchRule(r, e)) {
+                    cat = r.category();
+                    break;
+                }
+            }
+            bh.consume(cat);
+        }
+    }
+
+    @Benchmark
+    public void compiledEngine(Blackhole bh) {
+        for (Expense e : rows) bh.consume(compiled.categorize(e));
+    }
+
+    @Benchmark
+    public RuleEngine.Compiled compile() {
+        return RuleEngine.compile(ruleList);
+    }
+
+    // ancien MainController.matchRule
+    private static boolean matchRule(Rule r, Expense e) {
+        if (r == null || !r.active()) return false;
+        String hay = (e.note() == null ? "" : e.note()) + " " + (e.who() == null ? "" : e.who());
+        try {
+            return switch (r.kind()) {
+                case "SUBSTRING" -> hay.toLowerCase().contains(r.pattern().toLowerCase());
+                case "REGEX" -> hay.matches(r.pattern());
+                default -> false;
+            };
+        } catch (Exception ex) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.titiplex.budget.bench;
+
+import com.titiplex.budget.core.model.Expense;
+import com.titiplex.budget.core.model.Op;
+import com.titiplex.budget.core.store.SqliteRepository;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SqliteRepository sur une base pré-remplie par le générateur (10k à 1M dépenses, devises mélangées) :
+ * upsert unitaire d'une ligne existante, lot distant de 500 ops et lecture de la liste active.
+ * <p>
+ * ./gradlew jmh -Pjmh.includes=SqliteRepositoryBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class SqliteRepositoryBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int rows;
+
+    private static final int BATCH = 500;
+    private SqliteRepository repo;
+    private List<Expense> data;
+    private long wall;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        Path dir = Files.createTempDirectory("bench-repo");
+        repo = new SqliteRepository(dir.resolve("db.sqlite"));
+        data = Datasets.expenses(rows, 42);
+        for (int from = 0; from < rows; from += 10_000) {
+            List<Op> ops = new ArrayList<>();
+            for (Expense e : data.subList(from, Math.min(rows, from + 10_000))) ops.add(new Op(Op.Type.ADD, e));
+            repo.applyBatch(ops);
+        }
+        wall = 1_800_000_000_000L; // plus récent que toutes les versions du jeu : chaque écriture gagne
+    }
+
+    private Expense bumped() {
+        Expense e = data.get(cursor);
+        cursor = (cursor + 1) % rows;
+        long w = wall++;
+        return new Expense(e.id(), e.who(), e.category(), e.amount(), e.currency(), e.note(), e.ts(), false,
+                w + ":0:" + e.author(), e.author());
+    }
+
+    @Benchmark
+    public void upsertExisting() {
+        repo.upsertExpense(bumped());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void applyBatch() {
+        List<Op> ops = new ArrayList<>(BATCH);
+        for (int k = 0; k < BATCH; k++) ops.add(new Op(Op.Type.ADD, bumped()));
+        repo.applyBatch(ops);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<Expense> listActive() {
+        return repo.listActive();
+    }
+}
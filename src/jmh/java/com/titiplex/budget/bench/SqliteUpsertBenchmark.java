@@ -0,0 +1,143 @@
+package com.titiplex.budget.bench;
+
+import com.titiplex.budget.core.crdt.HLC;
+import com.titiplex.budget.core.model.Expense;
+import com.titiplex.budget.core.store.SqliteRepository;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Upserts d'Expense dans une table pré-remplie (1M lignes par défaut).
+ * "legacy" rejoue l'ancien chemin (findById + prepare à chaque appel, autocommit, journal par défaut, sans index),
+ * "current" passe par SqliteRepository (WAL, statements en cache, upsert conditionnel en SQL).
+ * <p>
+ * ./gradlew jmh -Pjmh.includes=SqliteUpsertBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class SqliteUpsertBenchmark {
+
+    @Param({"1000000"})
+    public int rows;
+
+    @Param({"legacy", "current"})
+    public String path;
+
+    private Path dir;
+    private SqliteRepository repo;
+    private Connection legacy;
+    private long seq;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("bench-sqlite");
+        Path db = dir.resolve("db.sqlite");
+        if ("current".equals(path)) {
+            repo = new SqliteRepository(db);
+        } else {
+            legacy = DriverManager.getConnection("jdbc:sqlite:" + db);
+            try (Statement st = legacy.createStatement()) {
+                st.executeUpdate("CREATE TABLE expenses (id TEXT PRIMARY KEY, who TEXT, category TEXT, amount TEXT," +
+                        " currency TEXT, note TEXT, ts INTEGER, deleted INTEGER DEFAULT 0, ver TEXT, author TEXT)");
+            }
+        }
+        prefill(db);
+    }
+
+    private void prefill(Path db) throws Exception {
+        try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + db)) {
+            c.setAutoCommit(false);
+            try (PreparedStatement ps = c.prepareStatement(
+                    "INSERT INTO expenses(id,who,category,amount,currency,note,ts,deleted,ver,author) VALUES(?,?,?,?,?,?,?,?,?,?)")) {
+                long now = System.currentTimeMillis();
+                for (int i = 0; i < rows; i++) {
+                    ps.setString(1, "pre-" + i);
+                    ps.setString(2, "alice");
+                    ps.setString(3, Datasets.CATEGORIES[i % Datasets.CATEGORIES.length]);
+                    ps.setString(4, "12.34");
+                    ps.setString(5, Datasets.CURRENCIES[i % Datasets.CURRENCIES.length]);
+                    ps.setString(6, "prefill");
+                    ps.setLong(7, now - i * 60_000L);
+                    ps.setInt(8, 0);
+                    ps.setString(9, (now - i) + ":0:node-a");
+                    ps.setString(10, "node-a");
+                    ps.addBatch();
+                    if (i % 10_000 == 0) ps.executeBatch();
+                }
+                ps.executeBatch();
+            }
+            c.commit();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (legacy != null) legacy.close();
+        // fichiers temporaires laissés au nettoyage du système (la connexion du repo reste ouverte)
+    }
+
+    @Benchmark
+    public void upsertNew() throws Exception {
+        long i = seq++;
+        Expense e = new Expense("new-" + i, "bob", "food", new BigDecimal("9.99"), "EUR", "bench",
+                System.currentTimeMillis(), false, System.currentTimeMillis() + ":" + (i & 0xffff) + ":node-b", "node-b");
+        if (repo != null) repo.upsertExpense(e);
+        else legacyUpsert(e);
+    }
+
+    // ---- ancien chemin, reproduit tel quel ----
+
+    private void legacyUpsert(Expense e) throws Exception {
+        Expense cur = legacyFind(e.id());
+        if (cur == null || legacyCompare(e.ver(), cur.ver(), e.author(), cur.author()) > 0) {
+            try (PreparedStatement ps = legacy.prepareStatement(
+                    "INSERT INTO expenses(id,who,category,amount,currency,note,ts,deleted,ver,author) " +
+                            "VALUES(?,?,?,?,?,?,?,?,?,?) " +
+                            "ON CONFLICT(id) DO UPDATE SET who=excluded.who, category=excluded.category, amount=excluded.amount," +
+                            "currency=excluded.currency, note=excluded.note, ts=excluded.ts, deleted=excluded.deleted, ver=excluded.ver, author=excluded.author")) {
+                ps.setString(1, e.id());
+                ps.setString(2, e.who());
+                ps.setString(3, e.category());
+                ps.setString(4, e.amount().toPlainString());
+                ps.setString(5, e.currency());
+                ps.setString(6, e.note());
+                ps.setLong(7, e.ts());
+                ps.setInt(8, e.deleted() ? 1 : 0);
+                ps.setString(9, e.ver());
+                ps.setString(10, e.author());
+                ps.executeUpdate();
+            }
+        }
+    }
+
+    private Expense legacyFind(String id) throws Exception {
+        try (PreparedStatement ps = legacy.prepareStatement("SELECT * FROM expenses WHERE id=?")) {
+            ps.setString(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return null;
+                return new Expense(rs.getString("id"), rs.getString("who"), rs.getString("category"),
+                        new BigDecimal(rs.getString("amount")), rs.getString("currency"), rs.getString("note"),
+                        rs.getLong("ts"), rs.getInt("deleted") == 1, rs.getString("ver"), rs.getString("author"));
+            }
+        }
+    }
+
+    private static int legacyCompare(String a, String b, String authorA, String authorB) {
+        if (b == null) return 1;
+        int c = HLC.parse(a).compareTo(HLC.parse(b));
+        return c != 0 ? c : authorA.compareTo(authorB);
+    }
+}
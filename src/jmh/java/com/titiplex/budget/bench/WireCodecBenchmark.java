@@ -0,0 +1,121 @@
+package com.titiplex.budget.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.titiplex.budget.core.model.*;
+import com.titiplex.budget.core.p2p.JGroupsP2PService;
+import com.titiplex.budget.core.p2p.WireCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sérialisation d'une enveloppe à une op, hors chiffrement et signature (identiques pour les deux formats).
+ * "json" : Op en JSON dans Envelope.payloadJson, puis double parsing + convertValue à la réception.
+ * "binary" : {@link WireCodec}. La taille encodée est un compteur auxiliaire ({@code encode:encodedBytes}, en
+ * octets/s) : divisée par le score de {@code encode}, elle donne les octets par enveloppe.
+ * <p>
+ * ./gradlew jmh -Pjmh.includes=WireCodecBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class WireCodecBenchmark {
+
+    @Param({"ADD", "BUDGET_UPSERT", "FX_UPSERT", "RULE_UPSERT", "RECUR_UPSERT", "GOAL_UPSERT"})
+    public String type;
+
+    @Param({"json", "binary"})
+    public String format;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private Op op;
+    private String senderId;
+    private byte[] pub;
+    private byte[] sig;
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        op = sample(Op.Type.valueOf(type));
+        senderId = UUID.randomUUID().toString();
+        pub = new byte[44];
+        sig = new byte[64];
+        encoded = encodeOnce();
+    }
+
+    /**
+     * Octets encodés, rapportés par JMH au même titre que le débit.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Size {
+        public long encodedBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            encodedBytes = 0;
+        }
+    }
+
+    @Benchmark
+    public byte[] encode(Size size) throws Exception {
+        byte[] out = encodeOnce();
+        size.encodedBytes += out.length;
+        return out;
+    }
+
+    private byte[] encodeOnce() throws Exception {
+        if ("binary".equals(format)) {
+            return WireCodec.encodeEnvelope(new WireCodec.Frame(senderId, "alice", pub, sig, WireCodec.opsPayload(List.of(op))));
+        }
+        JGroupsP2PService.Envelope env = new JGroupsP2PService.Envelope();
+        env.senderId = senderId;
+        env.senderName = "alice";
+        env.pubKeyB64 = Base64.getEncoder().encodeToString(pub);
+        env.payloadJson = mapper.writeValueAsString(op);
+        env.sigB64 = Base64.getEncoder().encodeToString(sig);
+        return mapper.writeValueAsBytes(env);
+    }
+
+    @Benchmark
+    public Object decode() throws Exception {
+        if ("binary".equals(format)) {
+            return WireCodec.readOps(WireCodec.decodeEnvelope(encoded).payload()).get(0).payload();
+        }
+        JGroupsP2PService.Envelope env = mapper.readValue(new String(encoded, StandardCharsets.UTF_8), JGroupsP2PService.Envelope.class);
+        Base64.getDecoder().decode(env.sigB64);
+        JsonNode node = mapper.readTree(env.payloadJson);
+        Op o = mapper.treeToValue(node, Op.class);
+        return mapper.convertValue(o.payload(), WireCodec.payloadClass(o.type()));
+    }
+
+    static Op sample(Op.Type t) {
+        String author = UUID.randomUUID().toString();
+        String id = UUID.randomUUID().toString();
+        String ver = "1718000000000:2:" + author;
+        Object p = switch (t) {
+            case ADD -> new Expense(id, "alice", Datasets.CATEGORIES[0], new BigDecimal("42.50"), "EUR",
+                    "marché du samedi", 1718000000000L, false, ver, author);
+            case BUDGET_UPSERT -> new CategoryBudget(id, Datasets.CATEGORIES[1], new BigDecimal("1200.00"), "CAD",
+                    false, ver, author, "SURPLUS", new BigDecimal("300.00"));
+            case FX_UPSERT -> new FxRate("USD", new BigDecimal("0.9234"), false, ver, author);
+            case RULE_UPSERT -> new Rule(id, "Supermarché", "SUBSTRING", "carrefour", Datasets.CATEGORIES[0],
+                    true, false, ver, author);
+            case RECUR_UPSERT -> new RecurringRule(id, "Loyer", "MONTHLY", 1, 0, 0, new BigDecimal("950.00"), "EUR",
+                    Datasets.CATEGORIES[1], "appartement", true, false, ver, author);
+            case GOAL_UPSERT -> new Goal(id, "Vacances", new BigDecimal("2500.00"), "EUR", 1730000000000L,
+                    false, ver, author);
+            default -> throw new IllegalArgumentException(t.name());
+        };
+        return new Op(t, p);
+    }
+}
@@ -1,19 +1,99 @@
 package com.titiplex.budget.core.crdt;
 
+/**
+ * Hybrid Logical Clock (valeurs ; l'horloge du nœud est {@link HlcClock}).
+ * Sur le fil et dans les records, une version reste la chaîne "wall:logic:node" ; en interne (comparaisons, colonne SQLite {@code hlc}) on travaille sur un long packé :
+ * bit de signe à 0 | 47 bits de temps mur (ms, jusque vers l'an 6429) | 16 bits de compteur logique.
+ */
 public class HLC implements Comparable<HLC> {
+    public static final int LOGIC_BITS = 16;
+    public static final int LOGIC_MAX = (1 << LOGIC_BITS) - 1;
+    public static final long WALL_MAX = (1L << (64 - LOGIC_BITS - 1)) - 1; // bit de signe laissé à 0
+    /**
+     * Valeur renvoyée par {@link #packed(String)} pour une version absente ou illisible.
+     */
+    public static final long INVALID = -1L;
+
     public final long wall;   // ms
     public final int logic;   // counter
-    public final String node; // node id
+    public final String node; // node id (interné : quelques pairs, comparé à chaque LWW)
 
     public HLC(long wall, int logic, String node) {
         this.wall = wall;
         this.logic = logic;
-        this.node = node;
+        this.node = node == null ? null : node.intern();
     }
 
     public static HLC parse(String s) {
-        String[] p = s.split(":");
-        return new HLC(Long.parseLong(p[0]), Integer.parseInt(p[1]), p[2]);
+        long p = packed(s);
+        if (p == INVALID) throw new IllegalArgumentException("bad HLC: " + s);
+        return new HLC(wall(p), logic(p), s.substring(nodeStart(s)));
+    }
+
+    public static long pack(long wall, int logic) {
+        return (wall << LOGIC_BITS) | (logic & LOGIC_MAX);
+    }
+
+    public static long wall(long packed) {
+        return packed >>> LOGIC_BITS;
+    }
+
+    public static int logic(long packed) {
+        return (int) (packed & LOGIC_MAX);
+    }
+
+    public long packed() {
+        return pack(wall, logic);
+    }
+
+    /**
+     * "wall:logic:node" -> long packé, sans allocation ; {@link #INVALID} si null, mal formé ou hors bornes.
+     */
+    public static long packed(String s) {
+        if (s == null) return INVALID;
+        int n = s.length();
+        int i = 0;
+        long wall = 0;
+        int start = i;
+        for (char c; i < n && (c = s.charAt(i)) != ':'; i++) {
+            if (c < '0' || c > '9' || wall > WALL_MAX / 10) return INVALID;
+            wall = wall * 10 + (c - '0');
+        }
+        if (i == start || i == n || wall > WALL_MAX) return INVALID;
+        long logic = 0;
+        start = ++i;
+        for (char c; i < n && (c = s.charAt(i)) != ':'; i++) {
+            if (c < '0' || c > '9') return INVALID;
+            logic = logic * 10 + (c - '0');
+            if (logic > LOGIC_MAX) return INVALID;
+        }
+        if (i == start || i == n) return INVALID;
+        return pack(wall, (int) logic);
+    }
+
+    // index du premier caractère du nœud (après le 2e ':')
+    private static int nodeStart(String s) {
+        return s.indexOf(':', s.indexOf(':') + 1) + 1;
+    }
+
+    /**
+     * Ordre HLC de deux versions chaîne (packé puis nœud), sans parse ni allocation. null < tout.
+     */
+    public static int compareVersions(String a, String b) {
+        long pa = packed(a), pb = packed(b);
+        if (pa != pb) return Long.compare(pa, pb);
+        if (pa == INVALID) return a == null ? (b == null ? 0 : -1) : (b == null ? 1 : a.compareTo(b));
+        int ia = nodeStart(a), ib = nodeStart(b);
+        int la = a.length() - ia, lb = b.length() - ib;
+        for (int k = 0, m = Math.min(la, lb); k < m; k++) {
+            char ca = a.charAt(ia + k), cb = b.charAt(ib + k);
+            if (ca != cb) return ca - cb;
+        }
+        return la - lb;
+    }
+
+    public static String format(long packed, String node) {
+        return wall(packed) + ":" + logic(packed) + ":" + node;
     }
 
     @Override
@@ -27,39 +107,4 @@ public class HLC implements Comparable<HLC> {
     public String toString() {
         return wall + ":" + logic + ":" + node;
     }
-
-    public static class Clock {
-        private long lastWall = 0;
-        private int lastLogic = 0;
-        private final String nodeId;
-
-        public Clock(String nodeId) {
-            this.nodeId = nodeId;
-        }
-
-        public synchronized String tick() {
-            long now = System.currentTimeMillis();
-            if (now > lastWall) {
-                lastWall = now;
-                lastLogic = 0;
-            } else {
-                lastLogic += 1;
-            }
-            return new HLC(lastWall, lastLogic, nodeId).toString();
-        }
-
-        public synchronized String merge(String remote) {
-            HLC r = HLC.parse(remote);
-            long now = System.currentTimeMillis();
-            long wall = Math.max(Math.max(now, lastWall), r.wall);
-            int logic;
-            if (wall == lastWall && wall == r.wall) logic = Math.max(lastLogic, r.logic) + 1;
-            else if (wall == lastWall) logic = lastLogic + 1;
-            else if (wall == r.wall) logic = r.logic + 1;
-            else logic = 0;
-            lastWall = wall;
-            lastLogic = logic;
-            return new HLC(wall, logic, nodeId).toString();
-        }
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,102 @@
+package com.titiplex.budget.core.crdt;
+
+import com.titiplex.budget.core.crypto.SessionState;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Horloge HLC unique du nœud, partagée par tous les écrivains locaux (UI, récurrences, FX auto).
+ * État = un long packé (voir {@link HLC}) avancé par CAS : pas de verrou, et deux écritures locales
+ * concurrentes obtiennent toujours des versions distinctes et croissantes.
+ * <p>
+ * Chaque op distante appliquée est observée : l'horloge avance au moins jusqu'à sa version (causalité),
+ * sauf si elle est en avance de plus de {@code app.hlc.max.drift.ms} sur notre temps mur (horloge d'un pair déréglée).
+ */
+@Service
+public class HlcClock {
+    private final SessionState ss;
+    private final AtomicLong last = new AtomicLong();
+    private volatile String fallbackNode;
+
+    @Value("${app.hlc.max.drift.ms:300000}")
+    private long maxDriftMs = 300_000;
+
+    private final Map<String, PeerSkew> skews = new ConcurrentHashMap<>();
+    private final AtomicLong merged = new AtomicLong();
+    private final AtomicLong driftRejected = new AtomicLong();
+
+    public HlcClock(SessionState ss) {
+        this.ss = ss;
+    }
+
+    /**
+     * Nœud = userId (l'identité est chargée après la construction des beans, d'où la lecture tardive).
+     */
+    public String node() {
+        if (ss.userId != null) return ss.userId;
+        if (fallbackNode == null) fallbackNode = UUID.randomUUID().toString();
+        return fallbackNode;
+    }
+
+    public long tickPacked() {
+        long now = HLC.pack(System.currentTimeMillis(), 0);
+        return last.updateAndGet(prev -> Math.max(now, prev + 1));
+    }
+
+    public String tick() {
+        return HLC.format(tickPacked(), node());
+    }
+
+    public long current() {
+        return last.get();
+    }
+
+    /**
+     * Version d'une op distante appliquée. {@code live} = op fraîche (pas un rattrapage d'anti-entropie) :
+     * seules celles-là alimentent la jauge de décalage d'horloge du pair.
+     */
+    public void observe(String remoteVer, String peer, boolean live) {
+        long remote = HLC.packed(remoteVer);
+        if (remote == HLC.INVALID) return;
+        long nowMs = System.currentTimeMillis();
+        long skew = HLC.wall(remote) - nowMs;
+        if (live && peer != null) skews.computeIfAbsent(peer, p -> new PeerSkew()).record(skew);
+        if (skew > maxDriftMs) {
+            driftRejected.incrementAndGet();
+            return;
+        }
+        if (last.getAndAccumulate(remote, Math::max) < remote) merged.incrementAndGet();
+    }
+
+    /**
+     * Jauge par pair : dernier décalage et décalage max observés (ms, positif = pair en avance).
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> peers = new LinkedHashMap<>();
+        skews.forEach((p, s) -> peers.put(p, Map.of("lastSkewMs", s.last, "maxAheadMs", s.maxAhead.get(), "samples", s.samples.get())));
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("now", HLC.format(last.get(), node()));
+        m.put("merged", merged.get());
+        m.put("driftRejected", driftRejected.get());
+        m.put("peers", peers);
+        return m;
+    }
+
+    private static final class PeerSkew {
+        volatile long last;
+        final AtomicLong maxAhead = new AtomicLong(Long.MIN_VALUE);
+        final AtomicLong samples = new AtomicLong();
+
+        void record(long skew) {
+            last = skew;
+            maxAhead.accumulateAndGet(skew, Math::max);
+            samples.incrementAndGet();
+        }
+    }
+}
@@ -7,21 +7,77 @@ import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public final class CryptoBox {
     private static final SecureRandom RNG = new SecureRandom();
 
+    /**
+     * Format "session de groupe" : ver(1) || saltLen(1) || groupSalt || nonce(12) || ciphertext.
+     * Les blobs historiques commencent par saltLen sur 4 octets (0x00000010), donc un premier octet à 0.
+     */
+    public static final byte VERSION_GROUP = 0x02;
+    private static final int NONCE_LEN = 12;
+    private static final int KEY_CACHE_MAX = 16;
+
+    // (passphrase, salt) -> clé dérivée ; borné, LRU
+    private static final Map<KeyId, byte[]> KEY_CACHE = new LinkedHashMap<>(KEY_CACHE_MAX, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<KeyId, byte[]> eldest) {
+            return size() > KEY_CACHE_MAX;
+        }
+    };
+
+    private record KeyId(String passphrase, String saltB64) {
+    }
+
     public static byte[] deriveKey(String passphrase, byte[] salt) {
         return SCrypt.generate(passphrase.getBytes(StandardCharsets.UTF_8), salt, 1 << 15, 8, 1, 32);
     }
 
+    /**
+     * Clé de groupe mise en cache : un seul scrypt par (passphrase, sel de groupe).
+     */
+    public static byte[] groupKey(String passphrase, byte[] groupSalt) {
+        KeyId id = new KeyId(passphrase, Base64.getEncoder().encodeToString(groupSalt));
+        synchronized (KEY_CACHE) {
+            byte[] k = KEY_CACHE.get(id);
+            if (k != null) return k;
+        }
+        byte[] k = deriveKey(passphrase, groupSalt); // hors verrou : scrypt est lent
+        synchronized (KEY_CACHE) {
+            KEY_CACHE.putIfAbsent(id, k);
+            return KEY_CACHE.get(id);
+        }
+    }
+
+    /**
+     * Sel de groupe déterministe (16 octets) : tous les pairs d'un même groupe dérivent la même clé.
+     */
+    public static byte[] groupSalt(String groupName) {
+        try {
+            byte[] h = MessageDigest.getInstance("SHA-256")
+                    .digest(("budget-p2p:group:" + groupName).getBytes(StandardCharsets.UTF_8));
+            return Arrays.copyOf(h, 16);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Ancien format : sel aléatoire + scrypt à chaque message. Conservé pour compatibilité.
+     */
     public static byte[] encrypt(String passphrase, byte[] plaintext) {
         try {
             byte[] salt = new byte[16];
             RNG.nextBytes(salt);
             byte[] key = deriveKey(passphrase, salt);
-            byte[] nonce = new byte[12];
+            byte[] nonce = new byte[NONCE_LEN];
             RNG.nextBytes(nonce);
 
             Cipher c = Cipher.getInstance("AES/GCM/NoPadding");
@@ -37,18 +93,47 @@ public final class CryptoBox {
         }
     }
 
+    /**
+     * Mode session de groupe : clé dérivée une fois (cache), nonce aléatoire par message.
+     */
+    public static byte[] encrypt(String passphrase, byte[] groupSalt, byte[] plaintext) {
+        try {
+            byte[] key = groupKey(passphrase, groupSalt);
+            byte[] nonce = new byte[NONCE_LEN];
+            RNG.nextBytes(nonce);
+
+            Cipher c = Cipher.getInstance("AES/GCM/NoPadding");
+            c.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new GCMParameterSpec(128, nonce));
+            byte[] ct = c.doFinal(plaintext);
+
+            ByteBuffer bb = ByteBuffer.allocate(2 + groupSalt.length + nonce.length + ct.length);
+            bb.put(VERSION_GROUP).put((byte) groupSalt.length).put(groupSalt).put(nonce).put(ct);
+            return bb.array();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public static byte[] decrypt(String passphrase, byte[] blob) {
         try {
             ByteBuffer bb = ByteBuffer.wrap(blob);
-            int saltLen = bb.getInt();
-            byte[] salt = new byte[saltLen];
-            bb.get(salt);
-            byte[] nonce = new byte[12];
+            byte[] key;
+            if (blob.length > 0 && blob[0] == VERSION_GROUP) {
+                bb.get();
+                byte[] salt = new byte[bb.get() & 0xFF];
+                bb.get(salt);
+                key = groupKey(passphrase, salt);
+            } else {
+                int saltLen = bb.getInt();
+                byte[] salt = new byte[saltLen];
+                bb.get(salt);
+                key = deriveKey(passphrase, salt);
+            }
+            byte[] nonce = new byte[NONCE_LEN];
             bb.get(nonce);
             byte[] ct = new byte[bb.remaining()];
             bb.get(ct);
 
-            byte[] key = deriveKey(passphrase, salt);
             Cipher c = Cipher.getInstance("AES/GCM/NoPadding");
             SecretKeySpec sk = new SecretKeySpec(key, "AES");
             c.init(Cipher.DECRYPT_MODE, sk, new GCMParameterSpec(128, nonce));
@@ -57,4 +142,4 @@ public final class CryptoBox {
             throw new RuntimeException(e);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,92 @@
+package com.titiplex.budget.core.crypto;
+
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Signatures Ed25519 sans ré-allocation : clés publiques des pairs parsées une fois (cache LRU),
+ * {@link Signature} réutilisé par thread (non thread-safe, mais réinitialisable à volonté).
+ */
+public final class Ed25519 {
+    private static final int PUBLIC_CACHE_MAX = 256;
+
+    // pubKeyB64 (X.509) -> clé parsée ; borné, LRU
+    private static final Map<String, PublicKey> PUBLIC_CACHE = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PublicKey> eldest) {
+            return size() > PUBLIC_CACHE_MAX;
+        }
+    };
+
+    private static final ThreadLocal<Signature> SIG = ThreadLocal.withInitial(() -> {
+        try {
+            return Signature.getInstance("Ed25519");
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    });
+
+    private Ed25519() {
+    }
+
+    public static PrivateKey privateKey(byte[] pkcs8) {
+        try {
+            return KeyFactory.getInstance("Ed25519").generatePrivate(new PKCS8EncodedKeySpec(pkcs8));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Clé publique d'un émetteur, parsée une seule fois par valeur distincte.
+     */
+    public static PublicKey publicKey(String x509B64) {
+        synchronized (PUBLIC_CACHE) {
+            PublicKey k = PUBLIC_CACHE.get(x509B64);
+            if (k != null) return k;
+        }
+        try {
+            PublicKey k = KeyFactory.getInstance("Ed25519")
+                    .generatePublic(new X509EncodedKeySpec(Base64.getDecoder().decode(x509B64)));
+            synchronized (PUBLIC_CACHE) {
+                PUBLIC_CACHE.putIfAbsent(x509B64, k);
+            }
+            return k;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static PublicKey publicKey(byte[] x509) {
+        return publicKey(Base64.getEncoder().encodeToString(x509));
+    }
+
+    public static byte[] sign(PrivateKey key, byte[] data) {
+        try {
+            Signature s = SIG.get();
+            s.initSign(key);
+            s.update(data);
+            return s.sign();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static boolean verify(PublicKey key, byte[] data, byte[] sig) {
+        try {
+            Signature s = SIG.get();
+            s.initVerify(key);
+            s.update(data);
+            return s.verify(sig);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
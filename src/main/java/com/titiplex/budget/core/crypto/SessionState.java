@@ -2,6 +2,8 @@ package com.titiplex.budget.core.crypto;
 
 import org.springframework.stereotype.Component;
 
+import java.security.PrivateKey;
+import java.util.Base64;
 import java.util.List;
 
 @Component
@@ -14,4 +16,29 @@ public class SessionState {
     public String groupPass;
     public List<String> seeds; // host:port strings
     public int port;
+
+    // Dérivés de l'identité, recalculés seulement si les octets de clé sont remplacés
+    private byte[] signingKeyOf;
+    private PrivateKey signingKey;
+    private byte[] publicKeyOf;
+    private String publicKeyB64;
+
+    /**
+     * Clé de signature parsée une fois (au lieu d'un KeyFactory par envoi).
+     */
+    public synchronized PrivateKey signingKey() {
+        if (signingKey == null || signingKeyOf != ed25519Private) {
+            signingKey = Ed25519.privateKey(ed25519Private);
+            signingKeyOf = ed25519Private;
+        }
+        return signingKey;
+    }
+
+    public synchronized String publicKeyB64() {
+        if (publicKeyB64 == null || publicKeyOf != ed25519Public) {
+            publicKeyB64 = Base64.getEncoder().encodeToString(ed25519Public);
+            publicKeyOf = ed25519Public;
+        }
+        return publicKeyB64;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,26 @@
+package com.titiplex.budget.core.export;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.titiplex.budget.core.store.ExpenseFilter;
+import com.titiplex.budget.core.store.ExpenseQuery;
+
+import java.time.ZoneId;
+import java.util.Locale;
+
+/**
+ * Demande d'export envoyée par l'UI : format, devise d'affichage et filtre (mêmes champs que la liste des dépenses).
+ */
+public record ExportRequest(
+        @JsonProperty("format") String format,           // CSV|JSONL|HTML
+        @JsonProperty("currency") String currency,
+        @JsonProperty("filter") ExpenseQuery filter
+) {
+    public ExportService.Format formatOrDefault() {
+        return format == null || format.isBlank() ? ExportService.Format.CSV
+                : ExportService.Format.valueOf(format.trim().toUpperCase(Locale.ROOT));
+    }
+
+    public ExpenseFilter toFilter(ZoneId zone) {
+        return filter == null ? ExpenseFilter.ALL : filter.toFilter(zone);
+    }
+}
@@ -0,0 +1,449 @@
+package com.titiplex.budget.core.export;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.titiplex.budget.core.fx.FxConverter;
+import com.titiplex.budget.core.fx.FxHistory;
+import com.titiplex.budget.core.model.Expense;
+import com.titiplex.budget.core.store.ExpenseFilter;
+import com.titiplex.budget.core.store.ExpenseTotals;
+import com.titiplex.budget.core.store.MonthTotal;
+import com.titiplex.budget.core.store.Repository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Export des dépenses vers un fichier (job en arrière-plan, un à la fois) : CSV, JSON lines ou rapport HTML.
+ * <p>
+ * Les lignes vont du curseur SQLite (par pages (ts, id), le verrou tenu seulement pour lire la page) au fichier
+ * à travers un tampon de 64 Ko sur un FileChannel : une page en mémoire au plus, quel que soit l'historique.
+ * Le montant d'affichage est converti au cours du jour de la dépense (historique FX, parcouru dans l'ordre des
+ * dates, donc sans recherche) ; le rapport HTML reprend en tête les totaux mensuels matérialisés.
+ * Le fichier est écrit sous un nom temporaire puis renommé : un export annulé ou en échec ne laisse rien.
+ */
+@Service
+public class ExportService {
+    public enum State {IDLE, RUNNING, DONE, CANCELLED, FAILED}
+
+    public enum Format {CSV, JSONL, HTML}
+
+    private static final DateTimeFormatter HTML_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    private final Repository repo;
+    private final FxConverter fx;
+    private final FxHistory history;
+
+    @Value("${app.export.page:2000}")
+    private int pageSize = 2000;
+    @Value("${app.export.progress.rows:10000}")
+    private int progressRows = 10000;
+
+    private volatile State state = State.IDLE;
+    private volatile boolean cancelRequested;
+    private volatile String error;
+    private volatile String file;
+    private volatile Format format;
+    private final AtomicLong rows = new AtomicLong();
+    private volatile long total;
+    private volatile long bytes;
+    private volatile long startedNanos;
+    private volatile long elapsedMs;
+
+    public ExportService(Repository repo, FxConverter fx, FxHistory history) {
+        this.repo = repo;
+        this.fx = fx;
+        this.history = history;
+    }
+
+    /**
+     * Lance l'export vers {@code target} ; {@code onProgress} reçoit l'avancement toutes les
+     * {@code app.export.progress.rows} lignes et à la fin. false si un export tourne déjà.
+     */
+    public synchronized boolean start(Format fmt, ExpenseFilter filter, String ccy, Path target,
+                                      Consumer<Map<String, Object>> onProgress) {
+        if (state == State.RUNNING) return false;
+        state = State.RUNNING;
+        cancelRequested = false;
+        error = null;
+        file = target.toString();
+        format = fmt;
+        rows.set(0);
+        total = 0;
+        bytes = 0;
+        elapsedMs = 0;
+        startedNanos = System.nanoTime();
+
+        Thread t = new Thread(() -> run(fmt, filter, ccy, target, onProgress), "export");
+        t.setDaemon(true);
+        t.start();
+        return true;
+    }
+
+    public void cancel() {
+        cancelRequested = true;
+    }
+
+    private void run(Format fmt, ExpenseFilter filter, String ccy, Path target, Consumer<Map<String, Object>> onProgress) {
+        Path part = target.resolveSibling(target.getFileName() + ".part");
+        try {
+            Files.createDirectories(target.toAbsolutePath().getParent());
+            total = repo.countExpenses(filter);
+            try (FileChannel ch = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+                 Writer w = new BufferedWriter(Channels.newWriter(ch, StandardCharsets.UTF_8), 1 << 16)) {
+                RowWriter out = switch (fmt) {
+                    case CSV -> new Csv(w, ccy);
+                    case JSONL -> new JsonLines(w, ccy);
+                    case HTML -> new Html(w, ccy, filter);
+                };
+                out.begin();
+                FxHistory.Cursor rates = history.cursor();
+                long every = Math.max(1, progressRows);
+                repo.scanExpenses(filter, pageSize, e -> {
+                    if (cancelRequested) throw new CancellationException();
+                    try {
+                        out.row(e, rates.convert(units(e.amount()), e.currency(), ccy, e.ts()));
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                    if (rows.incrementAndGet() % every == 0) progress(onProgress);
+                });
+                out.end();
+            }
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            bytes = Files.size(target);
+            state = State.DONE;
+        } catch (CancellationException e) {
+            state = State.CANCELLED;
+        } catch (IOException | RuntimeException e) {
+            Throwable cause = e instanceof UncheckedIOException u ? u.getCause() : e;
+            error = cause.getMessage() == null ? cause.toString() : cause.getMessage();
+            state = State.FAILED;
+            System.err.println("Failed to export expenses to " + target + ": " + error);
+        } finally {
+            if (state != State.DONE) {
+                try {
+                    Files.deleteIfExists(part);
+                } catch (IOException ignore) {
+                }
+            }
+            progress(onProgress);
+        }
+    }
+
+    private void progress(Consumer<Map<String, Object>> onProgress) {
+        elapsedMs = (System.nanoTime() - startedNanos) / 1_000_000;
+        if (onProgress == null) return;
+        try {
+            onProgress.accept(status());
+        } catch (RuntimeException e) {
+            System.err.println("Failed to report export progress: " + e.getMessage());
+        }
+    }
+
+    private static long units(BigDecimal v) {
+        return v == null ? 0 : v.movePointRight(4).setScale(0, RoundingMode.HALF_EVEN).longValue();
+    }
+
+    // unités (1/10 000) -> "12.34", arrondi au centime le plus proche
+    static String cents(long units) {
+        long c = units >= 0 ? (units + 50) / 100 : -((-units + 50) / 100);
+        long a = Math.abs(c);
+        String s = (a / 100) + "." + (a % 100 < 10 ? "0" : "") + (a % 100);
+        return c < 0 ? "-" + s : s;
+    }
+
+    // ---------- Formats ----------
+
+    private interface RowWriter {
+        void begin() throws IOException;
+
+        void row(Expense e, long displayUnits) throws IOException;
+
+        void end() throws IOException;
+    }
+
+    // Mêmes colonnes que l'ancien export de la WebView, toutes les cellules entre guillemets
+    private static final class Csv implements RowWriter {
+        private final Writer w;
+        private final String ccy;
+
+        Csv(Writer w, String ccy) {
+            this.w = w;
+            this.ccy = ccy;
+        }
+
+        @Override
+        public void begin() throws IOException {
+            w.write("\"ts\",\"who\",\"category\",\"amount_display\",\"display_ccy\",\"amount_original\",\"currency\",\"note\"\n");
+        }
+
+        @Override
+        public void row(Expense e, long displayUnits) throws IOException {
+            w.write('"');
+            w.write(Long.toString(e.ts()));
+            w.write("\",");
+            cell(e.who(), false);
+            cell(e.category(), false);
+            cell(cents(displayUnits), false);
+            cell(ccy, false);
+            cell(e.amount() == null ? "" : e.amount().toPlainString(), false);
+            cell(e.currency(), false);
+            cell(e.note(), true);
+            w.write('\n');
+        }
+
+        private void cell(String v, boolean last) throws IOException {
+            w.write('"');
+            if (v != null) {
+                for (int i = 0; i < v.length(); i++) {
+                    char c = v.charAt(i);
+                    if (c == '"') w.write("\"\"");
+                    else if (c == '\n' || c == '\r') w.write(' ');
+                    else w.write(c);
+                }
+            }
+            w.write('"');
+            if (!last) w.write(',');
+        }
+
+        @Override
+        public void end() {
+        }
+    }
+
+    // Un objet JSON par ligne, écrit par un seul générateur Jackson
+    private static final class JsonLines implements RowWriter {
+        private final JsonGenerator g;
+        private final String ccy;
+        private final ZoneId zone = ZoneId.systemDefault();
+        private boolean any;
+
+        JsonLines(Writer w, String ccy) throws IOException {
+            this.g = new JsonFactory().createGenerator(w).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            this.g.setRootValueSeparator(new SerializedString("\n"));
+            this.ccy = ccy;
+        }
+
+        @Override
+        public void begin() {
+        }
+
+        @Override
+        public void row(Expense e, long displayUnits) throws IOException {
+            any = true;
+            g.writeStartObject();
+            g.writeStringField("id", e.id());
+            g.writeNumberField("ts", e.ts());
+            g.writeStringField("date", Instant.ofEpochMilli(e.ts()).atZone(zone).toLocalDate().toString());
+            g.writeStringField("who", e.who());
+            g.writeStringField("category", e.category());
+            g.writeFieldName("amount");
+            g.writeNumber(e.amount() == null ? BigDecimal.ZERO : e.amount());
+            g.writeStringField("currency", e.currency());
+            g.writeFieldName("amount_display");
+            g.writeNumber(cents(displayUnits));
+            g.writeStringField("display_ccy", ccy);
+            g.writeStringField("note", e.note());
+            g.writeEndObject();
+        }
+
+        @Override
+        public void end() throws IOException {
+            if (any) g.writeRaw('\n');
+            g.flush();
+        }
+    }
+
+    // En-tête et synthèse (totaux matérialisés) d'abord, puis le tableau des dépenses ligne à ligne
+    private final class Html implements RowWriter {
+        private final Writer w;
+        private final String ccy;
+        private final ExpenseFilter filter;
+        private final ZoneId zone = ZoneId.systemDefault();
+
+        Html(Writer w, String ccy, ExpenseFilter filter) {
+            this.w = w;
+            this.ccy = ccy;
+            this.filter = filter;
+        }
+
+        @Override
+        public void begin() throws IOException {
+            w.write("<!doctype html><html><head><meta charset=\"utf-8\"><title>Rapport Budget</title>\n<style>"
+                    + "body{font-family:system-ui,Segoe UI,Roboto,Arial;margin:20px;color:#222} h1{margin:0 0 8px}"
+                    + " h2{margin:16px 0 6px} table{border-collapse:collapse;width:100%} th,td{border:1px solid #ddd;padding:6px}"
+                    + " td.n{text-align:right;white-space:nowrap} .bar{background:#4a90d9;height:10px}"
+                    + " .muted{color:#777;font-size:90%}</style>\n</head><body>\n");
+            w.write("<h1>Rapport Budget – " + esc(LocalDateTime.now(zone).format(HTML_TIME)) + " (affichage "
+                    + esc(ccy) + ")</h1>\n<p class=\"muted\">Période : " + esc(day(filter.fromTs(), false)) + " → "
+                    + esc(day(filter.toTs(), true)) + esc(criteria()) + "</p>\n");
+            summary();
+            w.write("<h2>Dépenses</h2>\n<table><thead><tr><th>Date</th><th>Qui</th><th>Cat.</th>"
+                    + "<th>Montant (disp.)</th><th>Original</th><th>Note</th></tr></thead><tbody>\n");
+        }
+
+        // Totaux par mois et par catégorie depuis les buckets matérialisés (mois entiers, cours actuel) ; ils ne
+        // connaissent ni l'auteur ni le montant : avec ces critères, seul le total exact du filtre est donné
+        private void summary() throws IOException {
+            FxConverter.Matrix rates = fx.snapshot();
+            if (filter.who() != null || filter.minAmount() != null || filter.maxAmount() != null) {
+                ExpenseTotals t = repo.totalsOf(filter);
+                long sum = 0;
+                for (Map.Entry<String, Long> en : t.unitsByCurrency().entrySet()) {
+                    sum += rates.convert(en.getValue(), en.getKey(), ccy);
+                }
+                w.write("<h2>Synthèse</h2>\n<p>Total : <b>" + cents(sum) + " " + esc(ccy) + "</b> (" + t.count()
+                        + " dépenses) <span class=\"muted\">(au cours actuel)</span></p>\n");
+                return;
+            }
+            String fromMonth = filter.fromTs() == null ? null : month(filter.fromTs());
+            String toMonth = filter.toTs() == null ? null : month(filter.toTs() - 1);
+            Set<String> cats = filter.categories() == null ? null : new HashSet<>(filter.categories());
+            Set<String> ccys = filter.currencies() == null ? null : new HashSet<>(filter.currencies());
+            Map<String, Long> byMonth = new TreeMap<>();
+            Map<String, Long> byCategory = new TreeMap<>();
+            long sum = 0;
+            for (MonthTotal t : repo.monthTotals(fromMonth, toMonth)) {
+                String cat = t.category() == null ? "" : t.category();
+                if (cats != null && !cats.contains(cat)) continue;
+                if (ccys != null && !ccys.contains(t.currency())) continue;
+                long u = rates.convert(t.units(), t.currency(), ccy);
+                byMonth.merge(t.month(), u, Long::sum);
+                byCategory.merge(cat, u, Long::sum);
+                sum += u;
+            }
+            w.write("<h2>Synthèse</h2>\n<p>Total : <b>" + cents(sum) + " " + esc(ccy) + "</b>"
+                    + " <span class=\"muted\">(totaux mensuels, mois entiers, au cours actuel)</span></p>\n");
+            bars("Par catégorie", byCategory, sum);
+            bars("Par mois", byMonth, sum);
+        }
+
+        private void bars(String title, Map<String, Long> values, long sum) throws IOException {
+            long max = 1;
+            for (long v : values.values()) max = Math.max(max, v);
+            w.write("<h2>" + title + "</h2>\n<table><tbody>\n");
+            for (Map.Entry<String, Long> en : values.entrySet()) {
+                long pct = sum == 0 ? 0 : Math.round(100.0 * en.getValue() / sum);
+                w.write("<tr><td>" + esc(en.getKey().isEmpty() ? "(sans catégorie)" : en.getKey()) + "</td><td class=\"n\">"
+                        + cents(en.getValue()) + " " + esc(ccy) + "</td><td class=\"n\">" + pct + " %</td>"
+                        + "<td style=\"width:50%\"><div class=\"bar\" style=\"width:"
+                        + Math.max(0, Math.round(100.0 * en.getValue() / max)) + "%\"></div></td></tr>\n");
+            }
+            w.write("</tbody></table>\n");
+        }
+
+        @Override
+        public void row(Expense e, long displayUnits) throws IOException {
+            w.write("<tr><td>");
+            w.write(Instant.ofEpochMilli(e.ts()).atZone(zone).format(HTML_TIME));
+            w.write("</td><td>");
+            w.write(esc(e.who()));
+            w.write("</td><td>");
+            w.write(esc(e.category()));
+            w.write("</td><td class=\"n\">");
+            w.write(cents(displayUnits));
+            w.write(' ');
+            w.write(esc(ccy));
+            w.write("</td><td class=\"n\">");
+            w.write(cents(units(e.amount())));
+            w.write(' ');
+            w.write(esc(e.currency()));
+            w.write("</td><td>");
+            w.write(esc(e.note()));
+            w.write("</td></tr>\n");
+        }
+
+        @Override
+        public void end() throws IOException {
+            w.write("</tbody></table>\n</body></html>\n");
+        }
+
+        private String criteria() {
+            StringBuilder b = new StringBuilder();
+            if (filter.categories() != null) b.append(" · catégories : ").append(String.join(", ", filter.categories()
+                    .stream().map(c -> c.isEmpty() ? "(sans catégorie)" : c).toList()));
+            if (filter.who() != null) b.append(" · qui : ").append(String.join(", ", filter.who()));
+            if (filter.currencies() != null) b.append(" · devises : ").append(String.join(", ", filter.currencies()));
+            if (filter.minAmount() != null) b.append(" · montant ≥ ").append(filter.minAmount().toPlainString());
+            if (filter.maxAmount() != null) b.append(" · montant ≤ ").append(filter.maxAmount().toPlainString());
+            return b.toString();
+        }
+
+        private String month(long ts) {
+            return YearMonth.from(Instant.ofEpochMilli(ts).atZone(zone)).toString();
+        }
+
+        private String day(Long ts, boolean exclusive) {
+            if (ts == null) return "…";
+            return Instant.ofEpochMilli(exclusive ? ts - 1 : ts).atZone(zone).toLocalDate().toString();
+        }
+    }
+
+    static String esc(String s) {
+        if (s == null) return "";
+        StringBuilder b = null;
+        for (int i = 0; i < s.length(); i++) {
+            String r = switch (s.charAt(i)) {
+                case '&' -> "&amp;";
+                case '<' -> "&lt;";
+                case '>' -> "&gt;";
+                case '"' -> "&quot;";
+                case '\'' -> "&#39;";
+                default -> null;
+            };
+            if (r == null) {
+                if (b != null) b.append(s.charAt(i));
+                continue;
+            }
+            if (b == null) b = new StringBuilder(s.length() + 16).append(s, 0, i);
+            b.append(r);
+        }
+        return b == null ? s : b.toString();
+    }
+
+    /**
+     * Avancement : état, format, fichier, lignes écrites / à écrire, taille finale, durée et débit.
+     */
+    public Map<String, Object> status() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("state", state.name());
+        if (format != null) m.put("format", format.name());
+        if (file != null) m.put("file", file);
+        m.put("rows", rows.get());
+        m.put("total", total);
+        m.put("bytes", bytes);
+        m.put("elapsedMs", elapsedMs);
+        m.put("rowsPerSec", elapsedMs == 0 ? 0 : rows.get() * 1000 / elapsedMs);
+        if (error != null) m.put("error", error);
+        return m;
+    }
+}
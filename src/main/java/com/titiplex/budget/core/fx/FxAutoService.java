@@ -1,6 +1,6 @@
 package com.titiplex.budget.core.fx;
 
-import com.titiplex.budget.core.crdt.HLC;
+import com.titiplex.budget.core.crdt.HlcClock;
 import com.titiplex.budget.core.crypto.SessionState;
 import com.titiplex.budget.core.model.FxRate;
 import com.titiplex.budget.core.model.Op;
@@ -22,10 +22,11 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
-import java.util.UUID;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -48,17 +49,22 @@ public class FxAutoService {
     private final HttpClient http = HttpClient.newBuilder()
             .connectTimeout(Duration.ofSeconds(10)).build();
     private ScheduledExecutorService ses;
-    private HLC.Clock clock;
+    private final HlcClock clock;
+    private final FxConverter converter;
+    private final FxHistory history;
 
-    public FxAutoService(Repository repo, P2PService p2p, SessionState ss) {
+    public FxAutoService(Repository repo, P2PService p2p, SessionState ss, HlcClock clock, FxConverter converter,
+                         FxHistory history) {
         this.repo = repo;
         this.p2p = p2p;
         this.ss = ss;
+        this.clock = clock;
+        this.converter = converter;
+        this.history = history;
     }
 
     public void startScheduler() {
         if (!auto) return;
-        if (clock == null) clock = new HLC.Clock(ss.userId != null ? ss.userId : UUID.randomUUID().toString());
         if (ses == null) {
             ses = Executors.newSingleThreadScheduledExecutor(r -> {
                 Thread t = new Thread(r, "fx-auto");
@@ -91,6 +97,8 @@ public class FxAutoService {
                 repo.upsertFx(r);
                 p2p.broadcast(new Op(Op.Type.FX_UPSERT, r));
             }
+            converter.reload();
+            history.record(map, LocalDate.now(ZoneOffset.UTC)); // le taux courant devient le point du jour
         } catch (Exception ignored) {
         }
     }
@@ -0,0 +1,188 @@
+package com.titiplex.budget.core.fx;
+
+import com.titiplex.budget.core.model.FxRate;
+import com.titiplex.budget.core.model.Op;
+import com.titiplex.budget.core.store.Repository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Conversion de devises sur une matrice de taux croisés précalculée.
+ * <p>
+ * Les taux sont stockés "par base" ; la matrice {@code cross[i][j]} = taux(i) / taux(j) (une unité de i en j) est
+ * construite une fois sur tous les FxRate actifs, immuable, et remplacée d'un bloc après une op FX : un lecteur voit
+ * toujours une matrice complète et cohérente, sans verrou. Une conversion = deux recherches d'index et une
+ * multiplication, sur des montants en unités entières (1/10 000, comme les totaux matérialisés), sans allocation.
+ * Devise inconnue ou vide : montant inchangé (comme l'affichage du front).
+ */
+@Service
+public class FxConverter {
+    private final Repository repo;
+
+    @Value("${app.fx.base:EUR}")
+    private String base = "EUR";
+
+    private volatile Matrix matrix;
+    private final AtomicLong builds = new AtomicLong();
+    private volatile long lastBuildMicros;
+
+    public FxConverter(Repository repo) {
+        this.repo = repo;
+    }
+
+    /**
+     * Matrice courante (construite au premier usage) : instantané cohérent pour un traitement long.
+     */
+    public Matrix snapshot() {
+        Matrix m = matrix;
+        return m != null ? m : reload();
+    }
+
+    /**
+     * À appeler après application d'ops (locales ou distantes) : nouvelle matrice si un taux a changé.
+     */
+    public void onOps(List<Op> ops) {
+        for (Op op : ops) {
+            if (op.type() == Op.Type.FX_UPSERT || op.type() == Op.Type.FX_DELETE) {
+                reload();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reconstruit la matrice depuis le repository et la publie.
+     */
+    public synchronized Matrix reload() {
+        long t0 = System.nanoTime();
+        Matrix m = Matrix.of(repo.listFxActive(), base);
+        matrix = m;
+        builds.incrementAndGet();
+        lastBuildMicros = (System.nanoTime() - t0) / 1_000;
+        return m;
+    }
+
+    /**
+     * Nombre de matrices publiées : change à chaque nouvelle matrice.
+     */
+    public long generation() {
+        return builds.get();
+    }
+
+    public long convert(long units, String from, String to) {
+        return snapshot().convert(units, from, to);
+    }
+
+    /**
+     * Conversion en lot vers {@code to} : une seule matrice pour tout le lot, index de la devise source mémorisé
+     * tant qu'elle ne change pas d'un élément au suivant.
+     */
+    public long[] convertAll(long[] units, String[] currencies, String to) {
+        return snapshot().convertAll(units, currencies, to);
+    }
+
+    /**
+     * Facteurs de conversion de chaque devise connue vers {@code to} (vide si {@code to} est inconnue).
+     */
+    public Map<String, Double> factorsTo(String to) {
+        Matrix m = snapshot();
+        Map<String, Double> out = new LinkedHashMap<>();
+        int j = m.indexOf(to);
+        if (j < 0) return out;
+        for (int i = 0; i < m.codes.length; i++) out.put(m.codes[i], m.rate(i, j));
+        return out;
+    }
+
+    public Map<String, Object> stats() {
+        Matrix m = matrix;
+        return Map.of(
+                "currencies", m == null ? 0 : m.codes.length,
+                "builds", builds.get(),
+                "lastBuildMicros", lastBuildMicros);
+    }
+
+    /**
+     * Matrice immuable n × n (tableau à plat) et index devise -> ligne.
+     */
+    public static final class Matrix {
+        private final String[] codes;
+        private final Map<String, Integer> index;
+        private final double[] cross;
+
+        private Matrix(String[] codes, double[] perBase) {
+            int n = codes.length;
+            this.codes = codes;
+            this.index = new HashMap<>(n * 2);
+            for (int i = 0; i < n; i++) index.put(codes[i], i);
+            this.cross = new double[n * n];
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) cross[i * n + j] = i == j ? 1.0 : perBase[i] / perBase[j];
+            }
+        }
+
+        public static Matrix of(List<FxRate> rates, String base) {
+            Map<String, Double> perBase = new LinkedHashMap<>();
+            for (FxRate r : rates) {
+                if (r.code() == null || r.code().isBlank() || r.perBase() == null) continue;
+                double v = r.perBase().doubleValue();
+                // taux nul ou négatif : devise traitée comme inconnue
+                if (v > 0 && Double.isFinite(v)) perBase.put(r.code().trim().toUpperCase(Locale.ROOT), v);
+            }
+            perBase.put(base.toUpperCase(Locale.ROOT), 1.0); // la base vaut 1 quoi qu'en dise la table
+            String[] codes = perBase.keySet().toArray(new String[0]);
+            double[] values = new double[codes.length];
+            for (int i = 0; i < codes.length; i++) values[i] = perBase.get(codes[i]);
+            return new Matrix(codes, values);
+        }
+
+        /**
+         * Ligne de la devise, -1 si inconnue ou vide.
+         */
+        public int indexOf(String code) {
+            if (code == null || code.isEmpty()) return -1;
+            Integer i = index.get(code);
+            if (i == null) i = index.get(code.trim().toUpperCase(Locale.ROOT));
+            return i == null ? -1 : i;
+        }
+
+        public double rate(int from, int to) {
+            return cross[from * codes.length + to];
+        }
+
+        public long convert(long units, int from, int to) {
+            if (from < 0 || to < 0 || from == to) return units;
+            return Math.round(units * cross[from * codes.length + to]);
+        }
+
+        public long convert(long units, String from, String to) {
+            return convert(units, indexOf(from), indexOf(to));
+        }
+
+        public long[] convertAll(long[] units, String[] currencies, String to) {
+            long[] out = new long[units.length];
+            int j = indexOf(to);
+            String last = null;
+            int i = -1;
+            for (int k = 0; k < units.length; k++) {
+                String c = currencies[k];
+                if (c == null ? last != null : !c.equals(last)) {
+                    i = indexOf(c);
+                    last = c;
+                }
+                out[k] = convert(units[k], i, j);
+            }
+            return out;
+        }
+
+        public int size() {
+            return codes.length;
+        }
+    }
+}
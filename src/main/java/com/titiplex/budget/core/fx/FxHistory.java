@@ -0,0 +1,419 @@
+package com.titiplex.budget.core.fx;
+
+import com.titiplex.budget.core.store.FxPoint;
+import com.titiplex.budget.core.store.Repository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Historique des taux : "taux au jour J" pour convertir une dépense au cours de sa date.
+ * <p>
+ * Les points (devise, jour) sont stockés dans {@code fx_history} et chargés en mémoire en colonnes : par devise,
+ * un {@code int[]} de jours croissants et un {@code double[]} de taux (même convention "par base" que fx_rates).
+ * Le taux au jour J est celui du dernier jour publié ≤ J (week-ends et jours fériés repris du jour ouvré précédent),
+ * trouvé par recherche dichotomique. Un {@link Cursor} mémorise, par devise, le dernier indice utilisé : un parcours
+ * trié par date (export, requête paginée) coûte O(1) par ligne.
+ * <p>
+ * Avant le premier point connu, ou pour une devise sans historique, on retombe sur le taux courant ({@link FxConverter}).
+ */
+@Service
+public class FxHistory {
+    private static final int BATCH = 10_000;
+    private static final long DAY_MS = 86_400_000L;
+
+    private final Repository repo;
+    private final FxConverter fx;
+
+    @Value("${app.fx.base:EUR}")
+    private String base = "EUR";
+    @Value("${app.fx.history.file:}")
+    private String historyFile = "";
+
+    private volatile Series series;
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong backfilled = new AtomicLong();
+    private volatile long lastLoadMs;
+
+    public FxHistory(Repository repo, FxConverter fx) {
+        this.repo = repo;
+        this.fx = fx;
+    }
+
+    /**
+     * Import du fichier configuré (app.fx.history.file) en tâche de fond, s'il existe.
+     */
+    public void start() {
+        if (historyFile == null || historyFile.isBlank()) return;
+        Path file = Path.of(historyFile.trim());
+        if (!Files.isRegularFile(file)) return;
+        Thread t = new Thread(() -> {
+            try {
+                backfill(file);
+            } catch (Exception e) {
+                System.err.println("Failed to import fx history: " + e.getMessage());
+            }
+        }, "fx-history");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Import en masse d'un historique BCE (eurofxref-hist.xml ou .csv) ; renvoie le nombre de points écrits.
+     */
+    public int backfill(Path file) throws Exception {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        Sink sink = new Sink();
+        try (InputStream in = Files.newInputStream(file)) {
+            if (name.endsWith(".xml")) readXml(in, sink);
+            else readCsv(in, sink);
+        }
+        sink.flush();
+        backfilled.addAndGet(sink.saved);
+        reload();
+        return sink.saved;
+    }
+
+    /**
+     * Enregistre les taux du jour (récupération automatique) puis recharge l'historique.
+     */
+    public void record(Map<String, BigDecimal> rates, LocalDate day) {
+        List<FxPoint> points = new ArrayList<>(rates.size());
+        for (var e : rates.entrySet()) {
+            FxPoint p = point(e.getKey(), (int) day.toEpochDay(), e.getValue().doubleValue());
+            if (p != null) points.add(p);
+        }
+        if (points.isEmpty()) return;
+        repo.saveFxHistory(points);
+        reload();
+    }
+
+    /**
+     * Historique courant (chargé au premier usage), immuable.
+     */
+    public Series snapshot() {
+        Series s = series;
+        return s != null ? s : reload();
+    }
+
+    public synchronized Series reload() {
+        long t0 = System.nanoTime();
+        Series.Builder b = new Series.Builder(base);
+        repo.scanFxHistory(b::add);
+        Series s = b.build();
+        series = s;
+        loads.incrementAndGet();
+        lastLoadMs = (System.nanoTime() - t0) / 1_000_000;
+        return s;
+    }
+
+    /**
+     * Taux "par base" de {@code code} au jour de {@code tsMillis} ; NaN si inconnu à cette date.
+     */
+    public double rateAt(String code, long tsMillis) {
+        return snapshot().rateAt(code, day(tsMillis));
+    }
+
+    /**
+     * Conversion au cours du jour de {@code tsMillis} ; taux courant à défaut d'historique.
+     */
+    public long convertAt(long units, String from, String to, long tsMillis) {
+        return cursor().convert(units, from, to, tsMillis);
+    }
+
+    /**
+     * Curseur de parcours : un par traitement (non partagé entre threads), sur un instantané figé.
+     */
+    public Cursor cursor() {
+        return new Cursor(snapshot(), fx.snapshot());
+    }
+
+    public Map<String, Object> stats() {
+        Series s = series;
+        return Map.of(
+                "currencies", s == null ? 0 : s.codes.length,
+                "points", s == null ? 0 : s.points,
+                "loads", loads.get(),
+                "backfilled", backfilled.get(),
+                "lastLoadMs", lastLoadMs);
+    }
+
+    // jour UTC : la BCE publie une fois par jour ouvré, l'écart de fuseau ne change que la veille/le lendemain
+    static int day(long tsMillis) {
+        return (int) Math.floorDiv(tsMillis, DAY_MS);
+    }
+
+    private static FxPoint point(String code, int day, double perBase) {
+        if (code == null || code.isBlank() || !(perBase > 0) || !Double.isFinite(perBase)) return null;
+        return new FxPoint(code.trim().toUpperCase(Locale.ROOT), day, perBase);
+    }
+
+    // ---------- Lecture des fichiers BCE ----------
+
+    // <Cube time="2024-01-02"><Cube currency="USD" rate="1.0956"/>...</Cube>
+    private static void readXml(InputStream in, Sink sink) throws Exception {
+        XMLInputFactory f = XMLInputFactory.newFactory();
+        f.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        f.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        XMLStreamReader r = f.createXMLStreamReader(in);
+        try {
+            int day = Integer.MIN_VALUE;
+            while (r.hasNext()) {
+                if (r.next() != XMLStreamConstants.START_ELEMENT || !"Cube".equals(r.getLocalName())) continue;
+                String time = r.getAttributeValue(null, "time");
+                if (time != null) {
+                    day = (int) LocalDate.parse(time.trim()).toEpochDay();
+                    continue;
+                }
+                String code = r.getAttributeValue(null, "currency");
+                String rate = r.getAttributeValue(null, "rate");
+                if (day != Integer.MIN_VALUE && code != null && rate != null) sink.add(code, day, rate);
+            }
+        } finally {
+            r.close();
+        }
+    }
+
+    // Date,USD,JPY,...  puis une ligne par jour ouvré, "N/A" pour les devises non cotées
+    private static void readCsv(InputStream in, Sink sink) throws Exception {
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line = r.readLine();
+            if (line == null) return;
+            String[] header = line.split(",", -1);
+            while ((line = r.readLine()) != null) {
+                String[] cells = line.split(",", -1);
+                if (cells.length < 2 || cells[0].isBlank()) continue;
+                int day = (int) LocalDate.parse(cells[0].trim()).toEpochDay();
+                for (int i = 1; i < cells.length && i < header.length; i++) {
+                    sink.add(header[i], day, cells[i]);
+                }
+            }
+        }
+    }
+
+    // Accumule les points et les écrit par lots
+    private final class Sink {
+        final List<FxPoint> pending = new ArrayList<>(BATCH);
+        int saved;
+
+        void add(String code, int day, String rate) {
+            String v = rate.trim();
+            if (v.isEmpty() || v.equalsIgnoreCase("N/A")) return;
+            double d;
+            try {
+                d = Double.parseDouble(v);
+            } catch (NumberFormatException e) {
+                return;
+            }
+            FxPoint p = point(code, day, d);
+            if (p == null) return;
+            pending.add(p);
+            if (pending.size() >= BATCH) flush();
+        }
+
+        void flush() {
+            if (pending.isEmpty()) return;
+            saved += repo.saveFxHistory(pending);
+            pending.clear();
+        }
+    }
+
+    // ---------- Séries en colonnes ----------
+
+    /**
+     * Instantané immuable : par devise, jours croissants et taux correspondants.
+     */
+    public static final class Series {
+        private final String[] codes;
+        private final Map<String, Integer> index;
+        private final int[][] days;
+        private final double[][] rates;
+        private final String base;
+        private final int baseIndex;
+        private final long points;
+
+        private Series(String[] codes, int[][] days, double[][] rates, String base) {
+            this.codes = codes;
+            this.days = days;
+            this.rates = rates;
+            this.index = new HashMap<>(codes.length * 2);
+            long n = 0;
+            for (int i = 0; i < codes.length; i++) {
+                index.put(codes[i], i);
+                n += days[i].length;
+            }
+            this.points = n;
+            this.base = base;
+            Integer b = index.get(base.toUpperCase(Locale.ROOT));
+            this.baseIndex = b == null ? -1 : b;
+        }
+
+        /**
+         * Série de la devise, -1 si inconnue ou vide.
+         */
+        public int indexOf(String code) {
+            if (code == null || code.isEmpty()) return -1;
+            Integer i = index.get(code);
+            if (i == null) i = index.get(code.trim().toUpperCase(Locale.ROOT));
+            return i == null ? -1 : i;
+        }
+
+        public double rateAt(String code, int day) {
+            int s = indexOf(code);
+            if (s < 0 || s == baseIndex) return isBase(code) ? 1.0 : Double.NaN;
+            int k = floor(days[s], day);
+            return k < 0 ? Double.NaN : rates[s][k];
+        }
+
+        public int size() {
+            return codes.length;
+        }
+
+        // la base vaut 1, qu'elle ait une série ou non
+        boolean isBase(String code) {
+            return code != null && code.trim().equalsIgnoreCase(base);
+        }
+
+        // indice du dernier jour ≤ day, -1 s'il n'y en a pas
+        static int floor(int[] days, int day) {
+            int k = Arrays.binarySearch(days, day);
+            return k >= 0 ? k : -k - 2;
+        }
+
+        static final class Builder {
+            private final String base;
+            private final List<String> codes = new ArrayList<>();
+            private final List<int[]> days = new ArrayList<>();
+            private final List<double[]> rates = new ArrayList<>();
+            private String code;
+            private int[] d = new int[0];
+            private double[] r = new double[0];
+            private int n;
+
+            Builder(String base) {
+                this.base = base;
+            }
+
+            // points reçus par devise puis jour croissant (ORDER BY du repository)
+            void add(FxPoint p) {
+                if (!p.code().equals(code)) {
+                    close();
+                    code = p.code();
+                    d = new int[64];
+                    r = new double[64];
+                }
+                if (n == d.length) {
+                    d = Arrays.copyOf(d, n * 2);
+                    r = Arrays.copyOf(r, n * 2);
+                }
+                d[n] = p.day();
+                r[n] = p.perBase();
+                n++;
+            }
+
+            private void close() {
+                if (code == null) return;
+                codes.add(code);
+                days.add(Arrays.copyOf(d, n));
+                rates.add(Arrays.copyOf(r, n));
+                code = null;
+                n = 0;
+            }
+
+            Series build() {
+                close();
+                return new Series(codes.toArray(new String[0]), days.toArray(new int[0][]),
+                        rates.toArray(new double[0][]), base);
+            }
+        }
+    }
+
+    /**
+     * Recherche "taux au jour J" avec mémoire du dernier indice par devise : si le jour demandé tombe dans
+     * l'intervalle mémorisé ou le suivant, pas de recherche dichotomique. Non thread-safe.
+     */
+    public static final class Cursor {
+        private final Series s;
+        private final FxConverter.Matrix current;
+        private final int[] last;
+        private final long[] hits = new long[2]; // [mémoire, dichotomie]
+
+        Cursor(Series s, FxConverter.Matrix current) {
+            this.s = s;
+            this.current = current;
+            this.last = new int[s.codes.length];
+            Arrays.fill(last, -1);
+        }
+
+        /**
+         * Taux "par base" de la série {@code series} au jour {@code day}, NaN avant le premier point.
+         */
+        public double rate(int series, int day) {
+            if (series < 0) return Double.NaN;
+            int[] days = s.days[series];
+            int k = last[series];
+            if (k >= 0 && days[k] <= day) {
+                if (k + 1 == days.length || days[k + 1] > day) {
+                    hits[0]++;
+                } else if (k + 2 == days.length || days[k + 2] > day) {
+                    k++; // jour suivant du parcours
+                    hits[0]++;
+                } else {
+                    k = Series.floor(days, day);
+                    hits[1]++;
+                }
+            } else {
+                k = Series.floor(days, day);
+                hits[1]++;
+            }
+            if (k < 0) return Double.NaN;
+            last[series] = k;
+            return s.rates[series][k];
+        }
+
+        /**
+         * Conversion au cours du jour de {@code tsMillis} ; taux courant si l'une des devises n'a pas d'historique
+         * à cette date. Devise inconnue partout : montant inchangé.
+         */
+        public long convert(long units, String from, String to, long tsMillis) {
+            if (from == null || from.equals(to)) return units;
+            int day = day(tsMillis);
+            double f = perBase(from, day);
+            double t = perBase(to, day);
+            if (Double.isNaN(f) || Double.isNaN(t)) return current.convert(units, from, to);
+            return Math.round(units * (f / t));
+        }
+
+        private double perBase(String code, int day) {
+            int i = s.indexOf(code);
+            if (i < 0 || i == s.baseIndex) return s.isBase(code) ? 1.0 : Double.NaN;
+            return rate(i, day);
+        }
+
+        public long memoHits() {
+            return hits[0];
+        }
+
+        public long searches() {
+            return hits[1];
+        }
+    }
+}
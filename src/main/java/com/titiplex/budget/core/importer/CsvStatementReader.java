@@ -0,0 +1,195 @@
+package com.titiplex.budget.core.importer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * CSV (RFC 4180 : champs entre guillemets, "" échappé, retours à la ligne dans les guillemets) lu par blocs de
+ * 64 Ko, une ligne à la fois ; les colonnes sont résolues une fois sur l'en-tête.
+ */
+final class CsvStatementReader implements StatementReader {
+    private final Reader in;
+    private final char[] buf = new char[1 << 16];
+    private int pos;
+    private int len;
+
+    private final char sep;
+    private final ImportMapping m;
+    private final DateTimeFormatter dateFormat;
+    private final int date, amount, debit, credit, currency, category;
+    private final int[] note;
+
+    private final List<String> cells = new ArrayList<>();
+    private final StringBuilder cell = new StringBuilder();
+    private long line;
+
+    CsvStatementReader(Reader in, ImportMapping m) throws IOException {
+        this.in = in;
+        this.m = m;
+        this.sep = m.delimiter().equalsIgnoreCase("tab") ? '\t' : m.delimiter().charAt(0);
+        this.dateFormat = DateTimeFormatter.ofPattern(m.dateFormat(), Locale.ROOT);
+        List<String> header = List.of();
+        if (m.header()) {
+            List<String> h = record();
+            if (h != null) {
+                if (!h.isEmpty() && h.get(0).startsWith("\uFEFF")) h.set(0, h.get(0).substring(1)); // BOM
+                header = new ArrayList<>(h);
+            }
+        }
+        date = column(header, m.date(), true);
+        amount = column(header, m.amount(), false);
+        debit = column(header, m.debit(), false);
+        credit = column(header, m.credit(), false);
+        if (amount < 0 && debit < 0 && credit < 0) throw new IllegalArgumentException("Colonne de montant introuvable");
+        currency = column(header, m.currency(), false);
+        category = column(header, m.category(), false);
+        List<Integer> notes = new ArrayList<>();
+        for (String n : m.note()) {
+            int i = column(header, n, false);
+            if (i >= 0) notes.add(i);
+        }
+        note = notes.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // nom d'en-tête (insensible à la casse) ou index ; -1 si absente et facultative
+    private static int column(List<String> header, String name, boolean required) {
+        if (name == null || name.isBlank()) {
+            if (required) throw new IllegalArgumentException("Colonne obligatoire non renseignée");
+            return -1;
+        }
+        String n = name.trim();
+        for (int i = 0; i < header.size(); i++) {
+            if (header.get(i).trim().equalsIgnoreCase(n)) return i;
+        }
+        if (n.chars().allMatch(Character::isDigit)) return Integer.parseInt(n);
+        if (required) throw new IllegalArgumentException("Colonne introuvable : " + n);
+        return -1;
+    }
+
+    @Override
+    public StatementRow next() throws IOException {
+        List<String> r;
+        do {
+            r = record();
+            if (r == null) return null;
+        } while (r.size() == 1 && r.get(0).isBlank()); // lignes vides
+
+        String d = cell(r, date);
+        LocalDate day;
+        try {
+            day = LocalDate.parse(d.trim(), dateFormat);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("ligne " + line + " : date illisible '" + d + "'");
+        }
+        BigDecimal value;
+        if (amount >= 0) {
+            value = number(cell(r, amount));
+        } else {
+            // débit / crédit séparés : débit compté en négatif, comme un montant signé
+            BigDecimal db = number(cell(r, debit)), cr = number(cell(r, credit));
+            value = (cr == null ? BigDecimal.ZERO : cr.abs()).subtract(db == null ? BigDecimal.ZERO : db.abs());
+        }
+        if (value == null) throw new IllegalArgumentException("ligne " + line + " : montant vide");
+
+        StringBuilder text = new StringBuilder();
+        for (int i : note) {
+            String v = cell(r, i).trim();
+            if (v.isEmpty()) continue;
+            if (!text.isEmpty()) text.append(' ');
+            text.append(v);
+        }
+        String ccy = cell(r, currency).trim();
+        return new StatementRow(day, value, ccy.isEmpty() ? m.defaultCurrency() : ccy, text.toString(),
+                cell(r, category).trim(), "");
+    }
+
+    private static String cell(List<String> r, int i) {
+        return i >= 0 && i < r.size() ? r.get(i) : "";
+    }
+
+    // "1 234,56", "(12.00)", "-3.5 €" ; null si vide
+    private BigDecimal number(String s) {
+        StringBuilder b = new StringBuilder(s.length());
+        boolean negative = false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') b.append(c);
+            else if (c == '-' || c == '(') negative = true;
+            else if (c == (m.decimalComma() ? ',' : '.')) b.append('.');
+            // séparateurs de milliers, espaces et symboles ignorés
+        }
+        if (b.isEmpty()) return null;
+        try {
+            BigDecimal v = new BigDecimal(b.toString());
+            return negative ? v.negate() : v;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("ligne " + line + " : montant illisible '" + s + "'");
+        }
+    }
+
+    // un enregistrement CSV, null en fin de fichier ; la liste est réutilisée d'un appel à l'autre
+    private List<String> record() throws IOException {
+        int c = read();
+        if (c < 0) return null;
+        cells.clear();
+        cell.setLength(0);
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c < 0) break; // guillemet non fermé : fin de fichier
+                if (c == '"') {
+                    int d = read();
+                    if (d != '"') {
+                        quoted = false;
+                        c = d;
+                        continue;
+                    }
+                }
+                cell.append((char) c);
+            } else {
+                if (c < 0 || c == '\n') break;
+                if (c == sep) {
+                    cells.add(cell.toString());
+                    cell.setLength(0);
+                } else if (c == '"' && cell.isEmpty()) {
+                    quoted = true;
+                } else if (c != '\r') {
+                    cell.append((char) c);
+                }
+            }
+            c = read();
+        }
+        cells.add(cell.toString());
+        line++;
+        return cells;
+    }
+
+    private int read() throws IOException {
+        if (pos == len) {
+            len = in.read(buf, 0, buf.length);
+            pos = 0;
+            if (len <= 0) {
+                len = 0;
+                return -1;
+            }
+        }
+        return buf[pos++];
+    }
+
+    @Override
+    public long position() {
+        return line;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,52 @@
+package com.titiplex.budget.core.importer;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * Correspondance des colonnes d'un relevé CSV (nom d'en-tête, insensible à la casse, ou index à partir de 0) et
+ * options d'interprétation. Champs absents : valeurs par défaut de {@link #withDefaults()}. Pour l'OFX, seuls
+ * {@code charset}, {@code defaultCurrency}, {@code category}, {@code who}, {@code debitNegative} et
+ * {@code skipCredits} servent.
+ */
+public record ImportMapping(
+        @JsonProperty("format") String format,           // CSV|OFX (vide = selon l'extension)
+        @JsonProperty("charset") String charset,         // UTF-8 par défaut (OFX 1.x : souvent windows-1252)
+        @JsonProperty("delimiter") String delimiter,     // "," par défaut, ";" pour les exports français
+        @JsonProperty("header") Boolean header,          // première ligne = en-têtes (oui par défaut)
+        @JsonProperty("date") String date,
+        @JsonProperty("dateFormat") String dateFormat,   // motif DateTimeFormatter, "yyyy-MM-dd" par défaut
+        @JsonProperty("amount") String amount,           // montant signé...
+        @JsonProperty("debit") String debit,             // ...ou colonnes débit / crédit séparées
+        @JsonProperty("credit") String credit,
+        @JsonProperty("decimalComma") Boolean decimalComma,
+        @JsonProperty("currency") String currency,
+        @JsonProperty("defaultCurrency") String defaultCurrency,
+        @JsonProperty("note") List<String> note,         // colonnes concaténées dans la note
+        @JsonProperty("category") String category,       // colonne (CSV) ; sinon règles de catégorisation
+        @JsonProperty("who") String who,
+        @JsonProperty("debitNegative") Boolean debitNegative, // débits en négatif dans le relevé (oui par défaut)
+        @JsonProperty("skipCredits") Boolean skipCredits      // ignorer les crédits (oui par défaut)
+) {
+    public ImportMapping withDefaults() {
+        return new ImportMapping(
+                format == null ? "" : format,
+                charset == null || charset.isBlank() ? "UTF-8" : charset,
+                delimiter == null || delimiter.isEmpty() ? "," : delimiter,
+                header == null || header,
+                date == null ? "date" : date,
+                dateFormat == null || dateFormat.isBlank() ? "yyyy-MM-dd" : dateFormat,
+                amount == null && debit == null ? "amount" : amount,
+                debit,
+                credit,
+                decimalComma != null && decimalComma,
+                currency,
+                defaultCurrency == null || defaultCurrency.isBlank() ? "EUR" : defaultCurrency,
+                note == null ? List.of("note") : note,
+                category,
+                who,
+                debitNegative == null || debitNegative,
+                skipCredits == null || skipCredits);
+    }
+}
@@ -0,0 +1,148 @@
+package com.titiplex.budget.core.importer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * OFX 1.x (SGML, balises de valeur non fermées) et 2.x (XML) lus comme un flux de balises, une transaction
+ * {@code <STMTTRN>} à la fois : date (DTPOSTED), montant signé (TRNAMT), FITID, NAME / MEMO. La devise vient du
+ * CURDEF du relevé en cours, ou du CURSYM d'un agrégat {@code <CURRENCY>} de la transaction (montant dans cette
+ * devise). Sous {@code <ORIGCURRENCY>}, le montant est déjà en CURDEF : CURSYM n'y est que la devise d'origine.
+ */
+final class OfxStatementReader implements StatementReader {
+    private final Reader in;
+    private final char[] buf = new char[1 << 16];
+    private int pos;
+    private int len;
+    private int pushedBack = -1;
+
+    private final ImportMapping m;
+    private final StringBuilder token = new StringBuilder();
+    private final Map<String, String> fields = new HashMap<>();
+    private String curdef;
+    private String currencyAggregate; // "CURRENCY" ou "ORIGCURRENCY" en cours, null sinon
+    private long count;
+
+    OfxStatementReader(Reader in, ImportMapping m) {
+        this.in = in;
+        this.m = m;
+    }
+
+    @Override
+    public StatementRow next() throws IOException {
+        boolean inTrn = false;
+        String tag;
+        while ((tag = tag()) != null) {
+            switch (tag) {
+                case "CURDEF" -> curdef = text();
+                case "STMTTRN" -> {
+                    inTrn = true;
+                    fields.clear();
+                    currencyAggregate = null;
+                }
+                case "CURRENCY", "ORIGCURRENCY" -> currencyAggregate = tag;
+                case "/CURRENCY", "/ORIGCURRENCY" -> currencyAggregate = null;
+                case "CURSYM" -> {
+                    String sym = text();
+                    if (inTrn && "CURRENCY".equals(currencyAggregate)) fields.put(tag, sym);
+                }
+                case "/STMTTRN" -> {
+                    if (inTrn) {
+                        count++;
+                        return row();
+                    }
+                }
+                case "DTPOSTED", "TRNAMT", "FITID", "NAME", "MEMO" -> {
+                    if (inTrn) fields.put(tag, text());
+                }
+                default -> {
+                }
+            }
+        }
+        return null;
+    }
+
+    private StatementRow row() {
+        String dt = fields.getOrDefault("DTPOSTED", "");
+        LocalDate day;
+        try {
+            // AAAAMMJJ[HHMMSS[.XXX]][[-5:EST]]
+            day = LocalDate.of(Integer.parseInt(dt.substring(0, 4)), Integer.parseInt(dt.substring(4, 6)),
+                    Integer.parseInt(dt.substring(6, 8)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("transaction " + count + " : date illisible '" + dt + "'");
+        }
+        String amt = fields.getOrDefault("TRNAMT", "").replace(',', '.').replace("+", "");
+        BigDecimal value;
+        try {
+            value = new BigDecimal(amt.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("transaction " + count + " : montant illisible '" + amt + "'");
+        }
+        String name = fields.getOrDefault("NAME", "");
+        String memo = fields.getOrDefault("MEMO", "");
+        String note = memo.isEmpty() || memo.equalsIgnoreCase(name) ? name : name.isEmpty() ? memo : name + " " + memo;
+        String ccy = fields.getOrDefault("CURSYM", curdef);
+        return new StatementRow(day, value, ccy == null || ccy.isBlank() ? m.defaultCurrency() : ccy, note, "",
+                fields.getOrDefault("FITID", ""));
+    }
+
+    // nom de la balise suivante en majuscules ("/X" pour une fermeture), null en fin de fichier
+    private String tag() throws IOException {
+        int c;
+        while ((c = read()) >= 0 && c != '<') {
+            // texte hors balise (en-tête OFX 1.x, valeurs non demandées)
+        }
+        if (c < 0) return null;
+        token.setLength(0);
+        while ((c = read()) >= 0 && c != '>') token.append((char) c);
+        String t = token.toString().trim();
+        int sp = t.indexOf(' ');
+        if (sp > 0) t = t.substring(0, sp); // attributs (en-tête XML)
+        return t.toUpperCase(Locale.ROOT);
+    }
+
+    // valeur jusqu'à la prochaine balise, entités XML décodées
+    private String text() throws IOException {
+        token.setLength(0);
+        int c;
+        while ((c = read()) >= 0 && c != '<') token.append((char) c);
+        if (c == '<') pushedBack = c;
+        String v = token.toString().trim();
+        if (v.indexOf('&') < 0) return v;
+        return v.replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"").replace("&apos;", "'")
+                .replace("&amp;", "&");
+    }
+
+    private int read() throws IOException {
+        if (pushedBack >= 0) {
+            int c = pushedBack;
+            pushedBack = -1;
+            return c;
+        }
+        if (pos == len) {
+            len = in.read(buf, 0, buf.length);
+            pos = 0;
+            if (len <= 0) {
+                len = 0;
+                return -1;
+            }
+        }
+        return buf[pos++];
+    }
+
+    @Override
+    public long position() {
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
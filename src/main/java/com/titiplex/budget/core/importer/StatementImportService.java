@@ -0,0 +1,357 @@
+package com.titiplex.budget.core.importer;
+
+import com.titiplex.budget.core.crdt.HlcClock;
+import com.titiplex.budget.core.crypto.SessionState;
+import com.titiplex.budget.core.model.Expense;
+import com.titiplex.budget.core.model.Op;
+import com.titiplex.budget.core.p2p.P2PService;
+import com.titiplex.budget.core.rules.RuleEngine;
+import com.titiplex.budget.core.store.Repository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Import de relevés bancaires CSV / OFX depuis le disque (job en arrière-plan, un à la fois).
+ * <p>
+ * Un thread lit le fichier en flux et remplit des lots de {@code app.import.chunk} lignes ; un second les
+ * catégorise (instantané des règles compilées), les écrit en une transaction par lot et les diffuse en lot.
+ * Entre les deux, une file bornée ({@code app.import.queue} lots) : si l'écriture prend du retard, la lecture
+ * attend, et la mémoire reste bornée quelle que soit la taille du fichier.
+ * <p>
+ * Dédoublonnage par empreinte de contenu (jour, montant, devise, libellé normalisé, FITID) : l'id de la dépense
+ * en est dérivé, avec le rang de l'empreinte dans le fichier (deux cafés identiques le même jour restent deux
+ * lignes). Réimporter un relevé, ou un relevé qui en chevauche un autre, retombe sur les mêmes ids, déjà présents :
+ * ils sont ignorés, y compris ceux supprimés depuis (pas de résurrection : le GC des tombstones ne purge jamais
+ * celles des dépenses importées, reconnaissables à leur id dérivé du contenu).
+ */
+@Service
+public class StatementImportService {
+    public enum State {IDLE, RUNNING, DONE, CANCELLED, FAILED}
+
+    private final Repository repo;
+    private final RuleEngine rules;
+    private final P2PService p2p;
+    private final SessionState ss;
+    private final HlcClock clock;
+
+    @Value("${app.import.chunk:5000}")
+    private int chunkSize = 5000;
+    @Value("${app.import.queue:4}")
+    private int queueDepth = 4;
+
+    private volatile State state = State.IDLE;
+    private volatile boolean cancelRequested;
+    private volatile String error;
+    private volatile String lastRejected;
+    private volatile String file;
+    private volatile BlockingQueue<List<StatementRow>> queue;
+    private final AtomicLong parsed = new AtomicLong();
+    private final AtomicLong imported = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private volatile long startedNanos;
+    private volatile long elapsedMs;
+
+    public StatementImportService(Repository repo, RuleEngine rules, P2PService p2p, SessionState ss, HlcClock clock) {
+        this.repo = repo;
+        this.rules = rules;
+        this.p2p = p2p;
+        this.ss = ss;
+        this.clock = clock;
+    }
+
+    /**
+     * Lance l'import de {@code path} ; {@code onChunk} reçoit les dépenses écrites de chaque lot (rafraîchissement UI).
+     * false si un import tourne déjà.
+     */
+    public synchronized boolean start(Path path, ImportMapping mapping, Consumer<List<Expense>> onChunk) {
+        if (state == State.RUNNING) return false;
+        state = State.RUNNING;
+        cancelRequested = false;
+        error = null;
+        lastRejected = null;
+        file = path.toString();
+        parsed.set(0);
+        imported.set(0);
+        duplicates.set(0);
+        skipped.set(0);
+        rejected.set(0);
+        elapsedMs = 0;
+        startedNanos = System.nanoTime();
+        ImportMapping m = (mapping == null ? new ImportMapping(null, null, null, null, null, null, null, null, null,
+                null, null, null, null, null, null, null, null) : mapping).withDefaults();
+        BlockingQueue<List<StatementRow>> q = new ArrayBlockingQueue<>(Math.max(1, queueDepth));
+        queue = q;
+
+        Thread reader = new Thread(() -> parse(path, m, q), "statement-import-read");
+        reader.setDaemon(true);
+        Thread writer = new Thread(() -> write(m, q, onChunk), "statement-import-write");
+        writer.setDaemon(true);
+        reader.start();
+        writer.start();
+        return true;
+    }
+
+    public void cancel() {
+        cancelRequested = true;
+    }
+
+    // ---------- Lecture ----------
+
+    private void parse(Path path, ImportMapping m, BlockingQueue<List<StatementRow>> q) {
+        int chunk = Math.max(1, chunkSize);
+        try (StatementReader r = open(path, m)) {
+            List<StatementRow> batch = new ArrayList<>(chunk);
+            while (!cancelRequested) {
+                StatementRow row;
+                try {
+                    row = r.next();
+                } catch (IllegalArgumentException e) {
+                    // ligne illisible : comptée, on passe à la suivante
+                    rejected.incrementAndGet();
+                    lastRejected = e.getMessage();
+                    continue;
+                }
+                if (row == null) break;
+                parsed.incrementAndGet();
+                batch.add(row);
+                if (batch.size() == chunk) {
+                    if (!put(q, batch)) return;
+                    batch = new ArrayList<>(chunk);
+                }
+            }
+            if (!batch.isEmpty()) put(q, batch);
+        } catch (IOException | RuntimeException e) {
+            error = e.getMessage() == null ? e.toString() : e.getMessage();
+            System.err.println("Failed to read statement " + path + ": " + error);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelRequested = true;
+        } finally {
+            try {
+                put(q, List.of()); // fin de flux
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // attend une place dans la file (contre-pression) ; false si l'import est annulé entre-temps
+    private boolean put(BlockingQueue<List<StatementRow>> q, List<StatementRow> batch) throws InterruptedException {
+        while (!q.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+            if (cancelRequested) return false;
+        }
+        return true;
+    }
+
+    static StatementReader open(Path path, ImportMapping m) throws IOException {
+        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        boolean ofx = m.format().isBlank() ? name.endsWith(".ofx") || name.endsWith(".qfx")
+                : m.format().equalsIgnoreCase("OFX");
+        var in = new InputStreamReader(Files.newInputStream(path), Charset.forName(m.charset()));
+        try {
+            return ofx ? new OfxStatementReader(in, m) : new CsvStatementReader(in, m);
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    // ---------- Écriture ----------
+
+    private void write(ImportMapping m, BlockingQueue<List<StatementRow>> q, Consumer<List<Expense>> onChunk) {
+        try {
+            RuleEngine.Compiled compiled = rules.snapshot();
+            FingerprintCounts counts = new FingerprintCounts();
+            String who = m.who() != null && !m.who().isBlank() ? m.who() : ss.displayName != null ? ss.displayName : ss.userId;
+            ZoneId zone = ZoneId.systemDefault();
+            while (!cancelRequested) {
+                List<StatementRow> batch = q.poll(100, TimeUnit.MILLISECONDS);
+                if (batch == null) continue;
+                if (batch.isEmpty()) break;
+                List<Expense> written = writeBatch(batch, m, compiled, counts, who, zone);
+                if (!written.isEmpty() && onChunk != null) onChunk.accept(written);
+                elapsedMs = (System.nanoTime() - startedNanos) / 1_000_000;
+            }
+            state = cancelRequested ? State.CANCELLED : error != null ? State.FAILED : State.DONE;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelRequested = true;
+            state = State.CANCELLED;
+        } catch (RuntimeException e) {
+            cancelRequested = true; // arrête la lecture
+            error = e.getMessage();
+            state = State.FAILED;
+            System.err.println("Failed to import statement: " + e.getMessage());
+        } finally {
+            elapsedMs = (System.nanoTime() - startedNanos) / 1_000_000;
+        }
+    }
+
+    private List<Expense> writeBatch(List<StatementRow> batch, ImportMapping m, RuleEngine.Compiled compiled,
+                                     FingerprintCounts counts, String who, ZoneId zone) {
+        String author = ss.userId;
+        List<Expense> candidates = new ArrayList<>(batch.size());
+        for (StatementRow row : batch) {
+            int signum = row.amount().signum();
+            boolean debit = m.debitNegative() ? signum < 0 : signum > 0;
+            if (signum == 0 || (!debit && m.skipCredits())) {
+                skipped.incrementAndGet();
+                continue;
+            }
+            String ccy = row.currency().trim().toUpperCase(Locale.ROOT);
+            String key = fingerprint(row, ccy);
+            int rank = counts.next(fnv64(key));
+            String id = UUID.nameUUIDFromBytes(("import:" + key + "#" + rank).getBytes(StandardCharsets.UTF_8)).toString();
+            // crédit importé (skipCredits=false) : dépense négative (remboursement)
+            BigDecimal amount = debit ? row.amount().abs() : row.amount().abs().negate();
+            long ts = row.day().atTime(12, 0).atZone(zone).toInstant().toEpochMilli();
+            candidates.add(new Expense(id, who, row.category(), amount, ccy, row.note(), ts, false, null, author));
+        }
+        if (candidates.isEmpty()) return List.of();
+
+        Set<String> existing = new HashSet<>();
+        List<String> ids = new ArrayList<>(candidates.size());
+        for (Expense e : candidates) ids.add(e.id());
+        for (Object o : repo.loadRows("expenses", ids)) existing.add(((Expense) o).id());
+
+        List<Expense> written = new ArrayList<>(candidates.size());
+        List<Op> ops = new ArrayList<>(candidates.size());
+        for (Expense e : candidates) {
+            if (existing.contains(e.id())) {
+                duplicates.incrementAndGet();
+                continue;
+            }
+            String cat = e.category();
+            if (cat == null || cat.isBlank()) cat = compiled.categorize(e);
+            Expense v = new Expense(e.id(), e.who(), cat, e.amount(), e.currency(), e.note(), e.ts(), false,
+                    clock.tick(), author);
+            written.add(v);
+            ops.add(new Op(Op.Type.ADD, v));
+        }
+        if (!ops.isEmpty()) {
+            repo.applyBatch(ops);
+            p2p.broadcastAll(ops);
+            imported.addAndGet(ops.size());
+        }
+        return written;
+    }
+
+    // jour|montant signé normalisé|devise|libellé en minuscules, espaces réduits|référence banque
+    static String fingerprint(StatementRow row, String ccy) {
+        StringBuilder b = new StringBuilder(64);
+        b.append(row.day()).append('|').append(row.amount().stripTrailingZeros().toPlainString()).append('|')
+                .append(ccy).append('|');
+        String note = row.note() == null ? "" : row.note();
+        boolean space = false;
+        for (int i = 0; i < note.length(); i++) {
+            char c = note.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = true;
+                continue;
+            }
+            if (space && b.charAt(b.length() - 1) != '|') b.append(' ');
+            space = false;
+            b.append(Character.toLowerCase(c));
+        }
+        return b.append('|').append(row.ref() == null ? "" : row.ref()).toString();
+    }
+
+    private static long fnv64(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /**
+     * Rang de chaque empreinte dans le fichier : table à adressage ouvert long -> int, ~12 octets par empreinte
+     * (un relevé d'un million de lignes tient en quelques dizaines de Mo).
+     */
+    static final class FingerprintCounts {
+        private long[] keys = new long[1 << 12];
+        private int[] counts = new int[1 << 12];
+        private int zeroCount;
+        private int size;
+
+        // renvoie le nombre d'occurrences déjà vues, puis l'incrémente
+        int next(long key) {
+            if (key == 0) {
+                // 0 marque les cases vides
+                return zeroCount++;
+            }
+            int mask = keys.length - 1;
+            int i = (int) (key ^ (key >>> 32)) & mask;
+            while (keys[i] != 0) {
+                if (keys[i] == key) return counts[i]++;
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            counts[i] = 1;
+            if (++size * 2 > keys.length) grow();
+            return 0;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldCounts = counts;
+            keys = new long[oldKeys.length * 2];
+            counts = new int[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                long k = oldKeys[j];
+                if (k == 0) continue;
+                int i = (int) (k ^ (k >>> 32)) & mask;
+                while (keys[i] != 0) i = (i + 1) & mask;
+                keys[i] = k;
+                counts[i] = oldCounts[j];
+            }
+        }
+    }
+
+    /**
+     * Avancement : état, lignes lues / importées / doublons / ignorées / rejetées, lots en attente, durée et débit.
+     */
+    public Map<String, Object> status() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("state", state.name());
+        if (file != null) m.put("file", file);
+        m.put("parsed", parsed.get());
+        m.put("imported", imported.get());
+        m.put("duplicates", duplicates.get());
+        m.put("skipped", skipped.get());
+        m.put("rejected", rejected.get());
+        BlockingQueue<List<StatementRow>> q = queue;
+        m.put("queued", q == null ? 0 : q.size());
+        m.put("elapsedMs", elapsedMs);
+        m.put("rowsPerSec", elapsedMs == 0 ? 0 : parsed.get() * 1000 / elapsedMs);
+        if (lastRejected != null) m.put("lastRejected", lastRejected);
+        if (error != null) m.put("error", error);
+        return m;
+    }
+}
@@ -0,0 +1,20 @@
+package com.titiplex.budget.core.importer;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Lecture incrémentale d'un relevé : une ligne à la fois, sans charger le fichier.
+ */
+interface StatementReader extends Closeable {
+    /**
+     * Ligne suivante, null en fin de fichier. Une ligne illisible lève IllegalArgumentException ; la lecture
+     * peut continuer à la suivante.
+     */
+    StatementRow next() throws IOException;
+
+    /**
+     * Numéro (à partir de 1) de la dernière ligne ou transaction lue, pour les messages d'erreur.
+     */
+    long position();
+}
@@ -0,0 +1,11 @@
+package com.titiplex.budget.core.importer;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Ligne de relevé lue, avant conversion en dépense : montant signé tel qu'au relevé, {@code ref} = identifiant de
+ * transaction de la banque s'il existe (FITID en OFX), {@code category} vide = à catégoriser par les règles.
+ */
+record StatementRow(LocalDate day, BigDecimal amount, String currency, String note, String category, String ref) {
+}
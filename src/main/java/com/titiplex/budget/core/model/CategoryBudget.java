@@ -14,5 +14,5 @@ public record CategoryBudget(
         @JsonProperty("author") String author,
         @JsonProperty("rolloverMode") String rolloverMode, // NONE|SURPLUS|DEFICIT|BOTH
         @JsonProperty("rolloverCap") BigDecimal rolloverCap
-) {
+) implements Versioned {
 }
\ No newline at end of file
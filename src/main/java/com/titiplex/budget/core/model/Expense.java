@@ -15,5 +15,5 @@ public record Expense(
         @JsonProperty("deleted") boolean deleted,
         @JsonProperty("ver") String ver,       // HLC version
         @JsonProperty("author") String author  // userId
-) {
+) implements Versioned {
 }
\ No newline at end of file
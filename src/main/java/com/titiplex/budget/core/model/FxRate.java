@@ -10,5 +10,5 @@ public record FxRate(
         @JsonProperty("deleted") boolean deleted,
         @JsonProperty("ver") String ver,
         @JsonProperty("author") String author
-) {
+) implements Versioned {
 }
\ No newline at end of file
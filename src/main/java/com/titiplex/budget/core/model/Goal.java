@@ -13,5 +13,5 @@ public record Goal(
         @JsonProperty("deleted") boolean deleted,
         @JsonProperty("ver") String ver,
         @JsonProperty("author") String author
-) {
+) implements Versioned {
 }
\ No newline at end of file
@@ -7,6 +7,20 @@ public record Op(Type type, Object payload) {
         FX_UPSERT, FX_DELETE,
         RULE_UPSERT, RULE_DELETE,
         RECUR_UPSERT, RECUR_DELETE,
-        GOAL_UPSERT, GOAL_DELETE
+        GOAL_UPSERT, GOAL_DELETE;
+
+        /**
+         * Classe du record porté (upsert et tombstone partagent le même record).
+         */
+        public Class<?> payloadClass() {
+            return switch (this) {
+                case ADD, DELETE -> Expense.class;
+                case BUDGET_UPSERT, BUDGET_DELETE -> CategoryBudget.class;
+                case FX_UPSERT, FX_DELETE -> FxRate.class;
+                case RULE_UPSERT, RULE_DELETE -> Rule.class;
+                case RECUR_UPSERT, RECUR_DELETE -> RecurringRule.class;
+                case GOAL_UPSERT, GOAL_DELETE -> Goal.class;
+            };
+        }
     }
-}
\ No newline at end of file
+}
@@ -19,5 +19,5 @@ public record RecurringRule(
         @JsonProperty("deleted") boolean deleted,
         @JsonProperty("ver") String ver,
         @JsonProperty("author") String author
-) {
+) implements Versioned {
 }
@@ -12,5 +12,5 @@ public record Rule(
         @JsonProperty("deleted") boolean deleted,
         @JsonProperty("ver") String ver,
         @JsonProperty("author") String author
-) {
+) implements Versioned {
 }
\ No newline at end of file
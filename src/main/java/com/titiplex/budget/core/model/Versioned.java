@@ -0,0 +1,10 @@
+package com.titiplex.budget.core.model;
+
+/**
+ * Ligne répliquée en LWW : version HLC "wall:logic:node" et auteur (userId).
+ */
+public interface Versioned {
+    String ver();
+
+    String author();
+}
@@ -0,0 +1,195 @@
+package com.titiplex.budget.core.p2p;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Pipeline entrant en étages, hors du thread de livraison JGroups :
+ * décodage (déchiffrement + signature) en parallèle, puis application par un unique writer
+ * dans l'ordre d'arrivée (donc dans l'ordre par émetteur, JGroups livrant un émetteur à la fois).
+ * <p>
+ * La file vers le writer est bornée : quand elle est pleine, {@link #submit} bloque le thread JGroups,
+ * ce qui remonte jusqu'aux crédits UFC/MFC de l'émetteur. Les heartbeats FD_ALL sont OOB et ne passent pas ici.
+ */
+final class InboundPipeline<I, T> {
+    private static final int MAX_RUN = 64; // messages décodés fusionnés par passage du writer
+
+    private final Function<I, T> decoder;   // null => message rejeté
+    private final Consumer<List<T>> applier;
+    private final ThreadPoolExecutor decodePool;
+    private final BlockingQueue<Slot<T>> applyQueue;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private final Stage decodeStage = new Stage();
+    private final Stage applyStage = new Stage();
+    private final Stage endToEnd = new Stage();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong backpressureWaits = new AtomicLong();
+    private final AtomicLong backpressureNanos = new AtomicLong();
+
+    private record Slot<T>(CompletableFuture<T> result, long enqueuedNanos) {
+    }
+
+    InboundPipeline(String name, int workers, int capacity, Function<I, T> decoder, Consumer<List<T>> applier) {
+        this.decoder = decoder;
+        this.applier = applier;
+        this.applyQueue = new ArrayBlockingQueue<>(capacity);
+        AtomicInteger n = new AtomicInteger();
+        // CallerRuns : si les workers saturent, le thread JGroups décode lui-même (ralentit l'émetteur).
+        // Après close(), rejet explicite : submit() compte le message perdu au lieu de réserver une place
+        // dont le décodage serait jeté en silence (le writer attendrait ce slot pour toujours).
+        this.decodePool = new ThreadPoolExecutor(workers, workers, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(capacity), r -> {
+            Thread t = new Thread(r, name + "-decode-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }, (r, pool) -> {
+            if (pool.isShutdown()) throw new RejectedExecutionException("inbound pipeline closed");
+            r.run();
+        });
+        this.writer = new Thread(this::writeLoop, name + "-apply");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Appelé sur le thread JGroups : lance le décodage et réserve la place dans l'ordre d'arrivée.
+     */
+    void submit(I in) {
+        long t0 = System.nanoTime();
+        CompletableFuture<T> f;
+        try {
+            f = CompletableFuture.supplyAsync(() -> decode(in), decodePool);
+        } catch (RejectedExecutionException e) {
+            dropped.incrementAndGet();
+            return;
+        }
+        Slot<T> slot = new Slot<>(f, t0);
+        if (applyQueue.offer(slot)) return;
+        backpressureWaits.incrementAndGet();
+        try {
+            applyQueue.put(slot);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            dropped.incrementAndGet();
+        } finally {
+            backpressureNanos.addAndGet(System.nanoTime() - t0);
+        }
+    }
+
+    private T decode(I in) {
+        long t0 = System.nanoTime();
+        try {
+            return decoder.apply(in);
+        } catch (Exception e) {
+            System.err.println("Failed to decode inbound message: " + e.getMessage());
+            return null;
+        } finally {
+            decodeStage.record(System.nanoTime() - t0);
+        }
+    }
+
+    private void writeLoop() {
+        List<T> run = new ArrayList<>();
+        List<Slot<T>> slots = new ArrayList<>();
+        while (running || !applyQueue.isEmpty()) {
+            try {
+                Slot<T> head = applyQueue.poll(200, TimeUnit.MILLISECONDS);
+                if (head == null) continue;
+                slots.add(head);
+                // fusionne les messages suivants déjà décodés : une transaction + un push pour le tout
+                Slot<T> next;
+                while (slots.size() < MAX_RUN && (next = applyQueue.peek()) != null && next.result().isDone()) {
+                    slots.add(applyQueue.poll());
+                }
+                for (Slot<T> s : slots) {
+                    T v = s.result().get(); // decode() ne lève pas
+                    if (v != null) run.add(v);
+                    else dropped.incrementAndGet();
+                }
+                if (!run.isEmpty()) {
+                    long t0 = System.nanoTime();
+                    try {
+                        applier.accept(run);
+                    } catch (Exception e) {
+                        System.err.println("Failed to apply inbound messages: " + e.getMessage());
+                    }
+                    applyStage.record(System.nanoTime() - t0);
+                }
+                long now = System.nanoTime();
+                for (Slot<T> s : slots) endToEnd.record(now - s.enqueuedNanos());
+            } catch (InterruptedException e) {
+                break;
+            } catch (ExecutionException e) {
+                System.err.println("Failed to apply inbound messages: " + e.getMessage());
+            } finally {
+                run.clear();
+                slots.clear();
+            }
+        }
+    }
+
+    /**
+     * Vide ce qui est déjà en file (borné par {@code timeoutMs}) puis arrête les threads.
+     */
+    void close(long timeoutMs) {
+        running = false;
+        decodePool.shutdown();
+        try {
+            writer.join(timeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer.interrupt();
+    }
+
+    Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("decode", decodeStage.snapshot());
+        m.put("apply", applyStage.snapshot());
+        m.put("endToEnd", endToEnd.snapshot());
+        m.put("decodeQueue", decodePool.getQueue().size());
+        m.put("applyQueue", applyQueue.size());
+        m.put("dropped", dropped.get());
+        m.put("backpressureWaits", backpressureWaits.get());
+        m.put("backpressureMs", backpressureNanos.get() / 1_000_000.0);
+        return m;
+    }
+
+    /**
+     * Latences d'un étage : nombre, moyenne et max (ms).
+     */
+    private static final class Stage {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long nanos) {
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        Map<String, Object> snapshot() {
+            long c = count.get();
+            return Map.of(
+                    "count", c,
+                    "avgMs", c == 0 ? 0.0 : totalNanos.get() / 1_000_000.0 / c,
+                    "maxMs", maxNanos.get() / 1_000_000.0);
+        }
+    }
+}
@@ -3,78 +3,208 @@ package com.titiplex.budget.core.p2p;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.titiplex.budget.core.config.ConfigService;
+import com.titiplex.budget.core.crdt.HlcClock;
 import com.titiplex.budget.core.crypto.CryptoBox;
+import com.titiplex.budget.core.crypto.Ed25519;
 import com.titiplex.budget.core.crypto.SessionState;
 import com.titiplex.budget.core.model.Op;
+import com.titiplex.budget.core.model.Versioned;
+import com.titiplex.budget.core.sync.AntiEntropyService;
+import com.titiplex.budget.core.sync.OplogSyncService;
 import org.bitlet.weupnp.GatewayDevice;
 import org.bitlet.weupnp.GatewayDiscover;
+import org.jgroups.Address;
 import org.jgroups.JChannel;
 import org.jgroups.Message;
 import org.jgroups.ReceiverAdapter;
 import org.jgroups.View;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.ByteArrayInputStream;
 import java.net.InetAddress;
 import java.nio.charset.StandardCharsets;
-import java.security.KeyFactory;
-import java.security.PrivateKey;
-import java.security.PublicKey;
-import java.security.Signature;
-import java.security.spec.X509EncodedKeySpec;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 @Service
 public class JGroupsP2PService extends ReceiverAdapter implements P2PService {
     private final ObjectMapper mapper = new ObjectMapper();
     private final SessionState ss;
     private final ConfigService config;
+    private final AntiEntropyService antiEntropy;
+    private final OplogSyncService oplogSync;
+    private final HlcClock clock;
 
     private final AtomicReference<JChannel> chRef = new AtomicReference<>();
     private String clusterName;        // ex: "budget-<groupId>"
     private String passphrase;         // groupPass
-    private Consumer<Op> onOp;
-
-    public JGroupsP2PService(SessionState ss, ConfigService config) {
+    private byte[] groupSalt;          // sel de la clé de session de groupe
+    private Predicate<List<Op>> onOps;
+    private volatile View lastView;
+
+    // Batching sortant : une enveloppe signée/chiffrée pour N ops
+    @Value("${app.p2p.batch.window.ms:20}")
+    private int batchWindowMs;
+    @Value("${app.p2p.batch.max:256}")
+    private int batchMaxOps;
+    private final List<Op> pending = new ArrayList<>();
+    private ScheduledExecutorService batchSes;
+    private ScheduledFuture<?> pendingFlush;
+    private final AtomicLong envelopesSent = new AtomicLong();
+    private final AtomicLong opsSent = new AtomicLong();
+    private final AtomicLong maxOpsPerEnvelope = new AtomicLong();
+
+    // Pipeline entrant : décodage parallèle, application ordonnée hors du thread JGroups
+    @Value("${app.p2p.inbound.workers:0}")
+    private int inboundWorkers;        // 0 => moitié des cœurs (min 2)
+    @Value("${app.p2p.inbound.queue:1024}")
+    private int inboundQueue;
+    private volatile InboundPipeline<Message, Inbound> inbound;
+
+    // Format de fil : "binary" (WireCodec) ou "json" ; repli JSON automatique vers les pairs qui parlent JSON
+    @Value("${app.p2p.wire:binary}")
+    private String wireFormat;
+    private final Set<Address> jsonPeers = ConcurrentHashMap.newKeySet();
+    // Pairs d'avant la clé de groupe (blob sans l'octet de version 0x02) : chiffrement historique, une op
+    // par enveloppe, pas d'anti-entropie. Connus seulement après leur premier message.
+    private final Set<Address> legacyPeers = ConcurrentHashMap.newKeySet();
+
+    // Oplog : userId de chaque membre (appris de ses enveloppes), tirage périodique de leurs journaux
+    @Value("${app.oplog.pull.minutes:5}")
+    private int oplogPullMinutes;
+    private final Map<Address, String> peerIds = new ConcurrentHashMap<>();
+    private ScheduledFuture<?> oplogPull;
+
+    public JGroupsP2PService(SessionState ss, ConfigService config, AntiEntropyService antiEntropy,
+                             OplogSyncService oplogSync, HlcClock clock) {
         this.ss = ss;
         this.config = config;
+        this.antiEntropy = antiEntropy;
+        this.oplogSync = oplogSync;
+        this.clock = clock;
     }
 
     // ---------- Public API ----------
 
     @Override
-    public synchronized void start(String groupName, String passphrase, List<String> seeds, int port, Consumer<Op> onOp) {
-        startInternal(groupName, passphrase, seeds, port, null, onOp);
+    public synchronized void start(String groupName, String passphrase, List<String> seeds, int port, Predicate<List<Op>> onOps) {
+        startInternal(groupName, passphrase, seeds, port, null, onOps);
     }
 
     /**
      * Overload si tu veux passer une IP publique explicite (ex: STUN) pour aider JGroups (external_addr).
      */
-    public synchronized void start(String groupName, String passphrase, List<String> seeds, int port, String externalAddr, Consumer<Op> onOp) {
-        startInternal(groupName, passphrase, seeds, port, externalAddr, onOp);
+    public synchronized void start(String groupName, String passphrase, List<String> seeds, int port, String externalAddr, Predicate<List<Op>> onOps) {
+        startInternal(groupName, passphrase, seeds, port, externalAddr, onOps);
     }
 
     @Override
     public synchronized void stop() {
+        flushPending();
         JChannel ch = chRef.getAndSet(null);
         if (ch != null) ch.close();
+        InboundPipeline<Message, Inbound> p = inbound;
+        inbound = null;
+        if (p != null) p.close(2000);
     }
 
+    /**
+     * Met l'op en file ; la file part dès batchMaxOps ops ou après batchWindowMs.
+     */
     @Override
     public synchronized void broadcast(Op op) {
+        pending.add(op);
+        if (batchWindowMs <= 0 || pending.size() >= Math.max(1, batchMaxOps)) {
+            flushPending();
+        } else if (pendingFlush == null) {
+            pendingFlush = batchExecutor().schedule(this::flushPending, batchWindowMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Lot produit d'un coup : découpé en enveloppes de batchMaxOps, envoyées tout de suite.
+     */
+    @Override
+    public synchronized void broadcastAll(List<Op> ops) {
+        for (Op op : ops) {
+            pending.add(op);
+            if (pending.size() >= Math.max(1, batchMaxOps)) flushPending();
+        }
+        flushPending();
+    }
+
+    /**
+     * Envoie les ops en attente : en binaire, ou en JSON {"t":"BATCH","ops":[...]} (une op seule part telle
+     * quelle). Si un pair ancien est dans le groupe, une enveloppe par op au chiffrement historique : il ne lit
+     * ni BATCH ni la clé de groupe.
+     */
+    public synchronized void flushPending() {
+        if (pendingFlush != null) {
+            pendingFlush.cancel(false);
+            pendingFlush = null;
+        }
+        if (pending.isEmpty()) return;
+        List<Op> batch = new ArrayList<>(pending);
+        pending.clear();
         try {
-            String payload = mapper.writeValueAsString(op);
-            sendEncryptedEnvelope(payload);
+            int envelopes = 1;
+            if (binaryTo(null)) {
+                sendBinaryEnvelope(null, WireCodec.opsPayload(batch));
+            } else if (!legacyPeers.isEmpty()) {
+                for (Op op : batch) sendEncryptedEnvelope(null, mapper.writeValueAsString(op));
+                envelopes = batch.size();
+            } else {
+                String payload = batch.size() == 1
+                        ? mapper.writeValueAsString(batch.get(0))
+                        : mapper.writeValueAsString(Map.of("t", "BATCH", "ops", batch));
+                sendEncryptedEnvelope(null, payload);
+            }
+            envelopesSent.addAndGet(envelopes);
+            opsSent.addAndGet(batch.size());
+            maxOpsPerEnvelope.accumulateAndGet(batch.size() / envelopes, Math::max);
         } catch (Exception e) {
-            System.err.println("Failed to broadcast op: " + e.getMessage());
+            System.err.println("Failed to broadcast " + batch.size() + " op(s): " + e.getMessage());
         }
     }
 
+    /**
+     * Métriques de batching : enveloppes, ops, moyenne et max d'ops par enveloppe.
+     */
+    public Map<String, Object> batchStats() {
+        long env = envelopesSent.get();
+        long ops = opsSent.get();
+        return Map.of(
+                "envelopes", env,
+                "ops", ops,
+                "opsPerEnvelope", env == 0 ? 0.0 : (double) ops / env,
+                "maxOpsPerEnvelope", maxOpsPerEnvelope.get());
+    }
+
+    private ScheduledExecutorService batchExecutor() {
+        if (batchSes == null) {
+            batchSes = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "p2p-batch");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return batchSes;
+    }
+
     /**
      * Ajoute un seed (host,port) et bascule en pile TCP si nécessaire, puis reconnecte.
      */
@@ -110,56 +240,224 @@ public class JGroupsP2PService extends ReceiverAdapter implements P2PService {
                 }
                 return; // ne pas traiter comme Op applicatif
             }
-            byte[] dec = CryptoBox.decrypt(passphrase, msg.getBuffer());
+            InboundPipeline<Message, Inbound> p = inbound;
+            if (p != null) p.submit(msg);
+        } catch (Exception e) {
+            System.err.println("Failed to receive: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Message déchiffré et dont la signature est vérifiée, prêt pour le writer ({@code sender} = userId de l'émetteur).
+     */
+    private record Inbound(Address src, String sender, JsonNode node, List<Op> ops, int bytes) {
+        String type() {
+            return node == null ? "" : node.has("t") ? node.get("t").asText() : "";
+        }
+    }
+
+    // Étage parallèle : déchiffrement, vérification de signature, parsing
+    private Inbound decode(Message msg) {
+        try {
+            byte[] arr = msg.getBuffer();
+            byte[] dec = CryptoBox.decrypt(passphrase, arr);
+            if (msg.getSrc() != null && arr.length > 0 && arr[0] != CryptoBox.VERSION_GROUP) legacyPeers.add(msg.getSrc());
+            if (WireCodec.isBinary(dec)) {
+                WireCodec.Frame f = WireCodec.decodeEnvelope(dec);
+                if (!Ed25519.verify(Ed25519.publicKey(f.pubKey()), f.payload(), f.sig())) return null;
+                return WireCodec.isOps(f.payload())
+                        ? new Inbound(msg.getSrc(), f.senderId(), null, WireCodec.readOps(f.payload()), arr.length)
+                        : new Inbound(msg.getSrc(), f.senderId(), mapper.readTree(WireCodec.readJson(f.payload())), null, arr.length);
+            }
+
+            // Enveloppe JSON : pair ancien (ou configuré en json), on lui répondra en JSON
+            if (msg.getSrc() != null) jsonPeers.add(msg.getSrc());
             String json = new String(dec, StandardCharsets.UTF_8);
             Envelope env = mapper.readValue(json, Envelope.class);
 
-            // Vérif signature
-            PublicKey pub = KeyFactory.getInstance("Ed25519")
-                    .generatePublic(new X509EncodedKeySpec(Base64.getDecoder().decode(env.pubKeyB64)));
-            Signature s = Signature.getInstance("Ed25519");
-            s.initVerify(pub);
-            s.update(env.payloadJson.getBytes(StandardCharsets.UTF_8));
-            if (!s.verify(Base64.getDecoder().decode(env.sigB64))) return; // drop silently
-
-            // Route selon payload
-            JsonNode node = mapper.readTree(env.payloadJson);
-            if (node.has("t") && "ANN".equals(node.get("t").asText())) {
-                // Gossip seed appris
-                if (node.has("s")) {
-                    String seed = node.get("s").asText();
-                    if (seed != null && !seed.isBlank()) {
-                        if (!ss.seeds.contains(seed)) {
-                            ss.seeds.add(seed);
-                            config.saveLastSession(ss); // persiste l’apprentissage
-                        }
+            // Vérif signature (clé publique de l'émetteur en cache)
+            byte[] sig = Base64.getDecoder().decode(env.sigB64);
+            if (!Ed25519.verify(Ed25519.publicKey(env.pubKeyB64), env.payloadJson.getBytes(StandardCharsets.UTF_8), sig))
+                return null; // drop silently
+
+            return new Inbound(msg.getSrc(), env.senderId, mapper.readTree(env.payloadJson), null, arr.length);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Étage writer (un seul thread) : les ops consécutives sont fusionnées en un seul lot livré,
+     * les messages de contrôle sont traités dans l'ordre entre deux lots.
+     */
+    private void apply(List<Inbound> run) {
+        List<Op> ops = new ArrayList<>();
+        for (Inbound in : run) {
+            try {
+                if (in.src() != null && in.sender() != null) peerIds.put(in.src(), in.sender());
+                String t = in.type();
+                if (in.ops() != null) {
+                    // Lot binaire, déjà typé
+                    ops.addAll(in.ops());
+                } else if ("ANN".equals(t)) {
+                    // Gossip seed appris
+                    String seed = in.node().path("s").asText(null);
+                    if (seed != null && !seed.isBlank() && !ss.seeds.contains(seed)) {
+                        ss.seeds.add(seed);
+                        config.saveLastSession(ss); // persiste l’apprentissage
                     }
+                } else if (t.startsWith("SYNC_")) {
+                    // Anti-entropie (unicast)
+                    deliver(ops, true);
+                    ops = new ArrayList<>();
+                    handleSync(in.src(), in.sender(), in.node(), in.bytes());
+                } else if ("BATCH".equals(t)) {
+                    // Lot d'ops : appliquées dans l'ordre d'émission
+                    ops.addAll(readOps(in.node().path("ops")));
+                } else {
+                    // Sinon, c’est une Op applicative
+                    ops.add(WireCodec.typed(mapper.treeToValue(in.node(), Op.class)));
                 }
-                return;
+            } catch (Exception e) {
+                System.err.println("Failed to apply message from " + in.src() + ": " + e.getMessage());
             }
+        }
+        deliver(ops, true);
+    }
 
-            // Sinon, c’est une Op applicative
-            Op op = mapper.readValue(env.payloadJson, Op.class);
-            if (onOp != null) onOp.accept(op);
+    public Map<String, Object> pipelineStats() {
+        InboundPipeline<Message, Inbound> p = inbound;
+        return p == null ? Map.of() : p.stats();
+    }
 
+    /**
+     * Nouveau(x) membre(s) dans la vue : on leur envoie notre digest pour lancer la réconciliation.
+     * Les deux côtés voient l'autre apparaître, donc chacun envoie le sien.
+     */
+    @Override
+    public void viewAccepted(View view) {
+        View prev = lastView;
+        lastView = view;
+        JChannel ch = chRef.get();
+        Address self = ch != null ? ch.getAddress() : null;
+        Set<Address> known = new HashSet<>(prev != null ? prev.getMembers() : List.of());
+        jsonPeers.retainAll(view.getMembers());
+        legacyPeers.retainAll(view.getMembers());
+        peerIds.keySet().retainAll(view.getMembers());
+        for (Address a : view.getMembers()) {
+            if (a.equals(self) || known.contains(a)) continue;
+            // hors du thread JGroups : le digest parcourt les tables
+            batchExecutor().execute(() -> sendSync(a, antiEntropy.digestPayload(a.toString())));
+        }
+    }
+
+    private List<Op> readOps(JsonNode arr) throws Exception {
+        List<Op> ops = new ArrayList<>(arr.size());
+        for (JsonNode n : arr) ops.add(WireCodec.typed(mapper.treeToValue(n, Op.class)));
+        return ops;
+    }
+
+    /**
+     * {@code live} = ops fraîches (broadcast) ; false pour le rattrapage d'anti-entropie (versions anciennes).
+     * Renvoie false si une partie du lot n'a pas été appliquée : le rattrapage ne doit alors rien acquitter.
+     */
+    private boolean deliver(List<Op> ops, boolean live) {
+        if (ops.isEmpty()) return true;
+        // causalité : notre horloge passe au-dessus de toute version distante appliquée
+        for (Op op : ops) {
+            if (op.payload() instanceof Versioned v) clock.observe(v.ver(), v.author(), live);
+        }
+        return onOps == null || onOps.test(ops);
+    }
+
+    public Map<String, Object> clockStats() {
+        return clock.stats();
+    }
+
+    public Map<String, Object> syncStats() {
+        return antiEntropy.stats();
+    }
+
+    public Map<String, Object> oplogStats() {
+        return oplogSync.stats();
+    }
+
+    /**
+     * Anti-entropie (clé : adresse JGroups) et rattrapage par oplog (clé : userId de l'émetteur, stable).
+     */
+    private void handleSync(Address from, String sender, JsonNode node, int bytes) throws Exception {
+        if (from == null) return;
+        String peer = from.toString();
+        antiEntropy.recordIn(peer, bytes);
+        List<String> replies = switch (node.get("t").asText()) {
+            case "SYNC_DIGEST" -> {
+                // on connaît maintenant son userId : on tire aussi la suite de son journal
+                if (sender != null) sendSync(from, oplogSync.pullPayload(sender));
+                yield antiEntropy.onDigest(peer, node);
+            }
+            case "SYNC_SUB" -> antiEntropy.onSubDigest(peer, node);
+            case "SYNC_IDS" -> antiEntropy.onIds(peer, node);
+            case "SYNC_ROWS" -> {
+                List<Op> ops = readOps(node.path("ops"));
+                yield deliver(ops, false)
+                        ? antiEntropy.onRowsApplied(peer, ops.size(), node)
+                        : antiEntropy.onRowsFailed(peer, node);
+            }
+            case "SYNC_PULL" -> sender == null ? List.of() : oplogSync.onPull(sender, node);
+            case "SYNC_LOG" -> {
+                if (sender == null) yield List.of();
+                List<Op> ops = readOps(node.path("ops"));
+                // échec : ni position ni SYNC_ACK, le prochain SYNC_PULL redemande la même page
+                yield deliver(ops, false) ? oplogSync.onLogApplied(sender, node, ops.size()) : List.of();
+            }
+            case "SYNC_ACK" -> sender == null ? List.of() : oplogSync.onAck(sender, node);
+            default -> List.of();
+        };
+        for (String r : replies) sendSync(from, r);
+    }
+
+    /**
+     * Tirage périodique : fait avancer les acquittements (repliement de l'oplog, GC des tombstones)
+     * même sans changement de vue.
+     */
+    private void pullOplogs() {
+        try {
+            peerIds.forEach((a, id) -> sendSync(a, oplogSync.pullPayload(id)));
         } catch (Exception e) {
-            System.err.println("Failed to receive: " + e.getMessage());
+            System.err.println("Failed to pull oplogs: " + e.getMessage());
         }
     }
 
-    @Override
-    public void viewAccepted(View view) {
-        // tu peux logger si besoin
-        // System.out.println("P2P view: " + view);
+    private void sendSync(Address dest, String payload) {
+        if (legacyPeers.contains(dest)) return; // ne connaît pas SYNC_*
+        try {
+            int sent = binaryTo(dest)
+                    ? sendBinaryEnvelope(dest, WireCodec.jsonPayload(payload))
+                    : sendEncryptedEnvelope(dest, payload);
+            antiEntropy.recordOut(dest.toString(), sent);
+        } catch (Exception e) {
+            System.err.println("Failed to send sync to " + dest + ": " + e.getMessage());
+        }
     }
 
     // ---------- Impl interne ----------
 
-    private void startInternal(String groupName, String passphrase, List<String> seeds, int port, String externalAddr, Consumer<Op> onOp) {
+    private void startInternal(String groupName, String passphrase, List<String> seeds, int port, String externalAddr, Predicate<List<Op>> onOps) {
         try {
             this.clusterName = groupName;
             this.passphrase = passphrase;
-            this.onOp = onOp;
+            this.groupSalt = CryptoBox.groupSalt(groupName);
+            this.onOps = onOps;
+            oplogSync.start();
+            if (oplogPull == null && oplogPullMinutes > 0) {
+                oplogPull = batchExecutor().scheduleWithFixedDelay(this::pullOplogs,
+                        oplogPullMinutes, oplogPullMinutes, TimeUnit.MINUTES);
+            }
+            if (inbound == null) {
+                int workers = inboundWorkers > 0 ? inboundWorkers
+                        : Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+                inbound = new InboundPipeline<>("p2p-in", workers, Math.max(16, inboundQueue), this::decode, this::apply);
+            }
 
             // UPnP best-effort (TCP + UDP)
             tryUpnp(port);
@@ -171,8 +469,7 @@ public class JGroupsP2PService extends ReceiverAdapter implements P2PService {
 
             JChannel ch = new JChannel(new ByteArrayInputStream(cfg.getBytes(StandardCharsets.UTF_8)));
             ch.setReceiver(this);
-            ch.connect(groupName);
-            chRef.set(ch);
+            connect(ch, groupName);
         } catch (Exception e) {
             throw new RuntimeException("P2P start failed: " + e.getMessage(), e);
         }
@@ -185,19 +482,32 @@ public class JGroupsP2PService extends ReceiverAdapter implements P2PService {
         String cfg = tcpStack(normalizeSeeds(seeds, bindPort), bindPort, externalAddr);
         JChannel ch = new JChannel(new ByteArrayInputStream(cfg.getBytes(StandardCharsets.UTF_8)));
         ch.setReceiver(this);
-        ch.connect(clusterName);
+        connect(ch, clusterName);
+    }
+
+    /**
+     * Publie le canal avant connect() : la première vue (reçue pendant connect) doit connaître notre adresse.
+     */
+    private void connect(JChannel ch, String cluster) throws Exception {
+        lastView = null;
         chRef.set(ch);
+        try {
+            ch.connect(cluster);
+        } catch (Exception e) {
+            chRef.compareAndSet(ch, null);
+            throw e;
+        }
     }
 
-    private void sendEncryptedEnvelope(String payload) throws Exception {
+    /**
+     * Signe, chiffre et envoie ; dest == null => multicast au groupe. Chiffrement historique (scrypt par message)
+     * dès qu'un pair ancien est visé. Renvoie la taille envoyée.
+     */
+    private int sendEncryptedEnvelope(Address dest, String payload) throws Exception {
         // Sign
-        Signature sig = Signature.getInstance("Ed25519");
-        PrivateKey priv = KeyFactory.getInstance("Ed25519")
-                .generatePrivate(new java.security.spec.PKCS8EncodedKeySpec(ss.ed25519Private));
-        sig.initSign(priv);
-        sig.update(payload.getBytes(StandardCharsets.UTF_8));
-        String sigB64 = Base64.getEncoder().encodeToString(sig.sign());
-        String pubB64 = Base64.getEncoder().encodeToString(ss.ed25519Public);
+        String sigB64 = Base64.getEncoder().encodeToString(
+                Ed25519.sign(ss.signingKey(), payload.getBytes(StandardCharsets.UTF_8)));
+        String pubB64 = ss.publicKeyB64();
 
         Envelope env = new Envelope();
         env.senderId = ss.userId;
@@ -207,10 +517,34 @@ public class JGroupsP2PService extends ReceiverAdapter implements P2PService {
         env.sigB64 = sigB64;
 
         String json = mapper.writeValueAsString(env);
-        byte[] enc = CryptoBox.encrypt(passphrase, json.getBytes(StandardCharsets.UTF_8));
-        Message m = new Message(null, enc);
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        boolean legacy = dest == null ? !legacyPeers.isEmpty() : legacyPeers.contains(dest);
+        byte[] enc = legacy ? CryptoBox.encrypt(passphrase, bytes) : CryptoBox.encrypt(passphrase, groupSalt, bytes);
+        Message m = new Message(dest, enc);
         JChannel ch = chRef.get();
         if (ch != null && ch.isConnected()) ch.send(m);
+        return enc.length;
+    }
+
+    /**
+     * Binaire si configuré et si le destinataire (ou, en multicast, aucun membre) n'a parlé qu'en JSON.
+     */
+    private boolean binaryTo(Address dest) {
+        if (!"binary".equalsIgnoreCase(wireFormat)) return false;
+        return dest == null ? jsonPeers.isEmpty() : !jsonPeers.contains(dest);
+    }
+
+    /**
+     * Variante binaire : la signature porte sur les octets bruts du payload.
+     */
+    private int sendBinaryEnvelope(Address dest, byte[] payload) throws Exception {
+        byte[] sig = Ed25519.sign(ss.signingKey(), payload);
+        byte[] frame = WireCodec.encodeEnvelope(
+                new WireCodec.Frame(ss.userId, ss.displayName, ss.ed25519Public, sig, payload));
+        byte[] enc = CryptoBox.encrypt(passphrase, groupSalt, frame);
+        JChannel ch = chRef.get();
+        if (ch != null && ch.isConnected()) ch.send(new Message(dest, enc));
+        return enc.length;
     }
 
     // --- Stacks JGroups ---
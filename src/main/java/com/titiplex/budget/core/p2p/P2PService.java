@@ -4,12 +4,23 @@ package com.titiplex.budget.core.p2p;
 import com.titiplex.budget.core.model.Op;
 
 import java.util.List;
-import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 public interface P2PService {
-    void start(String groupName, String passphrase, List<String> seeds, int port, Consumer<Op> onOp);
+    /**
+     * onOps reçoit les ops distantes par lot (un lot = une enveloppe), dans l'ordre d'émission, et renvoie false
+     * si une partie du lot n'a pas pu être appliquée (le rattrapage ne l'acquitte pas et la redemandera).
+     */
+    void start(String groupName, String passphrase, List<String> seeds, int port, Predicate<List<Op>> onOps);
 
     void broadcast(Op op);
 
+    /**
+     * Diffusion d'un lot d'ops produit d'un coup (jobs en masse) : pas d'attente de fenêtre de batching.
+     */
+    default void broadcastAll(List<Op> ops) {
+        ops.forEach(this::broadcast);
+    }
+
     void stop();
 }
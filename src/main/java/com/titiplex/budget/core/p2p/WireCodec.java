@@ -0,0 +1,468 @@
+package com.titiplex.budget.core.p2p;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.titiplex.budget.core.model.*;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Format binaire versionné pour les enveloppes et les ops (remplace le JSON dans une chaîne JSON).
+ * <p>
+ * Enveloppe (en clair, avant chiffrement) :
+ * {@code VERSION(1) | senderId | senderName | pubKey | sig | payload}, champs préfixés par leur longueur (varint).
+ * La signature porte sur les octets bruts du payload :
+ * {@code KIND_OPS(1) | n | op*} ou {@code KIND_JSON(1) | utf8} pour les messages de contrôle (SYNC_*, ANN).
+ * <p>
+ * Op : code de type (ordinal, enum à compléter en fin uniquement) puis les champs du record typé,
+ * montants en long mis à l'échelle, HLC décomposée, UUID sur 16 octets.
+ * Une enveloppe JSON historique commence par '{' : {@link #isBinary} permet de choisir le décodeur.
+ */
+public final class WireCodec {
+    public static final byte VERSION = 0x01;
+    public static final byte KIND_JSON = 0x00;
+    public static final byte KIND_OPS = 0x01;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Op.Type[] TYPES = Op.Type.values();
+
+    private WireCodec() {
+    }
+
+    public record Frame(String senderId, String senderName, byte[] pubKey, byte[] sig, byte[] payload) {
+    }
+
+    public static boolean isBinary(byte[] plain) {
+        return plain.length > 0 && plain[0] == VERSION;
+    }
+
+    // ---------- Enveloppe ----------
+
+    public static byte[] encodeEnvelope(Frame f) {
+        Out o = new Out(f.payload().length + f.sig().length + f.pubKey().length + 64);
+        o.b(VERSION);
+        o.id(f.senderId());
+        o.str(f.senderName());
+        o.bytes(f.pubKey());
+        o.bytes(f.sig());
+        o.bytes(f.payload());
+        return o.toArray();
+    }
+
+    public static Frame decodeEnvelope(byte[] buf) {
+        In in = new In(buf);
+        int v = in.b();
+        if (v != VERSION) throw new IllegalArgumentException("unsupported wire version " + v);
+        return new Frame(in.id(), in.str(), in.bytes(), in.bytes(), in.bytes());
+    }
+
+    // ---------- Payloads ----------
+
+    public static byte[] opsPayload(List<Op> ops) {
+        Out o = new Out(64 + ops.size() * 96);
+        o.b(KIND_OPS);
+        o.varint(ops.size());
+        for (Op op : ops) writeOp(o, op);
+        return o.toArray();
+    }
+
+    public static byte[] jsonPayload(String json) {
+        byte[] utf8 = json.getBytes(StandardCharsets.UTF_8);
+        byte[] out = new byte[utf8.length + 1];
+        out[0] = KIND_JSON;
+        System.arraycopy(utf8, 0, out, 1, utf8.length);
+        return out;
+    }
+
+    public static boolean isOps(byte[] payload) {
+        return payload.length > 0 && payload[0] == KIND_OPS;
+    }
+
+    public static List<Op> readOps(byte[] payload) {
+        In in = new In(payload);
+        if (in.b() != KIND_OPS) throw new IllegalArgumentException("not an ops payload");
+        int n = in.varint();
+        List<Op> ops = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) ops.add(readOp(in));
+        return ops;
+    }
+
+    public static String readJson(byte[] payload) {
+        if (payload.length == 0 || payload[0] != KIND_JSON) throw new IllegalArgumentException("not a json payload");
+        return new String(payload, 1, payload.length - 1, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Classe du record porté par chaque type d'op (upsert et tombstone partagent le même record).
+     */
+    public static Class<?> payloadClass(Op.Type t) {
+        return t.payloadClass();
+    }
+
+    /**
+     * Op dont le payload est le record typé (les ops lues en JSON arrivent avec une Map).
+     */
+    public static Op typed(Op op) {
+        Class<?> c = payloadClass(op.type());
+        if (c.isInstance(op.payload())) return op;
+        return new Op(op.type(), MAPPER.convertValue(op.payload(), c));
+    }
+
+    private static void writeOp(Out o, Op op) {
+        op = typed(op);
+        o.b(op.type().ordinal());
+        Object p = op.payload();
+        if (p instanceof Expense e) {
+            o.id(e.id());
+            o.str(e.who());
+            o.str(e.category());
+            o.money(e.amount());
+            o.str(e.currency());
+            o.str(e.note());
+            o.zigzag(e.ts());
+            o.b(e.deleted() ? 1 : 0);
+            o.ver(e.ver(), e.author());
+            o.id(e.author());
+        } else if (p instanceof CategoryBudget b) {
+            o.id(b.id());
+            o.str(b.category());
+            o.money(b.monthlyLimit());
+            o.str(b.currency());
+            o.b(b.deleted() ? 1 : 0);
+            o.ver(b.ver(), b.author());
+            o.id(b.author());
+            o.str(b.rolloverMode());
+            o.money(b.rolloverCap());
+        } else if (p instanceof FxRate r) {
+            o.str(r.code());
+            o.money(r.perBase());
+            o.b(r.deleted() ? 1 : 0);
+            o.ver(r.ver(), r.author());
+            o.id(r.author());
+        } else if (p instanceof Rule r) {
+            o.id(r.id());
+            o.str(r.name());
+            o.str(r.kind());
+            o.str(r.pattern());
+            o.str(r.category());
+            o.b((r.active() ? 1 : 0) | (r.deleted() ? 2 : 0));
+            o.ver(r.ver(), r.author());
+            o.id(r.author());
+        } else if (p instanceof RecurringRule r) {
+            o.id(r.id());
+            o.str(r.name());
+            o.str(r.period());
+            o.zigzag(r.day());
+            o.zigzag(r.weekday());
+            o.zigzag(r.month());
+            o.money(r.amount());
+            o.str(r.currency());
+            o.str(r.category());
+            o.str(r.note());
+            o.b((r.active() ? 1 : 0) | (r.deleted() ? 2 : 0));
+            o.ver(r.ver(), r.author());
+            o.id(r.author());
+        } else if (p instanceof Goal g) {
+            o.id(g.id());
+            o.str(g.name());
+            o.money(g.target());
+            o.str(g.currency());
+            o.zigzag(g.dueTs());
+            o.b(g.deleted() ? 1 : 0);
+            o.ver(g.ver(), g.author());
+            o.id(g.author());
+        } else {
+            throw new IllegalArgumentException("unsupported payload " + p.getClass());
+        }
+    }
+
+    private static Op readOp(In in) {
+        int code = in.b();
+        if (code >= TYPES.length) throw new IllegalArgumentException("unknown op type " + code);
+        Op.Type t = TYPES[code];
+        Object payload = switch (t) {
+            case ADD, DELETE -> {
+                String id = in.id(), who = in.str(), cat = in.str();
+                BigDecimal amount = in.money();
+                String ccy = in.str(), note = in.str();
+                long ts = in.zigzag();
+                boolean deleted = in.b() != 0;
+                String[] va = in.verAuthor();
+                yield new Expense(id, who, cat, amount, ccy, note, ts, deleted, va[0], va[1]);
+            }
+            case BUDGET_UPSERT, BUDGET_DELETE -> {
+                String id = in.id(), cat = in.str();
+                BigDecimal limit = in.money();
+                String ccy = in.str();
+                boolean deleted = in.b() != 0;
+                String[] va = in.verAuthor();
+                yield new CategoryBudget(id, cat, limit, ccy, deleted, va[0], va[1], in.str(), in.money());
+            }
+            case FX_UPSERT, FX_DELETE -> {
+                String code2 = in.str();
+                BigDecimal perBase = in.money();
+                boolean deleted = in.b() != 0;
+                String[] va = in.verAuthor();
+                yield new FxRate(code2, perBase, deleted, va[0], va[1]);
+            }
+            case RULE_UPSERT, RULE_DELETE -> {
+                String id = in.id(), name = in.str(), kind = in.str(), pattern = in.str(), cat = in.str();
+                int flags = in.b();
+                String[] va = in.verAuthor();
+                yield new Rule(id, name, kind, pattern, cat, (flags & 1) != 0, (flags & 2) != 0, va[0], va[1]);
+            }
+            case RECUR_UPSERT, RECUR_DELETE -> {
+                String id = in.id(), name = in.str(), period = in.str();
+                int day = (int) in.zigzag(), weekday = (int) in.zigzag(), month = (int) in.zigzag();
+                BigDecimal amount = in.money();
+                String ccy = in.str(), cat = in.str(), note = in.str();
+                int flags = in.b();
+                String[] va = in.verAuthor();
+                yield new RecurringRule(id, name, period, day, weekday, month, amount, ccy, cat, note,
+                        (flags & 1) != 0, (flags & 2) != 0, va[0], va[1]);
+            }
+            case GOAL_UPSERT, GOAL_DELETE -> {
+                String id = in.id(), name = in.str();
+                BigDecimal target = in.money();
+                String ccy = in.str();
+                long due = in.zigzag();
+                boolean deleted = in.b() != 0;
+                String[] va = in.verAuthor();
+                yield new Goal(id, name, target, ccy, due, deleted, va[0], va[1]);
+            }
+        };
+        return new Op(t, payload);
+    }
+
+    // ---------- Primitives ----------
+
+    private static final int ID_NULL = 0, ID_UUID = 1, ID_STR = 2;
+    private static final int VER_NULL = 0, VER_HLC = 1, VER_HLC_AUTHOR = 2, VER_STR = 3;
+    private static final int MONEY_NULL = 0xFF, MONEY_STR = 0xFE;
+
+    private static final class Out {
+        private byte[] buf;
+        private int len;
+
+        Out(int cap) {
+            buf = new byte[Math.max(16, cap)];
+        }
+
+        private void ensure(int n) {
+            if (len + n > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + n));
+        }
+
+        void b(int v) {
+            ensure(1);
+            buf[len++] = (byte) v;
+        }
+
+        void varint(long v) {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                buf[len++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[len++] = (byte) v;
+        }
+
+        void zigzag(long v) {
+            varint((v << 1) ^ (v >> 63));
+        }
+
+        void raw(byte[] b) {
+            ensure(b.length);
+            System.arraycopy(b, 0, buf, len, b.length);
+            len += b.length;
+        }
+
+        void bytes(byte[] b) {
+            varint(b.length);
+            raw(b);
+        }
+
+        // longueur + 1, 0 = null
+        void str(String s) {
+            if (s == null) {
+                varint(0);
+                return;
+            }
+            byte[] u = s.getBytes(StandardCharsets.UTF_8);
+            varint(u.length + 1L);
+            raw(u);
+        }
+
+        // UUID canonique sur 16 octets, sinon chaîne
+        void id(String s) {
+            UUID u = s != null && s.length() == 36 ? uuid(s) : null;
+            if (s == null) {
+                b(ID_NULL);
+            } else if (u != null) {
+                b(ID_UUID);
+                ensure(16);
+                long hi = u.getMostSignificantBits(), lo = u.getLeastSignificantBits();
+                for (int i = 7; i >= 0; i--) buf[len++] = (byte) (hi >>> (i * 8));
+                for (int i = 7; i >= 0; i--) buf[len++] = (byte) (lo >>> (i * 8));
+            } else {
+                b(ID_STR);
+                str(s);
+            }
+        }
+
+        // HLC "wall:logic:node" décomposée ; le nœud est omis quand c'est l'auteur (cas courant)
+        void ver(String ver, String author) {
+            if (ver == null) {
+                b(VER_NULL);
+                return;
+            }
+            String[] p = ver.split(":", 3);
+            long wall;
+            int logic;
+            try {
+                if (p.length != 3) throw new NumberFormatException();
+                wall = Long.parseLong(p[0]);
+                logic = Integer.parseInt(p[1]);
+            } catch (NumberFormatException e) {
+                b(VER_STR);
+                str(ver);
+                return;
+            }
+            if (!(wall + ":" + logic + ":" + p[2]).equals(ver)) { // zéros de tête, etc. : garder tel quel
+                b(VER_STR);
+                str(ver);
+                return;
+            }
+            boolean sameNode = p[2].equals(author);
+            b(sameNode ? VER_HLC_AUTHOR : VER_HLC);
+            varint(wall);
+            varint(logic);
+            if (!sameNode) id(p[2]);
+        }
+
+        // montant = unscaled * 10^-scale, unscaled en varint zigzag
+        void money(BigDecimal v) {
+            if (v == null) {
+                b(MONEY_NULL);
+            } else if (v.scale() >= 0 && v.scale() < MONEY_STR && v.unscaledValue().bitLength() < 64) {
+                b(v.scale());
+                zigzag(v.unscaledValue().longValue());
+            } else {
+                b(MONEY_STR);
+                str(v.toString());
+            }
+        }
+
+        byte[] toArray() {
+            return Arrays.copyOf(buf, len);
+        }
+    }
+
+    private static final class In {
+        private final byte[] buf;
+        private int pos;
+
+        In(byte[] buf) {
+            this.buf = buf;
+        }
+
+        int b() {
+            if (pos >= buf.length) throw new IllegalArgumentException("truncated frame");
+            return buf[pos++] & 0xFF;
+        }
+
+        long varintLong() {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int x = b();
+                v |= (long) (x & 0x7F) << shift;
+                if ((x & 0x80) == 0) return v;
+            }
+            throw new IllegalArgumentException("bad varint");
+        }
+
+        int varint() {
+            long v = varintLong();
+            if (v < 0 || v > Integer.MAX_VALUE) throw new IllegalArgumentException("bad length");
+            return (int) v;
+        }
+
+        long zigzag() {
+            long v = varintLong();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        byte[] raw(int n) {
+            if (n > buf.length - pos) throw new IllegalArgumentException("truncated frame");
+            byte[] out = Arrays.copyOfRange(buf, pos, pos + n);
+            pos += n;
+            return out;
+        }
+
+        byte[] bytes() {
+            return raw(varint());
+        }
+
+        String str() {
+            int n = varint();
+            if (n == 0) return null;
+            if (n - 1 > buf.length - pos) throw new IllegalArgumentException("truncated frame");
+            String s = new String(buf, pos, n - 1, StandardCharsets.UTF_8);
+            pos += n - 1;
+            return s;
+        }
+
+        String id() {
+            return switch (b()) {
+                case ID_NULL -> null;
+                case ID_UUID -> {
+                    long hi = 0, lo = 0;
+                    for (int i = 0; i < 8; i++) hi = (hi << 8) | b();
+                    for (int i = 0; i < 8; i++) lo = (lo << 8) | b();
+                    yield new UUID(hi, lo).toString();
+                }
+                case ID_STR -> str();
+                default -> throw new IllegalArgumentException("bad id tag");
+            };
+        }
+
+        // {ver, author} : l'auteur suit la version sur le fil mais peut servir de nœud HLC
+        String[] verAuthor() {
+            int tag = b();
+            String ver = switch (tag) {
+                case VER_NULL -> null;
+                case VER_STR -> str();
+                case VER_HLC, VER_HLC_AUTHOR -> {
+                    long wall = varintLong();
+                    long logic = varintLong();
+                    String prefix = wall + ":" + logic + ":";
+                    yield tag == VER_HLC ? prefix + id() : prefix; // nœud complété après lecture de l'auteur
+                }
+                default -> throw new IllegalArgumentException("bad ver tag");
+            };
+            String author = id();
+            if (tag == VER_HLC_AUTHOR) ver = ver + author;
+            return new String[]{ver, author};
+        }
+
+        BigDecimal money() {
+            int scale = b();
+            if (scale == MONEY_NULL) return null;
+            if (scale == MONEY_STR) return new BigDecimal(str());
+            return new BigDecimal(BigInteger.valueOf(zigzag()), scale);
+        }
+    }
+
+    private static UUID uuid(String s) {
+        try {
+            UUID u = UUID.fromString(s);
+            return u.toString().equals(s) ? u : null; // majuscules / formes non canoniques : chaîne
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
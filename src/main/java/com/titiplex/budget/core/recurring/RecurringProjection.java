@@ -0,0 +1,196 @@
+package com.titiplex.budget.core.recurring;
+
+import com.titiplex.budget.core.fx.FxConverter;
+import com.titiplex.budget.core.model.RecurringRule;
+import com.titiplex.budget.core.store.MonthTotal;
+import com.titiplex.budget.core.store.Repository;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Prévision des dépenses récurrentes : occurrences futures des règles actives sur un intervalle de jours.
+ * <p>
+ * Mêmes dates que la matérialisation ({@link RecurringService#next}, fin de mois ramenée au dernier jour) ; le flux
+ * fusionne les règles par date à la demande (file de priorité d'une entrée par règle), rien n'est matérialisé.
+ * Les agrégats parcourent les mêmes occurrences (sans la fusion par date) et reprennent les buckets
+ * (mois, catégorie, devise) des totaux mensuels, devise en majuscules comme {@code expense_totals}, en unités
+ * entières, pour être convertis et comparés aux budgets comme les dépenses réelles.
+ */
+@Service
+public class RecurringProjection {
+    private final Repository repo;
+    private final FxConverter fx;
+
+    public RecurringProjection(Repository repo, FxConverter fx) {
+        this.repo = repo;
+        this.fx = fx;
+    }
+
+    /**
+     * Occurrence prévue d'une règle, montant en unités (1/10 000) dans la devise de la règle (en majuscules).
+     */
+    public record Occurrence(String ruleId, LocalDate day, String category, String currency, long units) {
+    }
+
+    /**
+     * Occurrences des règles actives entre deux jours inclus, par date croissante, calculées au fil de la lecture.
+     */
+    public Stream<Occurrence> stream(LocalDate from, LocalDate to) {
+        return stream(repo.listRecurringActive(), from, to);
+    }
+
+    public static Stream<Occurrence> stream(List<RecurringRule> rules, LocalDate from, LocalDate to) {
+        Iterator<Occurrence> it = new Merge(rules, from, to);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it,
+                Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE), false);
+    }
+
+    /**
+     * Totaux prévus par (mois, catégorie, devise) entre deux jours inclus, par mois puis catégorie.
+     */
+    public static List<MonthTotal> buckets(List<RecurringRule> rules, LocalDate from, LocalDate to) {
+        // l'ordre n'importe pas ici : les occurrences règle par règle, sans fusion ; une clé (catégorie, devise)
+        // par règle et un tableau indexé par mois (unités, nombre)
+        YearMonth first = YearMonth.from(from);
+        int months = (int) (first.until(YearMonth.from(to), ChronoUnit.MONTHS) + 1);
+        int base = first.getYear() * 12 + first.getMonthValue() - 1;
+        Map<String, long[]> acc = new HashMap<>();
+        for (RecurringRule r : rules) {
+            if (!r.active() || r.deleted()) continue;
+            long[] v = null;
+            for (Iterator<Occurrence> it = new RuleOccurrences(r, from, to); it.hasNext(); ) {
+                Occurrence o = it.next();
+                if (v == null) v = acc.computeIfAbsent(o.category() + "\u0000" + o.currency(), k -> new long[months * 2]);
+                int m = o.day().getYear() * 12 + o.day().getMonthValue() - 1 - base;
+                v[2 * m] += o.units();
+                v[2 * m + 1]++;
+            }
+        }
+        List<MonthTotal> out = new ArrayList<>();
+        acc.forEach((k, v) -> {
+            int sep = k.indexOf('\u0000');
+            for (int m = 0; m < months; m++) {
+                if (v[2 * m + 1] > 0) {
+                    out.add(new MonthTotal(first.plusMonths(m).toString(), k.substring(0, sep), k.substring(sep + 1), v[2 * m], v[2 * m + 1]));
+                }
+            }
+        });
+        out.sort(Comparator.comparing(MonthTotal::month).thenComparing(MonthTotal::category).thenComparing(MonthTotal::currency));
+        return out;
+    }
+
+    /**
+     * Prévision à venir (à partir de demain : les occurrences passées sont déjà des dépenses) de {@code fromMonth}
+     * à {@code toMonth} inclus, convertie en {@code ccy} : mois -> catégorie -> montant. Vide = mois courant et
+     * les 11 suivants.
+     */
+    public Map<String, Map<String, Double>> forecast(String fromMonth, String toMonth, String ccy) {
+        YearMonth fm = fromMonth == null || fromMonth.isBlank() ? YearMonth.now() : YearMonth.parse(fromMonth.trim());
+        YearMonth tm = toMonth == null || toMonth.isBlank() ? fm.plusMonths(11) : YearMonth.parse(toMonth.trim());
+        LocalDate tomorrow = LocalDate.now().plusDays(1);
+        LocalDate from = fm.atDay(1).isBefore(tomorrow) ? tomorrow : fm.atDay(1);
+        LocalDate to = tm.atEndOfMonth();
+
+        Map<String, Map<String, Long>> acc = new TreeMap<>();
+        for (YearMonth m = fm; !m.isAfter(tm); m = m.plusMonths(1)) acc.put(m.toString(), new TreeMap<>());
+        if (!from.isAfter(to)) {
+            FxConverter.Matrix rates = fx.snapshot();
+            for (MonthTotal t : buckets(repo.listRecurringActive(), from, to)) {
+                acc.get(t.month()).merge(t.category(), rates.convert(t.units(), t.currency(), ccy), Long::sum);
+            }
+        }
+        Map<String, Map<String, Double>> out = new LinkedHashMap<>();
+        acc.forEach((m, cats) -> {
+            Map<String, Double> v = new LinkedHashMap<>();
+            cats.forEach((c, u) -> v.put(c, (double) u / MonthTotal.SCALE));
+            out.put(m, v);
+        });
+        return out;
+    }
+
+    private static long units(BigDecimal v) {
+        return v == null ? 0 : v.movePointRight(4).setScale(0, RoundingMode.HALF_EVEN).longValue();
+    }
+
+    // Occurrences d'une règle, par date croissante, calculées au fil de la lecture ; catégorie '' si absente et
+    // devise en majuscules : mêmes clés que expense_totals
+    private static final class RuleOccurrences implements Iterator<Occurrence> {
+        private final RecurringRule rule;
+        private final LocalDate to;
+        private final String category;
+        private final String currency;
+        private final long units;
+        private LocalDate next;
+
+        RuleOccurrences(RecurringRule r, LocalDate from, LocalDate to) {
+            this.rule = r;
+            this.to = to;
+            this.category = r.category() == null ? "" : r.category();
+            this.currency = r.currency() == null ? "" : r.currency().toUpperCase(Locale.ROOT);
+            this.units = units(r.amount());
+            this.next = RecurringService.next(r, from);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null && !next.isAfter(to);
+        }
+
+        @Override
+        public Occurrence next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            LocalDate d = next;
+            next = RecurringService.next(rule, d.plusDays(1));
+            return new Occurrence(rule.id(), d, category, currency, units);
+        }
+    }
+
+    // Fusion k-voies des flux par règle : une entrée par règle (sa prochaine occurrence), la plus proche en tête
+    private static final class Merge implements Iterator<Occurrence> {
+        private record Head(Occurrence next, Iterator<Occurrence> rest) {
+        }
+
+        private final PriorityQueue<Head> queue = new PriorityQueue<>(Comparator.comparing(h -> h.next().day()));
+
+        Merge(List<RecurringRule> rules, LocalDate from, LocalDate to) {
+            for (RecurringRule r : rules) {
+                if (!r.active() || r.deleted()) continue;
+                Iterator<Occurrence> it = new RuleOccurrences(r, from, to);
+                if (it.hasNext()) queue.add(new Head(it.next(), it));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public Occurrence next() {
+            Head h = queue.poll();
+            if (h == null) throw new NoSuchElementException();
+            if (h.rest().hasNext()) queue.add(new Head(h.rest().next(), h.rest()));
+            return h.next();
+        }
+    }
+}
@@ -1,36 +1,83 @@
 package com.titiplex.budget.core.recurring;
 
 import com.titiplex.budget.core.crdt.HLC;
-import com.titiplex.budget.core.crypto.SessionState;
 import com.titiplex.budget.core.model.Expense;
 import com.titiplex.budget.core.model.Op;
 import com.titiplex.budget.core.model.RecurringRule;
 import com.titiplex.budget.core.p2p.P2PService;
 import com.titiplex.budget.core.store.Repository;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.DayOfWeek;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.UUID;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Matérialisation des dépenses récurrentes, idempotente et avec rattrapage.
+ * <p>
+ * Chaque occurrence (règle, jour) donne une dépense entièrement déterministe : id dérivé de la règle et du jour,
+ * horodatage à midi UTC du jour, et version HLC au début de la veille (UTC, donc toujours dans le passé quel
+ * que soit le fuseau), ou la version de la règle si elle est plus récente ; à la veille, le nœud de la version
+ * encode celle de la règle. Deux pairs qui matérialisent la même occurrence depuis la même règle écrivent la même
+ * ligne à la même version : le LWW la garde en un exemplaire ; depuis deux états de la règle (avant / après une
+ * modification), la ligne de la règle la plus récente l'emporte partout. Une modification ou suppression de l'occurrence par l'utilisateur après la dernière édition de la
+ * règle (version plus récente) n'est jamais écrasée par une nouvelle matérialisation.
+ * <p>
+ * Par règle, un filigrane local retient le dernier jour matérialisé ; au démarrage et à chaque changement de règle,
+ * toutes les occurrences manquées depuis (au plus {@code app.recurring.catchup.days}) sont créées. La prochaine
+ * occurrence de chaque règle va dans une file de priorité et le thread dort jusqu'à la plus proche.
+ */
 @Service
 public class RecurringService {
+    static final String NODE = "recurring";
+    private static final long DAY_MS = 86_400_000L;
+
     private final Repository repo;
     private final P2PService p2p;
-    private final SessionState ss;
-    private final HLC.Clock clock;
+
+    @Value("${app.recurring.catchup.days:366}")
+    private int catchupDays = 366;
+    @Value("${app.recurring.max.sleep.hours:6}")
+    private int maxSleepHours = 6;
+
     private ScheduledExecutorService ses;
+    private ScheduledFuture<?> wake;
 
-    public RecurringService(Repository repo, P2PService p2p, SessionState ss) {
+    // prochaine occurrence de chaque règle active, la plus proche en tête (thread du scheduler uniquement)
+    private final PriorityQueue<Next> queue = new PriorityQueue<>(Comparator.comparing(Next::day));
+    private final Map<String, RecurringRule> rules = new HashMap<>();
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong wakes = new AtomicLong();
+    private final AtomicLong rebuilds = new AtomicLong();
+    private volatile LocalDate nextDay;
+
+    private record Next(LocalDate day, String ruleId) {
+    }
+
+    public RecurringService(Repository repo, P2PService p2p) {
         this.repo = repo;
         this.p2p = p2p;
-        this.ss = ss;
-        this.clock = new HLC.Clock(ss.userId != null ? ss.userId : UUID.randomUUID().toString());
     }
 
     public void start() {
@@ -40,49 +87,183 @@ public class RecurringService {
             t.setDaemon(true);
             return t;
         });
-        // check toutes les heures (peu coûteux)
-        ses.scheduleAtFixedRate(this::instantiateDue, 0, 1, TimeUnit.HOURS);
+        reschedule();
     }
 
-    private void instantiateDue() {
-        try {
-            final long nowMs = System.currentTimeMillis();
-            final LocalDate today = LocalDate.now();
-            final DayOfWeek dow = today.getDayOfWeek();
-            final int dom = today.getDayOfMonth();
-            final int month = today.getMonthValue();
-
-            List<RecurringRule> rules = repo.listRecurringActive();
-            for (RecurringRule r : rules) {
-                if (!isDue(r, today, dom, dow, month)) continue;
-
-                String ver = clock.tick();
-                Expense e = new Expense(
-                        UUID.randomUUID().toString(),
-                        ss.displayName != null ? ss.displayName : ss.userId,
-                        r.category(),
-                        r.amount() != null ? r.amount() : BigDecimal.ZERO,
-                        r.currency(),
-                        "[auto] " + r.name(),
-                        nowMs,
-                        false,
-                        ver,
-                        ss.userId
-                );
-                repo.upsertExpense(e);
-                p2p.broadcast(new Op(Op.Type.ADD, e));
+    /**
+     * À appeler après application d'ops (locales ou distantes) : rattrapage et nouvelle file si une règle a changé.
+     */
+    public void onOps(List<Op> ops) {
+        for (Op op : ops) {
+            if (op.type() == Op.Type.RECUR_UPSERT || op.type() == Op.Type.RECUR_DELETE) {
+                reschedule();
+                return;
             }
-        } catch (Exception ignored) {
         }
     }
 
-    private boolean isDue(RecurringRule r, LocalDate today, int dom, DayOfWeek dow, int month) {
-        if (!r.active() || r.deleted()) return false;
-        return switch (r.period()) {
-            case "MONTHLY" -> r.day() == dom;
-            case "WEEKLY" -> r.weekday() == dow.getValue();
-            case "YEARLY" -> (r.month() == month && r.day() == dom);
-            default -> false;
-        };
+    /**
+     * Relit les règles, rattrape les occurrences manquées et reconstruit la file (sur le thread du scheduler).
+     */
+    public void reschedule() {
+        if (ses == null) return;
+        ses.execute(() -> safely(this::rebuild));
+    }
+
+    private void rebuild() {
+        rebuilds.incrementAndGet();
+        LocalDate today = LocalDate.now();
+        Map<String, Long> marks = repo.recurringWatermarks();
+        rules.clear();
+        queue.clear();
+        for (RecurringRule r : repo.listRecurringActive()) {
+            if (!r.active() || r.deleted()) continue;
+            rules.put(r.id(), r);
+            // règle jamais vue : on part d'aujourd'hui, pas de rattrapage sur un passé qu'elle ne couvrait pas
+            Long mark = marks.get(r.id());
+            LocalDate after = mark == null ? today.minusDays(1) : LocalDate.ofEpochDay(mark);
+            materialize(r, after, today);
+            enqueue(r, today);
+        }
+        arm();
+    }
+
+    private void onWake() {
+        wakes.incrementAndGet();
+        LocalDate today = LocalDate.now();
+        Map<String, Long> marks = null;
+        while (!queue.isEmpty() && !queue.peek().day().isAfter(today)) {
+            Next n = queue.poll();
+            RecurringRule r = rules.get(n.ruleId());
+            if (r == null) continue;
+            if (marks == null) marks = repo.recurringWatermarks();
+            Long mark = marks.get(r.id());
+            materialize(r, mark == null ? n.day().minusDays(1) : LocalDate.ofEpochDay(mark), today);
+            enqueue(r, today);
+        }
+        arm();
+    }
+
+    private void enqueue(RecurringRule r, LocalDate today) {
+        LocalDate next = next(r, today.plusDays(1));
+        if (next != null) queue.add(new Next(next, r.id()));
+    }
+
+    // dort jusqu'au début du jour de la prochaine occurrence (borné : veille d'ordinateur, changement d'heure)
+    private void arm() {
+        if (wake != null) wake.cancel(false);
+        Next head = queue.peek();
+        nextDay = head == null ? null : head.day();
+        long maxMs = TimeUnit.HOURS.toMillis(Math.max(1, maxSleepHours));
+        long delay = maxMs;
+        if (head != null) {
+            long until = Duration.between(LocalDateTime.now(), head.day().atStartOfDay()).toMillis();
+            delay = Math.max(0, Math.min(maxMs, until));
+        }
+        wake = ses.schedule(() -> safely(this::onWake), delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Crée les occurrences de {@code r} dans ]after, today] et avance son filigrane ; renvoie le nombre créé.
+     */
+    int materialize(RecurringRule r, LocalDate after, LocalDate today) {
+        LocalDate floor = today.minusDays(Math.max(0, catchupDays));
+        List<Op> ops = new ArrayList<>();
+        LocalDate last = null;
+        for (LocalDate d = next(r, after.plusDays(1)); d != null && !d.isAfter(today); d = next(r, d.plusDays(1))) {
+            if (!d.isBefore(floor)) ops.add(new Op(Op.Type.ADD, instance(r, d)));
+            last = d;
+        }
+        if (last == null) return 0;
+        // écriture puis filigrane : une coupure entre les deux refait les mêmes lignes, sans effet
+        if (!ops.isEmpty()) repo.applyBatch(ops);
+        repo.saveRecurringWatermark(r.id(), last.toEpochDay());
+        if (!ops.isEmpty()) p2p.broadcastAll(ops);
+        created.addAndGet(ops.size());
+        return ops.size();
+    }
+
+    static Expense instance(RecurringRule r, LocalDate day) {
+        long ts = day.atTime(12, 0).toInstant(ZoneOffset.UTC).toEpochMilli();
+        long rule = HLC.packed(r.ver());
+        long dayBefore = HLC.pack((day.toEpochDay() - 1) * DAY_MS, 0);
+        // max(veille, version de la règle) ; à la veille, le nœud porte la version de la règle : deux états de la
+        // règle ne donnent jamais la même version d'occurrence, et le plus récent l'emporte
+        String ver = rule > dayBefore ? r.ver() : HLC.format(dayBefore, instanceNode(r.ver(), rule));
+        return new Expense(
+                instanceId(r.id(), day),
+                "auto",
+                r.category(),
+                r.amount() != null ? r.amount() : BigDecimal.ZERO,
+                r.currency(),
+                "[auto] " + r.name(),
+                ts,
+                false,
+                ver,
+                r.author()
+        );
+    }
+
+    // "recurring.<HLC packé de la règle, hex sur 16 chiffres>.<nœud de la règle>" : ordre lexical = ordre des règles
+    private static String instanceNode(String ruleVer, long rule) {
+        if (rule == HLC.INVALID) return NODE;
+        return NODE + "." + String.format("%016x", rule) + "." + HLC.parse(ruleVer).node;
+    }
+
+    /**
+     * Id de la dépense de l'occurrence {@code day} de la règle : identique sur tous les pairs.
+     */
+    public static String instanceId(String ruleId, LocalDate day) {
+        return UUID.nameUUIDFromBytes(("recurring:" + ruleId + ":" + day).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    /**
+     * Première occurrence de {@code r} à partir de {@code from} inclus, null si la règle est invalide.
+     * Un jour au-delà de la fin du mois tombe sur le dernier jour (31 -> 30 avril, 29 février -> 28).
+     */
+    static LocalDate next(RecurringRule r, LocalDate from) {
+        String period = r.period() == null ? "" : r.period().toUpperCase(Locale.ROOT);
+        switch (period) {
+            case "WEEKLY" -> {
+                if (r.weekday() < 1 || r.weekday() > 7) return null;
+                return from.with(TemporalAdjusters.nextOrSame(DayOfWeek.of(r.weekday())));
+            }
+            case "MONTHLY" -> {
+                if (r.day() < 1 || r.day() > 31) return null;
+                YearMonth ym = YearMonth.from(from);
+                LocalDate d = clamp(ym, r.day());
+                return d.isBefore(from) ? clamp(ym.plusMonths(1), r.day()) : d;
+            }
+            case "YEARLY" -> {
+                if (r.month() < 1 || r.month() > 12 || r.day() < 1 || r.day() > 31) return null;
+                LocalDate d = clamp(YearMonth.of(from.getYear(), r.month()), r.day());
+                return d.isBefore(from) ? clamp(YearMonth.of(from.getYear() + 1, r.month()), r.day()) : d;
+            }
+            default -> {
+                return null;
+            }
+        }
+    }
+
+    private static LocalDate clamp(YearMonth ym, int day) {
+        return ym.atDay(Math.min(day, ym.lengthOfMonth()));
+    }
+
+    private void safely(Runnable task) {
+        try {
+            task.run();
+        } catch (Exception e) {
+            System.err.println("Failed to materialize recurring expenses: " + e.getMessage());
+            arm(); // retenté au prochain réveil
+        }
+    }
+
+    public Map<String, Object> stats() {
+        LocalDate n = nextDay;
+        return Map.of(
+                "created", created.get(),
+                "wakes", wakes.get(),
+                "rebuilds", rebuilds.get(),
+                "next", n == null ? "" : n.toString());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,159 @@
+package com.titiplex.budget.core.rules;
+
+import com.titiplex.budget.core.crdt.HlcClock;
+import com.titiplex.budget.core.crypto.SessionState;
+import com.titiplex.budget.core.model.Expense;
+import com.titiplex.budget.core.model.Op;
+import com.titiplex.budget.core.p2p.P2PService;
+import com.titiplex.budget.core.store.Repository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Réapplique les règles aux dépenses existantes (job en arrière-plan, un à la fois).
+ * <p>
+ * La table est parcourue par pages (keyset sur l'id) : au plus une page en mémoire, quelle que soit la taille.
+ * Chaque page est évaluée en parallèle sur un ForkJoinPool dédié avec un instantané des règles compilées,
+ * puis seule la catégorie des lignes modifiées est écrite, en une transaction (nouvelle version HLC, LWW habituel),
+ * si elles n'ont pas changé depuis la lecture de la page, et diffusée en lot. L'annulation est prise en compte entre deux pages : les pages déjà écrites restent.
+ */
+@Service
+public class RecategorizeService {
+    public enum State {IDLE, RUNNING, DONE, CANCELLED, FAILED}
+
+    private final Repository repo;
+    private final RuleEngine rules;
+    private final P2PService p2p;
+    private final SessionState ss;
+    private final HlcClock clock;
+
+    @Value("${app.rules.recategorize.chunk:2000}")
+    private int chunkSize = 2000;
+    @Value("${app.rules.recategorize.parallelism:0}")
+    private int parallelism;          // 0 => nombre de cœurs
+
+    private volatile State state = State.IDLE;
+    private volatile boolean cancelRequested;
+    private volatile String error;
+    private volatile long total;
+    private final AtomicLong scanned = new AtomicLong();
+    private final AtomicLong changed = new AtomicLong();
+    private volatile long startedNanos;
+    private volatile long elapsedMs;
+
+    public RecategorizeService(Repository repo, RuleEngine rules, P2PService p2p, SessionState ss, HlcClock clock) {
+        this.repo = repo;
+        this.rules = rules;
+        this.p2p = p2p;
+        this.ss = ss;
+        this.clock = clock;
+    }
+
+    /**
+     * Lance le job ; {@code overwrite} = false : seules les dépenses sans catégorie sont touchées.
+     * {@code onChunk} reçoit les dépenses modifiées de chaque page (rafraîchissement UI). false si un job tourne déjà.
+     */
+    public synchronized boolean start(boolean overwrite, Consumer<List<Expense>> onChunk) {
+        if (state == State.RUNNING) return false;
+        state = State.RUNNING;
+        cancelRequested = false;
+        error = null;
+        scanned.set(0);
+        changed.set(0);
+        elapsedMs = 0;
+        startedNanos = System.nanoTime();
+        Thread t = new Thread(() -> run(overwrite, onChunk), "recategorize");
+        t.setDaemon(true);
+        t.start();
+        return true;
+    }
+
+    public void cancel() {
+        cancelRequested = true;
+    }
+
+    private void run(boolean overwrite, Consumer<List<Expense>> onChunk) {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            var size = repo.tableSize("expenses");
+            total = size.rows() - size.tombstones();
+            RuleEngine.Compiled compiled = rules.snapshot();
+            String author = ss.userId;
+            String after = null;
+            while (!cancelRequested) {
+                List<Expense> page = repo.listActiveAfter(after, Math.max(1, chunkSize));
+                if (page.isEmpty()) break;
+                after = page.get(page.size() - 1).id();
+
+                // évaluation parallèle : le stream tourne dans le pool dédié, pas dans le pool commun
+                List<Expense> updated = pool.submit(() -> page.parallelStream()
+                        .map(e -> recategorized(compiled, e, overwrite))
+                        .filter(Objects::nonNull)
+                        .toList()).get();
+
+                if (!updated.isEmpty()) {
+                    // relues et versionnées sous le verrou d'écriture : une ligne éditée depuis la lecture de la
+                    // page garde son édition (et sa catégorie), seule la catégorie des autres change
+                    List<Expense> versioned = repo.setCategoriesIfUnchanged(updated, clock::tick, author);
+                    if (!versioned.isEmpty()) {
+                        List<Op> ops = new ArrayList<>(versioned.size());
+                        for (Expense v : versioned) ops.add(new Op(Op.Type.ADD, v));
+                        p2p.broadcastAll(ops);
+                        changed.addAndGet(versioned.size());
+                        if (onChunk != null) onChunk.accept(versioned);
+                    }
+                }
+                scanned.addAndGet(page.size());
+                elapsedMs = (System.nanoTime() - startedNanos) / 1_000_000;
+                if (page.size() < chunkSize) break;
+            }
+            state = cancelRequested ? State.CANCELLED : State.DONE;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            state = State.CANCELLED;
+        } catch (ExecutionException | RuntimeException e) {
+            error = e.getMessage();
+            state = State.FAILED;
+            System.err.println("Failed to recategorize expenses: " + e.getMessage());
+        } finally {
+            elapsedMs = (System.nanoTime() - startedNanos) / 1_000_000;
+            pool.shutdown();
+        }
+    }
+
+    // null si la dépense ne change pas
+    private static Expense recategorized(RuleEngine.Compiled compiled, Expense e, boolean overwrite) {
+        boolean blank = e.category() == null || e.category().isBlank();
+        if (!overwrite && !blank) return null;
+        String cat = compiled.categorize(e);
+        if (cat == null || cat.equals(e.category())) return null;
+        return new Expense(e.id(), e.who(), cat, e.amount(), e.currency(), e.note(), e.ts(), e.deleted(), e.ver(), e.author());
+    }
+
+    /**
+     * Avancement : état, lignes parcourues / total, lignes modifiées, durée et débit.
+     */
+    public Map<String, Object> status() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("state", state.name());
+        m.put("total", total);
+        m.put("scanned", scanned.get());
+        m.put("changed", changed.get());
+        m.put("percent", total <= 0 ? 0 : Math.min(100, scanned.get() * 100 / total));
+        m.put("elapsedMs", elapsedMs);
+        m.put("rowsPerSec", elapsedMs == 0 ? 0 : scanned.get() * 1000 / elapsedMs);
+        if (error != null) m.put("error", error);
+        return m;
+    }
+}
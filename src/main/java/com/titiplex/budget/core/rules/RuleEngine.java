@@ -0,0 +1,363 @@
+package com.titiplex.budget.core.rules;
+
+import com.titiplex.budget.core.model.Expense;
+import com.titiplex.budget.core.model.Op;
+import com.titiplex.budget.core.model.Rule;
+import com.titiplex.budget.core.store.Repository;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Catégorisation automatique : les règles actives sont compilées une fois (automate d'Aho–Corasick pour les
+ * SUBSTRING, Pattern précompilés pour les REGEX), puis recompilées paresseusement après une op de règle.
+ * <p>
+ * Même sémantique que l'ancien parcours règle par règle : texte = "note who", SUBSTRING insensible à la casse,
+ * REGEX sur le texte entier ({@code matches}), et la première règle dans l'ordre de listRulesActive() l'emporte.
+ */
+@Service
+public class RuleEngine {
+    private final Repository repo;
+    private final AtomicLong generation = new AtomicLong();
+    private volatile Compiled compiled;
+    private final AtomicLong builds = new AtomicLong();
+    private volatile long lastBuildMs;
+
+    public RuleEngine(Repository repo) {
+        this.repo = repo;
+    }
+
+    /**
+     * Catégorie de la première règle qui matche, null sinon.
+     */
+    public String categorize(Expense e) {
+        return current().categorize(e);
+    }
+
+    /**
+     * Version en lot : un seul accès à l'automate courant, une catégorie (ou null) par dépense, dans l'ordre.
+     */
+    public List<String> categorize(List<Expense> expenses) {
+        Compiled c = current();
+        List<String> out = new ArrayList<>(expenses.size());
+        for (Expense e : expenses) out.add(c.categorize(e));
+        return out;
+    }
+
+    /**
+     * À appeler après application d'ops (locales ou distantes) : recompilation au prochain usage si une règle a changé.
+     */
+    public void onOps(List<Op> ops) {
+        for (Op op : ops) {
+            if (op.type() == Op.Type.RULE_UPSERT || op.type() == Op.Type.RULE_DELETE) {
+                invalidate();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Règles compilées courantes (recompilées si besoin) : instantané cohérent pour un traitement long.
+     */
+    public Compiled snapshot() {
+        return current();
+    }
+
+    public void invalidate() {
+        generation.incrementAndGet();
+    }
+
+    public Map<String, Object> stats() {
+        Compiled c = compiled;
+        return Map.of(
+                "rules", c == null ? 0 : c.rules.length,
+                "states", c == null ? 0 : c.states(),
+                "builds", builds.get(),
+                "lastBuildMs", lastBuildMs);
+    }
+
+    // Une règle modifiée pendant la compilation incrémente la génération : l'automate publié est alors déjà périmé
+    private Compiled current() {
+        Compiled c = compiled;
+        if (c != null && c.generation == generation.get()) return c;
+        synchronized (this) {
+            c = compiled;
+            long g = generation.get();
+            if (c != null && c.generation == g) return c;
+            long t0 = System.nanoTime();
+            c = compile(repo.listRulesActive(), g);
+            lastBuildMs = (System.nanoTime() - t0) / 1_000_000;
+            builds.incrementAndGet();
+            compiled = c;
+            return c;
+        }
+    }
+
+    static String haystack(Expense e) {
+        return (e.note() == null ? "" : e.note()) + " " + (e.who() == null ? "" : e.who());
+    }
+
+    public static Compiled compile(List<Rule> rules) {
+        return compile(rules, 0);
+    }
+
+    private static Compiled compile(List<Rule> rules, long generation) {
+        return new Compiled(rules.stream().filter(r -> r != null && r.active() && r.kind() != null && r.pattern() != null)
+                .toArray(Rule[]::new), generation);
+    }
+
+    /**
+     * Jeu de règles compilé, immuable (partagé entre threads sans verrou).
+     */
+    public static final class Compiled {
+        private static final int NONE = Integer.MAX_VALUE;
+
+        final long generation;
+        final Rule[] rules;
+        private final Automaton substrings;  // SUBSTRING en minuscules -> indice de règle
+        private final int alwaysIdx;         // SUBSTRING "" : matche tout
+        private final int[] regexIdx;        // indices (ordre des règles) des REGEX valides
+        private final Pattern[] regex;
+        private final boolean[] prefiltered; // REGEX dont un littéral obligatoire est dans `literals`
+        private final Automaton literals;    // littéral obligatoire (casse d'origine) -> position dans regex[]
+
+        Compiled(Rule[] rules, long generation) {
+            this.generation = generation;
+            this.rules = rules;
+
+            List<String> subs = new ArrayList<>();
+            List<Integer> subIdx = new ArrayList<>();
+            List<Integer> ri = new ArrayList<>();
+            List<Pattern> rp = new ArrayList<>();
+            List<String> lits = new ArrayList<>();
+            List<Integer> litIdx = new ArrayList<>();
+            int always = NONE;
+            for (int i = 0; i < rules.length; i++) {
+                Rule r = rules[i];
+                switch (r.kind()) {
+                    case "SUBSTRING" -> {
+                        String p = r.pattern().toLowerCase();
+                        if (p.isEmpty()) always = Math.min(always, i);
+                        else {
+                            subs.add(p);
+                            subIdx.add(i);
+                        }
+                    }
+                    case "REGEX" -> {
+                        try {
+                            rp.add(Pattern.compile(r.pattern()));
+                            ri.add(i);
+                            String lit = requiredLiteral(r.pattern());
+                            if (lit != null) {
+                                lits.add(lit);
+                                litIdx.add(rp.size() - 1);
+                            }
+                        } catch (PatternSyntaxException ignore) {
+                            // motif invalide : la règle ne matche jamais (comme avant)
+                        }
+                    }
+                    default -> {
+                    }
+                }
+            }
+            this.alwaysIdx = always;
+            this.substrings = new Automaton(subs, subIdx, false);
+            this.regexIdx = ri.stream().mapToInt(Integer::intValue).toArray();
+            this.regex = rp.toArray(Pattern[]::new);
+            this.prefiltered = new boolean[regex.length];
+            litIdx.forEach(k -> prefiltered[k] = true);
+            this.literals = new Automaton(lits, litIdx, true);
+        }
+
+        public String categorize(Expense e) {
+            Rule r = match(haystack(e));
+            return r == null ? null : r.category();
+        }
+
+        /**
+         * Première règle (dans l'ordre) qui matche le texte, null sinon.
+         */
+        public Rule match(String hay) {
+            int best = alwaysIdx;
+            if (substrings.states > 1 && best > 0) best = Math.min(best, substrings.scanMin(hay.toLowerCase()));
+            if (regex.length == 0 || regexIdx[0] >= best) return best == NONE ? null : rules[best];
+
+            // REGEX : seulement celles qui passeraient avant la meilleure SUBSTRING trouvée,
+            // et dont le littéral obligatoire est présent dans le texte
+            boolean[] candidate = literals.states > 1 ? literals.scanAll(hay, new boolean[regex.length]) : null;
+            for (int k = 0; k < regexIdx.length && regexIdx[k] < best; k++) {
+                if (prefiltered[k] && !candidate[k]) continue;
+                if (regex[k].matcher(hay).matches()) {
+                    best = regexIdx[k];
+                    break;
+                }
+            }
+            return best == NONE ? null : rules[best];
+        }
+
+        public int states() {
+            return substrings.states + literals.states;
+        }
+    }
+
+    /**
+     * Plus long littéral que tout texte reconnu par {@code regex} contient forcément, null si on ne sait pas le dire
+     * (alternatives, drapeaux, \Q...\E, échappement lettre/chiffre comme \x41 ou \p{L} dont les opérandes ne sont
+     * pas du texte, classe imbriquée) ou s'il est trop court pour filtrer utilement. Volontairement prudent :
+     * un littéral manqué coûte un matches() de plus, un littéral faux ferait rater une règle.
+     */
+    static String requiredLiteral(String regex) {
+        if (regex.indexOf('|') >= 0 || regex.contains("(?") || regex.contains("\\Q")) return null;
+        String best = "";
+        StringBuilder run = new StringBuilder();
+        int depth = 0;
+        for (int i = 0, n = regex.length(); i < n; i++) {
+            char c = regex.charAt(i);
+            char literal = 0;
+            if (c == '\\' && i + 1 < n) {
+                char e = regex.charAt(++i);
+                if (Character.isLetterOrDigit(e)) return null;
+                literal = e; // \. \( ... : caractère littéral
+            } else if (c == '[') {
+                // classe de caractères : on la saute entière (un ']' en tête ou un '[' dedans : on renonce)
+                if (i + 1 < n && regex.charAt(i + 1) == '^') i++;
+                if (i + 1 < n && regex.charAt(i + 1) == ']') return null;
+                for (i++; i < n && regex.charAt(i) != ']'; i++) {
+                    if (regex.charAt(i) == '[') return null;
+                    if (regex.charAt(i) == '\\') i++;
+                }
+            } else if (c == '{') {
+                // quantificateur {n,m} : son contenu n'est pas littéral
+                while (i + 1 < n && regex.charAt(i) != '}') i++;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (".^$".indexOf(c) < 0 && "?*+{".indexOf(c) < 0) {
+                literal = c;
+            }
+            // un quantificateur rend le caractère précédent optionnel (?, *, {0) ou répété (+) : fin du run
+            char q = i + 1 < n ? regex.charAt(i + 1) : 0;
+            boolean optional = q == '?' || q == '*' || q == '{';
+            if (literal != 0 && depth == 0 && !optional) {
+                run.append(literal);
+                if (q == '+') literal = 0;
+            }
+            if (literal == 0 || depth != 0 || optional) {
+                if (run.length() > best.length()) best = run.toString();
+                run.setLength(0);
+            }
+        }
+        if (run.length() > best.length()) best = run.toString();
+        return best.length() >= 3 ? best : null;
+    }
+
+    /**
+     * Automate d'Aho–Corasick complet (une transition par état et classe de caractère, pas de remontée d'échecs
+     * au scan). Alphabet compressé : seuls les caractères présents dans les motifs ont une classe.
+     */
+    private static final class Automaton {
+        private final int[] classes;   // caractère -> classe (0 = absent des motifs), indexé jusqu'au plus grand caractère
+        private final int width;       // taille d'alphabet + 1
+        private final int[] delta;     // delta[état * width + classe]
+        private final int[] minOut;    // plus petite valeur reconnue en arrivant dans l'état (NONE sinon)
+        private final int[][] outs;    // toutes les valeurs reconnues (si demandé)
+        final int states;
+
+        Automaton(List<String> patterns, List<Integer> values, boolean keepAll) {
+            StringBuilder chars = new StringBuilder();
+            patterns.forEach(chars::append);
+            int[] alphabet = chars.chars().distinct().sorted().toArray();
+            this.classes = new int[alphabet.length == 0 ? 0 : alphabet[alphabet.length - 1] + 1];
+            for (int k = 0; k < alphabet.length; k++) classes[alphabet[k]] = k + 1;
+            this.width = alphabet.length + 1;
+
+            // trie
+            List<int[]> next = new ArrayList<>();
+            List<List<Integer>> own = new ArrayList<>();
+            next.add(new int[width]);
+            own.add(new ArrayList<>());
+            for (int k = 0; k < patterns.size(); k++) {
+                int s = 0;
+                for (char ch : patterns.get(k).toCharArray()) {
+                    int cls = classOf(ch);
+                    if (next.get(s)[cls] == 0) {
+                        next.get(s)[cls] = next.size();
+                        next.add(new int[width]);
+                        own.add(new ArrayList<>());
+                    }
+                    s = next.get(s)[cls];
+                }
+                own.get(s).add(values.get(k));
+            }
+            this.states = next.size();
+
+            // liens d'échec en BFS -> automate complet, sorties propagées le long des suffixes
+            int[] fail = new int[states];
+            this.delta = new int[states * width];
+            this.minOut = new int[states];
+            this.outs = keepAll ? new int[states][] : null;
+            for (int s = 0; s < states; s++) {
+                minOut[s] = own.get(s).stream().mapToInt(Integer::intValue).min().orElse(Compiled.NONE);
+            }
+            if (keepAll) outs[0] = new int[0];
+            int[] queue = new int[states];
+            int head = 0, tail = 0;
+            for (int cls = 1; cls < width; cls++) {
+                int t = next.get(0)[cls];
+                delta[cls] = t;
+                if (t != 0) queue[tail++] = t;
+            }
+            while (head < tail) {
+                int s = queue[head++];
+                minOut[s] = Math.min(minOut[s], minOut[fail[s]]);
+                if (keepAll) {
+                    int[] inherited = outs[fail[s]];
+                    int[] o = new int[own.get(s).size() + inherited.length];
+                    int j = 0;
+                    for (int v : own.get(s)) o[j++] = v;
+                    System.arraycopy(inherited, 0, o, j, inherited.length);
+                    outs[s] = o;
+                }
+                for (int cls = 1; cls < width; cls++) {
+                    int t = next.get(s)[cls];
+                    if (t != 0) {
+                        fail[t] = delta[fail[s] * width + cls];
+                        delta[s * width + cls] = t;
+                        queue[tail++] = t;
+                    } else {
+                        delta[s * width + cls] = delta[fail[s] * width + cls];
+                    }
+                }
+            }
+        }
+
+        private int classOf(char ch) {
+            return ch < classes.length ? classes[ch] : 0;
+        }
+
+        int scanMin(String text) {
+            int best = Compiled.NONE;
+            int s = 0;
+            for (int i = 0, n = text.length(); i < n; i++) {
+                s = delta[s * width + classOf(text.charAt(i))];
+                if (minOut[s] < best) best = minOut[s];
+            }
+            return best;
+        }
+
+        boolean[] scanAll(String text, boolean[] seen) {
+            int s = 0;
+            for (int i = 0, n = text.length(); i < n; i++) {
+                s = delta[s * width + classOf(text.charAt(i))];
+                for (int v : outs[s]) seen[v] = true;
+            }
+            return seen;
+        }
+    }
+}
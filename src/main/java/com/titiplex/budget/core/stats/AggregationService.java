@@ -0,0 +1,105 @@
+package com.titiplex.budget.core.stats;
+
+import com.titiplex.budget.core.fx.FxConverter;
+import com.titiplex.budget.core.model.Goal;
+import com.titiplex.budget.core.store.ExpenseTotals;
+import com.titiplex.budget.core.store.MonthTotal;
+import com.titiplex.budget.core.store.Repository;
+import org.springframework.stereotype.Service;
+
+import java.time.YearMonth;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Agrégations mensuelles pour les graphiques et la table des budgets.
+ * <p>
+ * Les totaux par (mois, catégorie, devise d'origine) sont matérialisés par le repository et mis à jour à chaque
+ * op appliquée ; ici on ne fait que les convertir dans la devise demandée ({@link FxConverter}, en lot) : une requête
+ * coûte O(catégories × devises) du mois, quel que soit le nombre de dépenses.
+ */
+@Service
+public class AggregationService {
+    private final Repository repo;
+    private final FxConverter fx;
+
+    public AggregationService(Repository repo, FxConverter fx) {
+        this.repo = repo;
+        this.fx = fx;
+    }
+
+    /**
+     * Dépensé par catégorie sur le mois ("YYYY-MM"), converti en {@code ccy}.
+     */
+    public Map<String, Double> spentByCategory(String month, String ccy) {
+        String m = month(month);
+        List<MonthTotal> totals = repo.monthTotals(m, m);
+        long[] conv = convertAll(totals, ccy);
+        Map<String, Long> acc = new LinkedHashMap<>();
+        for (int i = 0; i < conv.length; i++) acc.merge(totals.get(i).category(), conv[i], Long::sum);
+        return toAmounts(acc);
+    }
+
+    /**
+     * Total de chaque mois de {@code fromMonth} à {@code toMonth} inclus (mois sans dépense à 0), converti en {@code ccy}.
+     */
+    public Map<String, Double> totalsByMonth(String fromMonth, String toMonth, String ccy) {
+        YearMonth from = YearMonth.parse(month(fromMonth));
+        YearMonth to = YearMonth.parse(month(toMonth));
+        Map<String, Long> acc = new LinkedHashMap<>();
+        for (YearMonth k = from; !k.isAfter(to); k = k.plusMonths(1)) acc.put(k.toString(), 0L);
+        List<MonthTotal> totals = repo.monthTotals(from.toString(), to.toString());
+        long[] conv = convertAll(totals, ccy);
+        for (int i = 0; i < conv.length; i++) acc.merge(totals.get(i).month(), conv[i], Long::sum);
+        return toAmounts(acc);
+    }
+
+    /**
+     * Épargné par objectif actif (dépenses marquées {@code #[goal:<id>]}), converti en {@code ccy} ; 0 si aucune.
+     * Contrairement aux totaux mensuels, parcourt les dépenses : à appeler quand la liste des objectifs s'affiche.
+     */
+    public Map<String, Double> goalContributions(String ccy) {
+        List<String> ids = repo.listGoalsActive().stream().map(Goal::id).toList();
+        Map<String, ExpenseTotals> byGoal = repo.goalContributions(ids);
+        Map<String, Long> acc = new LinkedHashMap<>();
+        for (String id : ids) {
+            ExpenseTotals t = byGoal.get(id);
+            long sum = 0;
+            if (t != null) {
+                long[] units = t.unitsByCurrency().values().stream().mapToLong(Long::longValue).toArray();
+                for (long v : fx.convertAll(units, t.unitsByCurrency().keySet().toArray(String[]::new), ccy)) sum += v;
+            }
+            acc.put(id, sum);
+        }
+        return toAmounts(acc);
+    }
+
+    /**
+     * Buckets bruts (devise d'origine) entre deux mois inclus.
+     */
+    public List<MonthTotal> buckets(String fromMonth, String toMonth) {
+        return repo.monthTotals(month(fromMonth), month(toMonth));
+    }
+
+    // null ou vide => mois courant
+    private static String month(String m) {
+        return m == null || m.isBlank() ? YearMonth.now().toString() : YearMonth.parse(m.trim()).toString();
+    }
+
+    private long[] convertAll(List<MonthTotal> totals, String ccy) {
+        long[] units = new long[totals.size()];
+        String[] currencies = new String[totals.size()];
+        for (int i = 0; i < units.length; i++) {
+            units[i] = totals.get(i).units();
+            currencies[i] = totals.get(i).currency();
+        }
+        return fx.convertAll(units, currencies, ccy);
+    }
+
+    private static Map<String, Double> toAmounts(Map<String, Long> units) {
+        Map<String, Double> out = new LinkedHashMap<>();
+        units.forEach((k, v) -> out.put(k, (double) v / MonthTotal.SCALE));
+        return out;
+    }
+}
@@ -0,0 +1,217 @@
+package com.titiplex.budget.core.stats;
+
+import com.titiplex.budget.core.fx.FxConverter;
+import com.titiplex.budget.core.model.CategoryBudget;
+import com.titiplex.budget.core.store.MonthTotal;
+import com.titiplex.budget.core.store.Repository;
+import com.titiplex.budget.core.store.RolloverMonth;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reports de budget d'un mois sur l'autre, par catégorie, sur toute l'historique.
+ * <p>
+ * Pour chaque mois m de la chaîne (du premier mois avec dépense au mois courant) :
+ * prévu(m) = plafond + report(m), report(m) = f(prévu(m-1) - dépensé(m-1)) selon le mode
+ * (NONE : 0, SURPLUS : excédent seul, DEFICIT : déficit seul, BOTH : les deux), borné par le plafond de report
+ * s'il est > 0. Tout est calculé dans la devise du budget, en unités entières.
+ * <p>
+ * Les mois sont stockés ; les triggers du repository marquent, par catégorie, le plus ancien mois touché et on ne
+ * recalcule que ce suffixe, en repartant du mois stocké qui le précède. Une dépense ancienne modifiée coûte donc
+ * O(mois restants) et rien ne relit les dépenses : les dépensés viennent des totaux mensuels matérialisés.
+ */
+@Service
+public class RolloverService {
+    private final Repository repo;
+    private final FxConverter fx;
+
+    private String refreshedMonth;
+    private long fxGeneration = -1;
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong monthsComputed = new AtomicLong();
+    private volatile long lastRefreshMs;
+
+    public RolloverService(Repository repo, FxConverter fx) {
+        this.repo = repo;
+        this.fx = fx;
+    }
+
+    /**
+     * Recalcule les suffixes marqués ; renvoie le nombre de mois recalculés.
+     */
+    public synchronized int refresh() {
+        String now = YearMonth.now().toString();
+        if (!now.equals(refreshedMonth)) {
+            // nouveau mois (ou démarrage) : prolonge chaque chaîne ; un trou se rattrape par un recalcul complet
+            String prev = YearMonth.now().minusMonths(1).toString();
+            for (CategoryBudget b : repo.listBudgetsActive()) repo.markRolloverDirty(b.category(), prev);
+            refreshedMonth = now;
+        }
+        FxConverter.Matrix rates = fx.snapshot();
+        if (fx.generation() != fxGeneration) {
+            // nouveaux taux : les dépensés convertis changent partout (les triggers FX ont pu passer avant la matrice)
+            for (CategoryBudget b : repo.listBudgetsActive()) repo.markRolloverDirty(b.category(), "");
+            fxGeneration = fx.generation();
+        }
+        Map<String, String> dirty = repo.takeRolloverDirty();
+        if (dirty.isEmpty()) return 0;
+
+        long t0 = System.nanoTime();
+        Map<String, CategoryBudget> budgets = new HashMap<>();
+        for (CategoryBudget b : repo.listBudgetsActive()) budgets.put(b.category(), b);
+        int months = 0;
+        for (var d : dirty.entrySet()) {
+            try {
+                months += recompute(d.getKey(), d.getValue(), budgets.get(d.getKey()), rates, YearMonth.now());
+            } catch (RuntimeException e) {
+                repo.markRolloverDirty(d.getKey(), d.getValue()); // retenté au prochain appel
+                System.err.println("Failed to compute rollover for " + d.getKey() + ": " + e.getMessage());
+            }
+        }
+        refreshes.incrementAndGet();
+        monthsComputed.addAndGet(months);
+        lastRefreshMs = (System.nanoTime() - t0) / 1_000_000;
+        return months;
+    }
+
+    private int recompute(String category, String from, CategoryBudget b, FxConverter.Matrix rates, YearMonth now) {
+        if (b == null) {
+            // budget supprimé (ou catégorie sans budget) : plus de chaîne
+            repo.saveRollovers(category, "", "", "", List.of());
+            return 0;
+        }
+        String ccy = b.currency();
+        TreeMap<String, Long> spent = new TreeMap<>();
+        for (MonthTotal t : repo.monthTotalsOf(category)) {
+            spent.merge(t.month(), rates.convert(t.units(), t.currency(), ccy), Long::sum);
+        }
+        YearMonth first = spent.isEmpty() ? now : min(YearMonth.parse(spent.firstKey()), now);
+        YearMonth last = spent.isEmpty() ? now : max(YearMonth.parse(spent.lastKey()), now);
+
+        YearMonth start = from == null || from.isEmpty() ? first : max(first, YearMonth.parse(from));
+        long limit = units(b.monthlyLimit());
+        long cap = units(b.rolloverCap());
+        String mode = b.rolloverMode() == null ? "NONE" : b.rolloverMode().toUpperCase(Locale.ROOT);
+        long carried = 0;
+        if (start.isAfter(first)) {
+            String before = start.minusMonths(1).toString();
+            List<RolloverMonth> prev = repo.rollovers(category, before, before);
+            if (prev.isEmpty()) start = first; // chaîne incomplète : on repart du début
+            else carried = carry(mode, cap, prev.get(0).left());
+        }
+
+        List<RolloverMonth> rows = new ArrayList<>();
+        for (YearMonth m = start; !m.isAfter(last); m = m.plusMonths(1)) {
+            String key = m.toString();
+            long s = spent.getOrDefault(key, 0L);
+            long planned = limit + carried;
+            rows.add(new RolloverMonth(category, key, ccy, s, carried, planned));
+            carried = carry(mode, cap, planned - s);
+        }
+        repo.saveRollovers(category, start.toString(), first.toString(), last.toString(), rows);
+        return rows.size();
+    }
+
+    // report vers le mois suivant ; diff > 0 : excédent, < 0 : déficit
+    static long carry(String mode, long cap, long diff) {
+        long out = switch (mode) {
+            case "SURPLUS" -> Math.max(0, diff);
+            case "DEFICIT" -> Math.min(0, diff);
+            case "BOTH" -> diff;
+            default -> 0;
+        };
+        if (cap > 0) out = Math.max(-cap, Math.min(cap, out));
+        return out;
+    }
+
+    private static long units(BigDecimal v) {
+        return v == null ? 0 : v.movePointRight(4).setScale(0, RoundingMode.HALF_EVEN).longValue();
+    }
+
+    private static YearMonth min(YearMonth a, YearMonth b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    private static YearMonth max(YearMonth a, YearMonth b) {
+        return a.isAfter(b) ? a : b;
+    }
+
+    // ---------- Requêtes ----------
+
+    /**
+     * État de chaque budget actif pour le mois ("YYYY-MM", vide = courant), converti en {@code ccy} :
+     * catégorie -> {limit, carried, planned, spent, left}. Hors de la chaîne calculée, le report vaut 0.
+     */
+    public Map<String, Map<String, Double>> month(String month, String ccy) {
+        refresh();
+        String m = month == null || month.isBlank() ? YearMonth.now().toString() : YearMonth.parse(month.trim()).toString();
+        Map<String, RolloverMonth> rows = new HashMap<>();
+        for (RolloverMonth r : repo.rollovers(null, m, m)) rows.put(r.category(), r);
+        FxConverter.Matrix rates = fx.snapshot();
+        Map<String, Map<String, Double>> out = new LinkedHashMap<>();
+        for (CategoryBudget b : repo.listBudgetsActive()) {
+            RolloverMonth r = rows.get(b.category());
+            if (r == null) {
+                long limit = units(b.monthlyLimit());
+                r = new RolloverMonth(b.category(), m, b.currency(), 0, 0, limit);
+            }
+            out.put(b.category(), view(r, units(b.monthlyLimit()), ccy, rates));
+        }
+        return out;
+    }
+
+    /**
+     * Chaîne d'une catégorie entre deux mois inclus (null = non borné), convertie en {@code ccy} : mois -> état.
+     */
+    public Map<String, Map<String, Double>> history(String category, String fromMonth, String toMonth, String ccy) {
+        refresh();
+        CategoryBudget budget = null;
+        for (CategoryBudget b : repo.listBudgetsActive()) {
+            if (b.category().equals(category)) budget = b;
+        }
+        Map<String, Map<String, Double>> out = new LinkedHashMap<>();
+        if (budget == null) return out;
+        long limit = units(budget.monthlyLimit());
+        FxConverter.Matrix rates = fx.snapshot();
+        for (RolloverMonth r : repo.rollovers(category, blankToNull(fromMonth), blankToNull(toMonth))) {
+            out.put(r.month(), view(r, limit, ccy, rates));
+        }
+        return out;
+    }
+
+    private static String blankToNull(String s) {
+        return s == null || s.isBlank() ? null : s.trim();
+    }
+
+    private static Map<String, Double> view(RolloverMonth r, long limit, String ccy, FxConverter.Matrix rates) {
+        Map<String, Double> v = new LinkedHashMap<>();
+        v.put("limit", conv(limit, r.currency(), ccy, rates));
+        v.put("carried", conv(r.carried(), r.currency(), ccy, rates));
+        v.put("planned", conv(r.planned(), r.currency(), ccy, rates));
+        v.put("spent", conv(r.spent(), r.currency(), ccy, rates));
+        v.put("left", conv(r.left(), r.currency(), ccy, rates));
+        return v;
+    }
+
+    private static double conv(long units, String from, String to, FxConverter.Matrix rates) {
+        return (double) rates.convert(units, from, to) / MonthTotal.SCALE;
+    }
+
+    public Map<String, Object> stats() {
+        return Map.of(
+                "refreshes", refreshes.get(),
+                "monthsComputed", monthsComputed.get(),
+                "lastRefreshMs", lastRefreshMs);
+    }
+}
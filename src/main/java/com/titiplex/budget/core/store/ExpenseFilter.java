@@ -0,0 +1,23 @@
+package com.titiplex.budget.core.store;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Filtre des dépenses actives, critères absents = non filtrés : horodatage dans [{@code fromTs}, {@code toTs}[,
+ * catégorie parmi {@code categories} ("" = sans catégorie), auteur parmi {@code who}, devise d'origine parmi
+ * {@code currencies} et montant d'origine (dans sa devise) entre {@code minAmount} et {@code maxAmount} inclus.
+ * Les listes vides valent null, les devises sont mises en majuscules.
+ */
+public record ExpenseFilter(Long fromTs, Long toTs, List<String> categories, List<String> who,
+                           List<String> currencies, BigDecimal minAmount, BigDecimal maxAmount) {
+    public static final ExpenseFilter ALL = new ExpenseFilter(null, null, null, null, null, null, null);
+
+    public ExpenseFilter {
+        categories = categories == null || categories.isEmpty() ? null : List.copyOf(categories);
+        who = who == null || who.isEmpty() ? null : List.copyOf(who);
+        currencies = currencies == null || currencies.isEmpty() ? null
+                : currencies.stream().map(c -> c.trim().toUpperCase(Locale.ROOT)).toList();
+    }
+}
@@ -0,0 +1,12 @@
+package com.titiplex.budget.core.store;
+
+import com.titiplex.budget.core.model.Expense;
+
+import java.util.List;
+
+/**
+ * Page de dépenses par (ts, id) décroissants ; {@code next} = curseur de la page suivante (null = dernière page),
+ * {@code totals} = totaux des lignes de la page.
+ */
+public record ExpensePage(List<Expense> items, String next, ExpenseTotals totals) {
+}
@@ -0,0 +1,30 @@
+package com.titiplex.budget.core.store;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+
+/**
+ * Filtre des dépenses tel que saisi dans l'UI (JSON) : jours en heure locale, bornes incluses ; champ absent ou
+ * vide = non filtré.
+ */
+public record ExpenseQuery(
+        @JsonProperty("from") String from,               // "yyyy-MM-dd"
+        @JsonProperty("to") String to,
+        @JsonProperty("categories") List<String> categories,
+        @JsonProperty("who") List<String> who,
+        @JsonProperty("currencies") List<String> currencies,
+        @JsonProperty("minAmount") BigDecimal minAmount, // montant d'origine, dans sa devise
+        @JsonProperty("maxAmount") BigDecimal maxAmount
+) {
+    public ExpenseFilter toFilter(ZoneId zone) {
+        Long fromTs = from == null || from.isBlank() ? null
+                : LocalDate.parse(from.trim()).atStartOfDay(zone).toInstant().toEpochMilli();
+        Long toTs = to == null || to.isBlank() ? null
+                : LocalDate.parse(to.trim()).plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        return new ExpenseFilter(fromTs, toTs, categories, who, currencies, minAmount, maxAmount);
+    }
+}
@@ -0,0 +1,9 @@
+package com.titiplex.budget.core.store;
+
+import java.util.Map;
+
+/**
+ * Nombre de dépenses et somme par devise d'origine (majuscules), en 1/{@link MonthTotal#SCALE} d'unité.
+ */
+public record ExpenseTotals(long count, Map<String, Long> unitsByCurrency) {
+}
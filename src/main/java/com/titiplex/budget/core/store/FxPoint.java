@@ -0,0 +1,7 @@
+package com.titiplex.budget.core.store;
+
+/**
+ * Taux historique d'une devise pour un jour ({@code day} = jour epoch UTC), même convention "par base" que fx_rates.
+ */
+public record FxPoint(String code, int day, double perBase) {
+}
@@ -0,0 +1,15 @@
+package com.titiplex.budget.core.store;
+
+import java.math.BigDecimal;
+
+/**
+ * Total des dépenses actives d'un mois ("YYYY-MM", heure locale) pour une catégorie et une devise d'origine.
+ * {@code units} = somme des montants en 1/{@link #SCALE} d'unité (entier, pas d'erreur d'arrondi cumulée).
+ */
+public record MonthTotal(String month, String category, String currency, long units, long count) {
+    public static final long SCALE = 10_000;
+
+    public BigDecimal amount() {
+        return BigDecimal.valueOf(units, 4);
+    }
+}
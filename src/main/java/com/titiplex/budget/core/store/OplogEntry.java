@@ -0,0 +1,9 @@
+package com.titiplex.budget.core.store;
+
+import com.titiplex.budget.core.model.Op;
+
+/**
+ * Entrée du journal d'ops : numéro de séquence local, HLC packé de l'op et op appliquée (payload typé).
+ */
+public record OplogEntry(long seq, long hlc, Op op) {
+}
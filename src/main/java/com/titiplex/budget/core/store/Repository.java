@@ -2,7 +2,11 @@ package com.titiplex.budget.core.store;
 
 import com.titiplex.budget.core.model.*;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 public interface Repository {
     // Expenses
@@ -16,6 +20,79 @@ public interface Repository {
 
     List<Expense> listActive();
 
+    /**
+     * Dépenses actives d'id strictement supérieur à {@code afterId} (null = début), par id croissant :
+     * parcours de la table par pages sans la charger entière.
+     */
+    List<Expense> listActiveAfter(String afterId, int limit);
+
+    /**
+     * Dépenses actives du filtre par (ts, id) croissants, lues par pages de {@code page} lignes sous le verrou puis
+     * passées au sink hors verrou (reprise keyset après la dernière vue) ; renvoie le nombre de lignes.
+     */
+    long scanExpenses(ExpenseFilter filter, int page, Consumer<Expense> sink);
+
+    /**
+     * Au plus {@code limit} dépenses actives du filtre, des plus récentes aux plus anciennes, après le curseur
+     * {@code after} (renvoyé par la page précédente ; null = première page), avec les totaux de la page.
+     */
+    ExpensePage queryExpenses(ExpenseFilter filter, String after, int limit);
+
+    long countExpenses(ExpenseFilter filter);
+
+    /**
+     * Nombre et sommes par devise de toutes les dépenses actives du filtre (parcourt toutes les lignes retenues).
+     */
+    ExpenseTotals totalsOf(ExpenseFilter filter);
+
+    /**
+     * Devises (en majuscules) des dépenses actives, lues dans les totaux matérialisés.
+     */
+    List<String> expenseCurrencies();
+
+    /**
+     * Contributions à chaque objectif : dépenses actives dont la note contient {@code #[goal:<id>]}, par id
+     * d'objectif (absent si aucune). Parcourt les dépenses.
+     */
+    Map<String, ExpenseTotals> goalContributions(List<String> goalIds);
+
+    /**
+     * Totaux matérialisés des dépenses actives par (mois, catégorie, devise), mois "YYYY-MM" entre les bornes
+     * incluses (null = non borné). Tenus à jour à chaque écriture, sans relire les dépenses.
+     */
+    List<MonthTotal> monthTotals(String fromMonth, String toMonth);
+
+    /**
+     * Recalcule les totaux depuis la table des dépenses. {@code init()} le fait déjà quand le fuseau horaire
+     * des mois a changé depuis la dernière ouverture.
+     */
+    void rebuildMonthTotals();
+
+    /**
+     * Totaux mensuels d'une catégorie, toutes devises, par mois croissant.
+     */
+    List<MonthTotal> monthTotalsOf(String category);
+
+    // Reports de budget : chaîne matérialisée par (catégorie, mois), recalculée par suffixe
+
+    /**
+     * Catégories à recalculer -> plus ancien mois touché ('' = toute la chaîne), puis remise à zéro.
+     */
+    Map<String, String> takeRolloverDirty();
+
+    void markRolloverDirty(String category, String fromMonth);
+
+    /**
+     * Mois stockés entre deux bornes incluses (null = non borné) ; {@code category} null = toutes les catégories.
+     */
+    List<RolloverMonth> rollovers(String category, String fromMonth, String toMonth);
+
+    /**
+     * Remplace, en une transaction, les mois de {@code category} à partir de {@code fromMonth} par {@code rows}
+     * et supprime ceux hors de [{@code firstMonth}, {@code lastMonth}].
+     */
+    void saveRollovers(String category, String fromMonth, String firstMonth, String lastMonth, List<RolloverMonth> rows);
+
     // Budgets
     void upsertBudget(CategoryBudget b);
 
@@ -30,6 +107,20 @@ public interface Repository {
 
     List<FxRate> listFxActive();
 
+    // Historique FX : un taux par (devise, jour), local
+
+    /**
+     * Insère ou remplace les points (par tranches, une transaction chacune) ; renvoie le nombre écrit.
+     */
+    int saveFxHistory(List<FxPoint> points);
+
+    /**
+     * Tous les points, par devise puis jour croissant, sans les charger en liste.
+     */
+    void scanFxHistory(Consumer<FxPoint> sink);
+
+    long fxHistorySize();
+
     // Rules
     void upsertRule(Rule r);
 
@@ -44,7 +135,101 @@ public interface Repository {
 
     List<RecurringRule> listRecurringActive();
 
+    /**
+     * Par règle, jour epoch de la dernière occurrence matérialisée par ce pair (local, non synchronisé).
+     */
+    Map<String, Long> recurringWatermarks();
+
+    void saveRecurringWatermark(String ruleId, long epochDay);
+
     void upsertGoal(Goal g);
     void tombstoneGoal(String id, String ver, String author);
     List<Goal> listGoalsActive();
-}
\ No newline at end of file
+
+    /**
+     * Applique un lot d'ops (tous types confondus) dans une seule transaction, avec résolution LWW.
+     */
+    void applyBatch(List<Op> ops);
+
+    /**
+     * Pose la catégorie de chaque dépense de {@code changed} seulement si sa version en base est encore
+     * {@code ver()} (celle lue par l'appelant) : la ligne est relue sous le verrou, reçoit la version
+     * {@code stamp.get()} et passe comme un ADD (journal, totaux). Renvoie les lignes écrites, à diffuser ;
+     * celles modifiées entre-temps sont laissées telles quelles.
+     */
+    List<Expense> setCategoriesIfUnchanged(List<Expense> changed, Supplier<String> stamp, String author);
+
+    // Sync (anti-entropie) : tables "expenses", "budgets", "fx_rates", "rules", "recurring", "goals"
+    List<RowVersion> listVersions(String table);
+
+    /**
+     * Versions des lignes de HLC packé dans [fromHlc, toHlc) (index sur hlc) ; fromHlc = 0 inclut les versions illisibles.
+     */
+    List<RowVersion> listVersions(String table, long fromHlc, long toHlc);
+
+    /**
+     * Lignes complètes (tombstones compris) pour les clés données ; records du package model.
+     */
+    List<Object> loadRows(String table, Collection<String> keys);
+
+    // Oplog : journal append-only des ops effectivement appliquées (gagnantes en LWW), séquence locale croissante
+
+    /**
+     * Au plus {@code limit} entrées de séquence strictement supérieure à {@code afterSeq}, dans l'ordre.
+     */
+    List<OplogEntry> readOplog(long afterSeq, int limit);
+
+    /**
+     * Dernière séquence attribuée (0 si journal vide).
+     */
+    long oplogHead();
+
+    long oplogSize();
+
+    /**
+     * Le pair a appliqué notre journal jusqu'à {@code seq}, son horloge étant à {@code hlc} (jamais en recul).
+     */
+    void ackOplog(String peer, long seq, long hlc);
+
+    /**
+     * Plus petite séquence acquittée par les pairs qui ont acquitté depuis {@code sinceMs} ; la tête si aucun.
+     */
+    long oplogAckedByAll(long sinceMs);
+
+    /**
+     * Plus petit HLC acquitté par les pairs connus depuis {@code sinceMs} (0 = tous, y compris ceux qui n'ont encore
+     * rien acquitté) ; 0 si aucun.
+     */
+    long oplogStableHlc(long sinceMs);
+
+    /**
+     * Position de lecture dans le journal du pair (ce qu'on a déjà tiré de lui).
+     */
+    long oplogPulled(String peer);
+
+    void saveOplogPulled(String peer, long seq);
+
+    /**
+     * Replie le journal jusqu'à {@code uptoSeq} : supprime les ops dont la clé a une op plus récente.
+     * Renvoie le nombre d'entrées supprimées.
+     */
+    int compactOplog(long uptoSeq);
+
+    // GC des tombstones
+
+    /**
+     * Supprime physiquement au plus {@code limit} tombstones de {@code table} de HLC < {@code beforeHlc} et dont
+     * aucune op du journal n'est postérieure à {@code stableSeq} (donc reçues par tous), avec leurs entrées de journal.
+     * Les tombstones de dépenses à id dérivé du contenu (import de relevé) sont conservées.
+     * Une transaction courte par appel ; renvoie le nombre de lignes supprimées.
+     */
+    int purgeTombstones(String table, long beforeHlc, long stableSeq, int limit);
+
+    TableSize tableSize(String table);
+
+    /**
+     * Statistiques du planificateur (ANALYZE) sur les dépenses, recalculées si absentes ou si le nombre de lignes
+     * actives a varié de plus d'un quart depuis ; renvoie true si recalculées.
+     */
+    boolean refreshQueryStats();
+}
@@ -0,0 +1,29 @@
+package com.titiplex.budget.core.store;
+
+import java.math.BigDecimal;
+
+/**
+ * Mois d'une chaîne de report de budget, dans la devise du budget, en 1/{@link MonthTotal#SCALE} d'unité :
+ * dépensé, report reçu du mois précédent (négatif = déficit) et prévu (plafond + report).
+ */
+public record RolloverMonth(String category, String month, String currency, long spent, long carried, long planned) {
+
+    public BigDecimal spentAmount() {
+        return BigDecimal.valueOf(spent, 4);
+    }
+
+    public BigDecimal carriedAmount() {
+        return BigDecimal.valueOf(carried, 4);
+    }
+
+    public BigDecimal plannedAmount() {
+        return BigDecimal.valueOf(planned, 4);
+    }
+
+    /**
+     * Reste du mois (prévu - dépensé) : base du report vers le mois suivant.
+     */
+    public long left() {
+        return planned - spent;
+    }
+}
@@ -0,0 +1,7 @@
+package com.titiplex.budget.core.store;
+
+/**
+ * Version légère d'une ligne (clé métier + HLC + auteur), utilisée pour les digests de synchro.
+ */
+public record RowVersion(String key, String ver, String author) {
+}
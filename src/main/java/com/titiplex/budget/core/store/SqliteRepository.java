@@ -1,26 +1,56 @@
 package com.titiplex.budget.core.store;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.titiplex.budget.core.crdt.HLC;
 import com.titiplex.budget.core.model.*;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.*;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
+/**
+ * Stockage SQLite (une connexion partagée).
+ * <p>
+ * WAL + pragmas adaptés à une appli desktop, statements préparés mis en cache, et upserts LWW en une
+ * seule requête : la comparaison de versions est faite dans le SQL sur la colonne INTEGER {@code hlc}
+ * (HLC packé) au lieu d'un SELECT puis d'un INSERT. Les accès sont sérialisés sur l'instance (statements partagés).
+ */
 @Repository
 public class SqliteRepository implements com.titiplex.budget.core.store.Repository {
 
     private final Connection conn;
+    private final Map<String, PreparedStatement> stmts = new HashMap<>();
+    private final ObjectMapper mapper = new ObjectMapper();
+    // fuseau des buckets mensuels, figé pour la durée du processus (celui de l'UI)
+    private final ZoneId zone = ZoneId.systemDefault();
 
     public SqliteRepository() {
+        this(Path.of(System.getProperty("user.home"), ".budget-p2p", "db.sqlite"));
+    }
+
+    public SqliteRepository(Path dbFile) {
         try {
-            String dir = System.getProperty("user.home") + "/.budget-p2p";
-            Files.createDirectories(Path.of(dir));
-            conn = DriverManager.getConnection("jdbc:sqlite:" + dir + "/db.sqlite");
+            if (dbFile.getParent() != null) Files.createDirectories(dbFile.getParent());
+            conn = DriverManager.getConnection("jdbc:sqlite:" + dbFile);
             init();
         } catch (Exception e) {
             throw new RuntimeException(e);
@@ -28,8 +58,16 @@ public class SqliteRepository implements com.titiplex.budget.core.store.Reposito
     }
 
     @Override
-    public void init() {
+    public synchronized void init() {
+        registerFunctions();
         try (Statement st = conn.createStatement()) {
+            st.execute("PRAGMA journal_mode=WAL");
+            st.execute("PRAGMA synchronous=NORMAL");     // sûr en WAL, évite un fsync par commit
+            st.execute("PRAGMA temp_store=MEMORY");
+            st.execute("PRAGMA cache_size=-16000");      // ~16 Mo
+            st.execute("PRAGMA mmap_size=268435456");    // 256 Mo
+            st.execute("PRAGMA busy_timeout=5000");
+
             st.executeUpdate("CREATE TABLE IF NOT EXISTS expenses (" +
                     "id TEXT PRIMARY KEY," +
                     "who TEXT," +
@@ -103,56 +141,152 @@ public class SqliteRepository implements com.titiplex.budget.core.store.Reposito
                 st.executeUpdate("ALTER TABLE budgets ADD COLUMN rollover_cap TEXT DEFAULT '0'");
             } catch (SQLException ignore) {
             }
+
+            // Dépenses, liste et requêtes filtrées : index partiels sur les seules lignes actives, chacun déjà trié par
+            // (ts, id) pour la pagination keyset ; les expressions sont celles de where(). Pas d'index sur l'auteur
+            // ni la devise : peu de valeurs, chacune fréquente, le parcours par ts les filtre au passage (chaque
+            // index coûte ~15 % sur les écritures en masse). Le choix entre catégorie, plage de montants et ts
+            // repose sur ANALYZE : voir refreshQueryStats
+            st.executeUpdate("DROP INDEX IF EXISTS idx_expenses_deleted_ts");
+            st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_expenses_live_ts ON expenses(ts, id) WHERE deleted=0");
+            st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_expenses_live_cat ON expenses(COALESCE(category,''), ts, id) WHERE deleted=0");
+            st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_expenses_live_amount ON expenses(CAST(amount AS REAL), ts, id) WHERE deleted=0");
+            // Index alignés sur les listX() (filtre deleted/active + tri)
+            st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_budgets_deleted_cat ON budgets(deleted, category)");
+            st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_rules_active_name ON rules(deleted, active, name)");
+            st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_recurring_active_name ON recurring(deleted, active, name)");
+            st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_goals_deleted_name ON goals(deleted, name)");
+
+            // Journal d'ops : seq locale (jamais réattribuée), HLC packé, op sérialisée ; (tbl, key, seq) pour le repliement
+            st.executeUpdate("CREATE TABLE IF NOT EXISTS oplog (" +
+                    "seq INTEGER PRIMARY KEY AUTOINCREMENT," +
+                    "hlc INTEGER," +
+                    "type TEXT NOT NULL," +
+                    "tbl TEXT NOT NULL," +
+                    "key TEXT NOT NULL," +
+                    "body TEXT NOT NULL" +
+                    ")");
+            st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_oplog_key ON oplog(tbl, key, seq)");
+            // Par pair : jusqu'où il a acquitté notre journal, et jusqu'où on a tiré le sien
+            st.executeUpdate("CREATE TABLE IF NOT EXISTS oplog_peers (" +
+                    "peer TEXT PRIMARY KEY," +
+                    "acked_seq INTEGER DEFAULT 0," +
+                    "acked_at INTEGER DEFAULT 0," +
+                    "pulled_seq INTEGER DEFAULT 0" +
+                    ")");
+            try {
+                st.executeUpdate("ALTER TABLE oplog_peers ADD COLUMN acked_hlc INTEGER DEFAULT 0");
+            } catch (SQLException ignore) {
+            }
+
+            initMonthTotals(st);
+            initRollover(st);
+
+            // Historique des taux (local, non synchronisé : chaque pair le remplit depuis la BCE)
+            st.executeUpdate("CREATE TABLE IF NOT EXISTS fx_history (" +
+                    "code TEXT NOT NULL," +
+                    "day INTEGER NOT NULL," +
+                    "per_base REAL NOT NULL," +
+                    "PRIMARY KEY(code, day)" +
+                    ") WITHOUT ROWID");
+
+            // Dernière occurrence matérialisée par règle récurrente (local)
+            st.executeUpdate("CREATE TABLE IF NOT EXISTS recurring_watermark (" +
+                    "rule_id TEXT PRIMARY KEY," +
+                    "last_day INTEGER NOT NULL" +
+                    ") WITHOUT ROWID");
+
+            // Version HLC packée (INTEGER) à côté de la chaîne : comparaisons LWW et requêtes par version indexées
+            for (String table : SYNC_KEYS.keySet()) {
+                try {
+                    st.executeUpdate("ALTER TABLE " + table + " ADD COLUMN hlc INTEGER");
+                } catch (SQLException ignore) {
+                }
+                st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_" + table + "_hlc ON " + table + "(hlc)");
+                // index partiel : le GC ne parcourt que les tombstones, par âge
+                st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_" + table + "_tomb ON " + table + "(hlc) WHERE deleted=1");
+                // migration des lignes écrites avant la colonne (no-op ensuite : index sur hlc IS NULL)
+                st.executeUpdate("UPDATE " + table + " SET hlc=hlc_pack(ver) WHERE hlc IS NULL AND ver IS NOT NULL");
+            }
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * hlc_pack(ver) = HLC packé de la chaîne "wall:logic:node", NULL si illisible (migration des anciennes lignes).
+     * month_of(ts) = mois "YYYY-MM" de l'instant (ms) dans {@link #zone}, et non dans le fuseau C du processus.
+     */
+    private void registerFunctions() {
+        try {
+            org.sqlite.Function.create(conn, "hlc_pack", new org.sqlite.Function() {
+                @Override
+                protected void xFunc() throws SQLException {
+                    long p = HLC.packed(value_text(0));
+                    if (p == HLC.INVALID) result();
+                    else result(p);
+                }
+            }, 1, org.sqlite.Function.FLAG_DETERMINISTIC);
+            org.sqlite.Function.create(conn, "month_of", new org.sqlite.Function() {
+                @Override
+                protected void xFunc() throws SQLException {
+                    if (value_text(0) == null) result();
+                    else result(YearMonth.from(Instant.ofEpochMilli(value_long(0)).atZone(zone)).toString());
+                }
+            }, 1, org.sqlite.Function.FLAG_DETERMINISTIC);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Statement préparé une fois par SQL puis réutilisé (appelant synchronisé sur this).
+     */
+    private PreparedStatement ps(String sql) throws SQLException {
+        PreparedStatement ps = stmts.get(sql);
+        if (ps == null) {
+            ps = conn.prepareStatement(sql);
+            stmts.put(sql, ps);
+        }
+        return ps;
+    }
+
     // ---------- Expenses ----------
+    private static final String UPSERT_EXPENSE =
+            "INSERT INTO expenses(id,who,category,amount,currency,note,ts,deleted,ver,author,hlc) " +
+                    "VALUES(?,?,?,?,?,?,?,?,?,?,?) " +
+                    "ON CONFLICT(id) DO UPDATE SET who=excluded.who, category=excluded.category, amount=excluded.amount," +
+                    "currency=excluded.currency, note=excluded.note, ts=excluded.ts, deleted=excluded.deleted, ver=excluded.ver, author=excluded.author, " +
+                    "hlc=excluded.hlc WHERE " + newerThan("expenses");
+
     @Override
-    public void upsertExpense(Expense e) {
-        Expense cur = findById(e.id());
-        if (cur == null || compareVer(e.ver(), cur.ver(), e.author(), cur.author()) > 0) {
-            try (PreparedStatement ps = conn.prepareStatement(
-                    "INSERT INTO expenses(id,who,category,amount,currency,note,ts,deleted,ver,author) " +
-                            "VALUES(?,?,?,?,?,?,?,?,?,?) " +
-                            "ON CONFLICT(id) DO UPDATE SET who=excluded.who, category=excluded.category, amount=excluded.amount," +
-                            "currency=excluded.currency, note=excluded.note, ts=excluded.ts, deleted=excluded.deleted, ver=excluded.ver, author=excluded.author")) {
-                ps.setString(1, e.id());
-                ps.setString(2, e.who());
-                ps.setString(3, e.category());
-                ps.setString(4, e.amount().toPlainString());
-                ps.setString(5, e.currency());
-                ps.setString(6, e.note());
-                ps.setLong(7, e.ts());
-                ps.setInt(8, e.deleted() ? 1 : 0);
-                ps.setString(9, e.ver());
-                ps.setString(10, e.author());
-                ps.executeUpdate();
-            } catch (SQLException ex) {
-                throw new RuntimeException(ex);
-            }
-        }
-    }
-
-    @Override
-    public void tombstone(String id, String ver, String author) {
-        Expense cur = findById(id);
-        if (cur == null || compareVer(ver, cur.ver(), author, cur.author()) > 0) {
-            try (PreparedStatement ps = conn.prepareStatement("UPDATE expenses SET deleted=1, ver=?, author=? WHERE id=?")) {
-                ps.setString(1, ver);
-                ps.setString(2, author);
-                ps.setString(3, id);
-                ps.executeUpdate();
-            } catch (SQLException e) {
-                throw new RuntimeException(e);
-            }
-        }
+    public synchronized void upsertExpense(Expense e) {
+        applyBatch(List.of(new Op(Op.Type.ADD, e)));
+    }
+
+    private static void bindExpense(PreparedStatement ps, Expense e) throws SQLException {
+        ps.setString(1, e.id());
+        ps.setString(2, e.who());
+        ps.setString(3, e.category());
+        ps.setString(4, e.amount().toPlainString());
+        ps.setString(5, e.currency());
+        ps.setString(6, e.note());
+        ps.setLong(7, e.ts());
+        ps.setInt(8, e.deleted() ? 1 : 0);
+        ps.setString(9, e.ver());
+        ps.setString(10, e.author());
+        bindHlc(ps, 11, e.ver());
+    }
+
+    @Override
+    public synchronized void tombstone(String id, String ver, String author) {
+        applyBatch(List.of(new Op(Op.Type.DELETE, new Expense(id, null, null, null, null, null, 0, true, ver, author))));
     }
 
     @Override
-    public Expense findById(String id) {
-        try (PreparedStatement ps = conn.prepareStatement("SELECT * FROM expenses WHERE id=?")) {
+    public synchronized Expense findById(String id) {
+        try {
+            PreparedStatement ps = ps("SELECT * FROM expenses WHERE id=?");
             ps.setString(1, id);
             try (ResultSet rs = ps.executeQuery()) {
                 if (rs.next()) return mapExpense(rs);
@@ -164,9 +298,25 @@ public class SqliteRepository implements com.titiplex.budget.core.store.Reposito
     }
 
     @Override
-    public List<Expense> listActive() {
-        try (PreparedStatement ps = conn.prepareStatement("SELECT * FROM expenses WHERE deleted=0 ORDER BY ts DESC")) {
+    public synchronized List<Expense> listActive() {
+        try (ResultSet rs = ps("SELECT * FROM expenses WHERE deleted=0 ORDER BY ts DESC").executeQuery()) {
             List<Expense> out = new ArrayList<>();
+            while (rs.next()) out.add(mapExpense(rs));
+            return out;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public synchronized List<Expense> listActiveAfter(String afterId, int limit) {
+        try {
+            // keyset sur la clé primaire : chaque page est une recherche d'index, pas un OFFSET.
+            // "+deleted" écarte les index partiels (deleted=0) triés par ts, sinon SQLite trie toute la table à chaque page.
+            PreparedStatement ps = ps("SELECT * FROM expenses WHERE id > ? AND +deleted=0 ORDER BY id LIMIT ?");
+            ps.setString(1, afterId == null ? "" : afterId);
+            ps.setInt(2, limit);
+            List<Expense> out = new ArrayList<>(Math.min(limit, 4096));
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) out.add(mapExpense(rs));
             }
@@ -176,6 +326,198 @@ public class SqliteRepository implements com.titiplex.budget.core.store.Reposito
         }
     }
 
+    // ---------- Requêtes filtrées ----------
+    // Seuls les critères renseignés entrent dans le SQL (un statement préparé par combinaison, en nombre borné) :
+    // "catégorie = ?" permet à SQLite de parcourir idx_expenses_live_cat déjà trié par (ts, id), alors qu'un
+    // "? IS NULL OR ..." générique l'obligerait à filtrer toute la table. Une seule valeur -> égalité,
+    // plusieurs -> IN sur un tableau JSON. Paramètres liés dans le même ordre par bindFilter.
+    private static String where(ExpenseFilter f) {
+        StringBuilder b = new StringBuilder("deleted=0");
+        if (f.fromTs() != null) b.append(" AND ts >= ?");
+        if (f.toTs() != null) b.append(" AND ts < ?");
+        in(b, "COALESCE(category,'')", f.categories());
+        in(b, "who", f.who());
+        in(b, "upper(COALESCE(currency,''))", f.currencies());
+        if (f.minAmount() != null) b.append(" AND CAST(amount AS REAL) >= ?");
+        if (f.maxAmount() != null) b.append(" AND CAST(amount AS REAL) <= ?");
+        return b.toString();
+    }
+
+    private static void in(StringBuilder b, String column, List<String> values) {
+        if (values == null) return;
+        b.append(" AND ").append(column).append(values.size() == 1 ? " = ?" : " IN (SELECT value FROM json_each(?))");
+    }
+
+    // lie les paramètres de where(f) à partir de l'indice 1 ; renvoie l'indice suivant
+    private int bindFilter(PreparedStatement ps, ExpenseFilter f) throws SQLException {
+        int i = 1;
+        if (f.fromTs() != null) ps.setLong(i++, f.fromTs());
+        if (f.toTs() != null) ps.setLong(i++, f.toTs());
+        for (List<String> values : List.of(
+                f.categories() == null ? List.<String>of() : f.categories(),
+                f.who() == null ? List.<String>of() : f.who(),
+                f.currencies() == null ? List.<String>of() : f.currencies())) {
+            if (values.isEmpty()) continue;
+            if (values.size() == 1) {
+                ps.setString(i++, values.get(0));
+            } else {
+                try {
+                    ps.setString(i++, mapper.writeValueAsString(values));
+                } catch (JsonProcessingException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+        if (f.minAmount() != null) ps.setDouble(i++, f.minAmount().doubleValue());
+        if (f.maxAmount() != null) ps.setDouble(i++, f.maxAmount().doubleValue());
+        return i;
+    }
+
+    @Override
+    public long scanExpenses(ExpenseFilter filter, int page, Consumer<Expense> sink) {
+        String sql = "SELECT * FROM expenses WHERE " + where(filter) + " AND (ts, id) > (?, ?) ORDER BY ts, id LIMIT ?";
+        int limit = Math.max(1, page);
+        long afterTs = Long.MIN_VALUE;
+        String afterId = "";
+        long total = 0;
+        List<Expense> buf = new ArrayList<>(Math.min(limit, 4096));
+        while (true) {
+            buf.clear();
+            // une page par prise du verrou ; la reprise (ts, id) > dernière vue est une recherche d'index, pas un OFFSET
+            synchronized (this) {
+                try {
+                    PreparedStatement ps = ps(sql);
+                    int i = bindFilter(ps, filter);
+                    ps.setLong(i++, afterTs);
+                    ps.setString(i++, afterId);
+                    ps.setInt(i, limit);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) buf.add(mapExpense(rs));
+                    }
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            // le sink (écriture disque, conversion) tourne hors du verrou : les écrivains passent pendant ce temps
+            for (Expense e : buf) sink.accept(e);
+            int n = buf.size();
+            if (n > 0) {
+                afterTs = buf.get(n - 1).ts();
+                afterId = buf.get(n - 1).id();
+            }
+            total += n;
+            if (n < limit) return total;
+        }
+    }
+
+    @Override
+    public synchronized ExpensePage queryExpenses(ExpenseFilter filter, String after, int limit) {
+        int n = Math.max(1, limit);
+        try {
+            PreparedStatement ps = ps("SELECT * FROM expenses WHERE " + where(filter)
+                    + (after == null || after.isEmpty() ? "" : " AND (ts, id) < (?, ?)")
+                    + " ORDER BY ts DESC, id DESC LIMIT ?");
+            int i = bindFilter(ps, filter);
+            if (after != null && !after.isEmpty()) {
+                // curseur "ts:id" de la dernière ligne de la page précédente
+                int sep = after.indexOf(':');
+                if (sep < 0) throw new IllegalArgumentException("Curseur invalide : " + after);
+                ps.setLong(i++, Long.parseLong(after.substring(0, sep)));
+                ps.setString(i++, after.substring(sep + 1));
+            }
+            // une ligne de plus que demandé : dit s'il reste une page sans requête supplémentaire
+            ps.setInt(i, n + 1);
+            List<Expense> items = new ArrayList<>(Math.min(n, 1024));
+            boolean more = false;
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    if (items.size() == n) {
+                        more = true;
+                        break;
+                    }
+                    items.add(mapExpense(rs));
+                }
+            }
+            Map<String, Long> units = new TreeMap<>();
+            for (Expense e : items) {
+                String ccy = e.currency() == null ? "" : e.currency().toUpperCase(Locale.ROOT);
+                units.merge(ccy, e.amount().movePointRight(4).setScale(0, RoundingMode.HALF_UP).longValue(), Long::sum);
+            }
+            Expense last = items.isEmpty() ? null : items.get(items.size() - 1);
+            return new ExpensePage(items, more ? last.ts() + ":" + last.id() : null, new ExpenseTotals(items.size(), units));
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public synchronized long countExpenses(ExpenseFilter filter) {
+        try {
+            PreparedStatement ps = ps("SELECT COUNT(*) FROM expenses WHERE " + where(filter));
+            bindFilter(ps, filter);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public synchronized ExpenseTotals totalsOf(ExpenseFilter filter) {
+        try {
+            PreparedStatement ps = ps("SELECT upper(COALESCE(currency,'')), COUNT(*), SUM(" + unitsOf("expenses")
+                    + ") FROM expenses WHERE " + where(filter) + " GROUP BY 1");
+            bindFilter(ps, filter);
+            long count = 0;
+            Map<String, Long> units = new TreeMap<>();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    count += rs.getLong(2);
+                    units.put(rs.getString(1), rs.getLong(3));
+                }
+            }
+            return new ExpenseTotals(count, units);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public synchronized List<String> expenseCurrencies() {
+        try (ResultSet rs = ps("SELECT DISTINCT currency FROM expense_totals WHERE currency <> '' ORDER BY 1").executeQuery()) {
+            List<String> out = new ArrayList<>();
+            while (rs.next()) out.add(rs.getString(1));
+            return out;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public synchronized Map<String, ExpenseTotals> goalContributions(List<String> goalIds) {
+        Map<String, ExpenseTotals> out = new LinkedHashMap<>();
+        if (goalIds.isEmpty()) return out;
+        try {
+            PreparedStatement ps = ps("SELECT g.value, upper(COALESCE(e.currency,'')), COUNT(*), SUM(" + unitsOf("e")
+                    + ") FROM expenses e, json_each(?) g WHERE e.deleted=0 AND instr(e.note, '#[goal:') > 0 "
+                    + "AND instr(e.note, '#[goal:' || g.value || ']') > 0 GROUP BY 1, 2");
+            ps.setString(1, mapper.writeValueAsString(goalIds));
+            Map<String, Map<String, Long>> units = new LinkedHashMap<>();
+            Map<String, Long> counts = new HashMap<>();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    units.computeIfAbsent(rs.getString(1), k -> new TreeMap<>()).put(rs.getString(2), rs.getLong(4));
+                    counts.merge(rs.getString(1), rs.getLong(3), Long::sum);
+                }
+            }
+            units.forEach((id, u) -> out.put(id, new ExpenseTotals(counts.get(id), u)));
+            return out;
+        } catch (SQLException | JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     private Expense mapExpense(ResultSet rs) throws SQLException {
         return new Expense(
                 rs.getString("id"),
@@ -191,85 +533,213 @@ public class SqliteRepository implements com.titiplex.budget.core.store.Reposito
         );
     }
 
-    private int compareVer(String a, String b, String authorA, String authorB) {
-        if (b == null) return 1;
-        HLC ha = HLC.parse(a);
-        HLC hb = HLC.parse(b);
-        int c = ha.compareTo(hb);
-        if (c != 0) return c;
-        return authorA.compareTo(authorB);
+    // ---------- Agrégats mensuels ----------
+    // Clé de bucket et montant en unités entières, calculés en SQL (mêmes expressions pour triggers et reconstruction)
+    private static String monthOf(String row) {
+        return "month_of(" + row + ".ts)";
     }
 
-    // ---------- Budgets ----------
+    private static String bucketOf(String row) {
+        return monthOf(row) + ", COALESCE(" + row + ".category,''), upper(COALESCE(" + row + ".currency,''))";
+    }
+
+    private static String unitsOf(String row) {
+        return "CAST(round(CAST(" + row + ".amount AS REAL)*" + MonthTotal.SCALE + ") AS INTEGER)";
+    }
+
+    /**
+     * expense_totals : totaux matérialisés par (mois, catégorie, devise) des dépenses actives, tenus à jour par
+     * triggers dans la transaction même de l'écriture. Une op perdue en LWW ne modifie pas la ligne, donc rien ;
+     * une édition qui change de mois, de catégorie ou de devise retire l'ancien bucket et crédite le nouveau.
+     * Le fuseau des mois est noté dans expense_totals_zone : s'il a changé depuis (ou base antérieure), on
+     * reconstruit au démarrage pour que triggers et lignes stockées aient les mêmes bornes de mois.
+     */
+    private void initMonthTotals(Statement st) throws SQLException {
+        boolean existed;
+        try (ResultSet rs = st.executeQuery("SELECT 1 FROM sqlite_master WHERE type='table' AND name='expense_totals'")) {
+            existed = rs.next();
+        }
+        st.executeUpdate("CREATE TABLE IF NOT EXISTS expense_totals (" +
+                "month TEXT NOT NULL," +
+                "category TEXT NOT NULL," +
+                "currency TEXT NOT NULL," +
+                "units INTEGER NOT NULL," +
+                "n INTEGER NOT NULL," +
+                "PRIMARY KEY(month, category, currency)" +
+                ") WITHOUT ROWID");
+        st.executeUpdate("CREATE TABLE IF NOT EXISTS expense_totals_zone (zone TEXT NOT NULL)");
+
+        String add = "INSERT INTO expense_totals(month,category,currency,units,n) VALUES(" + bucketOf("NEW") + ", "
+                + unitsOf("NEW") + ", 1) ON CONFLICT(month,category,currency) DO UPDATE SET "
+                + "units=units+excluded.units, n=n+1;";
+        String where = " WHERE month=" + monthOf("OLD") + " AND category=COALESCE(OLD.category,'') "
+                + "AND currency=upper(COALESCE(OLD.currency,''))";
+        String sub = "UPDATE expense_totals SET units=units-" + unitsOf("OLD") + ", n=n-1" + where + ";"
+                + "DELETE FROM expense_totals" + where + " AND n<=0;";
+        // recréés à chaque ouverture : les anciennes bases les ont avec strftime(..., 'localtime')
+        for (String t : List.of("ins", "upd_old", "upd_new", "del")) {
+            st.executeUpdate("DROP TRIGGER IF EXISTS trg_expenses_totals_" + t);
+        }
+        st.executeUpdate("CREATE TRIGGER IF NOT EXISTS trg_expenses_totals_ins AFTER INSERT ON expenses " +
+                "WHEN NEW.deleted=0 BEGIN " + add + " END");
+        st.executeUpdate("CREATE TRIGGER IF NOT EXISTS trg_expenses_totals_upd_old AFTER UPDATE ON expenses " +
+                "WHEN OLD.deleted=0 BEGIN " + sub + " END");
+        st.executeUpdate("CREATE TRIGGER IF NOT EXISTS trg_expenses_totals_upd_new AFTER UPDATE ON expenses " +
+                "WHEN NEW.deleted=0 BEGIN " + add + " END");
+        st.executeUpdate("CREATE TRIGGER IF NOT EXISTS trg_expenses_totals_del AFTER DELETE ON expenses " +
+                "WHEN OLD.deleted=0 BEGIN " + sub + " END");
+
+        String built = null;
+        try (ResultSet rs = st.executeQuery("SELECT zone FROM expense_totals_zone")) {
+            if (rs.next()) built = rs.getString(1);
+        }
+        // base existante : remplissage initial en un seul GROUP BY ; fuseau changé : on repart de zéro
+        if (!existed) st.executeUpdate(REBUILD_TOTALS);
+        else if (!zone.getId().equals(built)) {
+            st.executeUpdate("DELETE FROM expense_totals");
+            st.executeUpdate(REBUILD_TOTALS);
+        }
+        if (!zone.getId().equals(built)) saveTotalsZone(st);
+    }
+
+    private void saveTotalsZone(Statement st) throws SQLException {
+        st.executeUpdate("DELETE FROM expense_totals_zone");
+        st.executeUpdate("INSERT INTO expense_totals_zone(zone) VALUES('" + zone.getId().replace("'", "''") + "')");
+    }
+
+    private static final String REBUILD_TOTALS =
+            "INSERT INTO expense_totals(month,category,currency,units,n) " +
+                    "SELECT " + bucketOf("e") + ", SUM(" + unitsOf("e") + "), COUNT(*) FROM expenses e " +
+                    "WHERE e.deleted=0 GROUP BY 1,2,3";
+
     @Override
-    public void upsertBudget(CategoryBudget b) {
-        try (PreparedStatement psSel = conn.prepareStatement("SELECT ver,author FROM budgets WHERE category=?")) {
-            psSel.setString(1, b.category());
-            try (ResultSet rs = psSel.executeQuery()) {
-                boolean shouldWrite = true;
-                if (rs.next())
-                    shouldWrite = compareVer(b.ver(), rs.getString("ver"), b.author(), rs.getString("author")) > 0;
-                if (shouldWrite) {
-                    String sql = "INSERT INTO budgets(id,category,monthly_limit,currency,deleted,ver,author) " +
-                            "VALUES(?,?,?,?,?,?,?) " +
-                            "ON CONFLICT(category) DO UPDATE SET monthly_limit=excluded.monthly_limit, currency=excluded.currency, " +
-                            "deleted=excluded.deleted, ver=excluded.ver, author=excluded.author";
-                    try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                        ps.setString(1, b.id());
-                        ps.setString(2, b.category());
-                        ps.setString(3, b.monthlyLimit().toPlainString());
-                        ps.setString(4, b.currency());
-                        ps.setInt(5, b.deleted() ? 1 : 0);
-                        ps.setString(6, b.ver());
-                        ps.setString(7, b.author());
-                        ps.executeUpdate();
-                    }
-                }
+    public synchronized List<MonthTotal> monthTotals(String fromMonth, String toMonth) {
+        try {
+            PreparedStatement ps = ps("SELECT month,category,currency,units,n FROM expense_totals " +
+                    "WHERE month >= ? AND month <= ? ORDER BY month, category, currency");
+            ps.setString(1, fromMonth == null ? "" : fromMonth);
+            ps.setString(2, toMonth == null ? "9999-99" : toMonth);
+            List<MonthTotal> out = new ArrayList<>();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) out.add(new MonthTotal(rs.getString(1), rs.getString(2), rs.getString(3),
+                        rs.getLong(4), rs.getLong(5)));
             }
+            return out;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public synchronized void rebuildMonthTotals() {
+        try (Statement st = conn.createStatement()) {
+            conn.setAutoCommit(false);
+            st.executeUpdate("DELETE FROM expense_totals");
+            st.executeUpdate(REBUILD_TOTALS);
+            saveTotalsZone(st);
+            conn.commit();
         } catch (SQLException ex) {
+            try {
+                conn.rollback();
+            } catch (SQLException ignore) {
+            }
             throw new RuntimeException(ex);
+        } finally {
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException ignore) {
+            }
         }
     }
 
+    // ---------- Reports de budget ----------
+    private static String markDirty(String category, String month) {
+        return "INSERT INTO rollover_dirty(category,from_month) VALUES(" + category + ", " + month + ") " +
+                "ON CONFLICT(category) DO UPDATE SET from_month=min(from_month, excluded.from_month);";
+    }
+
+    /**
+     * budget_rollover : chaîne de reports matérialisée par (catégorie, mois). rollover_dirty : par catégorie, le
+     * plus ancien mois à recalculer ('' = toute la chaîne), posé par triggers quand un total mensuel, un budget ou
+     * un taux change ; le service ne recalcule que le suffixe de mois concerné.
+     */
+    private void initRollover(Statement st) throws SQLException {
+        boolean existed;
+        try (ResultSet rs = st.executeQuery("SELECT 1 FROM sqlite_master WHERE type='table' AND name='budget_rollover'")) {
+            existed = rs.next();
+        }
+        st.executeUpdate("CREATE TABLE IF NOT EXISTS budget_rollover (" +
+                "category TEXT NOT NULL," +
+                "month TEXT NOT NULL," +
+                "currency TEXT," +
+                "spent INTEGER NOT NULL," +
+                "carried INTEGER NOT NULL," +
+                "planned INTEGER NOT NULL," +
+                "PRIMARY KEY(category, month)" +
+                ") WITHOUT ROWID");
+        st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_budget_rollover_month ON budget_rollover(month)");
+        st.executeUpdate("CREATE TABLE IF NOT EXISTS rollover_dirty (" +
+                "category TEXT PRIMARY KEY," +
+                "from_month TEXT NOT NULL" +
+                ") WITHOUT ROWID");
+        st.executeUpdate("CREATE INDEX IF NOT EXISTS idx_expense_totals_cat ON expense_totals(category, month)");
+
+        st.executeUpdate("CREATE TRIGGER IF NOT EXISTS trg_totals_dirty_ins AFTER INSERT ON expense_totals BEGIN " +
+                markDirty("NEW.category", "NEW.month") + " END");
+        st.executeUpdate("CREATE TRIGGER IF NOT EXISTS trg_totals_dirty_upd AFTER UPDATE ON expense_totals BEGIN " +
+                markDirty("NEW.category", "NEW.month") + " END");
+        st.executeUpdate("CREATE TRIGGER IF NOT EXISTS trg_totals_dirty_del AFTER DELETE ON expense_totals BEGIN " +
+                markDirty("OLD.category", "OLD.month") + " END");
+        // plafond, mode, plafond de report ou devise : toute la chaîne de la catégorie
+        st.executeUpdate("CREATE TRIGGER IF NOT EXISTS trg_budgets_dirty_ins AFTER INSERT ON budgets BEGIN " +
+                markDirty("NEW.category", "''") + " END");
+        st.executeUpdate("CREATE TRIGGER IF NOT EXISTS trg_budgets_dirty_upd AFTER UPDATE ON budgets BEGIN " +
+                markDirty("NEW.category", "''") + " END");
+        // un taux change : les dépenses converties dans la devise des budgets aussi
+        String allBudgets = "INSERT INTO rollover_dirty(category,from_month) SELECT category, '' FROM budgets " +
+                "WHERE deleted=0 ON CONFLICT(category) DO UPDATE SET from_month='';";
+        st.executeUpdate("CREATE TRIGGER IF NOT EXISTS trg_fx_dirty_ins AFTER INSERT ON fx_rates BEGIN " + allBudgets + " END");
+        st.executeUpdate("CREATE TRIGGER IF NOT EXISTS trg_fx_dirty_upd AFTER UPDATE ON fx_rates BEGIN " + allBudgets + " END");
+
+        if (!existed) st.executeUpdate(allBudgets);
+    }
+
     @Override
-    public void tombstoneBudget(String category, String ver, String author) {
-        try (PreparedStatement psSel = conn.prepareStatement("SELECT ver,author FROM budgets WHERE category=?")) {
-            psSel.setString(1, category);
-            try (ResultSet rs = psSel.executeQuery()) {
-                boolean shouldWrite = true;
-                if (rs.next()) shouldWrite = compareVer(ver, rs.getString("ver"), author, rs.getString("author")) > 0;
-                if (shouldWrite) {
-                    try (PreparedStatement ps = conn.prepareStatement("UPDATE budgets SET deleted=1, ver=?, author=? WHERE category=?")) {
-                        ps.setString(1, ver);
-                        ps.setString(2, author);
-                        ps.setString(3, category);
-                        ps.executeUpdate();
-                    }
-                }
+    public synchronized Map<String, String> takeRolloverDirty() {
+        Map<String, String> out = new LinkedHashMap<>();
+        try {
+            try (ResultSet rs = ps("SELECT category, from_month FROM rollover_dirty").executeQuery()) {
+                while (rs.next()) out.put(rs.getString(1), rs.getString(2));
             }
+            if (!out.isEmpty()) ps("DELETE FROM rollover_dirty").executeUpdate();
+            return out;
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
 
     @Override
-    public List<CategoryBudget> listBudgetsActive() {
-        try (PreparedStatement ps = conn.prepareStatement("SELECT * FROM budgets WHERE deleted=0 ORDER BY category ASC")) {
-            List<CategoryBudget> out = new ArrayList<>();
+    public synchronized void markRolloverDirty(String category, String fromMonth) {
+        try {
+            PreparedStatement ps = ps(markDirty("?", "?"));
+            ps.setString(1, category);
+            ps.setString(2, fromMonth == null ? "" : fromMonth);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public synchronized List<MonthTotal> monthTotalsOf(String category) {
+        try {
+            PreparedStatement ps = ps("SELECT month,category,currency,units,n FROM expense_totals " +
+                    "WHERE category=? ORDER BY month");
+            ps.setString(1, category == null ? "" : category);
+            List<MonthTotal> out = new ArrayList<>();
             try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    out.add(new CategoryBudget(
-                            rs.getString("id"),
-                            rs.getString("category"),
-                            new BigDecimal(rs.getString("monthly_limit")),
-                            rs.getString("currency"),
-                            false,
-                            rs.getString("ver"),
-                            rs.getString("author"),
-                            rs.getString("rollover_mode"),
-                            new BigDecimal(rs.getString("rollover_cap"))
-                    ));
-                }
+                while (rs.next()) out.add(new MonthTotal(rs.getString(1), rs.getString(2), rs.getString(3),
+                        rs.getLong(4), rs.getLong(5)));
             }
             return out;
         } catch (SQLException e) {
@@ -277,69 +747,233 @@ public class SqliteRepository implements com.titiplex.budget.core.store.Reposito
         }
     }
 
-    // ---------- FX ----------
     @Override
-    public void upsertFx(FxRate r) {
-        try (PreparedStatement psSel = conn.prepareStatement("SELECT ver,author FROM fx_rates WHERE code=?")) {
-            psSel.setString(1, r.code());
-            try (ResultSet rs = psSel.executeQuery()) {
-                boolean shouldWrite = true;
-                if (rs.next())
-                    shouldWrite = compareVer(r.ver(), rs.getString("ver"), r.author(), rs.getString("author")) > 0;
-                if (shouldWrite) {
-                    String sql = "INSERT INTO fx_rates(code,per_base,deleted,ver,author) VALUES(?,?,?,?,?) " +
-                            "ON CONFLICT(code) DO UPDATE SET per_base=excluded.per_base, deleted=excluded.deleted, ver=excluded.ver, author=excluded.author";
-                    try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                        ps.setString(1, r.code());
-                        ps.setString(2, r.perBase().toPlainString());
-                        ps.setInt(3, r.deleted() ? 1 : 0);
-                        ps.setString(4, r.ver());
-                        ps.setString(5, r.author());
-                        ps.executeUpdate();
-                    }
-                }
+    public synchronized List<RolloverMonth> rollovers(String category, String fromMonth, String toMonth) {
+        try {
+            PreparedStatement ps = category == null
+                    ? ps("SELECT * FROM budget_rollover WHERE month >= ?1 AND month <= ?2 ORDER BY month, category")
+                    : ps("SELECT * FROM budget_rollover WHERE category = ?3 AND month >= ?1 AND month <= ?2 ORDER BY month");
+            ps.setString(1, fromMonth == null ? "" : fromMonth);
+            ps.setString(2, toMonth == null ? "9999-99" : toMonth);
+            if (category != null) ps.setString(3, category);
+            List<RolloverMonth> out = new ArrayList<>();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) out.add(new RolloverMonth(rs.getString("category"), rs.getString("month"),
+                        rs.getString("currency"), rs.getLong("spent"), rs.getLong("carried"), rs.getLong("planned")));
+            }
+            return out;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public synchronized void saveRollovers(String category, String fromMonth, String firstMonth, String lastMonth,
+                                           List<RolloverMonth> rows) {
+        try {
+            conn.setAutoCommit(false);
+            PreparedStatement del = ps("DELETE FROM budget_rollover WHERE category=?1 AND (month >= ?2 OR month < ?3 OR month > ?4)");
+            del.setString(1, category);
+            del.setString(2, fromMonth == null ? "" : fromMonth);
+            del.setString(3, firstMonth == null ? "" : firstMonth);
+            del.setString(4, lastMonth == null ? "" : lastMonth);
+            del.executeUpdate();
+            PreparedStatement ins = ps("INSERT INTO budget_rollover(category,month,currency,spent,carried,planned) VALUES(?,?,?,?,?,?)");
+            for (RolloverMonth r : rows) {
+                ins.setString(1, r.category());
+                ins.setString(2, r.month());
+                ins.setString(3, r.currency());
+                ins.setLong(4, r.spent());
+                ins.setLong(5, r.carried());
+                ins.setLong(6, r.planned());
+                ins.addBatch();
             }
+            ins.executeBatch();
+            conn.commit();
         } catch (SQLException ex) {
+            try {
+                conn.rollback();
+            } catch (SQLException ignore) {
+            }
             throw new RuntimeException(ex);
+        } finally {
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException ignore) {
+            }
         }
     }
 
+    private static int compareVer(String a, String b, String authorA, String authorB) {
+        if (b == null) return 1;
+        int c = HLC.compareVersions(a, b);
+        if (c != 0) return c;
+        return authorA.compareTo(authorB);
+    }
+
+    /**
+     * Condition LWW "excluded gagne sur la ligne de {@code table}" : HLC packé d'abord (indexable, sans parse),
+     * puis nœud (à hlc égal, les chaînes ver ne diffèrent que par le nœud), puis auteur.
+     */
+    private static String newerThan(String table) {
+        String t = table + ".";
+        return "(" + t + "hlc IS NULL OR excluded.hlc > " + t + "hlc OR (excluded.hlc = " + t + "hlc AND (excluded.ver > "
+                + t + "ver OR (excluded.ver = " + t + "ver AND excluded.author > " + t + "author))))";
+    }
+
+    private static void bindHlc(PreparedStatement ps, int idx, String ver) throws SQLException {
+        long p = HLC.packed(ver);
+        if (p == HLC.INVALID) ps.setNull(idx, Types.INTEGER);
+        else ps.setLong(idx, p);
+    }
+
+    /**
+     * UPDATE ... SET deleted=1 conditionnel : params numérotés ?1 ver, ?2 hlc, ?3 author, ?4 clé.
+     */
+    private static String tombSql(String table, String keyCol) {
+        return "UPDATE " + table + " SET deleted=1, ver=?1, hlc=?2, author=?3 WHERE " + keyCol + "=?4 AND "
+                + "(hlc IS NULL OR ?2 > hlc OR (?2 = hlc AND (?1 > ver OR (?1 = ver AND ?3 > author))))";
+    }
+
+    private static void bindTomb(PreparedStatement ps, String key, String ver, String author) throws SQLException {
+        ps.setString(1, ver);
+        bindHlc(ps, 2, ver);
+        ps.setString(3, author);
+        ps.setString(4, key);
+    }
+
+    // ---------- Historique FX ----------
+    private static final int FX_HISTORY_CHUNK = 5_000; // points par transaction
+
     @Override
-    public void tombstoneFx(String code, String ver, String author) {
-        try (PreparedStatement psSel = conn.prepareStatement("SELECT ver,author FROM fx_rates WHERE code=?")) {
-            psSel.setString(1, code);
-            try (ResultSet rs = psSel.executeQuery()) {
-                boolean shouldWrite = true;
-                if (rs.next()) shouldWrite = compareVer(ver, rs.getString("ver"), author, rs.getString("author")) > 0;
-                if (shouldWrite) {
-                    try (PreparedStatement ps = conn.prepareStatement("UPDATE fx_rates SET deleted=1, ver=?, author=? WHERE code=?")) {
-                        ps.setString(1, ver);
-                        ps.setString(2, author);
-                        ps.setString(3, code);
-                        ps.executeUpdate();
+    public int saveFxHistory(List<FxPoint> points) {
+        int saved = 0;
+        for (int from = 0; from < points.size(); from += FX_HISTORY_CHUNK) {
+            List<FxPoint> chunk = points.subList(from, Math.min(points.size(), from + FX_HISTORY_CHUNK));
+            // une transaction par tranche : le verrou est rendu entre deux pour les écritures de l'UI
+            synchronized (this) {
+                try {
+                    conn.setAutoCommit(false);
+                    PreparedStatement ps = ps("INSERT INTO fx_history(code,day,per_base) VALUES(?,?,?) " +
+                            "ON CONFLICT(code,day) DO UPDATE SET per_base=excluded.per_base");
+                    for (FxPoint p : chunk) {
+                        ps.setString(1, p.code());
+                        ps.setInt(2, p.day());
+                        ps.setDouble(3, p.perBase());
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                    conn.commit();
+                    saved += chunk.size();
+                } catch (SQLException ex) {
+                    try {
+                        conn.rollback();
+                    } catch (SQLException ignore) {
+                    }
+                    throw new RuntimeException(ex);
+                } finally {
+                    try {
+                        conn.setAutoCommit(true);
+                    } catch (SQLException ignore) {
                     }
                 }
             }
+        }
+        return saved;
+    }
+
+    @Override
+    public synchronized void scanFxHistory(Consumer<FxPoint> sink) {
+        try (ResultSet rs = ps("SELECT code,day,per_base FROM fx_history ORDER BY code, day").executeQuery()) {
+            while (rs.next()) sink.accept(new FxPoint(rs.getString(1), rs.getInt(2), rs.getDouble(3)));
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
 
     @Override
-    public List<FxRate> listFxActive() {
-        try (PreparedStatement ps = conn.prepareStatement("SELECT * FROM fx_rates WHERE deleted=0 ORDER BY code ASC")) {
+    public synchronized long fxHistorySize() {
+        try (ResultSet rs = ps("SELECT COUNT(*) FROM fx_history").executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // ---------- Budgets ----------
+    private static final String UPSERT_BUDGET =
+            "INSERT INTO budgets(id,category,monthly_limit,currency,deleted,ver,author,rollover_mode,rollover_cap,hlc) " +
+                    "VALUES(?,?,?,?,?,?,?,?,?,?) " +
+                    "ON CONFLICT(category) DO UPDATE SET monthly_limit=excluded.monthly_limit, currency=excluded.currency, " +
+                    "deleted=excluded.deleted, ver=excluded.ver, author=excluded.author, " +
+                    "rollover_mode=excluded.rollover_mode, rollover_cap=excluded.rollover_cap, hlc=excluded.hlc " +
+                    "WHERE " + newerThan("budgets");
+
+    @Override
+    public synchronized void upsertBudget(CategoryBudget b) {
+        applyBatch(List.of(new Op(Op.Type.BUDGET_UPSERT, b)));
+    }
+
+    private static void bindBudget(PreparedStatement ps, CategoryBudget b) throws SQLException {
+        ps.setString(1, b.id());
+        ps.setString(2, b.category());
+        ps.setString(3, b.monthlyLimit().toPlainString());
+        ps.setString(4, b.currency());
+        ps.setInt(5, b.deleted() ? 1 : 0);
+        ps.setString(6, b.ver());
+        ps.setString(7, b.author());
+        ps.setString(8, b.rolloverMode() == null ? "NONE" : b.rolloverMode());
+        ps.setString(9, b.rolloverCap() == null ? "0" : b.rolloverCap().toPlainString());
+        bindHlc(ps, 10, b.ver());
+    }
+
+    @Override
+    public synchronized void tombstoneBudget(String category, String ver, String author) {
+        applyBatch(List.of(new Op(Op.Type.BUDGET_DELETE, new CategoryBudget(null, category, null, null, true, ver, author, null, null))));
+    }
+
+    @Override
+    public synchronized List<CategoryBudget> listBudgetsActive() {
+        try (ResultSet rs = ps("SELECT * FROM budgets WHERE deleted=0 ORDER BY category ASC").executeQuery()) {
+            List<CategoryBudget> out = new ArrayList<>();
+            while (rs.next()) out.add(mapBudget(rs));
+            return out;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // ---------- FX ----------
+    private static final String UPSERT_FX =
+            "INSERT INTO fx_rates(code,per_base,deleted,ver,author,hlc) VALUES(?,?,?,?,?,?) " +
+                    "ON CONFLICT(code) DO UPDATE SET per_base=excluded.per_base, deleted=excluded.deleted, ver=excluded.ver, author=excluded.author, " +
+                    "hlc=excluded.hlc " +
+                    "WHERE " + newerThan("fx_rates");
+
+    @Override
+    public synchronized void upsertFx(FxRate r) {
+        applyBatch(List.of(new Op(Op.Type.FX_UPSERT, r)));
+    }
+
+    private static void bindFx(PreparedStatement ps, FxRate r) throws SQLException {
+        ps.setString(1, r.code());
+        ps.setString(2, r.perBase().toPlainString());
+        ps.setInt(3, r.deleted() ? 1 : 0);
+        ps.setString(4, r.ver());
+        ps.setString(5, r.author());
+        bindHlc(ps, 6, r.ver());
+    }
+
+    @Override
+    public synchronized void tombstoneFx(String code, String ver, String author) {
+        applyBatch(List.of(new Op(Op.Type.FX_DELETE, new FxRate(code, null, true, ver, author))));
+    }
+
+    @Override
+    public synchronized List<FxRate> listFxActive() {
+        try (ResultSet rs = ps("SELECT * FROM fx_rates WHERE deleted=0 ORDER BY code ASC").executeQuery()) {
             List<FxRate> out = new ArrayList<>();
-            try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    out.add(new FxRate(
-                            rs.getString("code"),
-                            new BigDecimal(rs.getString("per_base")),
-                            false,
-                            rs.getString("ver"),
-                            rs.getString("author")
-                    ));
-                }
-            }
+            while (rs.next()) out.add(mapFx(rs));
             return out;
         } catch (SQLException e) {
             throw new RuntimeException(e);
@@ -347,245 +981,701 @@ public class SqliteRepository implements com.titiplex.budget.core.store.Reposito
     }
 
     // ---------- Rules ----------
+    private static final String UPSERT_RULE =
+            "INSERT INTO rules(id,name,kind,pattern,category,active,deleted,ver,author,hlc) " +
+                    "VALUES(?,?,?,?,?,?,?,?,?,?) " +
+                    "ON CONFLICT(id) DO UPDATE SET name=excluded.name, kind=excluded.kind, pattern=excluded.pattern, " +
+                    "category=excluded.category, active=excluded.active, deleted=excluded.deleted, ver=excluded.ver, author=excluded.author, " +
+                    "hlc=excluded.hlc WHERE " + newerThan("rules");
+
+    @Override
+    public synchronized void upsertRule(Rule r) {
+        applyBatch(List.of(new Op(Op.Type.RULE_UPSERT, r)));
+    }
+
+    private static void bindRule(PreparedStatement ps, Rule r) throws SQLException {
+        ps.setString(1, r.id());
+        ps.setString(2, r.name());
+        ps.setString(3, r.kind());
+        ps.setString(4, r.pattern());
+        ps.setString(5, r.category());
+        ps.setInt(6, r.active() ? 1 : 0);
+        ps.setInt(7, r.deleted() ? 1 : 0);
+        ps.setString(8, r.ver());
+        ps.setString(9, r.author());
+        bindHlc(ps, 10, r.ver());
+    }
+
+    @Override
+    public synchronized void tombstoneRule(String id, String ver, String author) {
+        applyBatch(List.of(new Op(Op.Type.RULE_DELETE, new Rule(id, null, null, null, null, false, true, ver, author))));
+    }
+
+    @Override
+    public synchronized List<Rule> listRulesActive() {
+        try (ResultSet rs = ps("SELECT * FROM rules WHERE deleted=0 AND active=1 ORDER BY name ASC").executeQuery()) {
+            List<Rule> out = new ArrayList<>();
+            while (rs.next()) out.add(mapRule(rs));
+            return out;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // ---------- Recurring ----------
+    private static final String UPSERT_RECURRING =
+            "INSERT INTO recurring(id,name,period,day,weekday,month,amount,currency,category,note,active,deleted,ver,author,hlc) " +
+                    "VALUES(?,?,?,?,?,?,?,?,?,?,?,?,?,?,?) " +
+                    "ON CONFLICT(id) DO UPDATE SET name=excluded.name, period=excluded.period, day=excluded.day, weekday=excluded.weekday," +
+                    "month=excluded.month, amount=excluded.amount, currency=excluded.currency, category=excluded.category, note=excluded.note," +
+                    "active=excluded.active, deleted=excluded.deleted, ver=excluded.ver, author=excluded.author, hlc=excluded.hlc " +
+                    "WHERE " + newerThan("recurring");
+
+    @Override
+    public synchronized void upsertRecurring(RecurringRule r) {
+        applyBatch(List.of(new Op(Op.Type.RECUR_UPSERT, r)));
+    }
+
+    private static void bindRecurring(PreparedStatement ps, RecurringRule r) throws SQLException {
+        ps.setString(1, r.id());
+        ps.setString(2, r.name());
+        ps.setString(3, r.period());
+        ps.setInt(4, r.day());
+        ps.setInt(5, r.weekday());
+        ps.setInt(6, r.month());
+        ps.setString(7, r.amount().toPlainString());
+        ps.setString(8, r.currency());
+        ps.setString(9, r.category());
+        ps.setString(10, r.note());
+        ps.setInt(11, r.active() ? 1 : 0);
+        ps.setInt(12, r.deleted() ? 1 : 0);
+        ps.setString(13, r.ver());
+        ps.setString(14, r.author());
+        bindHlc(ps, 15, r.ver());
+    }
+
+    @Override
+    public synchronized void tombstoneRecurring(String id, String ver, String author) {
+        applyBatch(List.of(new Op(Op.Type.RECUR_DELETE, new RecurringRule(id, null, null, 0, 0, 0, null, null, null, null, false, true, ver, author))));
+    }
+
+    @Override
+    public synchronized List<RecurringRule> listRecurringActive() {
+        try (ResultSet rs = ps("SELECT * FROM recurring WHERE deleted=0 AND active=1 ORDER BY name ASC").executeQuery()) {
+            List<RecurringRule> out = new ArrayList<>();
+            while (rs.next()) out.add(mapRecurring(rs));
+            return out;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public synchronized Map<String, Long> recurringWatermarks() {
+        try (ResultSet rs = ps("SELECT rule_id,last_day FROM recurring_watermark").executeQuery()) {
+            Map<String, Long> out = new HashMap<>();
+            while (rs.next()) out.put(rs.getString(1), rs.getLong(2));
+            return out;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public synchronized void saveRecurringWatermark(String ruleId, long epochDay) {
+        try {
+            // jamais en recul : un rattrapage concurrent ne refait pas des occurrences déjà passées
+            PreparedStatement ps = ps("INSERT INTO recurring_watermark(rule_id,last_day) VALUES(?,?) " +
+                    "ON CONFLICT(rule_id) DO UPDATE SET last_day=max(last_day, excluded.last_day)");
+            ps.setString(1, ruleId);
+            ps.setLong(2, epochDay);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // ---------- Goals ----------
+    private static final String UPSERT_GOAL =
+            "INSERT INTO goals(id,name,target,currency,due_ts,deleted,ver,author,hlc) " +
+                    "VALUES(?,?,?,?,?,?,?,?,?) " +
+                    "ON CONFLICT(id) DO UPDATE SET name=excluded.name, target=excluded.target, currency=excluded.currency, due_ts=excluded.due_ts," +
+                    "deleted=excluded.deleted, ver=excluded.ver, author=excluded.author, hlc=excluded.hlc " +
+                    "WHERE " + newerThan("goals");
+
+    @Override
+    public synchronized void upsertGoal(Goal g) {
+        applyBatch(List.of(new Op(Op.Type.GOAL_UPSERT, g)));
+    }
+
+    private static void bindGoal(PreparedStatement ps, Goal g) throws SQLException {
+        ps.setString(1, g.id());
+        ps.setString(2, g.name());
+        ps.setString(3, g.target() == null ? "0" : g.target().toPlainString());
+        ps.setString(4, g.currency());
+        ps.setLong(5, g.dueTs());
+        ps.setInt(6, g.deleted() ? 1 : 0);
+        ps.setString(7, g.ver());
+        ps.setString(8, g.author());
+        bindHlc(ps, 9, g.ver());
+    }
+
+    @Override
+    public synchronized void tombstoneGoal(String id, String ver, String author) {
+        applyBatch(List.of(new Op(Op.Type.GOAL_DELETE, new Goal(id, null, null, null, 0, true, ver, author))));
+    }
+
+    @Override
+    public synchronized List<Goal> listGoalsActive() {
+        try (ResultSet rs = ps("SELECT * FROM goals WHERE deleted=0 ORDER BY name ASC").executeQuery()) {
+            List<Goal> out = new ArrayList<>();
+            while (rs.next()) out.add(mapGoal(rs));
+            return out;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // ---------- Batch ----------
+
+    // relu sous le verrou : une ligne modifiée depuis la lecture de la page garde sa catégorie
     @Override
-    public void upsertRule(Rule r) {
-        try (PreparedStatement psSel = conn.prepareStatement("SELECT ver,author FROM rules WHERE id=?")) {
-            psSel.setString(1, r.id());
-            try (ResultSet rs = psSel.executeQuery()) {
-                boolean shouldWrite = true;
-                if (rs.next())
-                    shouldWrite = compareVer(r.ver(), rs.getString("ver"), r.author(), rs.getString("author")) > 0;
-                if (shouldWrite) {
-                    String sql = "INSERT INTO rules(id,name,kind,pattern,category,active,deleted,ver,author) " +
-                            "VALUES(?,?,?,?,?,?,?,?,?) " +
-                            "ON CONFLICT(id) DO UPDATE SET name=excluded.name, kind=excluded.kind, pattern=excluded.pattern, " +
-                            "category=excluded.category, active=excluded.active, deleted=excluded.deleted, ver=excluded.ver, author=excluded.author";
-                    try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                        ps.setString(1, r.id());
-                        ps.setString(2, r.name());
-                        ps.setString(3, r.kind());
-                        ps.setString(4, r.pattern());
-                        ps.setString(5, r.category());
-                        ps.setInt(6, r.active() ? 1 : 0);
-                        ps.setInt(7, r.deleted() ? 1 : 0);
-                        ps.setString(8, r.ver());
-                        ps.setString(9, r.author());
-                        ps.executeUpdate();
+    public synchronized List<Expense> setCategoriesIfUnchanged(List<Expense> changed, Supplier<String> stamp, String author) {
+        Map<String, Expense> current = new HashMap<>();
+        for (Object o : loadRows("expenses", changed.stream().map(Expense::id).toList())) {
+            Expense e = (Expense) o;
+            current.put(e.id(), e);
+        }
+        List<Expense> written = new ArrayList<>(changed.size());
+        List<Op> ops = new ArrayList<>(changed.size());
+        for (Expense c : changed) {
+            Expense cur = current.get(c.id());
+            if (cur == null || cur.deleted() || !Objects.equals(cur.ver(), c.ver())) continue;
+            Expense v = new Expense(cur.id(), cur.who(), c.category(), cur.amount(), cur.currency(), cur.note(),
+                    cur.ts(), false, stamp.get(), author);
+            written.add(v);
+            ops.add(new Op(Op.Type.ADD, v));
+        }
+        if (!ops.isEmpty()) applyBatch(ops);
+        return written;
+    }
+
+    /**
+     * Applique un lot d'ops (typiquement reçues du réseau) en une transaction.
+     * LWW en mémoire d'abord : on ne garde que la version gagnante par (type d'op, clé), puis une exécution
+     * JDBC batch par type. Pour une même table les upserts passent avant les tombstones (ordre de Op.Type),
+     * et les conditions LWW du SQL garantissent le même état final qu'une application op par op.
+     */
+    @Override
+    public synchronized void applyBatch(List<Op> ops) {
+        if (ops == null || ops.isEmpty()) return;
+        Map<Op.Type, Map<String, BatchRow>> winners = new EnumMap<>(Op.Type.class);
+        for (Op op : ops) {
+            BatchRow row = batchRow(op);
+            winners.computeIfAbsent(op.type(), t -> new LinkedHashMap<>())
+                    .merge(row.key(), row, (cur, in) ->
+                            compareVer(in.ver(), cur.ver(), in.author(), cur.author()) > 0 ? in : cur);
+        }
+        try {
+            conn.setAutoCommit(false);
+            PreparedStatement log = ps(APPEND_OPLOG);
+            for (var e : winners.entrySet()) {
+                PreparedStatement ps = ps(batchSql(e.getKey()));
+                for (BatchRow row : e.getValue().values()) {
+                    bindBatch(ps, e.getKey(), row);
+                    ps.addBatch();
+                }
+                int[] changed = ps.executeBatch();
+                // journal : seulement les lignes réellement écrites (0 => perdue en LWW ou tombstone sans ligne)
+                int i = 0;
+                for (BatchRow row : e.getValue().values()) {
+                    if (changed[i++] > 0) {
+                        bindOplog(log, e.getKey(), row);
+                        log.addBatch();
                     }
                 }
             }
-        } catch (SQLException ex) {
+            log.executeBatch();
+            conn.commit();
+        } catch (SQLException | JsonProcessingException ex) {
+            try {
+                conn.rollback();
+            } catch (SQLException ignore) {
+            }
             throw new RuntimeException(ex);
+        } finally {
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException ignore) {
+            }
         }
     }
 
-    @Override
-    public void tombstoneRule(String id, String ver, String author) {
-        try (PreparedStatement psSel = conn.prepareStatement("SELECT ver,author FROM rules WHERE id=?")) {
-            psSel.setString(1, id);
-            try (ResultSet rs = psSel.executeQuery()) {
-                boolean shouldWrite = true;
-                if (rs.next()) shouldWrite = compareVer(ver, rs.getString("ver"), author, rs.getString("author")) > 0;
-                if (shouldWrite) {
-                    try (PreparedStatement ps = conn.prepareStatement("UPDATE rules SET deleted=1, ver=?, author=? WHERE id=?")) {
-                        ps.setString(1, ver);
-                        ps.setString(2, author);
-                        ps.setString(3, id);
-                        ps.executeUpdate();
-                    }
-                }
+    private record BatchRow(String key, String ver, String author, Object value) {
+    }
+
+    private BatchRow batchRow(Op op) {
+        return switch (op.type()) {
+            case ADD, DELETE -> {
+                Expense e = as(op.payload(), Expense.class);
+                yield new BatchRow(e.id(), e.ver(), e.author(), e);
             }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
+            case BUDGET_UPSERT, BUDGET_DELETE -> {
+                CategoryBudget b = as(op.payload(), CategoryBudget.class);
+                yield new BatchRow(b.category(), b.ver(), b.author(), b);
+            }
+            case FX_UPSERT, FX_DELETE -> {
+                FxRate r = as(op.payload(), FxRate.class);
+                yield new BatchRow(r.code(), r.ver(), r.author(), r);
+            }
+            case RULE_UPSERT, RULE_DELETE -> {
+                Rule r = as(op.payload(), Rule.class);
+                yield new BatchRow(r.id(), r.ver(), r.author(), r);
+            }
+            case RECUR_UPSERT, RECUR_DELETE -> {
+                RecurringRule r = as(op.payload(), RecurringRule.class);
+                yield new BatchRow(r.id(), r.ver(), r.author(), r);
+            }
+            case GOAL_UPSERT, GOAL_DELETE -> {
+                Goal g = as(op.payload(), Goal.class);
+                yield new BatchRow(g.id(), g.ver(), g.author(), g);
+            }
+        };
+    }
+
+    // Les payloads reçus du réseau sont des Map Jackson ; les ops locales portent déjà le record
+    private <T> T as(Object payload, Class<T> type) {
+        return type.isInstance(payload) ? type.cast(payload) : mapper.convertValue(payload, type);
+    }
+
+    private static String batchSql(Op.Type type) {
+        return switch (type) {
+            case ADD -> UPSERT_EXPENSE;
+            case DELETE -> tombSql("expenses", "id");
+            case BUDGET_UPSERT -> UPSERT_BUDGET;
+            case BUDGET_DELETE -> tombSql("budgets", "category");
+            case FX_UPSERT -> UPSERT_FX;
+            case FX_DELETE -> tombSql("fx_rates", "code");
+            case RULE_UPSERT -> UPSERT_RULE;
+            case RULE_DELETE -> tombSql("rules", "id");
+            case RECUR_UPSERT -> UPSERT_RECURRING;
+            case RECUR_DELETE -> tombSql("recurring", "id");
+            case GOAL_UPSERT -> UPSERT_GOAL;
+            case GOAL_DELETE -> tombSql("goals", "id");
+        };
+    }
+
+    private static void bindBatch(PreparedStatement ps, Op.Type type, BatchRow row) throws SQLException {
+        switch (type) {
+            case ADD -> bindExpense(ps, (Expense) row.value());
+            case BUDGET_UPSERT -> bindBudget(ps, (CategoryBudget) row.value());
+            case FX_UPSERT -> bindFx(ps, (FxRate) row.value());
+            case RULE_UPSERT -> bindRule(ps, (Rule) row.value());
+            case RECUR_UPSERT -> bindRecurring(ps, (RecurringRule) row.value());
+            case GOAL_UPSERT -> bindGoal(ps, (Goal) row.value());
+            default -> bindTomb(ps, row.key(), row.ver(), row.author());
         }
     }
 
+    // ---------- Oplog ----------
+    private static final String APPEND_OPLOG = "INSERT INTO oplog(hlc,type,tbl,key,body) VALUES(?,?,?,?,?)";
+    private static final int COMPACT_CHUNK = 10_000; // seqs par transaction de repliement
+
+    private void bindOplog(PreparedStatement ps, Op.Type type, BatchRow row) throws SQLException, JsonProcessingException {
+        bindHlc(ps, 1, row.ver());
+        ps.setString(2, type.name());
+        ps.setString(3, tableOf(type));
+        ps.setString(4, row.key());
+        ps.setString(5, mapper.writeValueAsString(row.value()));
+    }
+
+    private static String tableOf(Op.Type type) {
+        return switch (type) {
+            case ADD, DELETE -> "expenses";
+            case BUDGET_UPSERT, BUDGET_DELETE -> "budgets";
+            case FX_UPSERT, FX_DELETE -> "fx_rates";
+            case RULE_UPSERT, RULE_DELETE -> "rules";
+            case RECUR_UPSERT, RECUR_DELETE -> "recurring";
+            case GOAL_UPSERT, GOAL_DELETE -> "goals";
+        };
+    }
+
     @Override
-    public List<Rule> listRulesActive() {
-        try (PreparedStatement ps = conn.prepareStatement("SELECT * FROM rules WHERE deleted=0 AND active=1 ORDER BY name ASC")) {
-            List<Rule> out = new ArrayList<>();
+    public synchronized List<OplogEntry> readOplog(long afterSeq, int limit) {
+        try {
+            PreparedStatement ps = ps("SELECT seq,hlc,type,body FROM oplog WHERE seq > ? ORDER BY seq LIMIT ?");
+            ps.setLong(1, afterSeq);
+            ps.setInt(2, limit);
+            List<OplogEntry> out = new ArrayList<>();
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
-                    out.add(new Rule(
-                            rs.getString("id"),
-                            rs.getString("name"),
-                            rs.getString("kind"),
-                            rs.getString("pattern"),
-                            rs.getString("category"),
-                            rs.getInt("active") == 1,
-                            false,
-                            rs.getString("ver"),
-                            rs.getString("author")
-                    ));
+                    Op.Type type = Op.Type.valueOf(rs.getString(3));
+                    Object payload = mapper.readValue(rs.getString(4), type.payloadClass());
+                    out.add(new OplogEntry(rs.getLong(1), rs.getLong(2), new Op(type, payload)));
                 }
             }
             return out;
+        } catch (SQLException | JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public synchronized long oplogHead() {
+        // sqlite_sequence garde le max même si la fin du journal a été supprimée
+        try (ResultSet rs = ps("SELECT seq FROM sqlite_sequence WHERE name='oplog'").executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
 
     @Override
-    public void upsertRecurring(RecurringRule r) {
-        try (PreparedStatement psSel = conn.prepareStatement("SELECT ver,author FROM recurring WHERE id=?")) {
-            psSel.setString(1, r.id());
-            try (ResultSet rs = psSel.executeQuery()) {
-                boolean shouldWrite = true;
-                if (rs.next())
-                    shouldWrite = compareVer(r.ver(), rs.getString("ver"), r.author(), rs.getString("author")) > 0;
-                if (shouldWrite) {
-                    String sql = "INSERT INTO recurring(id,name,period,day,weekday,month,amount,currency,category,note,active,deleted,ver,author) " +
-                            "VALUES(?,?,?,?,?,?,?,?,?,?,?,?,?,?) " +
-                            "ON CONFLICT(id) DO UPDATE SET name=excluded.name, period=excluded.period, day=excluded.day, weekday=excluded.weekday," +
-                            "month=excluded.month, amount=excluded.amount, currency=excluded.currency, category=excluded.category, note=excluded.note," +
-                            "active=excluded.active, deleted=excluded.deleted, ver=excluded.ver, author=excluded.author";
-                    try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                        ps.setString(1, r.id());
-                        ps.setString(2, r.name());
-                        ps.setString(3, r.period());
-                        ps.setInt(4, r.day());
-                        ps.setInt(5, r.weekday());
-                        ps.setInt(6, r.month());
-                        ps.setString(7, r.amount().toPlainString());
-                        ps.setString(8, r.currency());
-                        ps.setString(9, r.category());
-                        ps.setString(10, r.note());
-                        ps.setInt(11, r.active() ? 1 : 0);
-                        ps.setInt(12, r.deleted() ? 1 : 0);
-                        ps.setString(13, r.ver());
-                        ps.setString(14, r.author());
-                        ps.executeUpdate();
-                    }
-                }
+    public synchronized long oplogSize() {
+        try (ResultSet rs = ps("SELECT COUNT(*) FROM oplog").executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public synchronized void ackOplog(String peer, long seq, long hlc) {
+        try {
+            PreparedStatement ps = ps("INSERT INTO oplog_peers(peer,acked_seq,acked_hlc,acked_at) VALUES(?,?,?,?) " +
+                    "ON CONFLICT(peer) DO UPDATE SET acked_seq=MAX(acked_seq, excluded.acked_seq), " +
+                    "acked_hlc=MAX(acked_hlc, excluded.acked_hlc), acked_at=excluded.acked_at");
+            ps.setString(1, peer);
+            ps.setLong(2, seq);
+            ps.setLong(3, hlc);
+            ps.setLong(4, System.currentTimeMillis());
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public synchronized long oplogAckedByAll(long sinceMs) {
+        try {
+            PreparedStatement ps = ps("SELECT MIN(acked_seq), COUNT(*) FROM oplog_peers WHERE acked_at >= ?");
+            ps.setLong(1, sinceMs);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next() && rs.getLong(2) > 0) return rs.getLong(1);
             }
-        } catch (SQLException ex) {
-            throw new RuntimeException(ex);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
         }
+        return oplogHead(); // aucun pair connu : rien n'attend d'acquittement
     }
 
     @Override
-    public void tombstoneRecurring(String id, String ver, String author) {
-        try (PreparedStatement psSel = conn.prepareStatement("SELECT ver,author FROM recurring WHERE id=?")) {
-            psSel.setString(1, id);
-            try (ResultSet rs = psSel.executeQuery()) {
-                boolean shouldWrite = true;
-                if (rs.next()) shouldWrite = compareVer(ver, rs.getString("ver"), author, rs.getString("author")) > 0;
-                if (shouldWrite) {
-                    try (PreparedStatement ps = conn.prepareStatement("UPDATE recurring SET deleted=1, ver=?, author=? WHERE id=?")) {
-                        ps.setString(1, ver);
-                        ps.setString(2, author);
-                        ps.setString(3, id);
-                        ps.executeUpdate();
-                    }
-                }
+    public synchronized long oplogStableHlc(long sinceMs) {
+        try {
+            PreparedStatement ps = ps("SELECT MIN(acked_hlc), COUNT(*) FROM oplog_peers WHERE acked_at >= ?");
+            ps.setLong(1, sinceMs);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next() && rs.getLong(2) > 0) return rs.getLong(1);
             }
+            return 0; // aucun pair n'a acquitté : rien n'est stable
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
 
     @Override
-    public List<RecurringRule> listRecurringActive() {
-        try (PreparedStatement ps = conn.prepareStatement("SELECT * FROM recurring WHERE deleted=0 AND active=1 ORDER BY name ASC")) {
-            List<RecurringRule> out = new ArrayList<>();
+    public synchronized long oplogPulled(String peer) {
+        try {
+            PreparedStatement ps = ps("SELECT pulled_seq FROM oplog_peers WHERE peer=?");
+            ps.setString(1, peer);
             try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    out.add(new RecurringRule(
-                            rs.getString("id"),
-                            rs.getString("name"),
-                            rs.getString("period"),
-                            rs.getInt("day"),
-                            rs.getInt("weekday"),
-                            rs.getInt("month"),
-                            new BigDecimal(rs.getString("amount")),
-                            rs.getString("currency"),
-                            rs.getString("category"),
-                            rs.getString("note"),
-                            rs.getInt("active") == 1,
-                            false,
-                            rs.getString("ver"),
-                            rs.getString("author")
-                    ));
-                }
+                return rs.next() ? rs.getLong(1) : 0;
             }
-            return out;
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
 
     @Override
-    public void upsertGoal(Goal g) {
-        try (PreparedStatement psG = conn.prepareStatement("SELECT ver,author FROM goal WHERE id=?")) {
-            psG.setString(1, g.id());
-            try (ResultSet rs = psG.executeQuery()) {
-                boolean shouldWrite = true;
-                if (rs.next())
-                    shouldWrite = compareVer(g.ver(), rs.getString("ver"), g.author(), rs.getString("author")) > 0;
-                if (shouldWrite) {
-                    String sql = "INSERT INTO goal(id,name,target,currency,due_ts,deleted,ver,author) " +
-                            "VALUES(?,?,?,?,?,?,?,?) " +
-                            "ON CONFLICT(id) DO UPDATE SET name=excluded.name, target=excluded.target, currency=excluded.currency, due_ts=excluded.due_ts," +
-                            "deleted=excluded.deleted, ver=excluded.ver, author=excluded.author";
-                    try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                        ps.setString(1, g.id());
-                        ps.setString(2, g.name());
-                        ps.setString(3, g.currency());
-                        ps.setLong(4, g.dueTs());
-                        ps.setInt(5, g.deleted() ? 1 : 0);
-                        ps.setString(6, g.ver());
-                        ps.setString(7, g.author());
-                        ps.executeUpdate();
-                    }
+    public synchronized void saveOplogPulled(String peer, long seq) {
+        try {
+            PreparedStatement ps = ps("INSERT INTO oplog_peers(peer,pulled_seq) VALUES(?,?) " +
+                    "ON CONFLICT(peer) DO UPDATE SET pulled_seq=excluded.pulled_seq");
+            ps.setString(1, peer);
+            ps.setLong(2, seq);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Par tranches de {@link #COMPACT_CHUNK} seqs, une transaction et un verrou chacune : les écritures passent entre deux.
+     * L'op la plus récente de chaque clé reste toujours, donc relire depuis n'importe quelle seq converge.
+     */
+    @Override
+    public int compactOplog(long uptoSeq) {
+        long lo;
+        synchronized (this) {
+            try (ResultSet rs = ps("SELECT MIN(seq) FROM oplog").executeQuery()) {
+                if (!rs.next()) return 0;
+                lo = rs.getLong(1) - 1;
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        int removed = 0;
+        for (; lo < uptoSeq; lo += COMPACT_CHUNK) {
+            synchronized (this) {
+                try {
+                    PreparedStatement ps = ps("DELETE FROM oplog WHERE seq > ? AND seq <= ? AND EXISTS " +
+                            "(SELECT 1 FROM oplog n WHERE n.tbl = oplog.tbl AND n.key = oplog.key AND n.seq > oplog.seq)");
+                    ps.setLong(1, lo);
+                    ps.setLong(2, Math.min(uptoSeq, lo + COMPACT_CHUNK));
+                    removed += ps.executeUpdate();
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
                 }
             }
+        }
+        return removed;
+    }
+
+    // ---------- GC des tombstones ----------
+
+    @Override
+    public synchronized int purgeTombstones(String table, long beforeHlc, long stableSeq, int limit) {
+        String key = syncKey(table);
+        List<String> keys = new ArrayList<>();
+        try {
+            String keep = KEPT_TOMBSTONES.get(table);
+            PreparedStatement sel = ps("SELECT " + key + " FROM " + table + " t WHERE deleted=1 AND hlc < ?1 " +
+                    (keep == null ? "" : "AND NOT (" + keep + ") ") +
+                    "AND NOT EXISTS (SELECT 1 FROM oplog o WHERE o.tbl='" + table + "' AND o.key=t." + key + " AND o.seq > ?2) " +
+                    "LIMIT ?3");
+            sel.setLong(1, beforeHlc);
+            sel.setLong(2, stableSeq);
+            sel.setInt(3, limit);
+            try (ResultSet rs = sel.executeQuery()) {
+                while (rs.next()) keys.add(rs.getString(1));
+            }
+            if (keys.isEmpty()) return 0;
+
+            conn.setAutoCommit(false);
+            PreparedStatement delRow = ps("DELETE FROM " + table + " WHERE " + key + "=? AND deleted=1");
+            PreparedStatement delLog = ps("DELETE FROM oplog WHERE tbl='" + table + "' AND key=? AND seq <= ?");
+            int purged = 0;
+            for (String k : keys) {
+                delRow.setString(1, k);
+                delRow.addBatch();
+                delLog.setString(1, k);
+                delLog.setLong(2, stableSeq);
+                delLog.addBatch();
+            }
+            for (int n : delRow.executeBatch()) purged += Math.max(0, n);
+            delLog.executeBatch();
+            conn.commit();
+            return purged;
         } catch (SQLException ex) {
+            try {
+                if (!conn.getAutoCommit()) conn.rollback();
+            } catch (SQLException ignore) {
+            }
             throw new RuntimeException(ex);
+        } finally {
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException ignore) {
+            }
         }
     }
 
     @Override
-    public void tombstoneGoal(String id, String ver, String author) {
-        try (PreparedStatement psG = conn.prepareStatement("SELECT ver,author FROM goal WHERE id=?")) {
-            psG.setString(1, id);
-            try (ResultSet rs = psG.executeQuery()) {
-                boolean shouldWrite = true;
-                if (rs.next()) shouldWrite = compareVer(ver, rs.getString("ver"), author, rs.getString("author")) > 0;
-                if (shouldWrite) {
-                    try (PreparedStatement ps = conn.prepareStatement("UPDATE goal SET deleted=1, ver=?, author=? WHERE id=?")) {
-                        ps.setString(1, ver);
-                        ps.setString(2, author);
-                        ps.setString(3, id);
-                        ps.executeUpdate();
-                    }
+    public synchronized TableSize tableSize(String table) {
+        syncKey(table);
+        try (ResultSet rs = ps("SELECT COUNT(*), COALESCE(SUM(deleted),0) FROM " + table).executeQuery()) {
+            return rs.next() ? new TableSize(rs.getLong(1), rs.getLong(2)) : new TableSize(0, 0);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public synchronized boolean refreshQueryStats() {
+        try (Statement st = conn.createStatement()) {
+            long live;
+            try (ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM expenses WHERE deleted=0")) {
+                live = rs.next() ? rs.getLong(1) : 0;
+            }
+            // nombre de lignes de l'index partiel au dernier ANALYZE (premier champ de stat), -1 si jamais fait
+            boolean hasStats;
+            try (ResultSet rs = st.executeQuery("SELECT 1 FROM sqlite_master WHERE name='sqlite_stat1'")) {
+                hasStats = rs.next();
+            }
+            long analyzed = -1;
+            if (hasStats) {
+                try (ResultSet rs = st.executeQuery("SELECT stat FROM sqlite_stat1 WHERE idx='idx_expenses_live_ts'")) {
+                    if (rs.next()) analyzed = Long.parseLong(rs.getString(1).split(" ")[0]);
                 }
             }
+            if (analyzed >= 0 && Math.abs(live - analyzed) * 4 <= Math.max(analyzed, 1000)) return false;
+            // ANALYZE complet (STAT4 compris) : un échantillon limité perd la sélectivité des plages de montants.
+            // ~2 s pour un million de lignes, sous le verrou ; les statements préparés sont recompilés par SQLite
+            st.execute("ANALYZE expenses");
+            return true;
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
 
+    // ---------- Sync (anti-entropie) ----------
+    // table -> colonne clé (whitelist : les noms sont concaténés dans le SQL)
+    private static final Map<String, String> SYNC_KEYS = Map.of(
+            "expenses", "id",
+            "budgets", "category",
+            "fx_rates", "code",
+            "rules", "id",
+            "recurring", "id",
+            "goals", "id");
+
+    // Tombstones jamais purgées : ids de dépense dérivés du contenu (UUID v3 : import de relevé, occurrence
+    // récurrente). Un réimport recalculerait le même id ; sans la tombstone, la ligne supprimée reviendrait.
+    private static final Map<String, String> KEPT_TOMBSTONES = Map.of(
+            "expenses", "t.id GLOB '????????-????-3*'");
+
+    private static String syncKey(String table) {
+        String key = SYNC_KEYS.get(table);
+        if (key == null) throw new IllegalArgumentException("unknown sync table: " + table);
+        return key;
+    }
+
     @Override
-    public List<Goal> listGoalsActive() {
-        try (PreparedStatement ps = conn.prepareStatement("SELECT * FROM goal WHERE deleted=0 AND active=1 ORDER BY name ASC")) {
-            List<Goal> out = new ArrayList<>();
+    public synchronized List<RowVersion> listVersions(String table) {
+        String key = syncKey(table);
+        try (ResultSet rs = ps("SELECT " + key + ",ver,author FROM " + table).executeQuery()) {
+            List<RowVersion> out = new ArrayList<>();
+            while (rs.next()) out.add(new RowVersion(rs.getString(1), rs.getString(2), rs.getString(3)));
+            return out;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public synchronized List<RowVersion> listVersions(String table, long fromHlc, long toHlc) {
+        String key = syncKey(table);
+        try {
+            PreparedStatement ps = ps("SELECT " + key + ",ver,author FROM " + table + " WHERE (hlc >= ? AND hlc < ?)"
+                    + (fromHlc <= 0 ? " OR hlc IS NULL" : ""));
+            ps.setLong(1, fromHlc);
+            ps.setLong(2, toHlc);
+            List<RowVersion> out = new ArrayList<>();
             try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    out.add(new Goal(
-                            rs.getString("id"),
-                            rs.getString("name"),
-                            new BigDecimal(rs.getString("target")),
-                            rs.getString("currency"),
-                            rs.getLong("due_ts"),
-                            false,
-                            rs.getString("ver"),
-                            rs.getString("author")
-                    ));
-                }
+                while (rs.next()) out.add(new RowVersion(rs.getString(1), rs.getString(2), rs.getString(3)));
             }
             return out;
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public synchronized List<Object> loadRows(String table, Collection<String> keys) {
+        String key = syncKey(table);
+        List<Object> out = new ArrayList<>();
+        List<String> all = new ArrayList<>(keys);
+        for (int from = 0; from < all.size(); from += 500) {
+            List<String> chunk = all.subList(from, Math.min(all.size(), from + 500));
+            String sql = "SELECT * FROM " + table + " WHERE " + key + " IN (" +
+                    String.join(",", java.util.Collections.nCopies(chunk.size(), "?")) + ")";
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                for (int i = 0; i < chunk.size(); i++) ps.setString(i + 1, chunk.get(i));
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        out.add(switch (table) {
+                            case "expenses" -> mapExpense(rs);
+                            case "budgets" -> mapBudget(rs);
+                            case "fx_rates" -> mapFx(rs);
+                            case "rules" -> mapRule(rs);
+                            case "recurring" -> mapRecurring(rs);
+                            default -> mapGoal(rs);
+                        });
+                    }
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return out;
+    }
+
+    private static BigDecimal dec(ResultSet rs, String col) throws SQLException {
+        String v = rs.getString(col);
+        return v == null || v.isEmpty() ? BigDecimal.ZERO : new BigDecimal(v);
+    }
+
+    private CategoryBudget mapBudget(ResultSet rs) throws SQLException {
+        return new CategoryBudget(
+                rs.getString("id"),
+                rs.getString("category"),
+                dec(rs, "monthly_limit"),
+                rs.getString("currency"),
+                rs.getInt("deleted") == 1,
+                rs.getString("ver"),
+                rs.getString("author"),
+                rs.getString("rollover_mode"),
+                dec(rs, "rollover_cap"));
+    }
+
+    private FxRate mapFx(ResultSet rs) throws SQLException {
+        return new FxRate(
+                rs.getString("code"),
+                dec(rs, "per_base"),
+                rs.getInt("deleted") == 1,
+                rs.getString("ver"),
+                rs.getString("author"));
+    }
+
+    private Rule mapRule(ResultSet rs) throws SQLException {
+        return new Rule(
+                rs.getString("id"),
+                rs.getString("name"),
+                rs.getString("kind"),
+                rs.getString("pattern"),
+                rs.getString("category"),
+                rs.getInt("active") == 1,
+                rs.getInt("deleted") == 1,
+                rs.getString("ver"),
+                rs.getString("author"));
+    }
+
+    private RecurringRule mapRecurring(ResultSet rs) throws SQLException {
+        return new RecurringRule(
+                rs.getString("id"),
+                rs.getString("name"),
+                rs.getString("period"),
+                rs.getInt("day"),
+                rs.getInt("weekday"),
+                rs.getInt("month"),
+                dec(rs, "amount"),
+                rs.getString("currency"),
+                rs.getString("category"),
+                rs.getString("note"),
+                rs.getInt("active") == 1,
+                rs.getInt("deleted") == 1,
+                rs.getString("ver"),
+                rs.getString("author"));
+    }
+
+    private Goal mapGoal(ResultSet rs) throws SQLException {
+        return new Goal(
+                rs.getString("id"),
+                rs.getString("name"),
+                dec(rs, "target"),
+                rs.getString("currency"),
+                rs.getLong("due_ts"),
+                rs.getInt("deleted") == 1,
+                rs.getString("ver"),
+                rs.getString("author"));
+    }
+}
@@ -0,0 +1,7 @@
+package com.titiplex.budget.core.store;
+
+/**
+ * Taille d'une table synchronisée : lignes au total, dont tombstones.
+ */
+public record TableSize(long rows, long tombstones) {
+}
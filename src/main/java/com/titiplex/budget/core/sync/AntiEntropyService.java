@@ -0,0 +1,436 @@
+package com.titiplex.budget.core.sync;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.titiplex.budget.core.crdt.HLC;
+import com.titiplex.budget.core.model.Op;
+import com.titiplex.budget.core.store.Repository;
+import com.titiplex.budget.core.store.RowVersion;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Réconciliation par digests (anti-entropie) entre deux pairs, déclenchée au changement de vue.
+ * <p>
+ * Chaque côté envoie un digest par table : buckets journaliers (temps mur du HLC) -> [count, xor des hash de lignes].
+ * Un bucket qui diffère est soit listé ligne à ligne (SYNC_IDS, clé -> [hash, HLC]) s'il est petit, soit redécoupé
+ * en 256 sous-buckets par hash de clé (SYNC_SUB). Seules les lignes absentes chez l'autre pair ou plus récentes
+ * que sa version repartent, en ops d'upsert (tombstones compris) dans des messages SYNC_ROWS.
+ * Un tour liste au plus {@link #ROUND_MAX} lignes (comptes des buckets des deux côtés) : un pair neuf ne reçoit
+ * pas toute la table d'un coup, les tours s'enchaînent à la fin de chaque SYNC_ROWS marqué "more". Les buckets
+ * des deux côtés sont calculés une fois par digest reçu ; chaque tour ne relit que les jours qu'il liste.
+ * Le protocole est symétrique : chacun répond au digest de l'autre, donc les deux sens convergent.
+ * Cette classe ne connaît pas JGroups : elle produit/consomme des payloads JSON, le transport est à l'appelant.
+ */
+@Service
+public class AntiEntropyService {
+    static final long BUCKET_MS = 24L * 3600 * 1000;
+    static final int LEAF_MAX = 1024;   // au-delà : on redécoupe le bucket plutôt que de lister les clés
+    static final int ROWS_PER_MSG = 500;
+    static final int ROUND_MAX = 8192;  // lignes listées (ou attendues en retour) par tour de SYNC_IDS
+    private static final String MORE_DIGEST = "digest";
+    private static final String MORE_SUB = "sub";
+
+    private static final Map<String, Op.Type> TABLES = new LinkedHashMap<>();
+
+    static {
+        TABLES.put("expenses", Op.Type.ADD);
+        TABLES.put("budgets", Op.Type.BUDGET_UPSERT);
+        TABLES.put("fx_rates", Op.Type.FX_UPSERT);
+        TABLES.put("rules", Op.Type.RULE_UPSERT);
+        TABLES.put("recurring", Op.Type.RECUR_UPSERT);
+        TABLES.put("goals", Op.Type.GOAL_UPSERT);
+    }
+
+    private final Repository repo;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final Map<String, PeerSync> peers = new ConcurrentHashMap<>();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+
+    public AntiEntropyService(Repository repo) {
+        this.repo = repo;
+    }
+
+    // ---------- Messages sortants / entrants ----------
+
+    /**
+     * Digest complet à envoyer (unicast) à un pair qui vient d'apparaître dans la vue.
+     */
+    public String digestPayload(String peer) {
+        peers.computeIfAbsent(peer, p -> new PeerSync()).restart();
+        ObjectNode root = mapper.createObjectNode();
+        root.put("t", "SYNC_DIGEST");
+        ObjectNode tables = root.putObject("tables");
+        for (String table : TABLES.keySet()) {
+            ObjectNode t = tables.putObject(table);
+            for (var e : buckets(repo.listVersions(table)).entrySet()) {
+                t.putArray(Long.toString(e.getKey())).add(e.getValue()[0]).add(e.getValue()[1]);
+            }
+        }
+        return root.toString();
+    }
+
+    /**
+     * Digest du pair reçu : renvoie nos listes de lignes (SYNC_IDS) et/ou sous-digests (SYNC_SUB), pour au plus
+     * {@link #ROUND_MAX} lignes ; le reste attend la fin de ce tour (voir {@link #onRowsApplied}).
+     */
+    public List<String> onDigest(String peer, JsonNode msg) {
+        PeerSync ps = peers.computeIfAbsent(peer, p -> new PeerSync());
+        ps.digestDone.clear();
+        // une lecture des tables par session : les tours suivants ne relisent que les jours listés
+        Map<String, Map<Long, long[]>> local = new HashMap<>();
+        Map<String, Map<Long, long[]>> remote = new HashMap<>();
+        for (String table : TABLES.keySet()) {
+            local.put(table, buckets(repo.listVersions(table)));
+            Map<Long, long[]> r = new HashMap<>();
+            JsonNode rt = msg.path("tables").path(table);
+            for (Iterator<String> it = rt.fieldNames(); it.hasNext(); ) {
+                String day = it.next();
+                JsonNode v = rt.get(day);
+                r.put(Long.parseLong(day), new long[]{v.get(0).asLong(), v.get(1).asLong()});
+            }
+            remote.put(table, r);
+        }
+        ps.localBuckets = local;
+        ps.remoteBuckets = remote;
+        List<String> out = digestRound(ps);
+        if (out.isEmpty()) ps.converged(); // digests identiques : rien à échanger
+        return out;
+    }
+
+    private List<String> digestRound(PeerSync ps) {
+        ObjectNode ids = idsNode();
+        ObjectNode sub = mapper.createObjectNode();
+        sub.put("t", "SYNC_SUB");
+        ObjectNode subTables = sub.putObject("tables");
+        boolean anyIds = false, anySub = false, more = false;
+        long budget = ROUND_MAX;
+
+        for (String table : TABLES.keySet()) {
+            Map<Long, long[]> local = ps.localBuckets.get(table);
+            Map<Long, long[]> remote = ps.remoteBuckets.get(table);
+            Set<Long> days = new TreeSet<>(local.keySet());
+            days.addAll(remote.keySet());
+
+            Set<String> leafRanges = new HashSet<>();
+            Set<Long> splitDays = new HashSet<>();
+            for (long day : days) {
+                long[] l = local.getOrDefault(day, new long[2]);
+                long[] r = remote.getOrDefault(day, new long[2]);
+                if (l[0] == r[0] && l[1] == r[1]) continue;
+                if (ps.digestDone.contains(table + "|" + day)) continue;
+                // coût : lignes listées ici ou renvoyées par le pair (au plus son compte), 256 pour un sous-digest
+                long cost = Math.max(l[0], r[0]) <= LEAF_MAX ? Math.max(l[0], r[0]) : 256;
+                if (cost > budget && budget < ROUND_MAX) {
+                    more = true;
+                    continue;
+                }
+                budget -= cost;
+                ps.digestDone.add(table + "|" + day);
+                if (Math.max(l[0], r[0]) <= LEAF_MAX) leafRanges.add(Long.toString(day));
+                else splitDays.add(day);
+            }
+            if (!leafRanges.isEmpty()) {
+                List<RowVersion> rows = new ArrayList<>();
+                for (String day : leafRanges) rows.addAll(versionsOfDay(table, Long.parseLong(day)));
+                addIds(ids, table, rows, leafRanges);
+                anyIds = true;
+            }
+            if (!splitDays.isEmpty()) {
+                ObjectNode st = subTables.putObject(table);
+                for (long day : splitDays) {
+                    ObjectNode d = st.putObject(Long.toString(day));
+                    for (var e : subBuckets(versionsOfDay(table, day), day).entrySet()) {
+                        d.putArray(Integer.toString(e.getKey())).add(e.getValue()[0]).add(e.getValue()[1]);
+                    }
+                }
+                anySub = true;
+            }
+        }
+
+        List<String> out = new ArrayList<>();
+        if (more) ids.put("more", MORE_DIGEST);
+        if (anyIds || more) out.add(ids.toString());
+        if (anySub) out.add(sub.toString());
+        return out;
+    }
+
+    /**
+     * Sous-digests du pair reçus : on liste nos lignes des sous-buckets qui diffèrent (au plus {@link #ROUND_MAX}).
+     */
+    public List<String> onSubDigest(String peer, JsonNode msg) {
+        PeerSync ps = peers.computeIfAbsent(peer, p -> new PeerSync());
+        ps.sub = msg;
+        ps.subDone.clear();
+        return subRound(ps);
+    }
+
+    private List<String> subRound(PeerSync ps) {
+        ObjectNode ids = idsNode();
+        boolean any = false, more = false;
+        long budget = ROUND_MAX;
+        for (String table : TABLES.keySet()) {
+            JsonNode rt = ps.sub.path("tables").path(table);
+            if (rt.isMissingNode() || rt.isEmpty()) continue;
+            List<RowVersion> rows = new ArrayList<>();
+            Set<String> ranges = new HashSet<>();
+            for (Iterator<String> it = rt.fieldNames(); it.hasNext(); ) {
+                String day = it.next();
+                List<RowVersion> dayRows = versionsOfDay(table, Long.parseLong(day));
+                Map<Integer, long[]> local = subBuckets(dayRows, Long.parseLong(day));
+                JsonNode rd = rt.get(day);
+                for (int s = 0; s < 256; s++) {
+                    long[] l = local.getOrDefault(s, new long[2]);
+                    JsonNode r = rd.get(Integer.toString(s));
+                    long rc = r == null ? 0 : r.get(0).asLong();
+                    long rh = r == null ? 0 : r.get(1).asLong();
+                    if (l[0] == rc && l[1] == rh) continue;
+                    String range = day + "/" + s;
+                    if (ps.subDone.contains(table + "|" + range)) continue;
+                    long cost = Math.max(l[0], rc);
+                    if (cost > budget && budget < ROUND_MAX) {
+                        more = true;
+                        continue;
+                    }
+                    budget -= cost;
+                    ps.subDone.add(table + "|" + range);
+                    ranges.add(range);
+                }
+                rows.addAll(dayRows);
+            }
+            if (!ranges.isEmpty()) {
+                addIds(ids, table, rows, ranges);
+                any = true;
+            }
+        }
+        if (more) ids.put("more", MORE_SUB);
+        return any || more ? List.of(ids.toString()) : List.of();
+    }
+
+    /**
+     * Listes de lignes du pair reçues : on renvoie (SYNC_ROWS) nos lignes qu'il n'a pas, ou dont notre version est
+     * plus récente que la sienne (une version plus ancienne serait de toute façon écartée par son LWW). Si la liste
+     * était tronquée, le dernier SYNC_ROWS le rappelle ("more") pour que le pair enchaîne le tour suivant.
+     */
+    public List<String> onIds(String peer, JsonNode msg) {
+        PeerSync ps = peers.computeIfAbsent(peer, p -> new PeerSync());
+        List<JsonNode> ops = new ArrayList<>();
+        for (var entry : TABLES.entrySet()) {
+            String table = entry.getKey();
+            JsonNode rt = msg.path("tables").path(table);
+            if (rt.isMissingNode()) continue;
+            Set<String> ranges = new HashSet<>();
+            Set<Long> days = new TreeSet<>();
+            rt.path("ranges").forEach(n -> {
+                ranges.add(n.asText());
+                String r = n.asText();
+                int slash = r.indexOf('/');
+                days.add(Long.parseLong(slash < 0 ? r : r.substring(0, slash)));
+            });
+            JsonNode remoteRows = rt.path("rows");
+
+            List<String> keys = new ArrayList<>();
+            for (long day : days) {
+                for (RowVersion rv : versionsOfDay(table, day)) {
+                    if (!inRanges(rv, ranges)) continue;
+                    JsonNode h = remoteRows.get(rv.key());
+                    if (h == null) {
+                        keys.add(rv.key());
+                        continue;
+                    }
+                    // [hash, hlc] ; un hash seul (pair plus ancien) : version inconnue, on envoie si elle diffère
+                    long hash = h.isArray() ? h.path(0).asLong() : h.asLong();
+                    long theirs = h.isArray() ? h.path(1).asLong() : Long.MIN_VALUE;
+                    if (hash != rowHash(rv) && HLC.packed(rv.ver()) >= theirs) keys.add(rv.key());
+                }
+            }
+            if (keys.isEmpty()) continue;
+            for (Object row : repo.loadRows(table, keys)) {
+                ops.add(mapper.valueToTree(new Op(entry.getValue(), row)));
+            }
+        }
+        ps.rowsOut.addAndGet(ops.size());
+
+        String more = msg.path("more").asText("");
+        List<String> out = new ArrayList<>();
+        for (int from = 0; from < ops.size() || (from == 0 && !more.isEmpty()); from += ROWS_PER_MSG) {
+            ObjectNode root = mapper.createObjectNode();
+            root.put("t", "SYNC_ROWS");
+            ArrayNode arr = root.putArray("ops");
+            ops.subList(from, Math.min(ops.size(), from + ROWS_PER_MSG)).forEach(arr::add);
+            if (!more.isEmpty() && from + ROWS_PER_MSG >= ops.size()) root.put("more", more);
+            out.add(root.toString());
+        }
+        return out;
+    }
+
+    /**
+     * Appelé une fois les lignes d'un SYNC_ROWS appliquées : si notre liste était tronquée, tour suivant à partir du
+     * même digest (ou sous-digest) du pair, sans les plages déjà traitées.
+     */
+    public List<String> onRowsApplied(String peer, int count, JsonNode msg) {
+        PeerSync ps = peers.computeIfAbsent(peer, p -> new PeerSync());
+        ps.rowsIn.addAndGet(count);
+        String more = msg.path("more").asText("");
+        if (MORE_DIGEST.equals(more) && ps.localBuckets != null) return digestRound(ps);
+        if (MORE_SUB.equals(more) && ps.sub != null) return subRound(ps);
+        if (!ps.failed) ps.converged();
+        return List.of();
+    }
+
+    /**
+     * Les lignes d'un SYNC_ROWS n'ont pas toutes été appliquées : rien n'est compté, et les plages déjà listées
+     * sont oubliées pour que le tour suivant (ou le prochain digest) les redemande. Pas de convergence déclarée.
+     */
+    public List<String> onRowsFailed(String peer, JsonNode msg) {
+        PeerSync ps = peers.computeIfAbsent(peer, p -> new PeerSync());
+        ps.failed = true;
+        ps.digestDone.clear();
+        ps.subDone.clear();
+        String more = msg.path("more").asText("");
+        if (MORE_DIGEST.equals(more) && ps.localBuckets != null) return digestRound(ps);
+        if (MORE_SUB.equals(more) && ps.sub != null) return subRound(ps);
+        return List.of();
+    }
+
+    public void recordIn(String peer, int bytes) {
+        bytesIn.addAndGet(bytes);
+        peers.computeIfAbsent(peer, p -> new PeerSync()).bytesIn.addAndGet(bytes);
+    }
+
+    public void recordOut(String peer, int bytes) {
+        bytesOut.addAndGet(bytes);
+        peers.computeIfAbsent(peer, p -> new PeerSync()).bytesOut.addAndGet(bytes);
+    }
+
+    /**
+     * Métriques : octets échangés et temps de convergence (ms depuis l'envoi du digest) par pair.
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> perPeer = new TreeMap<>();
+        peers.forEach((peer, ps) -> perPeer.put(peer, Map.of(
+                "bytesIn", ps.bytesIn.get(),
+                "bytesOut", ps.bytesOut.get(),
+                "rowsIn", ps.rowsIn.get(),
+                "rowsOut", ps.rowsOut.get(),
+                "convergeMs", ps.convergeMs)));
+        return Map.of("bytesIn", bytesIn.get(), "bytesOut", bytesOut.get(), "peers", perPeer);
+    }
+
+    // ---------- Digests ----------
+
+    private ObjectNode idsNode() {
+        ObjectNode ids = mapper.createObjectNode();
+        ids.put("t", "SYNC_IDS");
+        ids.putObject("tables");
+        return ids;
+    }
+
+    // rows : clé -> [hash, HLC packé] ; le pair ne renvoie que ce qu'il a de plus récent
+    private void addIds(ObjectNode ids, String table, List<RowVersion> rows, Set<String> ranges) {
+        ObjectNode t = ((ObjectNode) ids.get("tables")).putObject(table);
+        ArrayNode r = t.putArray("ranges");
+        ranges.forEach(r::add);
+        ObjectNode keys = t.putObject("rows");
+        for (RowVersion rv : rows) {
+            if (inRanges(rv, ranges)) keys.putArray(rv.key()).add(rowHash(rv)).add(HLC.packed(rv.ver()));
+        }
+    }
+
+    // lignes d'un bucket journalier, lues par l'index sur hlc (le jour 0 contient aussi les versions illisibles)
+    private List<RowVersion> versionsOfDay(String table, long day) {
+        return repo.listVersions(table, HLC.pack(day * BUCKET_MS, 0), HLC.pack((day + 1) * BUCKET_MS, 0));
+    }
+
+    private static Map<Long, long[]> buckets(List<RowVersion> rows) {
+        Map<Long, long[]> out = new TreeMap<>();
+        for (RowVersion rv : rows) {
+            long[] b = out.computeIfAbsent(dayOf(rv.ver()), d -> new long[2]);
+            b[0]++;
+            b[1] ^= rowHash(rv);
+        }
+        return out;
+    }
+
+    private static Map<Integer, long[]> subBuckets(List<RowVersion> rows, long day) {
+        Map<Integer, long[]> out = new HashMap<>();
+        for (RowVersion rv : rows) {
+            if (dayOf(rv.ver()) != day) continue;
+            long[] b = out.computeIfAbsent(subOf(rv.key()), s -> new long[2]);
+            b[0]++;
+            b[1] ^= rowHash(rv);
+        }
+        return out;
+    }
+
+    private static boolean inRanges(RowVersion rv, Set<String> ranges) {
+        String day = Long.toString(dayOf(rv.ver()));
+        return ranges.contains(day) || ranges.contains(day + "/" + subOf(rv.key()));
+    }
+
+    static long dayOf(String ver) {
+        long p = HLC.packed(ver);
+        return p == HLC.INVALID ? 0 : HLC.wall(p) / BUCKET_MS;
+    }
+
+    static int subOf(String key) {
+        return (int) (fnv64(key) >>> 56);
+    }
+
+    static long rowHash(RowVersion rv) {
+        return fnv64(rv.key() + "|" + rv.ver() + "|" + rv.author());
+    }
+
+    // FNV-1a 64 bits : rapide, suffisant pour détecter des divergences (pas un usage crypto)
+    private static long fnv64(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : (s == null ? "" : s).getBytes(StandardCharsets.UTF_8)) {
+            h ^= (b & 0xff);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private static final class PeerSync {
+        volatile long startNanos = System.nanoTime();
+        volatile long convergeMs = -1;
+        final AtomicLong bytesIn = new AtomicLong();
+        final AtomicLong bytesOut = new AtomicLong();
+        final AtomicLong rowsIn = new AtomicLong();
+        final AtomicLong rowsOut = new AtomicLong();
+        // tour en cours : buckets (les nôtres et ceux du dernier digest du pair), sous-digest et plages déjà listées
+        volatile Map<String, Map<Long, long[]>> localBuckets;
+        volatile Map<String, Map<Long, long[]>> remoteBuckets;
+        volatile JsonNode sub;
+        volatile boolean failed; // un SYNC_ROWS de ce tour n'a pas pu être appliqué
+        final Set<String> digestDone = ConcurrentHashMap.newKeySet();
+        final Set<String> subDone = ConcurrentHashMap.newKeySet();
+
+        void restart() {
+            startNanos = System.nanoTime();
+            convergeMs = -1;
+            failed = false;
+        }
+
+        void converged() {
+            convergeMs = (System.nanoTime() - startNanos) / 1_000_000;
+        }
+    }
+}
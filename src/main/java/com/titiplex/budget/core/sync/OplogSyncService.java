@@ -0,0 +1,166 @@
+package com.titiplex.budget.core.sync;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.titiplex.budget.core.crdt.HLC;
+import com.titiplex.budget.core.crdt.HlcClock;
+import com.titiplex.budget.core.store.OplogEntry;
+import com.titiplex.budget.core.store.Repository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rattrapage incrémental par le journal d'ops (oplog), en complément des digests d'{@link AntiEntropyService}.
+ * <p>
+ * Protocole (unicast, pairs identifiés par leur userId, stable entre sessions) :
+ * SYNC_PULL {from} -> SYNC_LOG {ops, upto} -> SYNC_ACK {seq, hlc} -> page suivante tant que seq < tête.
+ * Chaque page n'est envoyée qu'après l'acquittement de la précédente (contrôle de flux).
+ * {@code hlc} = horloge du pair à l'acquittement : le minimum sur les pairs borne le GC des tombstones.
+ * Les acquittements bornent le repliement du journal : une op remplacée n'est supprimée que lorsque tous
+ * les pairs connus l'ont dépassée. Un pair muet depuis {@code app.oplog.peer.ttl.days} n'est plus attendu pour
+ * le repliement ; à son retour il rattrape par le journal replié (dernière op par clé) ou par les digests.
+ * Le GC des tombstones, lui, attend tous les pairs jamais vus (enregistrés dès leur premier SYNC_PULL).
+ * Comme AntiEntropyService, cette classe ne connaît pas JGroups : le transport est à l'appelant.
+ */
+@Service
+public class OplogSyncService {
+    static final int PAGE = 500;
+
+    private final Repository repo;
+    private final HlcClock clock;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Value("${app.oplog.compact.minutes:10}")
+    private int compactMinutes;
+    @Value("${app.oplog.peer.ttl.days:30}")
+    private int peerTtlDays;
+    private ScheduledExecutorService ses;
+
+    private final AtomicLong opsOut = new AtomicLong();
+    private final AtomicLong opsIn = new AtomicLong();
+    private final AtomicLong compacted = new AtomicLong();
+    private volatile long lastCompactMs = -1;
+
+    public OplogSyncService(Repository repo, HlcClock clock) {
+        this.repo = repo;
+        this.clock = clock;
+    }
+
+    public void start() {
+        if (ses != null) return;
+        ses = Executors.newSingleThreadScheduledExecutor(r -> {
+            var t = new Thread(r, "oplog-compact");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1, compactMinutes);
+        ses.scheduleWithFixedDelay(this::safeCompact, period, period, TimeUnit.MINUTES);
+    }
+
+    // ---------- Messages ----------
+
+    /**
+     * Demande au pair la suite de son journal, à partir de ce qu'on a déjà tiré de lui.
+     */
+    public String pullPayload(String peer) {
+        ObjectNode root = mapper.createObjectNode();
+        root.put("t", "SYNC_PULL");
+        root.put("from", repo.oplogPulled(peer));
+        return root.toString();
+    }
+
+    /**
+     * Première page de notre journal après {@code from} ; depuis 0 si le pair a une position qu'on n'a jamais
+     * atteinte (notre base a été recréée).
+     */
+    public List<String> onPull(String peer, JsonNode msg) {
+        repo.ackOplog(peer, 0, 0); // pair connu, rien d'acquitté de plus : borne le GC dès maintenant
+        long from = msg.path("from").asLong(0);
+        if (from > repo.oplogHead()) from = 0;
+        return page(from);
+    }
+
+    /**
+     * Page du pair entièrement appliquée par l'appelant : on avance notre position et on acquitte (ce qui appelle
+     * la suite). Si l'application échoue, l'appelant ne nous appelle pas : la position reste, la page sera retirée.
+     */
+    public List<String> onLogApplied(String peer, JsonNode msg, int count) {
+        long upto = msg.path("upto").asLong(0);
+        opsIn.addAndGet(count);
+        repo.saveOplogPulled(peer, upto);
+        ObjectNode root = mapper.createObjectNode();
+        root.put("t", "SYNC_ACK");
+        root.put("seq", upto);
+        root.put("hlc", Math.max(clock.current(), HLC.pack(System.currentTimeMillis(), 0)));
+        return List.of(root.toString());
+    }
+
+    /**
+     * Acquittement du pair : il a appliqué notre journal jusqu'à seq ; on enchaîne s'il en reste.
+     */
+    public List<String> onAck(String peer, JsonNode msg) {
+        long seq = msg.path("seq").asLong(0);
+        repo.ackOplog(peer, seq, msg.path("hlc").asLong(0));
+        return seq < repo.oplogHead() ? page(seq) : List.of();
+    }
+
+    private List<String> page(long from) {
+        List<OplogEntry> entries = repo.readOplog(from, PAGE);
+        if (entries.isEmpty()) return List.of();
+        ObjectNode root = mapper.createObjectNode();
+        root.put("t", "SYNC_LOG");
+        ArrayNode arr = root.putArray("ops");
+        for (OplogEntry e : entries) arr.add(mapper.valueToTree(e.op()));
+        root.put("upto", entries.get(entries.size() - 1).seq());
+        opsOut.addAndGet(entries.size());
+        return List.of(root.toString());
+    }
+
+    // ---------- Repliement ----------
+
+    /**
+     * Replie le journal jusqu'à la plus petite position acquittée par les pairs connus. Renvoie le nombre supprimé.
+     */
+    public int compactNow() {
+        long since = knownSince();
+        long t0 = System.nanoTime();
+        int removed = repo.compactOplog(repo.oplogAckedByAll(since));
+        lastCompactMs = (System.nanoTime() - t0) / 1_000_000;
+        compacted.addAndGet(removed);
+        return removed;
+    }
+
+    /**
+     * Les pairs "connus" sont ceux qui ont acquitté depuis ce timestamp (ms).
+     */
+    public long knownSince() {
+        return System.currentTimeMillis() - TimeUnit.DAYS.toMillis(Math.max(1, peerTtlDays));
+    }
+
+    private void safeCompact() {
+        try {
+            compactNow();
+        } catch (Exception e) {
+            System.err.println("Failed to compact oplog: " + e.getMessage());
+        }
+    }
+
+    public Map<String, Object> stats() {
+        return Map.of(
+                "head", repo.oplogHead(),
+                "size", repo.oplogSize(),
+                "opsOut", opsOut.get(),
+                "opsIn", opsIn.get(),
+                "compacted", compacted.get(),
+                "lastCompactMs", lastCompactMs);
+    }
+}
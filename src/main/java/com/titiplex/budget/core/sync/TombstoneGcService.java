@@ -0,0 +1,148 @@
+package com.titiplex.budget.core.sync;
+
+import com.titiplex.budget.core.crdt.HLC;
+import com.titiplex.budget.core.store.Repository;
+import com.titiplex.budget.core.store.TableSize;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * GC des tombstones : suppression physique des lignes deleted=1 causalement stables.
+ * <p>
+ * Une tombstone est stable quand tous les pairs connus l'ont reçue (aucune op de sa clé après la position
+ * acquittée par tous dans notre oplog) et que son HLC est sous le plus petit HLC acquitté par ces pairs :
+ * aucun pair ne peut plus renvoyer une version plus ancienne de la ligne et la ressusciter.
+ * Tous les pairs jamais vus comptent, même muets depuis longtemps (le TTL de l'oplog ne borne que son repliement) :
+ * un pair de retour pourrait renvoyer la ligne par les digests. Sans aucun pair, rien n'est purgé.
+ * S'y ajoute un âge minimal ({@code app.gc.tombstone.min.age.days}), garde-fou pour les pairs hors ligne.
+ * Exception : les dépenses importées (id dérivé du contenu du relevé) gardent leur tombstone, qui empêche un
+ * réimport de les ressusciter.
+ * <p>
+ * Purge par tranches : chaque tranche est une transaction courte, le verrou du repository est rendu entre deux
+ * et la taille des tranches s'ajuste pour rester sous {@code app.gc.tombstone.slice.ms}.
+ */
+@Service
+public class TombstoneGcService {
+    static final List<String> TABLES = List.of("expenses", "budgets", "fx_rates", "rules", "recurring", "goals");
+    private static final int MIN_SLICE = 16;
+    private static final int MAX_SLICE = 4096;
+
+    private final Repository repo;
+
+    @Value("${app.gc.tombstone.minutes:15}")
+    private int periodMinutes = 15;
+    @Value("${app.gc.tombstone.min.age.days:7}")
+    private int minAgeDays = 7;
+    @Value("${app.gc.tombstone.slice.ms:20}")
+    private int sliceMs = 20;
+    private ScheduledExecutorService ses;
+
+    private volatile int sliceRows = 256;
+    private final Map<String, AtomicLong> purged = new ConcurrentHashMap<>();
+    private final Map<String, TableSize> sizes = new ConcurrentHashMap<>();
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong analyzes = new AtomicLong();
+    private final AtomicLong slices = new AtomicLong();
+    private volatile long maxSliceMs;
+    private volatile long lastRunMs = -1;
+    private volatile long stableHlc;
+    private volatile long stableSeq;
+
+    public TombstoneGcService(Repository repo) {
+        this.repo = repo;
+    }
+
+    public void start() {
+        if (ses != null) return;
+        ses = Executors.newSingleThreadScheduledExecutor(r -> {
+            var t = new Thread(r, "tombstone-gc");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+        long period = Math.max(1, periodMinutes);
+        ses.scheduleWithFixedDelay(this::safeRun, 1, period, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Une passe complète sur toutes les tables ; renvoie le nombre de lignes supprimées.
+     */
+    public synchronized int runOnce() {
+        long t0 = System.nanoTime();
+        long seq = repo.oplogAckedByAll(0);
+        long byAge = HLC.pack(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(Math.max(0, minAgeDays)), 0);
+        long hlc = Math.min(repo.oplogStableHlc(0), byAge);
+        stableSeq = seq;
+        stableHlc = hlc;
+
+        int total = 0;
+        for (String table : TABLES) {
+            while (true) {
+                long s0 = System.nanoTime();
+                int limit = sliceRows;
+                int n = repo.purgeTombstones(table, hlc, seq, limit);
+                long ms = (System.nanoTime() - s0) / 1_000_000;
+                slices.incrementAndGet();
+                if (ms > maxSliceMs) maxSliceMs = ms;
+                // tranches adaptatives : on vise sliceMs par transaction
+                if (ms > sliceMs) sliceRows = Math.max(MIN_SLICE, sliceRows / 2);
+                else if (n == limit && ms < sliceMs / 2) sliceRows = Math.min(MAX_SLICE, sliceRows * 2);
+                if (n > 0) {
+                    purged.computeIfAbsent(table, t -> new AtomicLong()).addAndGet(n);
+                    total += n;
+                    Thread.yield(); // laisse passer les écrivains en attente du verrou
+                }
+                if (n < limit) break;
+            }
+            sizes.put(table, repo.tableSize(table));
+        }
+        // la passe de maintenance rafraîchit aussi les statistiques du planificateur quand le volume a changé
+        if (repo.refreshQueryStats()) analyzes.incrementAndGet();
+        runs.incrementAndGet();
+        lastRunMs = (System.nanoTime() - t0) / 1_000_000;
+        return total;
+    }
+
+    private void safeRun() {
+        try {
+            runOnce();
+        } catch (Exception e) {
+            System.err.println("Failed to purge tombstones: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Lignes purgées et tailles par table (relevées à la dernière passe), point de stabilité courant.
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> tables = new LinkedHashMap<>();
+        for (String t : TABLES) {
+            TableSize sz = sizes.get(t);
+            AtomicLong p = purged.get(t);
+            tables.put(t, Map.of(
+                    "rows", sz == null ? -1 : sz.rows(),
+                    "tombstones", sz == null ? -1 : sz.tombstones(),
+                    "purged", p == null ? 0 : p.get()));
+        }
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("stableHlc", HLC.wall(stableHlc) + ":" + HLC.logic(stableHlc));
+        m.put("stableSeq", stableSeq);
+        m.put("runs", runs.get());
+        m.put("lastRunMs", lastRunMs);
+        m.put("slices", slices.get());
+        m.put("sliceRows", sliceRows);
+        m.put("maxSliceMs", maxSliceMs);
+        m.put("analyzes", analyzes.get());
+        m.put("tables", tables);
+        return m;
+    }
+}
@@ -51,19 +51,104 @@ public class JsBridge {
     }
 
 
-    // Export
-    public String exportCsv(String name, String csv) {
-        return ctl.exportCsv(name, csv);
+    // Liste filtrée, des plus récentes aux plus anciennes : filtre JSON {from, to, categories, who, currencies,
+    // minAmount, maxAmount}, curseur "ts:id" de la page précédente ("" = début). Renvoie JSON {items, next,
+    // page: {count, amount, byCurrency}, total: {...} si withTotals}, montants convertis en ccy.
+    public String queryExpenses(String filterJson, String after, int limit, String ccy, boolean withTotals) {
+        return ctl.queryExpenses(filterJson, after, limit, ccy, withTotals);
     }
 
-    public String exportReport(String html) {
-        return ctl.exportHtmlReport(html);
+    // Export : JSON {format: CSV|JSONL|HTML, currency, filter: {même filtre que queryExpenses}} ; chemin du fichier, "" si refusé.
+    // L'avancement arrive par window.onExportProgress.
+    public String exportExpenses(String requestJson) {
+        return ctl.exportExpenses(requestJson);
+    }
+
+    // JSON {state, format, file, rows, total, bytes, elapsedMs, rowsPerSec, ...}
+    public String exportStatus() {
+        return ctl.exportStatus();
+    }
+
+    public void cancelExport() {
+        ctl.cancelExport();
     }
 
     public void fxFetchNow() {
         ctl.fxFetchNow();
     }
 
+    // Facteurs de conversion de chaque devise connue vers 'to' : JSON {code: facteur} (matrice de taux croisés)
+    public String fxFactors(String to) {
+        return ctl.fxFactors(to);
+    }
+
+    // Prévision des récurrentes à venir : JSON {"YYYY-MM": {catégorie: montant}} (vide = 12 mois à partir du courant)
+    public String recurringForecast(String fromMonth, String toMonth, String ccy) {
+        return ctl.recurringForecast(fromMonth, toMonth, ccy);
+    }
+
+    // Import d'un historique de taux BCE (eurofxref-hist.xml/.csv) : nombre de points, -1 si échec
+    public int fxBackfill(String path) {
+        return ctl.fxBackfill(path);
+    }
+
+    // Agrégations : JSON {catégorie: total} du mois "YYYY-MM" (vide = mois courant), converti en ccy
+    public String spentByCategory(String month, String ccy) {
+        return ctl.spentByCategory(month, ccy);
+    }
+
+    // JSON {"YYYY-MM": total} pour chaque mois de l'intervalle inclus, converti en ccy
+    public String monthlyTotals(String fromMonth, String toMonth, String ccy) {
+        return ctl.monthlyTotals(fromMonth, toMonth, ccy);
+    }
+
+    // Épargné par objectif actif (notes "#[goal:<id>]") : JSON {goalId: total} en ccy
+    public String goalContributions(String ccy) {
+        return ctl.goalContributions(ccy);
+    }
+
+    // Devises présentes parmi les dépenses actives : JSON ["EUR", ...]
+    public String expenseCurrencies() {
+        return ctl.expenseCurrencies();
+    }
+
+    // Budgets du mois avec reports : JSON {catégorie: {limit, carried, planned, spent, left}} en ccy
+    public String budgetMonth(String month, String ccy) {
+        return ctl.budgetMonth(month, ccy);
+    }
+
+    // Chaîne de reports d'une catégorie : JSON {"YYYY-MM": {limit, carried, planned, spent, left}} en ccy
+    public String rolloverHistory(String category, String fromMonth, String toMonth, String ccy) {
+        return ctl.rolloverHistory(category, fromMonth, toMonth, ccy);
+    }
+
+    // Recatégorisation des dépenses existantes (overwrite = aussi celles déjà catégorisées)
+    // Import d'un relevé CSV/OFX (chemin local) ; mapping JSON des colonnes, vide = valeurs par défaut
+    public boolean importStatement(String path, String mappingJson) {
+        return ctl.importStatement(path, mappingJson);
+    }
+
+    // JSON {state, parsed, imported, duplicates, skipped, rejected, queued, elapsedMs, rowsPerSec, ...}
+    public String importStatus() {
+        return ctl.importStatus();
+    }
+
+    public void cancelImport() {
+        ctl.cancelImport();
+    }
+
+    public boolean recategorize(boolean overwrite) {
+        return ctl.recategorize(overwrite);
+    }
+
+    public String recategorizeStatus() {
+        return ctl.recategorizeStatus();
+    }
+
+    public void cancelRecategorize() {
+        ctl.cancelRecategorize();
+    }
+
     public void upsertRecurring(String json) {
         ctl.upsertRecurringFromJson(json);
     }
@@ -88,6 +173,13 @@ public class JsBridge {
         return ctl.joinFromInviteCode(code);
     }
 
+    /**
+     * Le front relit sa liste et ses agrégats (s'il pense avoir raté des deltas).
+     */
+    public void resync() {
+        ctl.pushAll();
+    }
+
     public String netInfo() {
         try {
             var map = new java.util.HashMap<String, Object>();
@@ -95,6 +187,19 @@ public class JsBridge {
             map.put("connected", connected);
             map.put("mode", (ss.seeds != null && !ss.seeds.isEmpty()) ? "WAN" : "LAN");
             map.put("seeds", ss.seeds == null ? 0 : ss.seeds.size());
+            map.put("bridge", ctl.bridgeStats());
+            map.put("gc", ctl.gcStats());
+            map.put("rollover", ctl.rolloverStats());
+            map.put("fx", ctl.fxStats());
+            map.put("fxHistory", ctl.fxHistoryStats());
+            map.put("recurring", ctl.recurringStats());
+            if (p2p instanceof JGroupsP2PService jp2p) {
+                map.put("batch", jp2p.batchStats());
+                map.put("sync", jp2p.syncStats());
+                map.put("inbound", jp2p.pipelineStats());
+                map.put("clock", jp2p.clockStats());
+                map.put("oplog", jp2p.oplogStats());
+            }
             return new com.fasterxml.jackson.databind.ObjectMapper().writeValueAsString(map);
         } catch (Exception e) {
             return "{\"connected\":false,\"mode\":\"LAN\",\"seeds\":0}";
@@ -3,16 +3,33 @@ package com.titiplex.budget.ui;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.titiplex.budget.core.config.ConfigService;
-import com.titiplex.budget.core.crdt.HLC;
+import com.titiplex.budget.core.crdt.HlcClock;
 import com.titiplex.budget.core.crypto.SessionState;
+import com.titiplex.budget.core.export.ExportRequest;
+import com.titiplex.budget.core.export.ExportService;
 import com.titiplex.budget.core.fx.FxAutoService;
+import com.titiplex.budget.core.fx.FxConverter;
+import com.titiplex.budget.core.fx.FxHistory;
 import com.titiplex.budget.core.model.*;
 import com.titiplex.budget.core.p2p.InviteCodec;
 import com.titiplex.budget.core.p2p.JGroupsP2PService;
 import com.titiplex.budget.core.p2p.P2PService;
 import com.titiplex.budget.core.p2p.WanDiscoveryService;
+import com.titiplex.budget.core.importer.ImportMapping;
+import com.titiplex.budget.core.importer.StatementImportService;
+import com.titiplex.budget.core.recurring.RecurringProjection;
 import com.titiplex.budget.core.recurring.RecurringService;
+import com.titiplex.budget.core.rules.RecategorizeService;
+import com.titiplex.budget.core.rules.RuleEngine;
+import com.titiplex.budget.core.stats.AggregationService;
+import com.titiplex.budget.core.stats.RolloverService;
+import com.titiplex.budget.core.store.ExpenseFilter;
+import com.titiplex.budget.core.store.ExpensePage;
+import com.titiplex.budget.core.store.ExpenseQuery;
+import com.titiplex.budget.core.store.ExpenseTotals;
+import com.titiplex.budget.core.store.MonthTotal;
 import com.titiplex.budget.core.store.Repository;
+import com.titiplex.budget.core.sync.TombstoneGcService;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.web.WebEngine;
@@ -20,13 +37,19 @@ import javafx.scene.web.WebView;
 import netscape.javascript.JSObject;
 import org.springframework.stereotype.Component;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.math.BigDecimal;
-import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Component
 public class MainController {
@@ -39,7 +62,33 @@ public class MainController {
     private final RecurringService recurring;
     private final WanDiscoveryService wan;
     private final ObjectMapper mapper = new ObjectMapper();
-    private final HLC.Clock clock;
+    private final HlcClock clock;
+    private final TombstoneGcService tombstoneGc;
+    private final RuleEngine rules;
+    private final RecategorizeService recategorizer;
+    private final AggregationService aggregates;
+    private final RolloverService rollover;
+    private final FxConverter fx;
+    private final FxHistory fxHistory;
+    private final RecurringProjection projection;
+    private final StatementImportService importer;
+    private final ExportService exporter;
+    private final AtomicLong bridgeBytes = new AtomicLong();
+    private final AtomicLong bridgeCalls = new AtomicLong();
+
+    // Étage UI : les lots distants marquent ce qui est sale, un seul push part pour tout ce qui s'est accumulé
+    private final Object uiDirtyLock = new Object();
+    private final Set<String> dirtyExpenseIds = new LinkedHashSet<>();
+    private final EnumSet<Op.Type> dirtyTypes = EnumSet.noneOf(Op.Type.class);
+    private boolean uiFlushScheduled;
+    private final ExecutorService uiPush = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "ui-push");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicLong uiFlushes = new AtomicLong();
+    private final AtomicLong uiBatchesCoalesced = new AtomicLong();
+    private final AtomicLong uiMaxFlushNanos = new AtomicLong();
 
     public MainController(
             Repository repo,
@@ -47,7 +96,18 @@ public class MainController {
             SessionState ss,
             ConfigService config,
             FxAutoService fxAuto,
-            RecurringService recurring) {
+            RecurringService recurring,
+            HlcClock clock,
+            TombstoneGcService tombstoneGc,
+            RuleEngine rules,
+            RecategorizeService recategorizer,
+            AggregationService aggregates,
+            RolloverService rollover,
+            FxConverter fx,
+            FxHistory fxHistory,
+            RecurringProjection projection,
+            StatementImportService importer,
+            ExportService exporter) {
         this.repo = repo;
         this.p2p = p2p;
         this.ss = ss;
@@ -55,7 +115,17 @@ public class MainController {
         this.fxAuto = fxAuto;
         this.recurring = recurring;
         this.wan = new WanDiscoveryService(ss);
-        this.clock = new HLC.Clock(ss.userId == null ? UUID.randomUUID().toString() : ss.userId);
+        this.clock = clock;
+        this.tombstoneGc = tombstoneGc;
+        this.rules = rules;
+        this.recategorizer = recategorizer;
+        this.aggregates = aggregates;
+        this.rollover = rollover;
+        this.fx = fx;
+        this.fxHistory = fxHistory;
+        this.projection = projection;
+        this.importer = importer;
+        this.exporter = exporter;
     }
 
     @FXML
@@ -99,9 +169,9 @@ public class MainController {
                             : null;
 
                     if (p2p instanceof JGroupsP2PService jp2p) {
-                        jp2p.start(ss.groupId, ss.groupPass, ss.seeds, ss.port, ext, this::onRemoteOp);
+                        jp2p.start(ss.groupId, ss.groupPass, ss.seeds, ss.port, ext, this::onRemoteOps);
                     } else {
-                        p2p.start(ss.groupId, ss.groupPass, ss.seeds, ss.port, this::onRemoteOp);
+                        p2p.start(ss.groupId, ss.groupPass, ss.seeds, ss.port, this::onRemoteOps);
                     }
 
                     if (wan.hasPublic()) {
@@ -110,6 +180,8 @@ public class MainController {
                     }
 
                     recurring.start();
+                    tombstoneGc.start();
+                    fxHistory.start();
                     fxAuto.startScheduler();
                     fxAuto.fetchNow();
 
@@ -134,90 +206,87 @@ public class MainController {
         return s == null ? "" : s.replace("'", "\\'");
     }
 
-    void onRemoteOp(Op op) {
+    /**
+     * Ops distantes (thread writer du pipeline P2P) : un lot = une transaction,
+     * le push vers la WebView est délégué à l'étage UI qui coalesce les lots.
+     * Si la transaction échoue, on rejoue op par op et seules les ops fautives sont écartées.
+     * Renvoie false si une op n'a pas été appliquée (le rattrapage ne l'acquitte pas).
+     */
+    boolean onRemoteOps(List<Op> ops) {
+        List<Op> applied = ops;
         try {
-            switch (op.type()) {
-                case ADD -> {
-                    Expense e = mapper.convertValue(op.payload(), Expense.class);
-                    repo.upsertExpense(e);
-                    pushAll();
-                }
-                case DELETE -> {
-                    Expense e = mapper.convertValue(op.payload(), Expense.class);
-                    repo.tombstone(e.id(), e.ver(), e.author());
-                    pushAll();
-                }
-                case BUDGET_UPSERT -> {
-                    CategoryBudget b = mapper.convertValue(op.payload(), CategoryBudget.class);
-                    repo.upsertBudget(b);
-                    pushBudgets();
-                }
-                case BUDGET_DELETE -> {
-                    CategoryBudget b = mapper.convertValue(op.payload(), CategoryBudget.class);
-                    repo.tombstoneBudget(b.category(), b.ver(), b.author());
-                    pushBudgets();
-                }
-                case FX_UPSERT -> {
-                    FxRate r = mapper.convertValue(op.payload(), FxRate.class);
-                    repo.upsertFx(r);
-                    pushFx();
-                }
-                case FX_DELETE -> {
-                    FxRate r = mapper.convertValue(op.payload(), FxRate.class);
-                    repo.tombstoneFx(r.code(), r.ver(), r.author());
-                    pushFx();
-                }
-                case RULE_UPSERT -> {
-                    Rule r = mapper.convertValue(op.payload(), Rule.class);
-                    repo.upsertRule(r);
-                    pushRules();
-                }
-                case RULE_DELETE -> {
-                    Rule r = mapper.convertValue(op.payload(), Rule.class);
-                    repo.tombstoneRule(r.id(), r.ver(), r.author());
-                    pushRules();
-                }
-                case RECUR_UPSERT -> {
-                    RecurringRule r = mapper.convertValue(op.payload(), RecurringRule.class);
-                    repo.upsertRecurring(r);
-                    pushRecurring();
-                }
-                case RECUR_DELETE -> {
-                    RecurringRule r = mapper.convertValue(op.payload(), RecurringRule.class);
-                    repo.tombstoneRecurring(r.id(), r.ver(), r.author());
-                    pushRecurring();
-                }
-                case GOAL_UPSERT -> {
-                    Goal g = mapper.convertValue(op.payload(), Goal.class);
-                    repo.upsertGoal(g);
-                    pushGoals();
-                }
-                case GOAL_DELETE -> {
-                    Goal g = mapper.convertValue(op.payload(), Goal.class);
-                    repo.tombstoneGoal(g.id(), g.ver(), g.author());
-                    pushGoals();
+            repo.applyBatch(ops);
+        } catch (Exception e) {
+            System.err.println("Failed to apply " + ops.size() + " op(s) in one batch, retrying one by one: " + e.getMessage());
+            applied = new ArrayList<>(ops.size());
+            for (Op op : ops) {
+                try {
+                    repo.applyBatch(List.of(op));
+                    applied.add(op);
+                } catch (Exception ex) {
+                    System.err.println("Failed to apply remote op " + op.type() + ": " + ex.getMessage());
                 }
             }
+        }
+        if (applied.isEmpty()) return false;
+        boolean complete = applied.size() == ops.size();
+        // lignes déjà commitées : un échec ici ne doit pas empêcher le push vers la WebView
+        try {
+            rules.onOps(applied);
+            fx.onOps(applied);
+            recurring.onOps(applied);
         } catch (Exception e) {
-            System.err.println("Failed to process op: " + e.getMessage());
+            System.err.println("Failed to process " + applied.size() + " op(s): " + e.getMessage());
+        }
+        synchronized (uiDirtyLock) {
+            for (Op op : applied) {
+                dirtyTypes.add(op.type());
+                if (op.type() == Op.Type.ADD || op.type() == Op.Type.DELETE) dirtyExpenseIds.add(expenseId(op));
+            }
+            uiBatchesCoalesced.incrementAndGet();
+            if (uiFlushScheduled) return complete;
+            uiFlushScheduled = true;
         }
+        uiPush.execute(this::flushRemoteUi);
+        return complete;
     }
 
-    public void pushAll() {
-        List<Expense> all = repo.listActive();
+    private void flushRemoteUi() {
+        Set<String> expenseIds;
+        EnumSet<Op.Type> types;
+        synchronized (uiDirtyLock) {
+            expenseIds = new LinkedHashSet<>(dirtyExpenseIds);
+            types = EnumSet.copyOf(dirtyTypes);
+            dirtyExpenseIds.clear();
+            dirtyTypes.clear();
+            uiFlushScheduled = false;
+        }
+        long t0 = System.nanoTime();
         try {
-            String json = mapper.writeValueAsString(all);
-            Platform.runLater(() -> {
-                try {
-                    webview.getEngine()
-                            .executeScript("window.onExpenses(" + mapper.writeValueAsString(json) + ");");
-                } catch (JsonProcessingException e) {
-                    throw new RuntimeException(e);
-                }
-            });
+            if (!expenseIds.isEmpty()) pushExpenseDelta(expenseIds);
+            if (types.contains(Op.Type.BUDGET_UPSERT) || types.contains(Op.Type.BUDGET_DELETE)) pushBudgets();
+            if (types.contains(Op.Type.FX_UPSERT) || types.contains(Op.Type.FX_DELETE)) pushFx();
+            if (types.contains(Op.Type.RULE_UPSERT) || types.contains(Op.Type.RULE_DELETE)) pushRules();
+            if (types.contains(Op.Type.RECUR_UPSERT) || types.contains(Op.Type.RECUR_DELETE)) pushRecurring();
+            if (types.contains(Op.Type.GOAL_UPSERT) || types.contains(Op.Type.GOAL_DELETE)) pushGoals();
         } catch (Exception e) {
-            System.err.println("Failed to push expenses: " + e.getMessage());
+            System.err.println("Failed to push remote changes: " + e.getMessage());
         }
+        uiFlushes.incrementAndGet();
+        uiMaxFlushNanos.accumulateAndGet(System.nanoTime() - t0, Math::max);
+    }
+
+    private String expenseId(Op op) {
+        if (op.payload() instanceof Expense e) return e.id();
+        return mapper.convertValue(op.payload(), Expense.class).id();
+    }
+
+    /**
+     * Au démarrage ou sur demande de resynchro du front : il relit sa première page et ses agrégats.
+     * Aucune dépense n'est poussée en bloc ; les changements courants passent par {@link #pushExpenseDelta}.
+     */
+    public void pushAll() {
+        pushScript("window.onExpensesReset();");
     }
 
     public void deleteExpense(String id) {
@@ -228,22 +297,74 @@ public class MainController {
                     e.ts(), true, ver, ss.userId);
             repo.tombstone(id, ver, ss.userId);
             p2p.broadcast(new Op(Op.Type.DELETE, tomb));
-            pushAll();
+            pushExpenseDelta(List.of(), List.of(id));
+        }
+    }
+
+    /**
+     * Deltas vers le front : upserts (lignes complètes) et suppressions (ids), coalescés côté JS par frame.
+     */
+    public void pushExpenseDelta(List<Expense> upserted, List<String> removedIds) {
+        try {
+            if (!upserted.isEmpty())
+                pushScript("window.onExpenseUpserted(" + jsLiteral(mapper.writeValueAsString(upserted)) + ");");
+            if (!removedIds.isEmpty())
+                pushScript("window.onExpenseRemoved(" + jsLiteral(mapper.writeValueAsString(removedIds)) + ");");
+        } catch (Exception e) {
+            System.err.println("Failed to push expense delta: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Relit l'état courant des dépenses touchées par un lot distant (le LWW a pu ignorer certaines ops).
+     */
+    private void pushExpenseDelta(Set<String> ids) {
+        List<Expense> upserted = new ArrayList<>();
+        List<String> removed = new ArrayList<>(ids);
+        for (Object row : repo.loadRows("expenses", ids)) {
+            Expense e = (Expense) row;
+            if (!e.deleted()) {
+                upserted.add(e);
+                removed.remove(e.id());
+            }
         }
+        pushExpenseDelta(upserted, removed);
+    }
+
+    // Callback JS appelé avec une chaîne JSON (re-encodée en littéral de chaîne JS)
+    private void pushJson(String fn, String json) throws JsonProcessingException {
+        pushScript("window." + fn + "(" + mapper.writeValueAsString(json) + ");");
+    }
+
+    private void pushScript(String js) {
+        bridgeBytes.addAndGet(2L * js.length()); // chaîne UTF-16 copiée vers WebKit
+        bridgeCalls.incrementAndGet();
+        Platform.runLater(() -> webview.getEngine().executeScript(js));
+    }
+
+    // JSON utilisable tel quel comme littéral JS (U+2028/2029 sont des fins de ligne en JS)
+    private static String jsLiteral(String json) {
+        return json.replace("\u2028", "\\u2028").replace("\u2029", "\\u2029");
+    }
+
+    public Map<String, Object> gcStats() {
+        return tombstoneGc.stats();
+    }
+
+    public Map<String, Object> bridgeStats() {
+        return Map.of(
+                "bytes", bridgeBytes.get(),
+                "calls", bridgeCalls.get(),
+                "uiFlushes", uiFlushes.get(),
+                "remoteBatches", uiBatchesCoalesced.get(),
+                "uiMaxFlushMs", uiMaxFlushNanos.get() / 1_000_000.0);
     }
 
     public void pushBudgets() {
         try {
             var all = repo.listBudgetsActive();
             String json = mapper.writeValueAsString(all);
-            Platform.runLater(() ->
-            {
-                try {
-                    webview.getEngine().executeScript("window.onBudgets(" + mapper.writeValueAsString(json) + ");");
-                } catch (JsonProcessingException e) {
-                    throw new RuntimeException(e);
-                }
-            });
+            pushJson("onBudgets", json);
         } catch (Exception e) {
             System.err.println("Failed to push budgets: " + e.getMessage());
         }
@@ -299,13 +420,7 @@ public class MainController {
         try {
             var all = repo.listFxActive();
             String json = mapper.writeValueAsString(all);
-            Platform.runLater(() -> {
-                try {
-                    webview.getEngine().executeScript("window.onFx(" + mapper.writeValueAsString(json) + ");");
-                } catch (JsonProcessingException e) {
-                    throw new RuntimeException(e);
-                }
-            });
+            pushJson("onFx", json);
         } catch (Exception e) {
             System.err.println("Failed to push fx rates: " + e.getMessage());
         }
@@ -315,13 +430,7 @@ public class MainController {
         try {
             var all = repo.listRulesActive();
             String json = mapper.writeValueAsString(all);
-            Platform.runLater(() -> {
-                try {
-                    webview.getEngine().executeScript("window.onRules(" + mapper.writeValueAsString(json) + ");");
-                } catch (JsonProcessingException e) {
-                    throw new RuntimeException(e);
-                }
-            });
+            pushJson("onRules", json);
         } catch (Exception e) {
             System.err.println("Failed to push rules: " + e.getMessage());
         }
@@ -334,13 +443,9 @@ public class MainController {
             String id = (in.id() == null || in.id().isEmpty()) ? UUID.randomUUID().toString() : in.id();
             String cat = in.category();
             if (cat == null || cat.isBlank()) {
-                // simple server-side rule application
-                for (Rule r : repo.listRulesActive()) {
-                    if (matchRule(r, in)) {
-                        cat = r.category();
-                        break;
-                    }
-                }
+                // règles précompilées (recompilées après une op de règle)
+                String byRule = rules.categorize(in);
+                if (byRule != null) cat = byRule;
             }
             String ver = clock.tick();
             Expense e = new Expense(
@@ -357,26 +462,12 @@ public class MainController {
             );
             repo.upsertExpense(e);
             p2p.broadcast(new Op(Op.Type.ADD, e));
-            pushAll();
+            pushExpenseDelta(List.of(e), List.of());
         } catch (Exception ex) {
             System.err.println("Failed to add expense: " + ex.getMessage());
         }
     }
 
-    private boolean matchRule(Rule r, Expense e) {
-        if (r == null || !r.active()) return false;
-        String hay = (e.note() == null ? "" : e.note()) + " " + (e.who() == null ? "" : e.who());
-        try {
-            return switch (r.kind()) {
-                case "SUBSTRING" -> hay.toLowerCase().contains(r.pattern().toLowerCase());
-                case "REGEX" -> hay.matches(r.pattern());
-                default -> false;
-            };
-        } catch (Exception ex) {
-            return false;
-        }
-    }
-
     // ---- FX CRUD ----
     public void upsertFxFromJson(String json) {
         try {
@@ -384,6 +475,7 @@ public class MainController {
             String ver = clock.tick();
             FxRate r = new FxRate(in.code(), new BigDecimal(in.perBase().toPlainString()), false, ver, ss.userId);
             repo.upsertFx(r);
+            fx.reload();
             p2p.broadcast(new Op(Op.Type.FX_UPSERT, r));
             pushFx();
         } catch (Exception e) {
@@ -396,6 +488,7 @@ public class MainController {
             String ver = clock.tick();
             FxRate tomb = new FxRate(code, BigDecimal.ZERO, true, ver, ss.userId);
             repo.tombstoneFx(code, ver, ss.userId);
+            fx.reload();
             p2p.broadcast(new Op(Op.Type.FX_DELETE, tomb));
             pushFx();
         } catch (Exception e) {
@@ -403,35 +496,218 @@ public class MainController {
         }
     }
 
-    // ---- Exports ----
-    public String exportCsv(String name, String csv) {
+    // ---- Liste des dépenses (pages keyset, filtres) ----
+    public String queryExpenses(String filterJson, String after, int limit, String ccy, boolean withTotals) {
         try {
-            String dir = System.getProperty("user.home") + "/.budget-p2p/reports";
-            new File(dir).mkdirs();
-            String path = dir + "/" + name;
-            try (FileOutputStream fos = new FileOutputStream(path)) {
-                fos.write(csv.getBytes(StandardCharsets.UTF_8));
-            }
-            return path;
+            ExpenseQuery q = mapper.readValue(filterJson == null || filterJson.isBlank() ? "{}" : filterJson, ExpenseQuery.class);
+            ExpenseFilter filter = q.toFilter(java.time.ZoneId.systemDefault());
+            ExpensePage page = repo.queryExpenses(filter, after == null || after.isBlank() ? null : after,
+                    Math.max(1, Math.min(limit, 1000)));
+            FxConverter.Matrix rates = fx.snapshot();
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("items", page.items());
+            out.put("next", page.next());
+            out.put("page", totals(page.totals(), rates, ccy));
+            // totaux du filtre entier : parcourent toutes les lignes retenues, demandés pour la première page seulement
+            if (withTotals) out.put("total", totals(repo.totalsOf(filter), rates, ccy));
+            return mapper.writeValueAsString(out);
         } catch (Exception e) {
-            return "";
+            System.err.println("Failed to query expenses: " + e.getMessage());
+            return "{}";
+        }
+    }
+
+    // {count, amount (converti en ccy), byCurrency {devise: montant d'origine}}
+    private static Map<String, Object> totals(ExpenseTotals t, FxConverter.Matrix rates, String ccy) {
+        long sum = 0;
+        Map<String, Double> byCurrency = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> en : t.unitsByCurrency().entrySet()) {
+            sum += rates.convert(en.getValue(), en.getKey(), ccy);
+            byCurrency.put(en.getKey(), (double) en.getValue() / MonthTotal.SCALE);
         }
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("count", t.count());
+        m.put("amount", (double) sum / MonthTotal.SCALE);
+        m.put("byCurrency", byCurrency);
+        return m;
     }
 
-    public String exportHtmlReport(String html) {
+    // ---- Exports (écrits côté Java, en flux depuis la base) ----
+    public String exportExpenses(String requestJson) {
         try {
-            String dir = System.getProperty("user.home") + "/.budget-p2p/reports";
-            new File(dir).mkdirs();
-            String path = dir + "/report-" + System.currentTimeMillis() + ".html";
-            try (FileOutputStream fos = new FileOutputStream(path)) {
-                fos.write(html.getBytes(StandardCharsets.UTF_8));
-            }
-            return path;
+            ExportRequest req = mapper.readValue(requestJson == null || requestJson.isBlank() ? "{}" : requestJson, ExportRequest.class);
+            ExportService.Format format = req.formatOrDefault();
+            String ccy = req.currency() == null || req.currency().isBlank() ? "EUR" : req.currency().trim().toUpperCase();
+            String name = format == ExportService.Format.HTML ? "report-" + System.currentTimeMillis() + ".html"
+                    : "expenses-" + java.time.LocalDate.now() + (format == ExportService.Format.CSV ? ".csv" : ".jsonl");
+            java.nio.file.Path target = java.nio.file.Path.of(System.getProperty("user.home"), ".budget-p2p", "reports", name);
+            // l'avancement part vers la WebView (toutes les N lignes et à la fin)
+            boolean started = exporter.start(format, req.toFilter(java.time.ZoneId.systemDefault()), ccy, target, status -> {
+                try {
+                    pushJson("onExportProgress", mapper.writeValueAsString(status));
+                } catch (JsonProcessingException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            return started ? target.toString() : "";
         } catch (Exception e) {
+            System.err.println("Failed to start export: " + e.getMessage());
             return "";
         }
     }
 
+    public String exportStatus() {
+        try {
+            return mapper.writeValueAsString(exporter.status());
+        } catch (Exception e) {
+            return "{}";
+        }
+    }
+
+    public void cancelExport() {
+        exporter.cancel();
+    }
+
+    // ---- Import de relevés ----
+    public boolean importStatement(String path, String mappingJson) {
+        try {
+            ImportMapping m = mappingJson == null || mappingJson.isBlank() ? null : mapper.readValue(mappingJson, ImportMapping.class);
+            // chaque lot écrit part en delta vers la WebView
+            return importer.start(java.nio.file.Path.of(path), m, written -> pushExpenseDelta(written, List.of()));
+        } catch (Exception e) {
+            System.err.println("Failed to start statement import: " + e.getMessage());
+            return false;
+        }
+    }
+
+    public String importStatus() {
+        try {
+            return mapper.writeValueAsString(importer.status());
+        } catch (Exception e) {
+            return "{}";
+        }
+    }
+
+    public void cancelImport() {
+        importer.cancel();
+    }
+
+    // ---- Recatégorisation ----
+    public boolean recategorize(boolean overwrite) {
+        // chaque page modifiée part en delta vers la WebView
+        return recategorizer.start(overwrite, changed -> pushExpenseDelta(changed, List.of()));
+    }
+
+    public String recategorizeStatus() {
+        try {
+            return mapper.writeValueAsString(recategorizer.status());
+        } catch (Exception e) {
+            return "{}";
+        }
+    }
+
+    public void cancelRecategorize() {
+        recategorizer.cancel();
+    }
+
+    // ---- Agrégations (totaux matérialisés, convertis dans la devise d'affichage) ----
+    public String spentByCategory(String month, String ccy) {
+        try {
+            return mapper.writeValueAsString(aggregates.spentByCategory(month, ccy));
+        } catch (Exception e) {
+            System.err.println("Failed to aggregate by category: " + e.getMessage());
+            return "{}";
+        }
+    }
+
+    public String goalContributions(String ccy) {
+        try {
+            return mapper.writeValueAsString(aggregates.goalContributions(ccy));
+        } catch (Exception e) {
+            System.err.println("Failed to aggregate goal contributions: " + e.getMessage());
+            return "{}";
+        }
+    }
+
+    public String expenseCurrencies() {
+        try {
+            return mapper.writeValueAsString(repo.expenseCurrencies());
+        } catch (Exception e) {
+            System.err.println("Failed to list expense currencies: " + e.getMessage());
+            return "[]";
+        }
+    }
+
+    public String monthlyTotals(String fromMonth, String toMonth, String ccy) {
+        try {
+            return mapper.writeValueAsString(aggregates.totalsByMonth(fromMonth, toMonth, ccy));
+        } catch (Exception e) {
+            System.err.println("Failed to aggregate by month: " + e.getMessage());
+            return "{}";
+        }
+    }
+
+    public String recurringForecast(String fromMonth, String toMonth, String ccy) {
+        try {
+            return mapper.writeValueAsString(projection.forecast(fromMonth, toMonth, ccy));
+        } catch (Exception e) {
+            System.err.println("Failed to project recurring rules: " + e.getMessage());
+            return "{}";
+        }
+    }
+
+    public String budgetMonth(String month, String ccy) {
+        try {
+            return mapper.writeValueAsString(rollover.month(month, ccy));
+        } catch (Exception e) {
+            System.err.println("Failed to compute budget month: " + e.getMessage());
+            return "{}";
+        }
+    }
+
+    public String rolloverHistory(String category, String fromMonth, String toMonth, String ccy) {
+        try {
+            return mapper.writeValueAsString(rollover.history(category, fromMonth, toMonth, ccy));
+        } catch (Exception e) {
+            System.err.println("Failed to read rollover history: " + e.getMessage());
+            return "{}";
+        }
+    }
+
+    public String fxFactors(String to) {
+        try {
+            return mapper.writeValueAsString(fx.factorsTo(to));
+        } catch (Exception e) {
+            return "{}";
+        }
+    }
+
+    public Map<String, Object> fxStats() {
+        return fx.stats();
+    }
+
+    public Map<String, Object> fxHistoryStats() {
+        return fxHistory.stats();
+    }
+
+    // Import d'un historique BCE local ; renvoie le nombre de points écrits (-1 en cas d'erreur)
+    public int fxBackfill(String path) {
+        try {
+            return fxHistory.backfill(java.nio.file.Path.of(path));
+        } catch (Exception e) {
+            System.err.println("Failed to import fx history: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    public Map<String, Object> recurringStats() {
+        return recurring.stats();
+    }
+
+    public Map<String, Object> rolloverStats() {
+        return rollover.stats();
+    }
+
     public void fxFetchNow() {
         fxAuto.fetchNow();
     }
@@ -453,6 +729,7 @@ public class MainController {
                     ss.userId
             );
             repo.upsertRule(r);
+            rules.invalidate();
             p2p.broadcast(new Op(Op.Type.RULE_UPSERT, r));
             pushRules();
         } catch (Exception e) {
@@ -466,6 +743,7 @@ public class MainController {
             // on envoie un tombstone minimal (id + deleted=true + ver/author)
             Rule tomb = new Rule(id, "", "", "", "", false, true, ver, ss.userId);
             repo.tombstoneRule(id, ver, ss.userId);
+            rules.invalidate();
             p2p.broadcast(new Op(Op.Type.RULE_DELETE, tomb));
             pushRules();
         } catch (Exception e) {
@@ -477,14 +755,7 @@ public class MainController {
         try {
             var all = repo.listRecurringActive();
             String json = mapper.writeValueAsString(all);
-            javafx.application.Platform.runLater(() ->
-            {
-                try {
-                    webview.getEngine().executeScript("window.onRecurring(" + mapper.writeValueAsString(json) + ");");
-                } catch (JsonProcessingException e) {
-                    throw new RuntimeException(e);
-                }
-            });
+            pushJson("onRecurring", json);
         } catch (Exception e) {
             System.err.println("Failed to push recurring: " + e.getMessage());
         }
@@ -502,6 +773,7 @@ public class MainController {
             );
             repo.upsertRecurring(r);
             p2p.broadcast(new Op(Op.Type.RECUR_UPSERT, r));
+            recurring.reschedule();
             pushRecurring();
         } catch (Exception e) {
             System.err.println("Failed to upsert recurring: " + e.getMessage());
@@ -514,6 +786,7 @@ public class MainController {
             RecurringRule tomb = new RecurringRule(id, "", "", 0, 0, 0, java.math.BigDecimal.ZERO, "", "", "", false, true, ver, ss.userId);
             repo.tombstoneRecurring(id, ver, ss.userId);
             p2p.broadcast(new Op(Op.Type.RECUR_DELETE, tomb));
+            recurring.reschedule();
             pushRecurring();
         } catch (Exception e) {
             System.err.println("Failed to delete recurring: " + e.getMessage());
@@ -524,14 +797,7 @@ public class MainController {
         try {
             var all = repo.listGoalsActive();
             String json = mapper.writeValueAsString(all);
-            javafx.application.Platform.runLater(() ->
-            {
-                try {
-                    webview.getEngine().executeScript("window.onGoals(" + mapper.writeValueAsString(json) + ");");
-                } catch (JsonProcessingException e) {
-                    throw new RuntimeException(e);
-                }
-            });
+            pushJson("onGoals", json);
         } catch (Exception e) {
             System.err.println("Failed to push goals: " + e.getMessage());
         }
@@ -1,5 +1,5 @@
 // ===== Etat =====
-let EXPENSES = [];
+// Les dépenses restent côté Java : la liste n'en garde que les pages affichées (LIST_ROWS)
 let BUDGETS = [];
 let FX = []; // { code, perBase } per EUR
 let RULES = [];
@@ -42,17 +42,59 @@ function destroyChart(id) {
 }
 
 // ===== Bridge (côté Java) → callbacks =====
-window.onExpenses = (json) => {
-    EXPENSES = JSON.parse(json);
-    renderExpensesTable();
+window.onExpensesReset = () => {
+    invalidateAggregates();
+    reloadExpenses();
     renderBudgetsTable();
     refreshAnalytics();
     populateDisplayCcyOptions();
     syncNetworkPanel();
 };
 
+// Deltas de dépenses : bufferisés puis appliqués une seule fois par frame
+const PENDING_UPSERTS = new Map();
+const PENDING_REMOVALS = new Set();
+let DELTA_SCHEDULED = false;
+
+window.onExpenseUpserted = (rows) => {
+    rows.forEach(e => {
+        PENDING_REMOVALS.delete(e.id);
+        PENDING_UPSERTS.set(e.id, e);
+    });
+    scheduleDelta();
+};
+
+window.onExpenseRemoved = (ids) => {
+    ids.forEach(id => {
+        PENDING_UPSERTS.delete(id);
+        PENDING_REMOVALS.add(id);
+    });
+    scheduleDelta();
+};
+
+function scheduleDelta() {
+    if (DELTA_SCHEDULED) return;
+    DELTA_SCHEDULED = true;
+    if (typeof requestAnimationFrame === 'function') requestAnimationFrame(flushDelta);
+    else setTimeout(flushDelta, 16);
+}
+
+function flushDelta() {
+    DELTA_SCHEDULED = false;
+    if (PENDING_UPSERTS.size === 0 && PENDING_REMOVALS.size === 0) return;
+    refreshExpenseHead(PENDING_UPSERTS, PENDING_REMOVALS);
+    PENDING_UPSERTS.clear();
+    PENDING_REMOVALS.clear();
+    invalidateAggregates();
+    renderBudgetsTable();
+    refreshAnalytics();
+    populateDisplayCcyOptions();
+    syncNetworkPanel();
+}
+
 window.onBudgets = (json) => {
     BUDGETS = JSON.parse(json);
+    invalidateAggregates();
     renderBudgetsTable();
     refreshAnalytics();
     populateDisplayCcyOptions();
@@ -61,6 +103,8 @@ window.onBudgets = (json) => {
 
 window.onFx = (json) => {
     FX = JSON.parse(json);
+    FX_FACTORS.clear();
+    invalidateAggregates();
     renderFxTable();
     renderBudgetsTable();
     refreshAnalytics();
@@ -92,48 +136,61 @@ displaySel.addEventListener('change', () => setDisplayCurrency(displaySel.value)
 
 function populateDisplayCcyOptions() {
     const set = new Set([FX_BASE, DISPLAY_CCY]);
-    EXPENSES.forEach(e => e.currency && set.add(e.currency.toUpperCase()));
+    expenseCurrencies().forEach(c => set.add(c));
     BUDGETS.forEach(b => b.currency && set.add(b.currency.toUpperCase()));
     FX.forEach(r => r.code && set.add(r.code.toUpperCase()));
     const arr = Array.from(set).sort();
     const sel = document.getElementById('display-ccy');
     const cur = sel.value || DISPLAY_CCY;
     sel.innerHTML = arr.map(c => `<option ${c === cur ? 'selected' : ''}>${c}</option>`).join('');
-    setDisplayCurrency(sel.value || DISPLAY_CCY);
+    // même devise : les appelants viennent de tout redessiner, seuls les libellés sont à poser
+    const next = (sel.value || DISPLAY_CCY).toUpperCase();
+    if (next !== DISPLAY_CCY) setDisplayCurrency(next);
+    else showDisplayCurrency();
 }
 
 function setDisplayCurrency(ccy) {
     DISPLAY_CCY = (ccy || 'EUR').toUpperCase();
     localStorage.setItem('display_ccy', DISPLAY_CCY);
-    document.getElementById('dash-ccy').textContent = DISPLAY_CCY;
-    document.querySelectorAll('#view-dashboard .ccy').forEach(n => n.textContent = DISPLAY_CCY);
-    // Re-rendus avec conversion avant calculs
-    renderExpensesTable();
+    showDisplayCurrency();
+    // Re-rendus avec conversion avant calculs (les lignes affichées ne sont pas relues)
+    redrawExpenses();
     renderBudgetsTable();
     refreshAnalytics();
 }
 
+function showDisplayCurrency() {
+    document.getElementById('dash-ccy').textContent = DISPLAY_CCY;
+    document.querySelectorAll('#view-dashboard .ccy').forEach(n => n.textContent = DISPLAY_CCY);
+}
+
 // ===== Utilitaires FX =====
-function rateOf(code) {
-    if (!code) return 1.0;
-    if (code.toUpperCase() === FX_BASE) return 1.0;
-    const r = FX.find(x => x.code && x.code.toUpperCase() === code.toUpperCase());
-    return r ? parseFloat(r.perBase) : NaN; // per EUR
+// Facteurs vers une devise cible, lus dans la matrice de taux croisés côté Java (une fois par cible et par jeu de taux)
+const FX_FACTORS = new Map(); // cible -> Map(devise -> facteur)
+
+function fxFactorsTo(target) {
+    let m = FX_FACTORS.get(target);
+    if (!m) {
+        let o = {};
+        try {
+            o = JSON.parse(window.bridge.fxFactors(target) || '{}');
+        } catch (_) {
+        }
+        m = new Map(Object.entries(o));
+        FX_FACTORS.set(target, m);
+    }
+    return m;
 }
 
-/** Convertit 'amount' de 'from' vers 'to' en utilisant les taux per-EUR. */
+/** Convertit 'amount' de 'from' vers 'to' (taux per-EUR, matrice précalculée). */
 function convertToCurrency(amount, from, to) {
     const a = parseFloat(amount);
     if (!isFinite(a)) return 0;
     const F = (from || '').toUpperCase(), T = (to || '').toUpperCase();
     if (F === T || !F || !T) return a;
-    const rf = rateOf(F), rt = rateOf(T);
-    if (!isFinite(rf) || !isFinite(rt) || rf <= 0 || rt <= 0) {
-        // si on n'a pas de taux, on garde la valeur (affichage dégradé)
-        return a;
-    }
-    // montant_to = montant_from * (rf / rt)
-    return a * (rf / rt);
+    const f = fxFactorsTo(T).get(F);
+    // si on n'a pas de taux, on garde la valeur (affichage dégradé)
+    return f === undefined ? a : a * f;
 }
 
 // ===== Règles (client) =====
@@ -193,20 +250,104 @@ function applyRules(e) {
     return null;
 }
 
-// ===== UI Dépenses =====
-function renderExpensesTable() {
+// ===== UI Dépenses : pages demandées à Java (keyset sur (ts, id), filtres et totaux calculés en base) =====
+const LIST_PAGE = 200;
+let LIST_ROWS = [];
+let LIST_NEXT = null;
+let LIST_TOTAL = null;
+let LIST_TOTALS_TIMER = null;
+
+function listFilter() {
+    const list = id => val(id).split(',').map(s => s.trim()).filter(Boolean);
+    return {
+        from: val('f-from'), to: val('f-to'),
+        categories: list('f-cats'), who: list('f-who'), currencies: list('f-ccy'),
+        minAmount: val('f-min') || null, maxAmount: val('f-max') || null
+    };
+}
+
+function queryExpenses(after, limit, withTotals) {
+    const json = window.bridge.queryExpenses(JSON.stringify(listFilter()), after || '', limit, DISPLAY_CCY, withTotals);
+    return JSON.parse(json || '{}');
+}
+
+// Première page du filtre courant (démarrage, resynchro, nouveau filtre)
+function reloadExpenses() {
+    const res = queryExpenses('', LIST_PAGE, false);
+    LIST_ROWS = res.items || [];
+    LIST_NEXT = res.next || null;
+    redrawExpenses();
+}
+
+// Redessine les lignes déjà chargées ; les totaux du filtre parcourent toutes les lignes retenues, ils sont
+// recalculés à part, une fois pour une rafale de rafraîchissements
+function redrawExpenses() {
     const tbody = document.querySelector('#tbl tbody');
     tbody.innerHTML = '';
-    for (const e of EXPENSES) {
-        let cat = e.category || '';
-        if (!cat) {
-            const c = applyRules(e);
-            if (c) cat = c + ' (suggéré)';
-        }
-        const converted = convertToCurrency(e.amount, e.currency, DISPLAY_CCY);
-        const tr = document.createElement('tr');
-        const date = new Date(e.ts).toLocaleString();
-        tr.innerHTML = `
+    LIST_ROWS.forEach(e => tbody.appendChild(expenseRow(e)));
+    document.getElementById('list-more').hidden = !LIST_NEXT;
+    scheduleListTotals();
+}
+
+// Delta : seule la tête de liste est relue (une page, plus de quoi absorber les lignes ajoutées devant) ; les
+// lignes chargées au-delà restent, retirées ou remplacées sur place, et le curseur des pages suivantes est gardé
+function refreshExpenseHead(upserts, removals) {
+    const loaded = LIST_ROWS.length;
+    const res = queryExpenses('', Math.min(1000, LIST_PAGE + upserts.size), false);
+    const head = res.items || [];
+    if (loaded <= LIST_PAGE) {
+        LIST_ROWS = head;
+        LIST_NEXT = res.next || null;
+    } else {
+        const seen = new Set(head.map(e => e.id));
+        const tail = LIST_ROWS.slice(LIST_PAGE)
+            .filter(e => !removals.has(e.id) && !seen.has(e.id))
+            .map(e => upserts.get(e.id) || e);
+        LIST_ROWS = head.concat(tail);
+    }
+    redrawExpenses();
+}
+
+function loadMoreExpenses() {
+    if (!LIST_NEXT) return;
+    const res = queryExpenses(LIST_NEXT, LIST_PAGE, false);
+    const rows = res.items || [];
+    LIST_ROWS = LIST_ROWS.concat(rows);
+    LIST_NEXT = res.next || null;
+    const tbody = document.querySelector('#tbl tbody');
+    rows.forEach(e => tbody.appendChild(expenseRow(e)));
+    document.getElementById('list-more').hidden = !LIST_NEXT;
+    showListTotals(null);
+}
+
+function scheduleListTotals() {
+    if (LIST_TOTALS_TIMER) return;
+    LIST_TOTALS_TIMER = setTimeout(() => {
+        LIST_TOTALS_TIMER = null;
+        showListTotals(queryExpenses('', 1, true).total || null);
+    }, 250);
+}
+
+function showListTotals(total) {
+    if (total) LIST_TOTAL = total;
+    const el = document.getElementById('list-totals');
+    if (!LIST_TOTAL) {
+        el.textContent = '';
+        return;
+    }
+    el.textContent = `${LIST_ROWS.length} affichées sur ${LIST_TOTAL.count} · total : ${LIST_TOTAL.amount.toFixed(2)} ${DISPLAY_CCY}`;
+}
+
+function expenseRow(e) {
+    let cat = e.category || '';
+    if (!cat) {
+        const c = applyRules(e);
+        if (c) cat = c + ' (suggéré)';
+    }
+    const converted = convertToCurrency(e.amount, e.currency, DISPLAY_CCY);
+    const tr = document.createElement('tr');
+    const date = new Date(e.ts).toLocaleString();
+    tr.innerHTML = `
       <td>${date}</td>
       <td>${escapeHtml(e.who || '')}</td>
       <td>${escapeHtml(cat)}</td>
@@ -214,13 +355,13 @@ function renderExpensesTable() {
       <td>${parseFloat(e.amount).toFixed(2)} ${escapeHtml(e.currency || '')}</td>
       <td>${escapeHtml(e.note || '')}</td>
       <td><button class="rowdel" data-id="${e.id}">Supprimer</button></td>`;
-        tbody.appendChild(tr);
-    }
-    tbody.querySelectorAll('button.rowdel').forEach(b => {
-        b.addEventListener('click', () => window.bridge.deleteExpense(b.dataset.id));
-    });
+    tr.querySelector('button.rowdel').addEventListener('click', () => window.bridge.deleteExpense(e.id));
+    return tr;
 }
 
+document.getElementById('list-more').addEventListener('click', loadMoreExpenses);
+document.getElementById('f-apply').addEventListener('click', reloadExpenses);
+
 document.getElementById('add').addEventListener('click', () => {
     const who = document.getElementById('who').value.trim();
     let category = document.getElementById('category').value.trim();
@@ -266,14 +407,13 @@ function renderBudgetsTable() {
     if (!tbody) return;
     tbody.innerHTML = '';
 
-    const spentByCatDisp = groupByCategoryIn(DISPLAY_CCY, EXPENSES.filter(isSameMonth));
+    // plafond + report et dépensé du mois, calculés côté Java (en DISPLAY_CCY)
+    const status = budgetStatusIn(DISPLAY_CCY, keyOfMonth(new Date()));
 
     for (const b of BUDGETS) {
-        // calc prev month spent/planned in DISPLAY_CCY
-        const prev = prevMonthStats(DISPLAY_CCY);
-        const carried = computeRollover(b, prev); // valeur en DISPLAY_CCY
-        const plannedDisp = convertToCurrency(b.monthlyLimit, b.currency, DISPLAY_CCY) + carried;
-        const spentDisp = spentByCatDisp.get(b.category) || 0;
+        const s = status.get(b.category);
+        const plannedDisp = s ? s.planned : convertToCurrency(b.monthlyLimit, b.currency, DISPLAY_CCY);
+        const spentDisp = s ? s.spent : 0;
         const leftDisp = plannedDisp - spentDisp;
         const cls = leftDisp < 0 ? 'warn' : 'ok';
         const tr = document.createElement('tr');
@@ -292,71 +432,30 @@ function renderBudgetsTable() {
     checkAlerts();
 }
 
-function prevMonthStats(targetCcy) {
-    const now = new Date();
-    const prev = new Date(now.getFullYear(), now.getMonth() - 1, 1);
-    const key = k => k.getFullYear() + '-' + String(k.getMonth() + 1).padStart(2, '0');
-    const prevKey = key(prev), curKey = key(new Date(now.getFullYear(), now.getMonth(), 1));
-    const m = new Map(); // cat -> {planned, spent}
-    // planned : budgets du mois précédent = on reprend mêmes limites/plans (simplif: on suppose identiques)
-    for (const b of BUDGETS) {
-        const planned = convertToCurrency(b.monthlyLimit, b.currency, targetCcy);
-        m.set(b.category, {planned, spent: 0});
-    }
-    // spent
-    for (const e of EXPENSES) {
-        const d = new Date(e.ts);
-        const k = key(new Date(d.getFullYear(), d.getMonth(), 1));
-        if (k === prevKey) {
-            const x = convertToCurrency(e.amount, e.currency, targetCcy);
-            const slot = m.get(e.category) || {planned: 0, spent: 0};
-            slot.spent += isNaN(x) ? 0 : x;
-            m.set(e.category, slot);
-        }
-    }
-    return m; // Map cat -> {planned, spent}
-}
-
-function computeRollover(b, prevMap) {
-    const slot = prevMap.get(b.category);
-    if (!slot) return 0;
-    const diff = slot.planned - slot.spent; // >0 surplus, <0 déficit
-    let out;
-    switch ((b.rolloverMode || 'NONE').toUpperCase()) {
-        case 'SURPLUS':
-            out = Math.max(0, diff);
-            break;
-        case 'DEFICIT':
-            out = Math.min(0, diff);
-            break;
-        case 'BOTH':
-            out = diff;
-            break;
-        default:
-            out = 0;
-    }
-    const cap = parseFloat(b.rolloverCap || '0');
-    if (cap > 0) {
-        if (out > 0) out = Math.min(out, cap);
-        else out = Math.max(out, -cap);
-    }
-    return out;
+// ===== Agrégations (côté Java : totaux par mois/catégorie/devise tenus à jour à chaque op) =====
+// Un appel bridge par requête distincte, mémorisé jusqu'au prochain changement de dépenses, de budgets ou de taux
+const AGG_CACHE = new Map();
+
+function invalidateAggregates() {
+    AGG_CACHE.clear();
 }
 
-// Agrégations converties AVANT calculs
-function groupByCategoryIn(targetCcy, arr) {
-    const m = new Map();
-    for (const e of arr) {
-        const x = convertToCurrency(e.amount, e.currency, targetCcy);
-        m.set(e.category, (m.get(e.category) || 0) + (isNaN(x) ? 0 : x));
+function aggregate(key, call) {
+    if (!AGG_CACHE.has(key)) {
+        let out = {};
+        try {
+            out = JSON.parse(call() || '{}');
+        } catch (_) {
+        }
+        AGG_CACHE.set(key, out);
     }
-    return m;
+    return new Map(Object.entries(AGG_CACHE.get(key)));
 }
 
-function isSameMonth(e) {
-    const now = new Date();
-    const d = new Date(e.ts);
-    return d.getFullYear() === now.getFullYear() && d.getMonth() === now.getMonth();
+/** Dépensé par catégorie sur le mois 'YYYY-MM', converti en 'targetCcy' (Map cat -> total). */
+function spentByCategoryIn(targetCcy, monthKey) {
+    return aggregate('cat|' + monthKey + '|' + targetCcy,
+        () => window.bridge.spentByCategory(monthKey, targetCcy));
 }
 
 function keyOfMonth(d) {
@@ -370,14 +469,17 @@ function monthlyBuckets(n = 6) {
     return list;
 }
 
-function sumByMonthIn(targetCcy, expenses) {
-    const map = new Map(); // key: YYYY-MM
-    for (const e of expenses) {
-        const k = keyOfMonth(new Date(e.ts));
-        const x = convertToCurrency(e.amount, e.currency, targetCcy);
-        map.set(k, (map.get(k) || 0) + (isNaN(x) ? 0 : x));
-    }
-    return map;
+/** Budgets du mois 'YYYY-MM' avec reports, en 'targetCcy' (Map cat -> {limit, carried, planned, spent, left}). */
+function budgetStatusIn(targetCcy, monthKey) {
+    return aggregate('budget|' + monthKey + '|' + targetCcy,
+        () => window.bridge.budgetMonth(monthKey, targetCcy));
+}
+
+/** Total de chaque mois de 'labels' (clés 'YYYY-MM' consécutives), converti en 'targetCcy'. */
+function sumByMonthIn(targetCcy, labels) {
+    const from = labels[0], to = labels[labels.length - 1];
+    return aggregate('month|' + from + '|' + to + '|' + targetCcy,
+        () => window.bridge.monthlyTotals(from, to, targetCcy));
 }
 
 // ===== FX =====
@@ -411,17 +513,17 @@ function renderFxTable() {
 // ===== Graphiques (en devise d'affichage) =====
 function refreshAnalytics() {
     // Catégories (mois courant)
-    const cats = Array.from(groupByCategoryIn(DISPLAY_CCY, EXPENSES.filter(isSameMonth)).entries());
+    const cats = Array.from(spentByCategoryIn(DISPLAY_CCY, keyOfMonth(new Date())).entries());
     drawPie('chartCat', 'chartCat-fallback', cats);
 
     // 6 derniers mois
     const labels = monthlyBuckets(6);
-    const m = sumByMonthIn(DISPLAY_CCY, EXPENSES);
+    const m = sumByMonthIn(DISPLAY_CCY, labels);
     const series = labels.map(k => m.get(k) || 0);
     drawLine('chartMonthly', 'chartMonthly-fallback', labels, series);
 
     // Budget vs réalisé (mois)
-    const spentByCat = groupByCategoryIn(DISPLAY_CCY, EXPENSES.filter(isSameMonth));
+    const spentByCat = spentByCategoryIn(DISPLAY_CCY, keyOfMonth(new Date()));
     const labelsB = BUDGETS.map(b => b.category);
     const planned = BUDGETS.map(b => convertToCurrency(b.monthlyLimit, b.currency, DISPLAY_CCY));
     const actual = BUDGETS.map(b => spentByCat.get(b.category) || 0);
@@ -499,53 +601,39 @@ function drawBars(canvasId, fallbackId, labels, planned, actual) {
     }
 }
 
-// ===== Exports =====
-document.getElementById('exportCsv').addEventListener('click', () => {
-    const lines = [["ts", "who", "category", "amount_display", "display_ccy", "amount_original", "currency", "note"]];
-    for (const e of EXPENSES) {
-        const disp = convertToCurrency(e.amount, e.currency, DISPLAY_CCY);
-        lines.push([e.ts, e.who || "", e.category || "", disp.toFixed(2), DISPLAY_CCY, e.amount, e.currency || "", (e.note || "").replace(/\n/g, " ")]);
+// ===== Exports (écrits par Java, en flux depuis la base) =====
+function startExport(format, defaultMonth) {
+    const req = {format, currency: DISPLAY_CCY, filter: listFilter()};
+    if (defaultMonth && !req.filter.from && !req.filter.to) {
+        // rapport sans période : mois courant, comme avant
+        const now = new Date();
+        req.filter.from = keyOfMonth(now) + '-01';
+        req.filter.to = keyOfMonth(now) + '-' + String(new Date(now.getFullYear(), now.getMonth() + 1, 0).getDate()).padStart(2, '0');
     }
-    const csv = lines.map(r => r.map(cell => `"${String(cell).replace(/"/g, '""')}"`).join(",")).join("\n");
-    const name = "expenses-" + new Date().toISOString().slice(0, 10) + ".csv";
-    const path = window.bridge.exportCsv(name, csv);
-    alert(path ? "CSV exporté: " + path : "Échec export CSV");
-});
-document.getElementById('exportHtml').addEventListener('click', () => {
-    const img1 = toDataUrl('chartCat'), img2 = toDataUrl('chartMonthly'), img3 = toDataUrl('chartBudget');
-    const html = `<!doctype html><html><head><meta charset="utf-8"><title>Rapport Budget</title>
-  <style>body{font-family:system-ui,Segoe UI,Roboto,Arial;margin:20px;color:#222} h1{margin:0 0 8px} h2{margin:16px 0 6px} table{border-collapse:collapse;width:100%} th,td{border:1px solid #ddd;padding:6px}</style>
-  </head><body>
-  <h1>Rapport Budget – ${new Date().toLocaleString()} (affichage ${DISPLAY_CCY})</h1>
-  <h2>Graphiques</h2>
-  <img src="${img1}" style="max-width:32%" alt=""/> <img src="${img2}" style="max-width:32%" alt=""/> <img src="${img3}" style="max-width:32%" alt=""/>
-  <h2>Dépenses (mois courant)</h2>
-  ${htmlTableExpenses()}
-  </body></html>`;
-    const path = window.bridge.exportReport(html);
-    alert(path ? "Rapport HTML exporté: " + path : "Échec export HTML");
-});
-
-function toDataUrl(id) {
-    const c = document.getElementById(id);
-    try {
-        return c.toDataURL("image/png");
-    } catch (e) {
-        return "";
+    const path = window.bridge.exportExpenses(JSON.stringify(req));
+    if (!path) return alert("Export impossible (un export est déjà en cours ?)");
+    document.getElementById('exportCancel').disabled = false;
+    document.getElementById('exp-progress').textContent = format + ' : démarrage…';
+}
+
+window.onExportProgress = (json) => {
+    const s = JSON.parse(json);
+    const el = document.getElementById('exp-progress');
+    if (s.state === 'RUNNING') {
+        el.textContent = `${s.format} : ${s.rows} / ${s.total} lignes`;
+        return;
     }
-}
+    document.getElementById('exportCancel').disabled = true;
+    el.textContent = '';
+    if (s.state === 'DONE') alert(`Export ${s.format} (${s.rows} lignes) : ${s.file}`);
+    else if (s.state === 'FAILED') alert('Échec export ' + s.format + ' : ' + (s.error || ''));
+    else if (s.state === 'CANCELLED') toast('Export annulé');
+};
 
-function htmlTableExpenses() {
-    const rows = EXPENSES.filter(isSameMonth).map(e => {
-        const disp = convertToCurrency(e.amount, e.currency, DISPLAY_CCY);
-        return `<tr><td>${new Date(e.ts).toLocaleString()}</td>
-      <td>${escapeHtml(e.who || '')}</td><td>${escapeHtml(e.category || '')}</td>
-      <td>${disp.toFixed(2)} ${DISPLAY_CCY}</td>
-      <td>${parseFloat(e.amount).toFixed(2)} ${escapeHtml(e.currency || '')}</td>
-      <td>${escapeHtml(e.note || '')}</td></tr>`;
-    }).join("");
-    return `<table><thead><tr><th>Date</th><th>Qui</th><th>Cat.</th><th>Montant (disp.)</th><th>Original</th><th>Note</th></tr></thead><tbody>${rows}</tbody></table>`;
-}
+document.getElementById('exportCsv').addEventListener('click', () => startExport('CSV', false));
+document.getElementById('exportJsonl').addEventListener('click', () => startExport('JSONL', false));
+document.getElementById('exportHtml').addEventListener('click', () => startExport('HTML', true));
+document.getElementById('exportCancel').addEventListener('click', () => window.bridge.cancelExport());
 
 // ===== Divers =====
 function escapeHtml(s) {
@@ -640,13 +728,18 @@ function renderGoals() {
 }
 
 function sumGoalContribIn(g, ccy) {
-    // convention simple: toute dépense dont la note contient #[goal:<goalId>] est une contribution
-    const tag = "#[goal:" + g.id + "]";
-    let s = 0;
-    for (const e of EXPENSES) {
-        if ((e.note || '').includes(tag)) s += convertToCurrency(e.amount, e.currency, ccy);
+    // convention simple: toute dépense dont la note contient #[goal:<goalId>] est une contribution (somme côté Java)
+    return aggregate('goals|' + ccy, () => window.bridge.goalContributions(ccy)).get(g.id) || 0;
+}
+
+/** Devises présentes parmi les dépenses (totaux matérialisés côté Java). */
+function expenseCurrencies() {
+    let out = [];
+    try {
+        out = JSON.parse(window.bridge.expenseCurrencies() || '[]');
+    } catch (_) {
     }
-    return s;
+    return out;
 }
 
 function v(id) {
@@ -672,10 +765,11 @@ let LAST_ALERTS = new Set();
 
 function checkAlerts() {
     // seuils : >=80% du budget ou dépassement
-    const spentByCat = groupByCategoryIn(DISPLAY_CCY, EXPENSES.filter(isSameMonth));
+    const status = budgetStatusIn(DISPLAY_CCY, keyOfMonth(new Date()));
     for (const b of BUDGETS) {
-        const planned = convertToCurrency(b.monthlyLimit, b.currency, DISPLAY_CCY) + computeRollover(b, prevMonthStats(DISPLAY_CCY));
-        const spent = spentByCat.get(b.category) || 0;
+        const s = status.get(b.category);
+        const planned = s ? s.planned : convertToCurrency(b.monthlyLimit, b.currency, DISPLAY_CCY);
+        const spent = s ? s.spent : 0;
         const key80 = '80:' + b.category, keyOver = '100:' + b.category;
         if (planned > 0 && spent / planned >= 0.8 && !LAST_ALERTS.has(key80)) {
             toast(`Alerte 80% — ${b.category}: ${spent.toFixed(2)}/${planned.toFixed(2)} ${DISPLAY_CCY}`, '');
@@ -0,0 +1,71 @@
+package com.titiplex.budget.core.rules;
+
+import com.titiplex.budget.core.model.Rule;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Le moteur compilé doit rendre la même règle que l'ancien parcours règle par règle
+ * (SUBSTRING insensible à la casse, REGEX avec {@code String.matches}).
+ */
+class RuleEngineTest {
+
+    private static final List<String> PATTERNS = List.of(
+            "\\x41BCDE.*", "\\u0041BCD.*", "\\0101BCD.*", "[a[b]]xyz.*", "[^]q]xyz.*", "[]q]xyz.*",
+            "\\p{Lu}BCD.*", "(?<n>a)\\k<n>bcd.*", "UBER\\s*TRIP.*", ".*CARREFOUR.*", ".*AMAZON\\.FR.*",
+            "PAY(PAL)?xyz.*", "a+bcd.*");
+
+    private static final List<String> TEXTS = List.of(
+            "ABCDE ", "ABCD ", "axyz ", "bxyz ", "qxyz ", "]xyz ", "aabcd ", "UBER TRIP ", "UBERTRIP ",
+            "chez CARREFOUR market ", "AMAZON.FR ", "AMAZONxFR ", "PAYxyz ", "PAYPALxyz ", "aaabcd ", "rien ");
+
+    @Test
+    void compiledMatchesOldLoop() {
+        List<Rule> rules = new ArrayList<>();
+        for (int i = 0; i < PATTERNS.size(); i++) rules.add(rule("r" + i, "REGEX", PATTERNS.get(i)));
+        rules.add(rule("s", "SUBSTRING", "trip"));
+        RuleEngine.Compiled c = RuleEngine.compile(rules);
+
+        for (String text : TEXTS) {
+            Rule expected = oldLoop(rules, text);
+            Rule actual = c.match(text);
+            assertEquals(expected == null ? null : expected.id(), actual == null ? null : actual.id(), text);
+        }
+        // chaque REGEX seule, pour que la première règle ne masque pas les suivantes
+        for (String p : PATTERNS) {
+            List<Rule> one = List.of(rule("x", "REGEX", p));
+            RuleEngine.Compiled single = RuleEngine.compile(one);
+            for (String text : TEXTS) {
+                assertEquals(oldLoop(one, text) != null, single.match(text) != null, p + " / " + text);
+            }
+        }
+    }
+
+    @Test
+    void noLiteralForEscapesWithOperandsOrNestedClasses() {
+        assertNull(RuleEngine.requiredLiteral("\\x41BCDE.*"));
+        assertNull(RuleEngine.requiredLiteral("\\u0041BCD.*"));
+        assertNull(RuleEngine.requiredLiteral("\\0101BCD.*"));
+        assertNull(RuleEngine.requiredLiteral("[a[b]]xyz.*"));
+        assertNull(RuleEngine.requiredLiteral("[]q]xyz.*"));
+        assertEquals("CARREFOUR", RuleEngine.requiredLiteral(".*CARREFOUR.*"));
+        assertEquals("AMAZON.FR", RuleEngine.requiredLiteral(".*AMAZON\\.FR.*"));
+    }
+
+    private static Rule oldLoop(List<Rule> rules, String text) {
+        for (Rule r : rules) {
+            if ("SUBSTRING".equals(r.kind()) && text.toLowerCase().contains(r.pattern().toLowerCase())) return r;
+            if ("REGEX".equals(r.kind()) && text.matches(r.pattern())) return r;
+        }
+        return null;
+    }
+
+    private static Rule rule(String id, String kind, String pattern) {
+        return new Rule(id, id, kind, pattern, "cat-" + id, true, false, "0", "me");
+    }
+}